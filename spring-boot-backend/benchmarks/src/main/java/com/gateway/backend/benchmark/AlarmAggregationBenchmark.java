@@ -0,0 +1,49 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.service.AlarmService;
+import com.gateway.backend.service.alarm.AlarmAggregation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+
+/**
+ * {@code /alarms/aggregations}: a dashboard widget's totals over all time and a week-long series, both answered
+ * from the pre-aggregated buckets.
+ */
+@State(Scope.Benchmark)
+public class AlarmAggregationBenchmark {
+
+    @Param({"100", "100000", "1000000"})
+    public int alarms;
+
+    @Param({"severity", "gatewayName"})
+    public String groupBy;
+
+    private AlarmService alarmService;
+    private String weekAgo;
+    private String now;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        alarmService = new AlarmService(alarms);
+        // Not aligned on hours, so the ends of the range are covered with minute buckets
+        LocalDateTime end = LocalDateTime.now().withSecond(0).withNano(0).minusMinutes(17);
+        weekAgo = end.minusDays(7).plusMinutes(3).toString();
+        now = end.toString();
+    }
+
+    @Benchmark
+    public AlarmAggregation allTime() {
+        return alarmService.getAggregations(groupBy, null, null, null);
+    }
+
+    @Benchmark
+    public AlarmAggregation lastWeekByHour() {
+        return alarmService.getAggregations(groupBy, weekAgo, now, "hour");
+    }
+}
@@ -0,0 +1,139 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmStatus;
+import com.gateway.backend.service.alarm.AlarmStatusChange;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * {@code POST /alarms/batch}: {@code ingest} alone (run it with {@code -tg 1}, {@code -tg 4}, ... to see how it
+ * scales with threads), {@code ingestAndQuery}, where writers append while readers list the first page of open alarms,
+ * and {@code ingestAndAcknowledge}, where writers append while operators move batches of {@value #ACKNOWLEDGED}
+ * random alarms one status further ({@code PATCH /alarms/status}).
+ * <p>
+ * The store only grows, so every iteration starts from a fresh service with {@code alarms} mock alarms and
+ * iterations are kept to one second.
+ */
+@State(Scope.Group)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+public class AlarmIngestBenchmark {
+
+    private static final int POOL = 64;
+    private static final int ACKNOWLEDGED = 100;
+
+    @Param({"100000"})
+    public int alarms;
+
+    @Param({"1", "100", "1000"})
+    public int batchSize;
+
+    private List<List<Alarm>> batches;
+    private AlarmService alarmService;
+    private final Map<String, String> filters = Map.of("status", "open");
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+        final Random random = new Random();
+    }
+
+    @Setup(Level.Trial)
+    public void createBatches() {
+        Random random = new Random(42);
+        batches = new ArrayList<>(POOL);
+        for (int b = 0; b < POOL; b++) {
+            List<Alarm> batch = new ArrayList<>(batchSize);
+            for (int i = 0; i < batchSize; i++) {
+                batch.add(Alarm.builder()
+                        .gatewayId((long) random.nextInt(1000))
+                        .gatewayName("Gateway " + random.nextInt(50))
+                        .type("Connection Lost")
+                        .severity(random.nextBoolean() ? "High" : "Low")
+                        .message("Gateway connection lost")
+                        .timestamp(LocalDateTime.now())
+                        .status(random.nextBoolean() ? "Open" : "Resolved")
+                        .callType("Voice")
+                        .siteId((long) random.nextInt(100))
+                        .siteName("Site " + random.nextInt(20))
+                        .caller_number((100 + random.nextInt(900)) + "-" + (100 + random.nextInt(900)) + "-" + (1000 + random.nextInt(9000)))
+                        .callee_number((100 + random.nextInt(900)) + "-" + (100 + random.nextInt(900)) + "-" + (1000 + random.nextInt(9000)))
+                        .duration_seconds(random.nextInt(3600))
+                        .charge_amount(random.nextInt(1000) / 100.0)
+                        .build());
+            }
+            batches.add(batch);
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void createService() {
+        alarmService = new AlarmService(alarms);
+    }
+
+    @Benchmark
+    @Group("ingest")
+    public long ingest(Cursor cursor) {
+        return alarmService.addAlarms(batches.get(cursor.next++ % POOL));
+    }
+
+    @Benchmark
+    @Group("ingestAndQuery")
+    @GroupThreads(2)
+    public long ingestWhileQuerying(Cursor cursor) {
+        return alarmService.addAlarms(batches.get(cursor.next++ % POOL));
+    }
+
+    @Benchmark
+    @Group("ingestAndQuery")
+    @GroupThreads(2)
+    public AlarmPage queryWhileIngesting() {
+        return alarmService.queryAlarms(filters, 1, 10, "timestamp", "desc");
+    }
+
+    @Benchmark
+    @Group("ingestAndAcknowledge")
+    @GroupThreads(2)
+    public long ingestWhileAcknowledging(Cursor cursor) {
+        return alarmService.addAlarms(batches.get(cursor.next++ % POOL));
+    }
+
+    @Benchmark
+    @Group("ingestAndAcknowledge")
+    @GroupThreads(2)
+    public AlarmStatusChange acknowledgeWhileIngesting(Cursor cursor) {
+        AlarmColumns columns = alarmService.getSnapshot().getColumns();
+        List<Alarm> transitions = new ArrayList<>(ACKNOWLEDGED);
+        for (int i = 0; i < ACKNOWLEDGED; i++) {
+            int row = columns.first() + cursor.random.nextInt(columns.count());
+            AlarmStatus status = AlarmStatus.fromLabel(columns.text(AlarmField.STATUS, row));
+            AlarmStatus next = AlarmStatus.values()[status == null || status == AlarmStatus.CLOSED
+                    ? 0 : status.ordinal() + 1];
+            transitions.add(Alarm.builder()
+                    .id(row + 1L)
+                    .version(columns.version(row))
+                    .status(next.getLabel())
+                    .build());
+        }
+        return alarmService.changeStatuses(transitions);
+    }
+}
@@ -0,0 +1,141 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.GatewayBackendApplication;
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import com.gateway.backend.service.alarm.AlarmPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.springframework.boot.SpringApplication;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.stream.Stream;
+
+/**
+ * {@code AlarmService} with {@code alarms.persistence.mode=jpa} on an H2 database in file mode: the listing's
+ * first page with and without a filter, a deep page by offset and by cursor, a filtered total, and batch
+ * inserts.
+ * <p>
+ * The application context boots once per trial on a new database in a temporary directory, filled with
+ * {@code alarms} alarms through {@code addAlarms}; {@code insertBatch} keeps adding to it, which hardly
+ * changes its size at these row counts. Alarms arrive in timestamp order, as they do from the gateways. H2's
+ * statement cache is off, as otherwise it hands back the previous result of an identical query on an
+ * unchanged table, which a server database would not.
+ */
+@State(Scope.Benchmark)
+public class AlarmPersistenceBenchmark {
+
+    private static final int LOAD_BATCH = 10_000;
+
+    @Param({"100000", "1000000", "3000000"})
+    public int alarms;
+
+    private Path directory;
+    private ConfigurableApplicationContext context;
+    private AlarmService alarmService;
+    private final Random random = new Random(42);
+    private LocalDateTime clock = LocalDateTime.now().minusDays(30);
+    private final Map<String, String> openAlarms = Map.of("status", "open");
+    private int deepPage;
+    private String deepCursor;
+    private List<Alarm> batch;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("alarm-persistence");
+        context = SpringApplication.run(GatewayBackendApplication.class,
+                "--server.port=0",
+                "--security.token.validation.enabled=false",
+                "--alarms.persistence.mode=jpa",
+                "--alarms.cache.max-entries=0",
+                "--spring.datasource.url=jdbc:h2:file:" + directory.resolve("alarms") + ";QUERY_CACHE_SIZE=0",
+                "--spring.jpa.show-sql=false",
+                "--logging.level.root=WARN",
+                "--logging.level.org.springframework.web=WARN",
+                "--logging.level.org.springframework.security=WARN");
+        alarmService = context.getBean(AlarmService.class);
+        for (int loaded = alarmService.getTotalAlarms(Map.of()); loaded < alarms; loaded += LOAD_BATCH) {
+            alarmService.addAlarms(newAlarms(Math.min(LOAD_BATCH, alarms - loaded)));
+        }
+        deepPage = alarms / 20;
+        deepCursor = alarmService.queryAlarms(Map.of(), deepPage - 1, 20, "timestamp", "desc").getNextCursor();
+        batch = newAlarms(1000);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        context.close();
+        try (Stream<Path> files = Files.walk(directory)) {
+            for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                Files.delete(file);
+            }
+        }
+    }
+
+    private List<Alarm> newAlarms(int count) {
+        List<Alarm> batch = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            batch.add(Alarm.builder()
+                    .gatewayId((long) random.nextInt(1000))
+                    .gatewayName("Gateway " + random.nextInt(50))
+                    .type("Connection Lost")
+                    .severity(random.nextBoolean() ? "High" : "Low")
+                    .message("Gateway connection lost")
+                    .timestamp(clock = clock.plusNanos(random.nextInt(2_000_000)))
+                    .status(random.nextInt(4) == 0 ? "Open" : "Resolved")
+                    .callType("Voice")
+                    .siteId((long) random.nextInt(100))
+                    .siteName("Site " + random.nextInt(20))
+                    .caller_number("555-" + (1000 + random.nextInt(9000)))
+                    .callee_number("555-" + (1000 + random.nextInt(9000)))
+                    .duration_seconds(random.nextInt(3600))
+                    .charge_amount(random.nextInt(1000) / 100.0)
+                    .build());
+        }
+        return batch;
+    }
+
+    @Benchmark
+    public AlarmPage firstPage() {
+        return alarmService.queryAlarms(Map.of(), 1, 20, "timestamp", "desc");
+    }
+
+    @Benchmark
+    public AlarmPage filteredFirstPage() {
+        return alarmService.queryAlarms(openAlarms, 1, 20, "timestamp", "desc");
+    }
+
+    @Benchmark
+    public AlarmPage deepPageByOffset() {
+        return alarmService.queryAlarms(Map.of(), deepPage, 20, "timestamp", "desc");
+    }
+
+    @Benchmark
+    public AlarmPage deepPageByCursor() {
+        return alarmService.queryAlarms(Map.of(), 1, 20, "timestamp", "desc", deepCursor);
+    }
+
+    @Benchmark
+    public int filteredTotal() {
+        return alarmService.getTotalAlarms(openAlarms);
+    }
+
+    @Benchmark
+    public long insertBatch() {
+        return alarmService.addAlarms(batch);
+    }
+}
@@ -0,0 +1,94 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import com.gateway.backend.service.alarm.AlarmPage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.time.LocalDateTime;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * {@code /alarms} listing: first page plus total in one {@code queryAlarms} call, as {@code AlarmController.getAlarms}
+ * makes it, and the separate {@code getAlarms}/{@code getTotalAlarms} entry points.
+ */
+@State(Scope.Benchmark)
+public class AlarmServiceBenchmark {
+
+    @Param({"100", "100000", "1000000"})
+    public int alarms;
+
+    @Param({"none", "status", "gatewayName+severity", "message", "caller_number", "lastDay",
+            "longCalls+charge+status", "q"})
+    public String filter;
+
+    @Param({"timestamp", "gatewayName"})
+    public String sortBy;
+
+    private AlarmService alarmService;
+    private Map<String, String> filters;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        alarmService = new AlarmService(alarms);
+        filters = filters(filter);
+    }
+
+    static Map<String, String> filters(String name) {
+        Map<String, String> filters = new HashMap<>();
+        switch (name) {
+            case "none":
+                break;
+            case "status":
+                filters.put("status", "open");
+                break;
+            case "gatewayName+severity":
+                filters.put("gatewayName", "gateway 1");
+                filters.put("severity", "high");
+                break;
+            case "message":
+                filters.put("message", "threshold");
+                break;
+            case "caller_number":
+                filters.put("caller_number", "55");
+                break;
+            case "lastDay":
+                filters.put("timestampFrom", LocalDateTime.now().minusDays(1).toString());
+                break;
+            case "longCalls+charge+status":
+                filters.put("minDuration", "1800");
+                filters.put("minCharge", "2.50");
+                filters.put("maxCharge", "5");
+                filters.put("status", "open");
+                break;
+            case "q":
+                filters.put("q", "threshold exce*");
+                break;
+            default:
+                throw new IllegalArgumentException("Unknown filter set " + name);
+        }
+        return filters;
+    }
+
+    @Benchmark
+    public AlarmPage queryAlarms() {
+        return alarmService.queryAlarms(filters, 1, 10, sortBy, "desc");
+    }
+
+    @Benchmark
+    public List<Alarm> getAlarms() {
+        return alarmService.getAlarms(filters, 1, 10, sortBy, "desc");
+    }
+
+    @Benchmark
+    public int getTotalAlarms() {
+        return alarmService.getTotalAlarms(filters);
+    }
+}
@@ -0,0 +1,41 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.service.AlarmService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * {@code /alarms/suggestions}: one keystroke of the autocomplete on a categorical and on a free-text property.
+ */
+@State(Scope.Benchmark)
+public class AlarmSuggestionBenchmark {
+
+    @Param({"100", "100000", "1000000"})
+    public int alarms;
+
+    @Param({"gatewayName:gateway 4", "message:thr", "callee_number:5", "callee_number:555-12", "caller_number:-9"})
+    public String suggestion;
+
+    private AlarmService alarmService;
+    private String field;
+    private String query;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        alarmService = new AlarmService(alarms);
+        int colon = suggestion.indexOf(':');
+        field = suggestion.substring(0, colon);
+        query = suggestion.substring(colon + 1);
+    }
+
+    @Benchmark
+    public List<String> getSuggestions() {
+        return alarmService.getSuggestions(field, query, 5);
+    }
+}
@@ -0,0 +1,35 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.model.Gateway;
+import com.gateway.backend.service.GatewayService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+@State(Scope.Benchmark)
+public class GatewayServiceBenchmark {
+
+    @Param({"50", "100000", "1000000"})
+    public int gateways;
+
+    // Queries shorter than three characters are ignored by the service
+    @Param({"", "gateway 1", "SN-1000"})
+    public String query;
+
+    private GatewayService gatewayService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        gatewayService = new GatewayService(gateways);
+    }
+
+    @Benchmark
+    public List<Gateway> searchGateways() {
+        return gatewayService.searchGateways(query, 1, 10, "name", "asc");
+    }
+}
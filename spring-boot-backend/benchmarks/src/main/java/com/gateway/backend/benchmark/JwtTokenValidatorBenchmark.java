@@ -0,0 +1,64 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.security.JwksKeyStore;
+import com.gateway.backend.security.JwtTokenValidator;
+import com.gateway.backend.security.VerifiedTokenCache;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import java.time.Duration;
+import java.util.List;
+
+/**
+ * Token validation with locally minted RS256 tokens and an in-process key source, i.e. no network I/O.
+ * {@code tokens} is the number of distinct tokens in rotation, which matters once the verified-token cache is on.
+ */
+@State(Scope.Benchmark)
+public class JwtTokenValidatorBenchmark {
+
+    private static final String ISSUER = "http://localhost:8080/realms/TestRealm";
+
+    @Param({"1", "1000", "10000"})
+    public int tokens;
+
+    @Param({"false", "true"})
+    public boolean tokenCache;
+
+    private JwksKeyStore keyStore;
+    private JwtTokenValidator validator;
+    private String[] minted;
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+        TokenMinter minter = new TokenMinter("bench-key", ISSUER);
+        keyStore = new JwksKeyStore(() -> List.of(minter.jwk()), JwksKeyStore.Settings.builder().build());
+        keyStore.refresh();
+        VerifiedTokenCache cache = new VerifiedTokenCache(tokenCache, Math.max(tokens, 16), Duration.ofMinutes(5));
+        validator = new JwtTokenValidator(keyStore, cache, "http://localhost:8080", "TestRealm");
+        minted = new String[tokens];
+        for (int i = 0; i < tokens; i++) {
+            minted[i] = minter.mint("user-" + i, 3600);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        keyStore.stop();
+    }
+
+    @Benchmark
+    public boolean validateToken(Cursor cursor) {
+        String token = minted[cursor.next++ % minted.length];
+        return validator.validateToken(token);
+    }
+}
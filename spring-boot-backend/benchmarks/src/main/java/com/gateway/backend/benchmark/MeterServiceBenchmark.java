@@ -0,0 +1,39 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.model.MeterParameter;
+import com.gateway.backend.service.MeterService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Each meter carries nine parameters, so 200k meters means 1.8M parameter rows.
+ */
+@State(Scope.Benchmark)
+public class MeterServiceBenchmark {
+
+    @Param({"15", "10000", "200000"})
+    public int meters;
+
+    private MeterService meterService;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        meterService = new MeterService(meters);
+    }
+
+    @Benchmark
+    public List<MeterParameter> allParameters() {
+        return meterService.getAllParameters(null);
+    }
+
+    @Benchmark
+    public List<MeterParameter> parametersOfOneMeter() {
+        return meterService.getAllParameters((long) (meters / 2 + 1));
+    }
+}
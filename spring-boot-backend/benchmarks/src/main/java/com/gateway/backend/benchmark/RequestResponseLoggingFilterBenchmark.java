@@ -0,0 +1,57 @@
+package com.gateway.backend.benchmark;
+
+import com.gateway.backend.config.RequestResponseLoggingFilter;
+import jakarta.servlet.FilterChain;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * The logging filter around a handler that writes a JSON array of {@code rows} alarm-sized objects.
+ */
+@State(Scope.Benchmark)
+public class RequestResponseLoggingFilterBenchmark {
+
+    @Param({"10", "10000", "1000000"})
+    public int rows;
+
+    private RequestResponseLoggingFilter filter;
+    private FilterChain chain;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        filter = new RequestResponseLoggingFilter();
+        StringBuilder json = new StringBuilder(rows * 120 + 2).append('[');
+        for (int i = 0; i < rows; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":").append(i)
+                    .append(",\"gatewayName\":\"Gateway ").append(i % 50)
+                    .append("\",\"severity\":\"High\",\"status\":\"Open\",\"message\":\"CPU usage exceeds threshold\"}");
+        }
+        byte[] body = json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+        chain = (request, response) -> {
+            response.setContentType("application/json");
+            response.getOutputStream().write(body);
+        };
+    }
+
+    @Benchmark
+    public MockHttpServletResponse doFilter() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/alarms");
+        request.setQueryString("page=1&pageSize=10");
+        request.addHeader("Authorization", "Bearer token");
+        request.addHeader("Accept", "application/json");
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        filter.doFilter(request, response, chain);
+        return response;
+    }
+}
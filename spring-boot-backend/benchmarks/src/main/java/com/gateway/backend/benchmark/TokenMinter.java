@@ -0,0 +1,116 @@
+package com.gateway.backend.benchmark;
+
+import com.auth0.jwk.Jwk;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+/**
+ * Generates an RSA signing key and mints Keycloak-shaped RS256 access tokens with it, so that token
+ * validation can be exercised without a running Keycloak.
+ */
+public class TokenMinter {
+
+    private static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String kid;
+    private final String issuer;
+    private final KeyPair keyPair;
+
+    public TokenMinter(String kid, String issuer) throws GeneralSecurityException {
+        this.kid = kid;
+        this.issuer = issuer;
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        this.keyPair = generator.generateKeyPair();
+    }
+
+    public String getKid() {
+        return kid;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    /**
+     * The public key as a JWK, in the shape Keycloak publishes on its certs endpoint.
+     */
+    public Map<String, Object> jwkValues() {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("kid", kid);
+        values.put("kty", "RSA");
+        values.put("alg", "RS256");
+        values.put("use", "sig");
+        values.put("n", BASE64_URL.encodeToString(unsigned(publicKey.getModulus().toByteArray())));
+        values.put("e", BASE64_URL.encodeToString(unsigned(publicKey.getPublicExponent().toByteArray())));
+        return values;
+    }
+
+    public Jwk jwk() {
+        return Jwk.fromValues(jwkValues());
+    }
+
+    /**
+     * The JWKS document ({@code {"keys": [...]}}) serving this minter's key.
+     */
+    public String jwksJson() {
+        try {
+            return MAPPER.writeValueAsString(Map.of("keys", List.of(jwkValues())));
+        } catch (Exception e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String mint(String subject, long ttlSeconds) {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("exp", now + ttlSeconds);
+        claims.put("iat", now);
+        claims.put("jti", UUID.randomUUID().toString());
+        claims.put("iss", issuer);
+        claims.put("aud", "account");
+        claims.put("sub", subject);
+        claims.put("typ", "Bearer");
+        claims.put("azp", "test-client");
+        claims.put("preferred_username", subject);
+        claims.put("realm_access", Map.of("roles", List.of("offline_access", "uma_authorization", "user")));
+        claims.put("resource_access", Map.of("account", Map.of("roles", List.of("manage-account", "view-profile"))));
+        claims.put("scope", "openid profile email");
+        return sign(claims);
+    }
+
+    private String sign(Map<String, Object> claims) {
+        try {
+            Map<String, Object> header = new LinkedHashMap<>();
+            header.put("alg", "RS256");
+            header.put("typ", "JWT");
+            header.put("kid", kid);
+            String signingInput = BASE64_URL.encodeToString(MAPPER.writeValueAsBytes(header)) + "."
+                    + BASE64_URL.encodeToString(MAPPER.writeValueAsBytes(claims));
+            Signature signature = Signature.getInstance("SHA256withRSA");
+            signature.initSign(keyPair.getPrivate());
+            signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+            return signingInput + "." + BASE64_URL.encodeToString(signature.sign());
+        } catch (Exception e) {
+            throw new IllegalStateException("Could not mint token", e);
+        }
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+}
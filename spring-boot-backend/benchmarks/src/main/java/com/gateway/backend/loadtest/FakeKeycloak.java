@@ -0,0 +1,79 @@
+package com.gateway.backend.loadtest;
+
+import com.gateway.backend.benchmark.TokenMinter;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Minimal stand-in for the Keycloak realm the backend trusts: serves the realm's JWKS and OpenID
+ * configuration and mints RS256 access tokens signed with the published key.
+ */
+public class FakeKeycloak implements AutoCloseable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FakeKeycloak.class);
+
+    public static final String REALM = "TestRealm";
+
+    private final HttpServer server;
+    private final String baseUrl;
+    private final TokenMinter minter;
+
+    public FakeKeycloak(int port) throws IOException, GeneralSecurityException {
+        server = HttpServer.create(new InetSocketAddress("127.0.0.1", port), 0);
+        baseUrl = "http://127.0.0.1:" + server.getAddress().getPort();
+        String realmUrl = baseUrl + "/realms/" + REALM;
+        minter = new TokenMinter("fake-keycloak-rs256", realmUrl);
+
+        String jwks = minter.jwksJson();
+        String openidConfiguration = "{\"issuer\":\"" + realmUrl + "\","
+                + "\"jwks_uri\":\"" + realmUrl + "/protocol/openid-connect/certs\","
+                + "\"token_endpoint\":\"" + realmUrl + "/protocol/openid-connect/token\"}";
+
+        server.createContext("/realms/" + REALM + "/protocol/openid-connect/certs",
+                exchange -> respond(exchange, jwks));
+        server.createContext("/realms/" + REALM + "/.well-known/openid-configuration",
+                exchange -> respond(exchange, openidConfiguration));
+        server.createContext("/realms/" + REALM + "/protocol/openid-connect/token",
+                exchange -> respond(exchange, "{\"access_token\":\"" + mint("load-user", 3600) + "\","
+                        + "\"token_type\":\"Bearer\",\"expires_in\":3600}"));
+        server.setExecutor(Executors.newFixedThreadPool(4));
+        server.start();
+        logger.info("Fake Keycloak realm {} listening on {}", REALM, baseUrl);
+    }
+
+    /**
+     * Value for {@code keycloak.auth-server-url}.
+     */
+    public String getBaseUrl() {
+        return baseUrl;
+    }
+
+    public String mint(String subject, long ttlSeconds) {
+        return minter.mint(subject, ttlSeconds);
+    }
+
+    private static void respond(HttpExchange exchange, String json) throws IOException {
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().add("Content-Type", "application/json");
+        exchange.sendResponseHeaders(200, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        ((ExecutorService) server.getExecutor()).shutdownNow();
+    }
+}
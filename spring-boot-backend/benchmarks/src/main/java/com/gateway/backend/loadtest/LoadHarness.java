@@ -0,0 +1,199 @@
+package com.gateway.backend.loadtest;
+
+import com.gateway.backend.GatewayBackendApplication;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.web.servlet.context.ServletWebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Self-contained load test of the full {@code SecurityConfig} to controller stack.
+ * <p>
+ * Starts a {@link FakeKeycloak} for {@code TestRealm}, boots {@link GatewayBackendApplication} against it on a
+ * random port and drives closed-loop concurrent traffic at the main GET endpoints with bearer tokens minted by
+ * the fake realm, then prints throughput and latency percentiles per endpoint.
+ * <pre>
+ * java -cp target/benchmarks.jar com.gateway.backend.loadtest.LoadHarness concurrency=64 duration=30
+ * </pre>
+ * Options ({@code key=value}): {@code concurrency} (32), {@code duration} seconds (30), {@code warmup} seconds (5),
+ * {@code users} distinct tokens (50), {@code endpoints} comma separated subset of
+ * {@code alarms,gateways,meters,sites} (all). Any other {@code key=value} is passed to the application as a
+ * property, e.g. {@code security.token.cache.enabled=true}.
+ */
+public class LoadHarness {
+
+    private static final Map<String, String> ENDPOINTS = new LinkedHashMap<>();
+
+    static {
+        ENDPOINTS.put("alarms", "/api/alarms?page=1&pageSize=10&sortBy=timestamp&sortOrder=desc");
+        ENDPOINTS.put("gateways", "/api/gateways/search?query=gateway&page=1&pageSize=10&sortBy=name&sortOrder=asc");
+        ENDPOINTS.put("meters", "/api/meters/parameters");
+        ENDPOINTS.put("sites", "/api/sites");
+    }
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = new LinkedHashMap<>();
+        for (String arg : args) {
+            int eq = arg.indexOf('=');
+            if (eq <= 0) {
+                throw new IllegalArgumentException("Expected key=value, got " + arg);
+            }
+            options.put(arg.substring(0, eq), arg.substring(eq + 1));
+        }
+        int concurrency = Integer.parseInt(take(options, "concurrency", "32"));
+        int durationSeconds = Integer.parseInt(take(options, "duration", "30"));
+        int warmupSeconds = Integer.parseInt(take(options, "warmup", "5"));
+        int users = Integer.parseInt(take(options, "users", "50"));
+        String[] endpointNames = take(options, "endpoints", String.join(",", ENDPOINTS.keySet())).split(",");
+
+        PrintStream out = System.out;
+        try (FakeKeycloak keycloak = new FakeKeycloak(0)) {
+            List<String> properties = new ArrayList<>();
+            properties.add("--server.port=0");
+            properties.add("--keycloak.auth-server-url=" + keycloak.getBaseUrl());
+            properties.add("--keycloak.realm=" + FakeKeycloak.REALM);
+            properties.add("--security.token.validation.enabled=true");
+            properties.add("--spring.jpa.show-sql=false");
+            properties.add("--logging.level.root=WARN");
+            properties.add("--logging.level.org.springframework.web=WARN");
+            properties.add("--logging.level.org.springframework.security=WARN");
+            options.forEach((key, value) -> properties.add("--" + key + "=" + value));
+
+            ConfigurableApplicationContext context = SpringApplication.run(
+                    GatewayBackendApplication.class, properties.toArray(new String[0]));
+            try {
+                int port = ((ServletWebServerApplicationContext) context).getWebServer().getPort();
+                String[] tokens = new String[users];
+                for (int i = 0; i < users; i++) {
+                    tokens[i] = keycloak.mint("load-user-" + i, durationSeconds + warmupSeconds + 600L);
+                }
+                URI[] targets = new URI[endpointNames.length];
+                for (int i = 0; i < endpointNames.length; i++) {
+                    String path = ENDPOINTS.get(endpointNames[i].trim());
+                    if (path == null) {
+                        throw new IllegalArgumentException("Unknown endpoint " + endpointNames[i]);
+                    }
+                    targets[i] = URI.create("http://127.0.0.1:" + port + path);
+                }
+
+                out.printf("Load test: %d workers, %d s warmup, %d s measured, %d users, endpoints %s%n",
+                        concurrency, warmupSeconds, durationSeconds, users, String.join(",", endpointNames));
+                LatencyRecorder[][] recorders = run(targets, tokens, concurrency, warmupSeconds, durationSeconds);
+                report(out, endpointNames, recorders, durationSeconds);
+            } finally {
+                context.close();
+            }
+        }
+    }
+
+    private static String take(Map<String, String> options, String key, String defaultValue) {
+        String value = options.remove(key);
+        return value != null ? value : defaultValue;
+    }
+
+    /**
+     * Runs {@code concurrency} closed-loop workers cycling through the targets; returns the measured
+     * latencies as {@code [worker][target]}.
+     */
+    private static LatencyRecorder[][] run(URI[] targets, String[] tokens, int concurrency,
+                                           int warmupSeconds, int durationSeconds) throws InterruptedException {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(5))
+                .build();
+        long measureStart = System.nanoTime() + warmupSeconds * 1_000_000_000L;
+        long end = measureStart + durationSeconds * 1_000_000_000L;
+
+        LatencyRecorder[][] recorders = new LatencyRecorder[concurrency][targets.length];
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        CountDownLatch done = new CountDownLatch(concurrency);
+        for (int w = 0; w < concurrency; w++) {
+            LatencyRecorder[] mine = recorders[w];
+            for (int t = 0; t < targets.length; t++) {
+                mine[t] = new LatencyRecorder();
+            }
+            int worker = w;
+            workers.execute(() -> {
+                try {
+                    long iteration = worker;
+                    while (true) {
+                        int target = (int) (iteration % targets.length);
+                        String token = tokens[(int) (iteration % tokens.length)];
+                        iteration++;
+                        HttpRequest request = HttpRequest.newBuilder(targets[target])
+                                .header("Authorization", "Bearer " + token)
+                                .header("Accept", "application/json")
+                                .timeout(Duration.ofSeconds(30))
+                                .GET()
+                                .build();
+                        long start = System.nanoTime();
+                        if (start >= end) {
+                            break;
+                        }
+                        boolean ok;
+                        try {
+                            HttpResponse<byte[]> response = client.send(request, HttpResponse.BodyHandlers.ofByteArray());
+                            ok = response.statusCode() == 200;
+                        } catch (Exception e) {
+                            ok = false;
+                        }
+                        long elapsed = System.nanoTime() - start;
+                        if (start >= measureStart) {
+                            if (ok) {
+                                mine[target].record(elapsed);
+                            } else {
+                                mine[target].recordError();
+                            }
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        workers.shutdown();
+        return recorders;
+    }
+
+    private static void report(PrintStream out, String[] endpointNames, LatencyRecorder[][] recorders,
+                               int durationSeconds) {
+        out.printf("%n%-10s %10s %8s %10s %9s %9s %9s %9s %9s%n",
+                "endpoint", "requests", "errors", "req/s", "p50 ms", "p90 ms", "p99 ms", "p99.9 ms", "max ms");
+        List<LatencyRecorder> all = new ArrayList<>();
+        for (int t = 0; t < endpointNames.length; t++) {
+            List<LatencyRecorder> perTarget = new ArrayList<>();
+            for (LatencyRecorder[] worker : recorders) {
+                perTarget.add(worker[t]);
+            }
+            all.addAll(perTarget);
+            printRow(out, endpointNames[t].trim(), perTarget, durationSeconds);
+        }
+        printRow(out, "total", all, durationSeconds);
+    }
+
+    private static void printRow(PrintStream out, String name, List<LatencyRecorder> recorders, int durationSeconds) {
+        long[] sorted = LatencyRecorder.merge(recorders);
+        long errors = recorders.stream().mapToLong(LatencyRecorder::getErrors).sum();
+        out.printf("%-10s %10d %8d %10.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n",
+                name, sorted.length, errors, (double) sorted.length / durationSeconds,
+                LatencyRecorder.percentileMillis(sorted, 50),
+                LatencyRecorder.percentileMillis(sorted, 90),
+                LatencyRecorder.percentileMillis(sorted, 99),
+                LatencyRecorder.percentileMillis(sorted, 99.9),
+                LatencyRecorder.percentileMillis(sorted, 100));
+    }
+}
@@ -7,6 +7,7 @@ import jakarta.servlet.http.HttpServletResponse;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.core.annotation.Order;
+import org.springframework.http.MediaType;
 import org.springframework.stereotype.Component;
 import org.springframework.web.filter.OncePerRequestFilter;
 import org.springframework.web.util.ContentCachingRequestWrapper;
@@ -25,6 +26,13 @@ public class RequestResponseLoggingFilter extends OncePerRequestFilter {
     @Override
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
+        if (isStreaming(request)) {
+            // Caching the body would hold back (and keep in memory) everything written until the response ends
+            logRequest(new ContentCachingRequestWrapper(request));
+            filterChain.doFilter(request, response);
+            return;
+        }
+
         // Wrap request and response to cache their content
         ContentCachingRequestWrapper requestWrapper = new ContentCachingRequestWrapper(request);
         ContentCachingResponseWrapper responseWrapper = new ContentCachingResponseWrapper(response);
@@ -50,6 +58,13 @@ public class RequestResponseLoggingFilter extends OncePerRequestFilter {
         responseWrapper.copyBodyToResponse();
     }
 
+    private boolean isStreaming(HttpServletRequest request) {
+        String accept = request.getHeader("Accept");
+        return (accept != null && accept.contains(MediaType.TEXT_EVENT_STREAM_VALUE))
+                || request.getRequestURI().endsWith("/alarms/stream")
+                || request.getRequestURI().endsWith("/alarms/export");
+    }
+
     private void logRequest(ContentCachingRequestWrapper request) {
        String queryString = request.getQueryString() != null ? "?" + request.getQueryString() : "";
        String method = request.getMethod();
@@ -1,11 +1,23 @@
 package com.gateway.backend.controller;
 
 import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmExportService;
+import com.gateway.backend.service.AlarmIngestion;
 import com.gateway.backend.service.AlarmService;
+import com.gateway.backend.service.AlarmStreamService;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmStatusChange;
+import com.gateway.backend.service.cache.QueryResultCache;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
 
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -15,44 +27,59 @@ import java.util.Map;
 public class AlarmController {
 
     private final AlarmService alarmService;
+    private final AlarmStreamService alarmStreamService;
+    private final AlarmExportService alarmExportService;
 
     @Autowired
-    public AlarmController(AlarmService alarmService) {
+    public AlarmController(AlarmService alarmService, AlarmStreamService alarmStreamService,
+                           AlarmExportService alarmExportService) {
         this.alarmService = alarmService;
+        this.alarmStreamService = alarmStreamService;
+        this.alarmExportService = alarmExportService;
     }
 
     @GetMapping
     public ResponseEntity<Map<String, Object>> getAlarms(
             @RequestParam(required = false, defaultValue = "1") int page,
             @RequestParam(required = false, defaultValue = "10") int pageSize,
-            @RequestParam(required = false, defaultValue = "timestamp") String sortBy,
+            @RequestParam(required = false) String sortBy,
             @RequestParam(required = false, defaultValue = "desc") String sortOrder,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(required = false) String q,
             @RequestParam Map<String, String> allParams) {
         
         try {
+            // A text search comes best match first unless another order is asked for
+            if (sortBy == null) {
+                sortBy = q != null && !q.isBlank() ? AlarmService.SORT_BY_RELEVANCE : "timestamp";
+            }
             // Remove pagination and sorting parameters from filters
             Map<String, String> filters = new HashMap<>(allParams);
             filters.remove("page");
             filters.remove("pageSize");
             filters.remove("sortBy");
             filters.remove("sortOrder");
+            filters.remove("cursor");
             
-            List<Alarm> alarms = alarmService.getAlarms(filters, page, pageSize, sortBy, sortOrder);
-            int total = alarmService.getTotalAlarms(filters);
+            AlarmPage result = alarmService.queryAlarms(filters, page, pageSize, sortBy, sortOrder, cursor);
             
             Map<String, Object> response = new HashMap<>();
-            response.put("data", alarms);
-            response.put("total", total);
+            response.put("data", result.getData());
+            response.put("total", result.getTotal());
             response.put("page", page);
             response.put("pageSize", pageSize);
-            
-            // Log response for debugging
-            System.out.println("Response data: " + response);
+            response.put("nextCursor", result.getNextCursor());
             
             return ResponseEntity
                     .ok()
                     .header("Content-Type", "application/json")
                     .body(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
         } catch (Exception e) {
             e.printStackTrace();
             Map<String, Object> errorResponse = new HashMap<>();
@@ -63,6 +90,200 @@ public class AlarmController {
         }
     }
 
+    /**
+     * Server-sent events of the alarms added or updated from now on that match the filters, which are the same
+     * as for the listing. Paging and sorting parameters are ignored, so a dashboard can reuse its query string.
+     * Browsers resume with the {@code Last-Event-ID} header; the {@code lastEventId} parameter does the same for
+     * a first connection.
+     */
+    @GetMapping(value = "/stream", produces = MediaType.TEXT_EVENT_STREAM_VALUE)
+    public SseEmitter streamAlarms(
+            @RequestHeader(value = "Last-Event-ID", required = false) String lastEventIdHeader,
+            @RequestParam(required = false) String lastEventId,
+            @RequestParam Map<String, String> allParams) {
+        Map<String, String> filters = new HashMap<>(allParams);
+        filters.remove("page");
+        filters.remove("pageSize");
+        filters.remove("sortBy");
+        filters.remove("sortOrder");
+        filters.remove("cursor");
+        filters.remove("lastEventId");
+        return alarmStreamService.subscribe(filters, lastEventIdHeader != null ? lastEventIdHeader : lastEventId);
+    }
+
+    /**
+     * Every alarm matching the filters, the same as for the listing, as NDJSON (the default) or CSV, in id order.
+     * The rows are written to the response as they are read, so the export can be any size; paging and sorting
+     * parameters are ignored.
+     */
+    @GetMapping("/export")
+    public ResponseEntity<Map<String, Object>> exportAlarms(
+            @RequestParam(required = false, defaultValue = "ndjson") String format,
+            @RequestParam Map<String, String> allParams,
+            HttpServletResponse response) throws IOException {
+        AlarmExportService.Format exportFormat = AlarmExportService.Format.fromName(format);
+        if (exportFormat == null) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", "Unknown export format: " + format);
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
+        }
+        Map<String, String> filters = new HashMap<>(allParams);
+        filters.remove("format");
+        filters.remove("page");
+        filters.remove("pageSize");
+        filters.remove("sortBy");
+        filters.remove("sortOrder");
+        filters.remove("cursor");
+
+        response.setContentType(exportFormat.getContentType());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION,
+                "attachment; filename=\"alarms." + exportFormat.getExtension() + "\"");
+        alarmExportService.export(filters, exportFormat, response.getOutputStream());
+        // Already written
+        return null;
+    }
+
+    @PostMapping
+    public ResponseEntity<?> createAlarm(@RequestBody Alarm alarm) {
+        try {
+            return ResponseEntity.ok(alarmService.addAlarm(alarm));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
+        }
+    }
+
+    /**
+     * Ingests a burst of alarms in one append. With correlation on, repeats of an open alarm fold into it
+     * instead: {@code ids} gives the alarm each one was stored as or folded into, and {@code stored} and
+     * {@code folded} how many went which way.
+     */
+    @PostMapping("/batch")
+    public ResponseEntity<Map<String, Object>> createAlarms(@RequestBody List<Alarm> alarms) {
+        try {
+            AlarmIngestion ingestion = alarmService.ingestAlarms(alarms);
+            Map<String, Object> response = new HashMap<>();
+            response.put("count", alarms.size());
+            response.put("stored", ingestion.getStored());
+            response.put("folded", ingestion.getFolded());
+            response.put("ids", ingestion.getIds());
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
+        }
+    }
+
+    /**
+     * One step of an alarm along the status workflow: the alarm's id, the version it was read at and its new
+     * status, all three required.
+     */
+    public record StatusTransition(Long id, Integer version, String status) {
+    }
+
+    /**
+     * Moves alarms along the status workflow (Open, In Progress, Resolved, Closed), each given by its
+     * {@code id}, the {@code version} it was read at and its new {@code status}; a transition missing any of
+     * them fails the whole request. Each alarm changes or not on its own: {@code results} gives per alarm
+     * whether it was {@code UPDATED} (with its new version), is in {@code CONFLICT} with a change made since it
+     * was read, was {@code NOT_FOUND}, or is an {@code INVALID_TRANSITION} from its status, and the version and
+     * status it is at.
+     */
+    @PatchMapping("/status")
+    public ResponseEntity<Map<String, Object>> changeStatuses(@RequestBody List<StatusTransition> transitions) {
+        try {
+            AlarmStatusChange change = alarmService.changeStatuses(toAlarms(transitions));
+            List<Map<String, Object>> results = new ArrayList<>(change.size());
+            for (int i = 0; i < change.size(); i++) {
+                Map<String, Object> result = new HashMap<>();
+                result.put("id", change.id(i));
+                result.put("outcome", change.outcome(i));
+                result.put("version", change.version(i));
+                result.put("status", change.status(i));
+                results.add(result);
+            }
+            Map<String, Object> response = new HashMap<>();
+            response.put("count", change.size());
+            response.put("updated", change.count(AlarmStatusChange.Outcome.UPDATED));
+            response.put("conflicts", change.count(AlarmStatusChange.Outcome.CONFLICT));
+            response.put("results", results);
+            return ResponseEntity.ok(response);
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
+        }
+    }
+
+    private static List<Alarm> toAlarms(List<StatusTransition> transitions) {
+        List<Alarm> alarms = new ArrayList<>(transitions.size());
+        for (int i = 0; i < transitions.size(); i++) {
+            StatusTransition transition = transitions.get(i);
+            if (transition == null || transition.id() == null || transition.version() == null
+                    || transition.status() == null) {
+                throw new IllegalArgumentException("Status change " + i + " needs an id, a version and a status");
+            }
+            alarms.add(Alarm.builder()
+                    .id(transition.id())
+                    .version(transition.version())
+                    .status(transition.status())
+                    .build());
+        }
+        return alarms;
+    }
+
+    /**
+     * Replaces the alarm with the given id, except for its status, which only moves through
+     * {@code PATCH /alarms/status}.
+     */
+    @PutMapping("/{id}")
+    public ResponseEntity<Alarm> updateAlarm(@PathVariable Long id, @RequestBody Alarm alarm) {
+        Alarm updated = alarmService.updateAlarm(id, alarm);
+        if (updated == null) {
+            return ResponseEntity.notFound().build();
+        }
+        return ResponseEntity.ok(updated);
+    }
+
+    /**
+     * Counts and sums of the alarms in a time range, optionally grouped by a categorical property and broken
+     * down per minute, hour or day.
+     */
+    @GetMapping("/aggregations")
+    public ResponseEntity<?> getAggregations(
+            @RequestParam(required = false) String groupBy,
+            @RequestParam(required = false) String from,
+            @RequestParam(required = false) String to,
+            @RequestParam(required = false) String interval) {
+        try {
+            return ResponseEntity.ok(alarmService.getAggregations(groupBy, from, to, interval));
+        } catch (IllegalArgumentException e) {
+            Map<String, Object> errorResponse = new HashMap<>();
+            errorResponse.put("error", e.getMessage());
+            return ResponseEntity
+                    .badRequest()
+                    .body(errorResponse);
+        }
+    }
+
+    /**
+     * Hit ratio and estimated memory of the query result cache.
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<QueryResultCache.Stats> getCacheStats() {
+        return ResponseEntity.ok(alarmService.getResultCacheStats());
+    }
+
     @GetMapping("/call-types")
     public ResponseEntity<List<String>> getCallTypes() {
         return ResponseEntity.ok(alarmService.getCallTypes());
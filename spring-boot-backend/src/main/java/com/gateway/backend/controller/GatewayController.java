@@ -1,13 +1,13 @@
 package com.gateway.backend.controller;
 
-import com.gateway.backend.model.Gateway;
+import com.gateway.backend.service.GatewayPage;
 import com.gateway.backend.service.GatewayService;
+import com.gateway.backend.service.cache.QueryResultCache;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 
 @RestController
@@ -29,18 +29,25 @@ public class GatewayController {
             @RequestParam(required = false, defaultValue = "name") String sortBy,
             @RequestParam(required = false, defaultValue = "asc") String sortOrder) {
         
-        List<Gateway> gateways = gatewayService.searchGateways(query, page, pageSize, sortBy, sortOrder);
-        int total = gatewayService.getTotalGateways(query);
+        GatewayPage result = gatewayService.queryGateways(query, page, pageSize, sortBy, sortOrder);
         
         Map<String, Object> response = new HashMap<>();
-        response.put("data", gateways);
-        response.put("total", total);
+        response.put("data", result.getData());
+        response.put("total", result.getTotal());
         response.put("page", page);
         response.put("pageSize", pageSize);
         
         return ResponseEntity.ok(response);
     }
 
+    /**
+     * Hit ratio and estimated memory of the search result cache.
+     */
+    @GetMapping("/cache/stats")
+    public ResponseEntity<QueryResultCache.Stats> getCacheStats() {
+        return ResponseEntity.ok(gatewayService.getResultCacheStats());
+    }
+
     @PostMapping("/validate")
     public ResponseEntity<Map<String, Object>> validateGatewayParameters(@RequestBody Object parameters) {
         Map<String, String> validationResults = gatewayService.validateGatewayParameters(parameters);
@@ -7,8 +7,8 @@ import lombok.NoArgsConstructor;
 import lombok.Getter;
 import jakarta.persistence.Id;
 import jakarta.persistence.Entity;
-import jakarta.persistence.GeneratedValue;
-import jakarta.persistence.GenerationType;
+import jakarta.persistence.Index;
+import jakarta.persistence.Table;
 
 import java.time.LocalDateTime;
 
@@ -18,9 +18,18 @@ import java.time.LocalDateTime;
 @AllArgsConstructor
 @Getter
 @Entity
+@Table(indexes = {
+        // Each ends with the id, so that rows come out in listing order (value, then id, ascending in either
+        // direction) without sorting; the listing defaults to the latest first, also within a status or severity
+        @Index(name = "idx_alarm_timestamp", columnList = "timestamp DESC, id"),
+        @Index(name = "idx_alarm_gateway_id", columnList = "gatewayId, id"),
+        @Index(name = "idx_alarm_site_id", columnList = "siteId, id"),
+        @Index(name = "idx_alarm_status", columnList = "status, timestamp DESC, id"),
+        @Index(name = "idx_alarm_severity", columnList = "severity, timestamp DESC, id")
+})
 public class Alarm {
+    // Assigned by AlarmService in storage order, so the database and the in-memory store agree
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
     private Long id;
     private Long gatewayId;
     private String gatewayName;
@@ -40,4 +49,13 @@ public class Alarm {
     private String callee_number;
     private int duration_seconds;
     private double charge_amount;
+
+    // Set by the correlation stage: how many raw alarms this one stands for (the first at timestamp), and when
+    // the last of them was raised
+    private Integer occurrences;
+    private LocalDateTime lastSeen;
+
+    // Counts the changes made to the alarm through the API, from 1; a status change names the version it
+    // expects, and fails if the alarm has moved on since
+    private Integer version;
 }
\ No newline at end of file
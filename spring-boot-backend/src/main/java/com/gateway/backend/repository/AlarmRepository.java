@@ -0,0 +1,18 @@
+package com.gateway.backend.repository;
+
+import com.gateway.backend.model.Alarm;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.jpa.repository.JpaRepository;
+
+import java.util.List;
+
+/**
+ * Alarms in the database, used by {@code AlarmService} when {@code alarms.persistence.mode} is {@code jpa}.
+ */
+public interface AlarmRepository extends JpaRepository<Alarm, Long>, AlarmRepositoryCustom {
+
+    /**
+     * Keyset batch of alarms in id order, for reading the whole table without offsets.
+     */
+    List<Alarm> findByIdGreaterThanOrderByIdAsc(Long id, Pageable pageable);
+}
@@ -0,0 +1,53 @@
+package com.gateway.backend.repository;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmSql;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * The alarm queries and writes Spring Data cannot derive: statements translated from the listing filters,
+ * inserts, occurrence updates and versioned status changes batched through JDBC, and range deletes for
+ * retention.
+ */
+public interface AlarmRepositoryCustom {
+
+    /**
+     * Runs a {@link AlarmSql#page page} statement.
+     *
+     * @return the alarms and the total the statement reported, or {@code -1} as total if it returned no alarm
+     *         to report it on; no cursor
+     */
+    AlarmPage findPage(AlarmSql page);
+
+    /**
+     * Runs a {@link AlarmSql#count count} statement.
+     */
+    int count(AlarmSql count);
+
+    /**
+     * Inserts new alarms, with their ids set, in one transaction and in JDBC batches.
+     */
+    void insertAll(List<Alarm> alarms);
+
+    /**
+     * Sets the occurrences and last-seen time of the alarms {@code ids[0, count)}, in JDBC batches.
+     */
+    void updateOccurrences(long[] ids, int[] occurrences, LocalDateTime[] lastSeen, int count);
+
+    /**
+     * Moves each of the alarms {@code ids[0, count)} to {@code statuses[i]} and version {@code versions[i] + 1},
+     * if it is still at version {@code versions[i]}, in JDBC batches.
+     *
+     * @return per alarm, the number of rows the statement changed: {@code 0} if the alarm was at another version
+     *         (or {@link java.sql.Statement#SUCCESS_NO_INFO} when the driver cannot tell)
+     */
+    int[] updateStatuses(long[] ids, int[] versions, String[] statuses, int count);
+
+    /**
+     * Deletes the alarms with an id up to {@code id}, in one statement.
+     */
+    void deleteThrough(long id);
+}
@@ -0,0 +1,157 @@
+package com.gateway.backend.repository;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmSql;
+import jakarta.persistence.EntityManager;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Reads go straight through JDBC: listing rows are only ever serialized, so there is no point in managing
+ * them. Inserts go through the {@link EntityManager}, which Hibernate groups into JDBC batches of
+ * {@code hibernate.jdbc.batch_size}; the persistence context is cleared after each batch so it does not grow
+ * with the number of alarms inserted.
+ */
+public class AlarmRepositoryImpl implements AlarmRepositoryCustom {
+
+    private final EntityManager entityManager;
+    private final JdbcTemplate jdbcTemplate;
+    private final int batchSize;
+
+    @Autowired
+    public AlarmRepositoryImpl(
+            EntityManager entityManager,
+            JdbcTemplate jdbcTemplate,
+            @Value("${spring.jpa.properties.hibernate.jdbc.batch_size:500}") int batchSize) {
+        this.entityManager = entityManager;
+        this.jdbcTemplate = jdbcTemplate;
+        this.batchSize = Math.max(1, batchSize);
+    }
+
+    @Override
+    public AlarmPage findPage(AlarmSql page) {
+        int[] total = {-1};
+        List<Alarm> alarms = jdbcTemplate.query(page.getSql(), (rs, rowNum) -> {
+            total[0] = rs.getInt(AlarmSql.TOTAL_COLUMN);
+            return toAlarm(rs);
+        }, page.getParameters().toArray());
+        return new AlarmPage(alarms, total[0], null);
+    }
+
+    @Override
+    public int count(AlarmSql count) {
+        Integer total = jdbcTemplate.queryForObject(count.getSql(), Integer.class, count.getParameters().toArray());
+        return total == null ? 0 : total;
+    }
+
+    @Override
+    @Transactional
+    public void insertAll(List<Alarm> alarms) {
+        for (int i = 0; i < alarms.size(); i++) {
+            entityManager.persist(alarms.get(i));
+            if ((i + 1) % batchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+    }
+
+    @Override
+    @Transactional
+    public void updateOccurrences(long[] ids, int[] occurrences, LocalDateTime[] lastSeen, int count) {
+        for (int from = 0; from < count; from += batchSize) {
+            int start = from;
+            int size = Math.min(batchSize, count - from);
+            jdbcTemplate.batchUpdate("UPDATE alarm SET occurrences = ?, last_seen = ? WHERE id = ?",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setInt(1, occurrences[start + i]);
+                            ps.setObject(2, lastSeen[start + i]);
+                            ps.setLong(3, ids[start + i]);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+        }
+    }
+
+    @Override
+    @Transactional
+    public int[] updateStatuses(long[] ids, int[] versions, String[] statuses, int count) {
+        int[] updated = new int[count];
+        for (int from = 0; from < count; from += batchSize) {
+            int start = from;
+            int size = Math.min(batchSize, count - from);
+            // Rows stored before versions were have none, and count as version 1
+            int[] rows = jdbcTemplate.batchUpdate(
+                    "UPDATE alarm SET status = ?, version = ? WHERE id = ? AND COALESCE(version, 1) = ?",
+                    new BatchPreparedStatementSetter() {
+                        @Override
+                        public void setValues(PreparedStatement ps, int i) throws SQLException {
+                            ps.setString(1, statuses[start + i]);
+                            ps.setInt(2, versions[start + i] + 1);
+                            ps.setLong(3, ids[start + i]);
+                            ps.setInt(4, versions[start + i]);
+                        }
+
+                        @Override
+                        public int getBatchSize() {
+                            return size;
+                        }
+                    });
+            System.arraycopy(rows, 0, updated, start, size);
+        }
+        return updated;
+    }
+
+    @Override
+    public void deleteThrough(long id) {
+        jdbcTemplate.update("DELETE FROM alarm WHERE id <= ?", id);
+    }
+
+    private static Alarm toAlarm(ResultSet rs) throws SQLException {
+        return Alarm.builder()
+                .id(rs.getLong("id"))
+                .gatewayId(getLong(rs, "gateway_id"))
+                .gatewayName(rs.getString("gateway_name"))
+                .type(rs.getString("type"))
+                .severity(rs.getString("severity"))
+                .message(rs.getString("message"))
+                .timestamp(rs.getObject("timestamp", LocalDateTime.class))
+                .status(rs.getString("status"))
+                .callType(rs.getString("call_type"))
+                .carrier(rs.getString("carrier"))
+                .siteId(getLong(rs, "site_id"))
+                .siteName(rs.getString("site_name"))
+                .caller(rs.getString("caller"))
+                .caller_number(rs.getString("caller_number"))
+                .callee_number(rs.getString("callee_number"))
+                .duration_seconds(rs.getInt("duration_seconds"))
+                .charge_amount(rs.getDouble("charge_amount"))
+                .occurrences(rs.getObject("occurrences", Integer.class))
+                .lastSeen(rs.getObject("last_seen", LocalDateTime.class))
+                .version(rs.getObject("version", Integer.class))
+                .build();
+    }
+
+    private static Long getLong(ResultSet rs, String column) throws SQLException {
+        long value = rs.getLong(column);
+        return rs.wasNull() ? null : value;
+    }
+}
@@ -0,0 +1,333 @@
+package com.gateway.backend.security;
+
+import com.auth0.jwk.Jwk;
+import com.auth0.jwk.UrlJwkProvider;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import lombok.Builder;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.security.PublicKey;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Process-wide cache of the realm signing keys, indexed by {@code kid}.
+ * <p>
+ * The whole JWKS document is refreshed in the background; a lookup for an unknown
+ * {@code kid} triggers an on-demand refetch at most once per cooldown period, so that
+ * key rotation is picked up without turning every request into a network round trip.
+ * Concurrent lookups that miss share a single in-flight refetch, and a {@code kid} that
+ * is still unknown afterwards is remembered for a short negative-cache window.
+ * <p>
+ * When Keycloak is unreachable the last-known keys keep being served until they are older
+ * than the configured maximum staleness, and after repeated failures a circuit breaker stops
+ * all fetches for a while so that request threads fail fast instead of waiting on the IdP.
+ */
+@Component
+public class JwksKeyStore {
+
+    private static final Logger logger = LoggerFactory.getLogger(JwksKeyStore.class);
+
+    private static final int MAX_UNKNOWN_KIDS = 1024;
+
+    /**
+     * Source of the JWKS document. The default implementation reads Keycloak's certs endpoint.
+     */
+    @FunctionalInterface
+    public interface KeySource {
+        List<Jwk> fetchAll() throws Exception;
+    }
+
+    @Getter
+    @Builder
+    public static class Settings {
+        @Builder.Default
+        private Duration refreshInterval = Duration.ofMinutes(5);
+        @Builder.Default
+        private Duration refetchCooldown = Duration.ofSeconds(10);
+        @Builder.Default
+        private Duration negativeCache = Duration.ofSeconds(15);
+        @Builder.Default
+        private Duration maxStale = Duration.ofHours(1);
+        @Builder.Default
+        private int circuitFailureThreshold = 3;
+        @Builder.Default
+        private Duration circuitOpenDuration = Duration.ofSeconds(30);
+    }
+
+    /**
+     * The keys of one JWKS fetch together with the time they were fetched, published as one reference so that
+     * a reader never pairs the keys of one fetch with the time of another.
+     */
+    private static final class KeySet {
+        static final KeySet EMPTY = new KeySet(Collections.emptyMap(), 0);
+
+        final Map<String, PublicKey> keys;
+        final long fetchedAt;
+
+        KeySet(Map<String, PublicKey> keys, long fetchedAt) {
+            this.keys = keys;
+            this.fetchedAt = fetchedAt;
+        }
+    }
+
+    private final KeySource keySource;
+    private final long refreshIntervalMillis;
+    private final long refetchCooldownMillis;
+    private final long negativeCacheMillis;
+    private final long maxStaleMillis;
+    private final int circuitFailureThreshold;
+    private final long circuitOpenMillis;
+
+    private final AtomicLong lastRefetch = new AtomicLong();
+    private final AtomicReference<CompletableFuture<Void>> inFlightRefetch = new AtomicReference<>();
+    private final Map<String, Long> unknownKids = new ConcurrentHashMap<>();
+    private final AtomicInteger consecutiveFailures = new AtomicInteger();
+
+    private final AtomicReference<KeySet> keySet = new AtomicReference<>(KeySet.EMPTY);
+    private volatile long circuitOpenUntil;
+    private ScheduledExecutorService scheduler;
+
+    @Autowired
+    public JwksKeyStore(
+            @Value("${keycloak.auth-server-url:http://localhost:8080}") String keycloakServerUrl,
+            @Value("${keycloak.realm:master}") String realm,
+            @Value("${keycloak.jwks.connect-timeout-ms:1000}") int connectTimeoutMs,
+            @Value("${keycloak.jwks.read-timeout-ms:2000}") int readTimeoutMs,
+            @Value("${keycloak.jwks.refresh-interval-seconds:300}") long refreshIntervalSeconds,
+            @Value("${keycloak.jwks.refetch-cooldown-seconds:10}") long refetchCooldownSeconds,
+            @Value("${keycloak.jwks.negative-cache-seconds:15}") long negativeCacheSeconds,
+            @Value("${keycloak.jwks.max-stale-seconds:3600}") long maxStaleSeconds,
+            @Value("${keycloak.jwks.circuit.failure-threshold:3}") int circuitFailureThreshold,
+            @Value("${keycloak.jwks.circuit.open-seconds:30}") long circuitOpenSeconds)
+            throws MalformedURLException {
+        this(urlKeySource(keycloakServerUrl + "/realms/" + realm + "/protocol/openid-connect/certs",
+                        connectTimeoutMs, readTimeoutMs),
+                Settings.builder()
+                        .refreshInterval(Duration.ofSeconds(refreshIntervalSeconds))
+                        .refetchCooldown(Duration.ofSeconds(refetchCooldownSeconds))
+                        .negativeCache(Duration.ofSeconds(negativeCacheSeconds))
+                        .maxStale(Duration.ofSeconds(maxStaleSeconds))
+                        .circuitFailureThreshold(circuitFailureThreshold)
+                        .circuitOpenDuration(Duration.ofSeconds(circuitOpenSeconds))
+                        .build());
+    }
+
+    public JwksKeyStore(KeySource keySource, Settings settings) {
+        this.keySource = keySource;
+        this.refreshIntervalMillis = settings.getRefreshInterval().toMillis();
+        this.refetchCooldownMillis = settings.getRefetchCooldown().toMillis();
+        this.negativeCacheMillis = settings.getNegativeCache().toMillis();
+        this.maxStaleMillis = settings.getMaxStale().toMillis();
+        this.circuitFailureThreshold = Math.max(1, settings.getCircuitFailureThreshold());
+        this.circuitOpenMillis = settings.getCircuitOpenDuration().toMillis();
+    }
+
+    /**
+     * Key source reading the given JWKS URL with strict connect/read timeouts, so that a slow IdP
+     * cannot hold a request thread for longer than the timeout budget.
+     */
+    public static KeySource urlKeySource(String jwksUrl, int connectTimeoutMs, int readTimeoutMs)
+            throws MalformedURLException {
+        logger.info("Using Keycloak JWKS endpoint: {} (connect timeout {} ms, read timeout {} ms)",
+                jwksUrl, connectTimeoutMs, readTimeoutMs);
+        UrlJwkProvider provider = new UrlJwkProvider(new URL(jwksUrl), connectTimeoutMs, readTimeoutMs);
+        return provider::getAll;
+    }
+
+    @PostConstruct
+    public void start() {
+        scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "jwks-refresh");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.execute(this::backgroundRefresh);
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+        }
+    }
+
+    /**
+     * Returns the key for the given {@code kid}, or {@code null} if the realm does not publish it.
+     * Known keys are served from memory. An unknown {@code kid} joins the in-flight refetch, or starts
+     * one unless another refetch happened within the cooldown period; if the {@code kid} is still
+     * unknown afterwards it is negatively cached so that a burst of such tokens costs a single fetch.
+     */
+    public PublicKey getKey(String kid) {
+        long now = System.currentTimeMillis();
+        KeySet current = keySet.get();
+        if (now - current.fetchedAt > maxStaleMillis && !current.keys.isEmpty()) {
+            // Only discard the set that went stale, never one a concurrent refresh just published.
+            if (keySet.compareAndSet(current, KeySet.EMPTY)) {
+                logger.warn("Cached JWKS is older than {} ms, discarding {} key(s)", maxStaleMillis, current.keys.size());
+            }
+            current = KeySet.EMPTY;
+        }
+
+        PublicKey key = current.keys.get(kid);
+        if (key != null) {
+            return key;
+        }
+
+        Long unknownUntil = unknownKids.get(kid);
+        if (unknownUntil != null) {
+            if (unknownUntil > now) {
+                return null;
+            }
+            unknownKids.remove(kid, unknownUntil);
+        }
+
+        CompletableFuture<Void> refetch = joinOrStartRefetch(now);
+        if (refetch != null) {
+            try {
+                refetch.join();
+            } catch (CompletionException e) {
+                logger.error("On-demand JWKS refetch failed: {}", e.getCause().getMessage());
+            }
+        } else {
+            logger.debug("Unknown kid {} and JWKS refetch is cooling down or the circuit is open", kid);
+        }
+
+        key = keySet.get().keys.get(kid);
+        if (key == null) {
+            rememberUnknown(kid, System.currentTimeMillis() + negativeCacheMillis);
+        }
+        return key;
+    }
+
+    public boolean isCircuitOpen() {
+        return System.currentTimeMillis() < circuitOpenUntil;
+    }
+
+    /**
+     * Returns the refetch currently in flight, or runs a new one on the calling thread if the cooldown
+     * and the circuit breaker allow it. Returns {@code null} otherwise.
+     */
+    private CompletableFuture<Void> joinOrStartRefetch(long now) {
+        CompletableFuture<Void> current = inFlightRefetch.get();
+        if (current != null) {
+            return current;
+        }
+        long last = lastRefetch.get();
+        if (now - last < refetchCooldownMillis || now < circuitOpenUntil) {
+            return null;
+        }
+
+        CompletableFuture<Void> mine = new CompletableFuture<>();
+        if (!inFlightRefetch.compareAndSet(null, mine)) {
+            return inFlightRefetch.get();
+        }
+        lastRefetch.set(now);
+        logger.info("Unknown kid requested, refetching JWKS");
+        try {
+            refresh();
+            mine.complete(null);
+        } catch (Exception e) {
+            mine.completeExceptionally(e);
+        } finally {
+            inFlightRefetch.set(null);
+        }
+        return mine;
+    }
+
+    private void rememberUnknown(String kid, long until) {
+        if (unknownKids.size() >= MAX_UNKNOWN_KIDS) {
+            long now = System.currentTimeMillis();
+            unknownKids.values().removeIf(expiry -> expiry <= now);
+            if (unknownKids.size() >= MAX_UNKNOWN_KIDS) {
+                unknownKids.clear();
+            }
+        }
+        unknownKids.put(kid, until);
+    }
+
+    /**
+     * Replaces the cached key set with the current JWKS document. A failure leaves the cached keys in
+     * place and counts towards opening the circuit breaker.
+     */
+    public void refresh() throws Exception {
+        List<Jwk> jwks;
+        try {
+            jwks = keySource.fetchAll();
+        } catch (Exception e) {
+            recordFailure();
+            throw e;
+        }
+
+        Map<String, PublicKey> fresh = new HashMap<>();
+        for (Jwk jwk : jwks) {
+            if (jwk.getId() == null || (jwk.getUsage() != null && !"sig".equals(jwk.getUsage()))) {
+                continue;
+            }
+            try {
+                fresh.put(jwk.getId(), jwk.getPublicKey());
+            } catch (Exception e) {
+                logger.warn("Skipping unsupported JWK {}: {}", jwk.getId(), e.getMessage());
+            }
+        }
+        keySet.set(new KeySet(Collections.unmodifiableMap(fresh), System.currentTimeMillis()));
+        unknownKids.keySet().removeAll(fresh.keySet());
+        if (consecutiveFailures.getAndSet(0) > 0 || circuitOpenUntil != 0) {
+            circuitOpenUntil = 0;
+            logger.info("JWKS endpoint reachable again, circuit closed");
+        }
+        logger.info("JWKS refreshed, {} signing key(s) cached: {}", fresh.size(), fresh.keySet());
+    }
+
+    private void recordFailure() {
+        int failures = consecutiveFailures.incrementAndGet();
+        if (failures >= circuitFailureThreshold) {
+            circuitOpenUntil = System.currentTimeMillis() + circuitOpenMillis;
+            logger.warn("JWKS fetch failed {} times in a row, circuit open for {} ms", failures, circuitOpenMillis);
+        }
+    }
+
+    /**
+     * Refreshes the keys and schedules the next run: after the regular interval on success, or as soon as
+     * the circuit allows a new attempt while the cached keys are going stale.
+     */
+    private void backgroundRefresh() {
+        long nextDelay = refreshIntervalMillis;
+        long now = System.currentTimeMillis();
+        if (now < circuitOpenUntil) {
+            nextDelay = Math.min(refreshIntervalMillis, circuitOpenUntil - now);
+        } else {
+            try {
+                refresh();
+            } catch (Exception e) {
+                logger.warn("Background JWKS refresh failed, serving {} cached key(s) for at most {} ms since the last success: {}",
+                        keySet.get().keys.size(), maxStaleMillis, e.getMessage());
+                long retryAt = Math.max(circuitOpenUntil, System.currentTimeMillis() + refetchCooldownMillis);
+                nextDelay = Math.min(refreshIntervalMillis, Math.max(0, retryAt - System.currentTimeMillis()));
+            }
+        }
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::backgroundRefresh, nextDelay, TimeUnit.MILLISECONDS);
+        }
+    }
+}
@@ -13,7 +13,6 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
-import java.util.ArrayList;
 
 public class JwtAuthenticationFilter extends OncePerRequestFilter {
     
@@ -28,20 +27,20 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
     protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
             throws ServletException, IOException {
         try {
-            logger.info("Processing request to: {} {}", request.getMethod(), request.getRequestURI());
+            logger.debug("Processing request to: {} {}", request.getMethod(), request.getRequestURI());
             String jwt = getJwtFromRequest(request);
             if (StringUtils.hasText(jwt)) {
-                logger.info("JWT token found in request");
-                if (tokenValidator.validateToken(jwt)) {
-                    logger.info("JWT token validated successfully");
+                VerifiedPrincipal principal = tokenValidator.verify(jwt);
+                if (principal != null) {
+                    logger.debug("JWT token validated successfully");
                     // Token valido, impostiamo l'autenticazione nel contesto di sicurezza
                     UsernamePasswordAuthenticationToken authentication = new UsernamePasswordAuthenticationToken(
-                        tokenValidator.getClaimsFromToken(jwt).getSubject(),
+                        principal,
                         null,
-                        new ArrayList<>()
+                        principal.getAuthorities()
                     );
                     SecurityContextHolder.getContext().setAuthentication(authentication);
-                    logger.info("Authentication set for user: {}", authentication.getName());
+                    logger.debug("Authentication set for user: {}", authentication.getName());
                     filterChain.doFilter(request, response);
                     return;
                 } else {
@@ -69,11 +68,8 @@ public class JwtAuthenticationFilter extends OncePerRequestFilter {
 
     private String getJwtFromRequest(HttpServletRequest request) {
         String bearerToken = request.getHeader("Authorization");
-        logger.info("Authorization header: {}", bearerToken);
         if (StringUtils.hasText(bearerToken) && bearerToken.startsWith("Bearer ")) {
-            String token = bearerToken.substring(7);
-            logger.info("Extracted token: {}", token);
-            return token;
+            return bearerToken.substring(7);
         }
         return null;
     }
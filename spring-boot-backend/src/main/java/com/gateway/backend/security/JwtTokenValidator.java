@@ -1,155 +1,251 @@
 package com.gateway.backend.security;
 
-import io.jsonwebtoken.Claims;
-import io.jsonwebtoken.ExpiredJwtException;
-import io.jsonwebtoken.Jwt;
-import io.jsonwebtoken.Jwts;
-import io.jsonwebtoken.MalformedJwtException;
-import io.jsonwebtoken.UnsupportedJwtException;
-import java.util.Date;
-import java.util.HashMap;
-import java.util.Map;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
-import com.auth0.jwk.Jwk;
-import com.auth0.jwk.JwkProvider;
-import com.auth0.jwk.UrlJwkProvider;
-import java.net.URL;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.PublicKey;
-import java.security.interfaces.RSAPublicKey;
+import java.security.Signature;
+import java.security.SignatureException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 
 @Component
 public class JwtTokenValidator {
     private static final Logger logger = LoggerFactory.getLogger(JwtTokenValidator.class);
 
-    @Value("${keycloak.auth-server-url:http://localhost:8080}")
-    private String keycloakServerUrl;
+    private static final Base64.Decoder BASE64_URL = Base64.getUrlDecoder();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
 
-    @Value("${keycloak.realm:master}")
-    private String realm;
+    // Anything larger or with a longer key id is not a Keycloak token; reject it before decoding or key lookup.
+    private static final int MAX_TOKEN_LENGTH = 16 * 1024;
+    private static final int MAX_KID_LENGTH = 128;
+
+    private final JwksKeyStore keyStore;
+    private final VerifiedTokenCache tokenCache;
+    private final String expectedIssuer;
+
+    public JwtTokenValidator(
+            JwksKeyStore keyStore,
+            VerifiedTokenCache tokenCache,
+            @Value("${keycloak.auth-server-url:http://localhost:8080}") String keycloakServerUrl,
+            @Value("${keycloak.realm:master}") String realm) {
+        this.keyStore = keyStore;
+        this.tokenCache = tokenCache;
+        this.expectedIssuer = keycloakServerUrl + "/realms/" + realm;
+    }
 
     public boolean validateToken(String token) {
-        logger.info("Starting token validation process");
+        return verify(token) != null;
+    }
+
+    /**
+     * Parses and verifies a compact JWS in a single pass: the token is decoded once, the issuer and
+     * expiry are checked before the (expensive) signature verification, and the claims are turned
+     * straight into a {@link VerifiedPrincipal}. When the {@link VerifiedTokenCache} is enabled, a token that
+     * was already verified is answered from the cache without touching the signature.
+     *
+     * @return the verified principal, or {@code null} if the token is malformed, expired, issued by
+     * another realm or not signed by a key of the realm
+     */
+    public VerifiedPrincipal verify(String token) {
+        if (token == null || token.isEmpty()) {
+            logger.warn("Token validation failed: Empty or null token");
+            return null;
+        }
+        if (token.length() > MAX_TOKEN_LENGTH) {
+            logger.warn("Token validation failed: Token exceeds {} characters", MAX_TOKEN_LENGTH);
+            return null;
+        }
+
+        if (!tokenCache.isEnabled()) {
+            return verifyUncached(token);
+        }
+        ByteBuffer cacheKey = tokenCache.key(token);
+        VerifiedPrincipal cached = tokenCache.get(cacheKey);
+        if (cached != null) {
+            return cached;
+        }
+        VerifiedPrincipal principal = verifyUncached(token);
+        if (principal != null) {
+            tokenCache.put(cacheKey, principal);
+        }
+        return principal;
+    }
+
+    private VerifiedPrincipal verifyUncached(String token) {
+        int firstDot = token.indexOf('.');
+        int secondDot = firstDot < 0 ? -1 : token.indexOf('.', firstDot + 1);
+        if (firstDot <= 0 || secondDot <= firstDot + 1 || secondDot == token.length() - 1
+                || token.indexOf('.', secondDot + 1) >= 0) {
+            logger.warn("Token validation failed: Malformed token, expected three non-empty parts");
+            return null;
+        }
+
         try {
-            // Log del token ricevuto (mascherato per sicurezza)
-            String maskedToken = token.substring(0, Math.min(token.length(), 20)) + "...";
-            logger.info("Received token (masked): {}", maskedToken);
-            
-            logger.debug("Validating token structure");
-            String[] chunks = token.split("\\.");
-            if (chunks.length < 2) {
-                logger.error("Invalid token structure: token must have at least 2 parts");
-                return false;
+            byte[] bytes = token.getBytes(StandardCharsets.US_ASCII);
+            JsonNode header = readJson(bytes, 0, firstDot);
+            JsonNode payload = readJson(bytes, firstDot + 1, secondDot - firstDot - 1);
+
+            SignatureAlgorithm algorithm = SignatureAlgorithm.of(header.path("alg").asText(null));
+            if (algorithm == null) {
+                logger.warn("Token validation failed: Unsupported algorithm {}", header.path("alg").asText(null));
+                return null;
+            }
+            JsonNode kidNode = header.get("kid");
+            if (kidNode == null || !kidNode.isTextual() || kidNode.asText().isBlank()
+                    || kidNode.asText().length() > MAX_KID_LENGTH) {
+                logger.warn("Token validation failed: Missing or invalid 'kid' in token header");
+                return null;
+            }
+            String kid = kidNode.asText();
+
+            String issuer = payload.path("iss").asText(null);
+            if (!expectedIssuer.equals(issuer)) {
+                logger.warn("Token validation failed: Invalid token issuer: {}. Expected: {}", issuer, expectedIssuer);
+                return null;
             }
-            logger.debug("Token structure is valid");
-
-            logger.info("Extracting claims from token");
-            Claims claims = getUnverifiedClaims(token);
-            
-            String expectedIssuer = keycloakServerUrl + "/realms/" + realm;
-            logger.info("Validating token issuer. Expected: {}", expectedIssuer);
-            if (!expectedIssuer.equals(claims.getIssuer())) {
-                logger.error("Invalid token issuer: {}. Expected: {}", claims.getIssuer(), expectedIssuer);
-                return false;
+            long nowSeconds = System.currentTimeMillis() / 1000;
+            JsonNode exp = payload.get("exp");
+            if (exp == null || !exp.canConvertToLong() || exp.asLong() <= nowSeconds) {
+                logger.warn("Token validation failed: Token has expired");
+                return null;
             }
-            logger.debug("Token issuer is valid");
-
-            logger.info("Retrieving public key from Keycloak");
-            PublicKey publicKey = getPublicKey(token);
-            logger.debug("Successfully retrieved public key");
-            
-            logger.info("Verifying token signature");
-            Jwts.parser()
-                .setSigningKey(publicKey)
-                .parseClaimsJws(token);
-            logger.info("Token signature verified successfully");
-
-            return true;
-        } catch (ExpiredJwtException ex) {
-            logger.error("Token validation failed: Token has expired", ex);
-        } catch (MalformedJwtException ex) {
-            logger.error("Token validation failed: Malformed token", ex);
-        } catch (UnsupportedJwtException ex) {
-            logger.error("Token validation failed: Unsupported token format", ex);
-        } catch (IllegalArgumentException ex) {
-            logger.error("Token validation failed: Empty or null token", ex);
+            JsonNode nbf = payload.get("nbf");
+            if (nbf != null && nbf.asLong() > nowSeconds) {
+                logger.warn("Token validation failed: Token is not valid yet");
+                return null;
+            }
+
+            PublicKey publicKey = keyStore.getKey(kid);
+            if (publicKey == null) {
+                logger.warn("Token validation failed: No signing key found for kid {}", kid);
+                return null;
+            }
+
+            byte[] signature = BASE64_URL.decode(ByteBuffer.wrap(bytes, secondDot + 1, bytes.length - secondDot - 1)).array();
+            if (!algorithm.verify(publicKey, bytes, secondDot, signature)) {
+                logger.warn("Token validation failed: Invalid signature");
+                return null;
+            }
+
+            return toPrincipal(payload, issuer, exp.asLong());
+        } catch (IllegalArgumentException | SignatureException ex) {
+            // Bad base64, a non-object part or a signature of the wrong shape: the client's fault, not ours.
+            logger.warn("Token validation failed: Malformed token: {}", ex.getMessage());
+        } catch (JsonProcessingException ex) {
+            // The original message leaves out the source excerpt, so no token content reaches the log.
+            logger.warn("Token validation failed: Malformed token: {}", ex.getOriginalMessage());
         } catch (Exception ex) {
             logger.error("Token validation failed with unexpected error", ex);
         }
-        return false;
+        return null;
     }
 
-    public Claims getClaimsFromToken(String token) {
-        try {
-            PublicKey publicKey = getPublicKey(token);
-            return Jwts.parser()
-                    .setSigningKey(publicKey)
-                    .parseClaimsJws(token)
-                    .getBody();
-        } catch (Exception e) {
-            throw new RuntimeException("Errore nell'estrazione dei claims dal token", e);
+    private static JsonNode readJson(byte[] token, int offset, int length) throws IOException {
+        ByteBuffer decoded = BASE64_URL.decode(ByteBuffer.wrap(token, offset, length));
+        JsonNode node = MAPPER.readTree(decoded.array(), decoded.arrayOffset(), decoded.remaining());
+        if (node == null || !node.isObject()) {
+            throw new IllegalArgumentException("token part is not a JSON object");
         }
+        return node;
     }
 
-    private PublicKey getPublicKey(String token) throws Exception {
-        logger.debug("Extracting 'kid' from token header");
-        String[] chunks = token.split("\\.");
-        String headerJson = new String(java.util.Base64.getDecoder().decode(chunks[0]));
-        JsonNode headerNode = new ObjectMapper().readTree(headerJson);
-        String kid = headerNode.get("kid").asText();
-        logger.debug("Extracted kid: {}", kid);
-
-        String jwksUrl = keycloakServerUrl + "/realms/" + realm + "/protocol/openid-connect/certs";
-        logger.info("Fetching public key from Keycloak JWKS endpoint: {}", jwksUrl);
-        
-        JwkProvider provider = new UrlJwkProvider(new URL(jwksUrl));
-        logger.debug("JWKS provider initialized");
-        
-        Jwk jwk = provider.get(kid);
-        logger.info("Successfully retrieved JWK for kid: {}", kid);
-        
-        PublicKey publicKey = jwk.getPublicKey();
-        logger.debug("Public key extracted successfully");
-        
-        return publicKey;
+    private static VerifiedPrincipal toPrincipal(JsonNode payload, String issuer, long exp) {
+        List<String> audience;
+        JsonNode aud = payload.get("aud");
+        if (aud == null) {
+            audience = Collections.emptyList();
+        } else if (aud.isArray()) {
+            audience = new ArrayList<>(aud.size());
+            aud.forEach(node -> audience.add(node.asText()));
+        } else {
+            audience = Collections.singletonList(aud.asText());
+        }
+
+        Set<String> realmRoles = readRoles(payload.path("realm_access"));
+
+        Map<String, Set<String>> clientRoles = new HashMap<>();
+        Iterator<Map.Entry<String, JsonNode>> clients = payload.path("resource_access").fields();
+        while (clients.hasNext()) {
+            Map.Entry<String, JsonNode> client = clients.next();
+            clientRoles.put(client.getKey(), readRoles(client.getValue()));
+        }
+
+        return new VerifiedPrincipal(
+                payload.path("sub").asText(null),
+                payload.path("preferred_username").asText(null),
+                issuer,
+                Instant.ofEpochSecond(exp),
+                audience,
+                realmRoles,
+                clientRoles);
     }
 
-    private Claims getUnverifiedClaims(String token) {
-        try {
-            String[] chunks = token.split("\\.");
-            if (chunks.length < 2) {
-                throw new IllegalArgumentException("Token invalido");
-            }
-            
-            // Decodifica base64 del payload
-            String payloadJson = new String(java.util.Base64.getDecoder().decode(chunks[1]));
-            JsonNode payloadNode = new ObjectMapper().readTree(payloadJson);
-            
-            logger.info("Token payload: {}", payloadNode.toPrettyString());
-            
-            CustomClaims claims = new CustomClaims();
-            if (payloadNode.has("iss")) {
-                claims.setIssuer(payloadNode.get("iss").asText());
-            }
-            if (payloadNode.has("sub")) {
-                claims.setSubject(payloadNode.get("sub").asText());
-            }
-            if (payloadNode.has("exp")) {
-                claims.setExpiration(new Date(payloadNode.get("exp").asLong() * 1000));
-            }
-            if (payloadNode.has("aud")) {
-                claims.setAudience(payloadNode.get("aud").asText());
+    private static Set<String> readRoles(JsonNode access) {
+        JsonNode roles = access.path("roles");
+        if (!roles.isArray() || roles.isEmpty()) {
+            return Collections.emptySet();
+        }
+        Set<String> result = new HashSet<>();
+        roles.forEach(role -> result.add(role.asText()));
+        return result;
+    }
+
+    /**
+     * Signature algorithms Keycloak uses for access tokens. {@link Signature} instances are not thread-safe,
+     * so each request thread keeps its own.
+     */
+    private enum SignatureAlgorithm {
+        RS256("SHA256withRSA"),
+        RS384("SHA384withRSA"),
+        RS512("SHA512withRSA");
+
+        private final ThreadLocal<Signature> signature;
+
+        SignatureAlgorithm(String jcaName) {
+            this.signature = ThreadLocal.withInitial(() -> {
+                try {
+                    return Signature.getInstance(jcaName);
+                } catch (GeneralSecurityException e) {
+                    throw new IllegalStateException("Signature algorithm not available: " + jcaName, e);
+                }
+            });
+        }
+
+        static SignatureAlgorithm of(String alg) {
+            if (alg == null) {
+                return null;
             }
-            if (payloadNode.has("iat")) {
-                claims.setIssuedAt(new Date(payloadNode.get("iat").asLong() * 1000));
+            switch (alg) {
+                case "RS256": return RS256;
+                case "RS384": return RS384;
+                case "RS512": return RS512;
+                default: return null;
             }
-            return claims;
-        } catch (Exception e) {
-            throw new IllegalArgumentException("Errore nel parsing del token", e);
+        }
+
+        boolean verify(PublicKey key, byte[] token, int signedLength, byte[] signatureBytes) throws GeneralSecurityException {
+            Signature verifier = signature.get();
+            verifier.initVerify(key);
+            verifier.update(token, 0, signedLength);
+            return verifier.verify(signatureBytes);
         }
     }
-}
\ No newline at end of file
+}
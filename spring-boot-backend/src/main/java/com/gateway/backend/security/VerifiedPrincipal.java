@@ -0,0 +1,99 @@
+package com.gateway.backend.security;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+
+import java.security.Principal;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable result of a successful token verification. Built once by {@link JwtTokenValidator#verify(String)}
+ * and stored as the principal of the authentication in the {@code SecurityContext}.
+ */
+public final class VerifiedPrincipal implements Principal {
+
+    private final String subject;
+    private final String username;
+    private final String issuer;
+    private final Instant expiresAt;
+    private final List<String> audience;
+    private final Set<String> realmRoles;
+    private final Map<String, Set<String>> clientRoles;
+    private final List<GrantedAuthority> authorities;
+
+    public VerifiedPrincipal(String subject, String username, String issuer, Instant expiresAt,
+                             List<String> audience, Set<String> realmRoles, Map<String, Set<String>> clientRoles) {
+        this.subject = subject;
+        this.username = username;
+        this.issuer = issuer;
+        this.expiresAt = expiresAt;
+        this.audience = List.copyOf(audience);
+        this.realmRoles = Set.copyOf(realmRoles);
+        this.clientRoles = Map.copyOf(clientRoles);
+
+        List<GrantedAuthority> granted = new ArrayList<>(this.realmRoles.size());
+        for (String role : this.realmRoles) {
+            granted.add(new SimpleGrantedAuthority("ROLE_" + role));
+        }
+        this.authorities = Collections.unmodifiableList(granted);
+    }
+
+    @Override
+    public String getName() {
+        return subject;
+    }
+
+    public String getSubject() {
+        return subject;
+    }
+
+    /**
+     * The {@code preferred_username} claim, or {@code null} if the token does not carry it.
+     */
+    public String getUsername() {
+        return username;
+    }
+
+    public String getIssuer() {
+        return issuer;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public List<String> getAudience() {
+        return audience;
+    }
+
+    public Set<String> getRealmRoles() {
+        return realmRoles;
+    }
+
+    public Map<String, Set<String>> getClientRoles() {
+        return clientRoles;
+    }
+
+    /**
+     * Realm roles as {@code ROLE_*} authorities.
+     */
+    public List<GrantedAuthority> getAuthorities() {
+        return authorities;
+    }
+
+    public boolean hasClientRole(String clientId, String role) {
+        Set<String> roles = clientRoles.get(clientId);
+        return roles != null && roles.contains(role);
+    }
+
+    @Override
+    public String toString() {
+        return "VerifiedPrincipal{subject=" + subject + ", username=" + username + ", issuer=" + issuer
+                + ", expiresAt=" + expiresAt + ", realmRoles=" + realmRoles + "}";
+    }
+}
@@ -0,0 +1,170 @@
+package com.gateway.backend.security;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Optional bounded cache of successfully verified tokens, keyed by the SHA-256 digest of the compact token.
+ * <p>
+ * An entry never outlives the token's {@code exp} nor the configured TTL, whichever comes first, so a
+ * hit can safely skip signature verification. Only verified principals are ever stored.
+ * <p>
+ * Entries live in a {@link ConcurrentHashMap}, so lookups from request threads never serialize on a lock.
+ * Recency is approximate: a hit stamps the entry with the time it was read, and once the cache is over its
+ * size a put evicts the least recently read of a small sample of entries, dropping any expired ones it meets.
+ */
+@Component
+public class VerifiedTokenCache {
+
+    private static final Logger logger = LoggerFactory.getLogger(VerifiedTokenCache.class);
+
+    private static final ThreadLocal<MessageDigest> SHA_256 = ThreadLocal.withInitial(() -> {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 not available", e);
+        }
+    });
+
+    /** Entries looked at to pick each one to evict. */
+    private static final int EVICTION_SAMPLE = 8;
+
+    private static final class Entry {
+        final VerifiedPrincipal principal;
+        final long expiresAtMillis;
+        volatile long lastReadNanos;
+
+        Entry(VerifiedPrincipal principal, long expiresAtMillis, long lastReadNanos) {
+            this.principal = principal;
+            this.expiresAtMillis = expiresAtMillis;
+            this.lastReadNanos = lastReadNanos;
+        }
+    }
+
+    private final boolean enabled;
+    private final int maxSize;
+    private final long ttlMillis;
+    private final ConcurrentHashMap<ByteBuffer, Entry> entries;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    @Autowired
+    public VerifiedTokenCache(
+            @Value("${security.token.cache.enabled:false}") boolean enabled,
+            @Value("${security.token.cache.max-size:10000}") int maxSize,
+            @Value("${security.token.cache.ttl-seconds:300}") long ttlSeconds) {
+        this(enabled, maxSize, Duration.ofSeconds(ttlSeconds));
+    }
+
+    public VerifiedTokenCache(boolean enabled, int maxSize, Duration ttl) {
+        this.enabled = enabled;
+        this.maxSize = maxSize;
+        this.ttlMillis = ttl.toMillis();
+        this.entries = new ConcurrentHashMap<>();
+        if (enabled) {
+            logger.info("Verified token cache enabled (max size {}, ttl {} ms)", maxSize, ttlMillis);
+        }
+    }
+
+    public static VerifiedTokenCache disabled() {
+        return new VerifiedTokenCache(false, 0, Duration.ZERO);
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Digest used as cache key. Callers compute it once per request and pass it to both
+     * {@link #get(ByteBuffer)} and {@link #put(ByteBuffer, VerifiedPrincipal)}.
+     */
+    public ByteBuffer key(String token) {
+        return ByteBuffer.wrap(SHA_256.get().digest(token.getBytes(StandardCharsets.US_ASCII)));
+    }
+
+    public VerifiedPrincipal get(ByteBuffer key) {
+        Entry entry = entries.get(key);
+        if (entry != null && entry.expiresAtMillis > System.currentTimeMillis()) {
+            entry.lastReadNanos = System.nanoTime();
+            hits.increment();
+            return entry.principal;
+        }
+        if (entry != null && entries.remove(key, entry)) {
+            evictions.increment();
+        }
+        misses.increment();
+        return null;
+    }
+
+    public void put(ByteBuffer key, VerifiedPrincipal principal) {
+        long now = System.currentTimeMillis();
+        long expiresAt = Math.min(principal.getExpiresAt().toEpochMilli(), now + ttlMillis);
+        if (expiresAt <= now) {
+            return;
+        }
+        entries.put(key, new Entry(principal, expiresAt, System.nanoTime()));
+        while (entries.size() > maxSize && evictOne(now)) {
+            // keep sampling until back under the bound
+        }
+    }
+
+    /**
+     * Evicts the least recently read of the first {@link #EVICTION_SAMPLE} entries, and every expired entry
+     * among them.
+     *
+     * @return whether anything was evicted
+     */
+    private boolean evictOne(long now) {
+        Map.Entry<ByteBuffer, Entry> oldest = null;
+        boolean evicted = false;
+        Iterator<Map.Entry<ByteBuffer, Entry>> it = entries.entrySet().iterator();
+        for (int sampled = 0; sampled < EVICTION_SAMPLE && it.hasNext(); sampled++) {
+            Map.Entry<ByteBuffer, Entry> candidate = it.next();
+            Entry entry = candidate.getValue();
+            if (entry.expiresAtMillis <= now) {
+                if (entries.remove(candidate.getKey(), entry)) {
+                    evictions.increment();
+                    evicted = true;
+                }
+            } else if (oldest == null || entry.lastReadNanos - oldest.getValue().lastReadNanos < 0) {
+                oldest = candidate;
+            }
+        }
+        if (!evicted && oldest != null && entries.remove(oldest.getKey(), oldest.getValue())) {
+            evictions.increment();
+            evicted = true;
+        }
+        return evicted;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        return entries.size();
+    }
+}
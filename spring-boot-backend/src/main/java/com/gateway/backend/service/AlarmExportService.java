@@ -0,0 +1,249 @@
+package com.gateway.backend.service;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.AlarmFilterPlan;
+import com.gateway.backend.service.alarm.AlarmStore;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Writes every alarm matching a filter straight to a stream, for exports too large for the paginated listing.
+ * <p>
+ * The alarms come from a single snapshot, in id order, and are read off the columns one row at a time as the
+ * index scan reaches them: neither the matching rows nor the alarms are collected, so memory stays constant
+ * whatever the size of the export. Output goes through a fixed-size buffer that is written out each time it
+ * fills up.
+ */
+@Service
+public class AlarmExportService {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String[] CSV_HEADER = {
+            "id", "gatewayId", "gatewayName", "type", "severity", "message", "timestamp", "status", "callType",
+            "carrier", "siteId", "siteName", "caller", "caller_number", "callee_number", "duration_seconds",
+            "charge_amount", "occurrences", "lastSeen", "version"
+    };
+
+    public enum Format {
+        NDJSON("application/x-ndjson", "ndjson"),
+        CSV("text/csv;charset=UTF-8", "csv");
+
+        private final String contentType;
+        private final String extension;
+
+        Format(String contentType, String extension) {
+            this.contentType = contentType;
+            this.extension = extension;
+        }
+
+        public String getContentType() {
+            return contentType;
+        }
+
+        public String getExtension() {
+            return extension;
+        }
+
+        /**
+         * The format called {@code name}, case-insensitively, or {@code null} if there is none.
+         */
+        public static Format fromName(String name) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(name)) {
+                    return format;
+                }
+            }
+            return null;
+        }
+    }
+
+    private final AlarmService alarmService;
+    private final ObjectMapper objectMapper;
+    private final ObjectWriter alarmWriter;
+
+    @Autowired
+    public AlarmExportService(AlarmService alarmService, MappingJackson2HttpMessageConverter jsonConverter) {
+        this.alarmService = alarmService;
+        // Same serialization as the REST responses, minus the flush after every alarm
+        this.objectMapper = jsonConverter.getObjectMapper();
+        this.alarmWriter = objectMapper.writerFor(Alarm.class).without(SerializationFeature.FLUSH_AFTER_WRITE_VALUE);
+    }
+
+    /**
+     * Writes the alarms matching {@code filters}, the same filters as the listing takes, to {@code out} in
+     * {@code format}. {@code out} is flushed but left open.
+     *
+     * @return the number of alarms written
+     */
+    public long export(Map<String, String> filters, Format format, OutputStream out) throws IOException {
+        AlarmFilterPlan plan = alarmService.compileFilters(filters);
+        AlarmStore.Snapshot snapshot = alarmService.getSnapshot();
+        AlarmColumns columns = snapshot.getColumns();
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), BUFFER_SIZE);
+        RowWriter rows = format == Format.CSV
+                ? new CsvRowWriter(columns, writer)
+                : new NdjsonRowWriter(columns, writer);
+        try {
+            if (plan.isMatchAll()) {
+                for (int row = columns.first(); row < columns.size(); row++) {
+                    rows.accept(row);
+                }
+            } else if (!plan.matchesNothing()) {
+                snapshot.getIndex().forEach(plan, rows);
+            }
+        } catch (UncheckedIOException e) {
+            // Most likely the client went away
+            throw e.getCause();
+        }
+        rows.finish();
+        return rows.count;
+    }
+
+    private abstract static class RowWriter implements IntConsumer {
+        final AlarmColumns columns;
+        long count;
+
+        RowWriter(AlarmColumns columns) {
+            this.columns = columns;
+        }
+
+        @Override
+        public void accept(int row) {
+            try {
+                write(columns.toAlarm(row));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            count++;
+        }
+
+        abstract void write(Alarm alarm) throws IOException;
+
+        abstract void finish() throws IOException;
+    }
+
+    private final class NdjsonRowWriter extends RowWriter {
+        private final JsonGenerator generator;
+
+        NdjsonRowWriter(AlarmColumns columns, Writer writer) throws IOException {
+            super(columns);
+            this.generator = objectMapper.getFactory().createGenerator(writer)
+                    .disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+            // Alarms are separated by the newline written after each, not the default space
+            generator.setRootValueSeparator(null);
+        }
+
+        @Override
+        void write(Alarm alarm) throws IOException {
+            alarmWriter.writeValue(generator, alarm);
+            generator.writeRaw('\n');
+        }
+
+        @Override
+        void finish() throws IOException {
+            generator.flush();
+        }
+    }
+
+    /**
+     * RFC 4180 rows with a header line; missing values are empty fields.
+     */
+    private static final class CsvRowWriter extends RowWriter {
+        private final Writer writer;
+
+        CsvRowWriter(AlarmColumns columns, Writer writer) throws IOException {
+            super(columns);
+            this.writer = writer;
+            for (int i = 0; i < CSV_HEADER.length; i++) {
+                if (i > 0) {
+                    writer.write(',');
+                }
+                writer.write(CSV_HEADER[i]);
+            }
+            writer.write("\r\n");
+        }
+
+        @Override
+        void write(Alarm alarm) throws IOException {
+            writer.write(String.valueOf(alarm.getId()));
+            field(alarm.getGatewayId());
+            field(alarm.getGatewayName());
+            field(alarm.getType());
+            field(alarm.getSeverity());
+            field(alarm.getMessage());
+            field(alarm.getTimestamp());
+            field(alarm.getStatus());
+            field(alarm.getCallType());
+            field(alarm.getCarrier());
+            field(alarm.getSiteId());
+            field(alarm.getSiteName());
+            field(alarm.getCaller());
+            field(alarm.getCaller_number());
+            field(alarm.getCallee_number());
+            field(alarm.getDuration_seconds());
+            field(alarm.getCharge_amount());
+            field(alarm.getOccurrences());
+            field(alarm.getLastSeen());
+            field(alarm.getVersion());
+            writer.write("\r\n");
+        }
+
+        private void field(Object value) throws IOException {
+            writer.write(',');
+            if (value == null) {
+                return;
+            }
+            // ISO-8601 with the seconds always written, so that spreadsheets parse every row alike
+            String text = value instanceof LocalDateTime timestamp
+                    ? DateTimeFormatter.ISO_LOCAL_DATE_TIME.format(timestamp)
+                    : value.toString();
+            if (!needsQuotes(text)) {
+                writer.write(text);
+                return;
+            }
+            writer.write('"');
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == '"') {
+                    writer.write('"');
+                }
+                writer.write(c);
+            }
+            writer.write('"');
+        }
+
+        private static boolean needsQuotes(String text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c == ',' || c == '"' || c == '\r' || c == '\n') {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        void finish() throws IOException {
+            writer.flush();
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package com.gateway.backend.service;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * Where a batch of ingested alarms went: the id of the alarm each one was stored as or folded into, how many
+ * were stored as new alarms and how many folded into another one.
+ */
+@Getter
+@AllArgsConstructor
+public class AlarmIngestion {
+    private final long[] ids;
+    private final int stored;
+    private final int folded;
+}
@@ -1,92 +1,795 @@
 package com.gateway.backend.service;
 
 import com.gateway.backend.model.Alarm;
+import com.gateway.backend.repository.AlarmRepository;
+import com.gateway.backend.service.alarm.AlarmAggregates;
+import com.gateway.backend.service.alarm.AlarmAggregation;
+import com.gateway.backend.service.alarm.AlarmChangeLog;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.AlarmCorrelator;
+import com.gateway.backend.service.alarm.AlarmCursor;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmFilterCompiler;
+import com.gateway.backend.service.alarm.AlarmFilterPlan;
+import com.gateway.backend.service.alarm.AlarmIndex;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmSql;
+import com.gateway.backend.service.alarm.AlarmStatus;
+import com.gateway.backend.service.alarm.AlarmStatusChange;
+import com.gateway.backend.service.alarm.AlarmStore;
+import com.gateway.backend.service.alarm.ParallelAlarmScan;
+import com.gateway.backend.service.alarm.RowSort;
+import com.gateway.backend.service.cache.QueryResultCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.stereotype.Service;
 
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.time.temporal.ChronoUnit;
 import java.util.*;
-import java.util.stream.Collectors;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ * In-memory alarms. They are kept in an {@link AlarmStore}, which takes concurrent appends; every query reads
+ * one {@link AlarmStore.Snapshot} of its {@link AlarmColumns} and {@link AlarmIndex}, without locking. Ids are
+ * assigned by the store, one per row, so the alarm with id {@code n} always sits at row {@code n - 1}.
+ * <p>
+ * With {@code alarms.persistence.mode=jpa} the database behind {@link AlarmRepository} is the record instead:
+ * the listing and its totals are queried from it with {@link AlarmSql}, and writes are stored there first,
+ * one at a time and in JDBC batches, then in the store under the same ids. The store is filled from the
+ * database at startup and keeps serving the suggestions, aggregations, exports and change stream.
+ * <p>
+ * With {@code alarms.retention.days} set, a background task drops the alarms older than that, a whole store
+ * chunk at a time (see {@link AlarmStore#dropExpired}), and deletes them from the database with one range
+ * statement on the ids.
+ * <p>
+ * Scans over many alarms (a free-text filter the trigrams cannot narrow, a sort over every match) are split
+ * across the {@link ParallelAlarmScan} pool, up to {@code alarms.scan.max-tasks-per-query} tasks per query.
+ * <p>
+ * Pages and totals are cached by normalized query in a {@link QueryResultCache}, stamped with the
+ * {@link AlarmStore.Snapshot#getGeneration() generation} of the snapshot they were computed from; any write
+ * moves the store to a new generation, which invalidates them all. Identical queries arriving together at
+ * one generation, such as a wall of dashboards refreshing at once, share a single computation. The key is the
+ * whole normalized query, which is all that decides what a query returns, whoever the caller.
+ * <p>
+ * With {@code alarms.correlation.window-seconds} set, alarms added one at a time or ingested in batches go
+ * through an {@link AlarmCorrelator} first: repeats of an alarm still open within the window fold into it
+ * rather than being stored. The counts they add are written back to the store (and the database) by a
+ * background task every {@code alarms.correlation.flush-interval-ms}, in one batch. {@link #addAlarms} stores
+ * every alarm as it is.
+ * <p>
+ * A {@code q} filter is a full-text {@link com.gateway.backend.service.alarm.AlarmTextQuery} on the message and
+ * type, answered by the text indexes of the store in either persistence mode; sorting by
+ * {@value #SORT_BY_RELEVANCE} orders its matches by BM25 score.
+ * <p>
+ * Every alarm carries a version, moved on by each update and status change. {@link #changeStatuses} takes
+ * operators' status changes in bulk as compare-and-sets on those versions, with an outcome per alarm, so that
+ * acknowledging hundreds of alarms neither holds up the appends nor overwrites what someone else did meanwhile.
+ */
 @Service
 public class AlarmService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmService.class);
     
-    private final List<Alarm> mockAlarms;
+    private static final int MOCK_BATCH_SIZE = 1000;
+    private static final int LOAD_BATCH_SIZE = 10_000;
+    private static final int DEFAULT_MAX_SCAN_TASKS = 4;
+    private static final int DEFAULT_MIN_ROWS_PER_SCAN_TASK = 1 << 16;
+
+    /** The {@code sortBy} ordering the matches of a text query best first. */
+    public static final String SORT_BY_RELEVANCE = "relevance";
+
+    private final AlarmStore alarmStore = new AlarmStore();
     private final Map<String, List<String>> alarmOptions;
+    private final AlarmFilterCompiler filterCompiler = new AlarmFilterCompiler();
+    /** {@code null} unless the alarms are persisted. */
+    private final AlarmRepository alarmRepository;
+    /** Orders the persisted writes, so that the ids given to the database are those the store assigns. */
+    private final Lock persistLock = new ReentrantLock();
+    /** {@code 0} to keep the alarms forever. */
+    private final int retentionDays;
+    private final long retentionCheckSeconds;
+    private ScheduledExecutorService retentionScheduler;
+    private final ParallelAlarmScan parallelScan;
+    private final QueryResultCache<AlarmPage> resultCache;
+    /** {@code null} unless alarms are correlated; guarded by {@link #correlationLock}. */
+    private final AlarmCorrelator correlator;
+    /** Taken before {@link #persistLock} when both are. */
+    private final Lock correlationLock = new ReentrantLock();
+    private final long correlationFlushMillis;
+    private ScheduledExecutorService correlationScheduler;
     
     public AlarmService() {
-        this.mockAlarms = generateMockAlarms();
+        this(100);
+    }
+    
+    public AlarmService(int mockAlarmCount) {
+        this(mockAlarmCount, null, 0, 0, new ParallelAlarmScan(Runtime.getRuntime().availableProcessors(),
+                DEFAULT_MAX_SCAN_TASKS, DEFAULT_MIN_ROWS_PER_SCAN_TASK), 0, 0, false, 0, 0, 0);
+    }
+
+    /**
+     * @param persistenceMode       {@code memory} to keep the alarms in process only, or {@code jpa} to store
+     *                              them in the database and reload them from it on startup
+     * @param retentionDays         age in days past which alarms are dropped, {@code 0} to keep them all
+     * @param retentionCheckSeconds how often expired alarms are looked for
+     * @param scanParallelism       threads scanning alarms for the queries, {@code 0} for one per processor
+     * @param maxScanTasks          most of them a single query uses
+     * @param minRowsPerScanTask    fewest alarms worth a scan task; smaller scans stay on the request thread
+     * @param cacheMaxEntries       most query results cached, {@code 0} to disable the cache
+     * @param cacheMaxBytes         most estimated bytes of cached results
+     * @param coalesceQueries       whether identical concurrent queries share one computation
+     * @param correlationSeconds    longest pause between repeats of an alarm that still fold into it,
+     *                              {@code 0} to store every alarm
+     * @param correlationMaxOpen    most alarms kept open for repeats to fold into
+     * @param correlationFlushMs    how often the folded counts are written back, in milliseconds
+     */
+    @Autowired
+    public AlarmService(@Value("${alarms.persistence.mode:memory}") String persistenceMode,
+                        AlarmRepository alarmRepository,
+                        @Value("${alarms.retention.days:0}") int retentionDays,
+                        @Value("${alarms.retention.check-interval-seconds:300}") long retentionCheckSeconds,
+                        @Value("${alarms.scan.parallelism:0}") int scanParallelism,
+                        @Value("${alarms.scan.max-tasks-per-query:4}") int maxScanTasks,
+                        @Value("${alarms.scan.min-rows-per-task:65536}") int minRowsPerScanTask,
+                        @Value("${alarms.cache.max-entries:1024}") int cacheMaxEntries,
+                        @Value("${alarms.cache.max-bytes:67108864}") long cacheMaxBytes,
+                        @Value("${alarms.cache.coalesce:true}") boolean coalesceQueries,
+                        @Value("${alarms.correlation.window-seconds:0}") long correlationSeconds,
+                        @Value("${alarms.correlation.max-open:10000}") int correlationMaxOpen,
+                        @Value("${alarms.correlation.flush-interval-ms:1000}") long correlationFlushMs) {
+        this(100, repositoryFor(persistenceMode, alarmRepository), retentionDays, retentionCheckSeconds,
+                new ParallelAlarmScan(
+                        scanParallelism > 0 ? scanParallelism : Runtime.getRuntime().availableProcessors(),
+                        maxScanTasks, minRowsPerScanTask),
+                cacheMaxEntries, cacheMaxBytes, coalesceQueries, correlationSeconds, correlationMaxOpen,
+                correlationFlushMs);
+    }
+
+    private AlarmService(int mockAlarmCount, AlarmRepository alarmRepository, int retentionDays,
+                         long retentionCheckSeconds, ParallelAlarmScan parallelScan, int cacheMaxEntries,
+                         long cacheMaxBytes, boolean coalesceQueries, long correlationSeconds,
+                         int correlationMaxOpen, long correlationFlushMs) {
+        this.alarmRepository = alarmRepository;
+        this.parallelScan = parallelScan;
+        this.resultCache = new QueryResultCache<>("Alarm query", cacheMaxEntries, cacheMaxBytes, coalesceQueries,
+                AlarmService::estimateBytes);
+        this.retentionDays = Math.max(0, retentionDays);
+        this.retentionCheckSeconds = Math.max(1, retentionCheckSeconds);
+        this.correlator = correlationSeconds > 0
+                ? new AlarmCorrelator(Duration.ofSeconds(correlationSeconds), correlationMaxOpen)
+                : null;
+        this.correlationFlushMillis = Math.max(1, correlationFlushMs);
+        if (alarmRepository == null || !loadPersistedAlarms()) {
+            generateMockAlarms(mockAlarmCount);
+        }
+        alarmStore.indexSuggestions();
         this.alarmOptions = generateAlarmOptions();
     }
+
+    private static AlarmRepository repositoryFor(String persistenceMode, AlarmRepository alarmRepository) {
+        switch (persistenceMode.toLowerCase(Locale.ROOT)) {
+            case "memory":
+                return null;
+            case "jpa":
+                return alarmRepository;
+            default:
+                throw new IllegalArgumentException("Unknown alarms.persistence.mode " + persistenceMode);
+        }
+    }
+
+    @PostConstruct
+    public void start() {
+        if (retentionDays > 0) {
+            retentionScheduler = daemonScheduler("alarm-retention");
+            retentionScheduler.scheduleWithFixedDelay(this::expireAlarms, 0, retentionCheckSeconds,
+                    TimeUnit.SECONDS);
+        }
+        if (correlator != null) {
+            correlationScheduler = daemonScheduler("alarm-correlation");
+            correlationScheduler.scheduleWithFixedDelay(this::writeBackCorrelation, correlationFlushMillis,
+                    correlationFlushMillis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static ScheduledExecutorService daemonScheduler(String name) {
+        return Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, name);
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (retentionScheduler != null) {
+            retentionScheduler.shutdownNow();
+        }
+        if (correlationScheduler != null) {
+            correlationScheduler.shutdownNow();
+            writeBackCorrelation();
+        }
+        parallelScan.shutdown();
+    }
+
+    private void writeBackCorrelation() {
+        try {
+            flushCorrelatedAlarms();
+        } catch (RuntimeException e) {
+            logger.warn("Writing back correlated alarm counts failed", e);
+        }
+    }
+
+    /**
+     * Writes the occurrences folded into stored alarms since the last call, all in one store update and one
+     * database batch, then closes the correlation windows no repeat can reach any more. Counts that could not
+     * be written are kept for the next call.
+     *
+     * @return the number of alarms updated
+     */
+    public int flushCorrelatedAlarms() {
+        if (correlator == null) {
+            return 0;
+        }
+        correlationLock.lock();
+        try {
+            AlarmCorrelator.Updates updates = correlator.drain();
+            correlator.expire();
+            if (updates.isEmpty()) {
+                return 0;
+            }
+            if (alarmRepository == null) {
+                return updates.applyTo(alarmStore);
+            }
+            updates.truncateToMicros();
+            persistLock.lock();
+            try {
+                alarmRepository.updateOccurrences(updates.getIds(), updates.getOccurrences(), updates.getLastSeen(),
+                        updates.size());
+                return updates.applyTo(alarmStore);
+            } catch (RuntimeException e) {
+                correlator.retry(updates);
+                throw e;
+            } finally {
+                persistLock.unlock();
+            }
+        } finally {
+            correlationLock.unlock();
+        }
+    }
+
+    private void expireAlarms() {
+        try {
+            int dropped = dropExpired(LocalDateTime.now().minusDays(retentionDays));
+            if (dropped > 0) {
+                logger.info("Dropped {} alarm(s) older than {} day(s)", dropped, retentionDays);
+            }
+        } catch (RuntimeException e) {
+            logger.warn("Alarm retention failed", e);
+        }
+    }
+
+    /**
+     * Drops the oldest alarms timestamped before {@code cutoff}, in whole store chunks; an expired alarm stays
+     * while its chunk holds newer ones, or follows a chunk that does.
+     *
+     * @return the number of alarms dropped
+     */
+    public int dropExpired(LocalDateTime cutoff) {
+        if (alarmRepository == null) {
+            return alarmStore.dropExpired(cutoff);
+        }
+        persistLock.lock();
+        try {
+            int dropped = alarmStore.dropExpired(cutoff);
+            if (dropped > 0) {
+                alarmRepository.deleteThrough(alarmStore.snapshot().getColumns().first());
+            }
+            return dropped;
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    /**
+     * Appends the alarms in the database to the store, in id order and in keyset batches.
+     *
+     * @return whether there were any
+     * @throws IllegalStateException if the ids do not run without gaps from 1 or from the start of a store
+     *                               chunk, as retention leaves them
+     */
+    private boolean loadPersistedAlarms() {
+        long lastId = 0;
+        while (true) {
+            List<Alarm> batch = alarmRepository.findByIdGreaterThanOrderByIdAsc(lastId,
+                    PageRequest.of(0, LOAD_BATCH_SIZE));
+            if (batch.isEmpty()) {
+                return lastId > 0;
+            }
+            long firstId = batch.get(0).getId();
+            if (lastId == 0 && firstId > 1 && firstId <= Integer.MAX_VALUE) {
+                alarmStore.skipTo((int) (firstId - 1));
+                lastId = firstId - 1;
+            }
+            if (firstId != lastId + 1 || batch.get(batch.size() - 1).getId() != lastId + batch.size()) {
+                throw new IllegalStateException("Persisted alarm ids are not consecutive after " + lastId);
+            }
+            alarmStore.append(batch);
+            lastId += batch.size();
+        }
+    }
     
+    /**
+     * Filters, sorts and pages the alarms in one pass over the data: the filter map is compiled once (and
+     * reused across requests with the same filters), the indexes narrow the scan down to candidate rows,
+     * filtering and sorting read the columns, and only the alarms of the page are materialized.
+     */
+    public AlarmPage queryAlarms(Map<String, String> filters, int page, int pageSize, String sortBy, String sortOrder) {
+        return queryAlarms(filters, page, pageSize, sortBy, sortOrder, null);
+    }
+
+    /**
+     * Like {@link #queryAlarms(Map, int, int, String, String)}, but when {@code cursor} is set the page is the
+     * {@code pageSize} alarms sorting right after it and {@code page} is ignored.
+     * <p>
+     * Shallow pages are selected with a bounded heap ({@code O(n log k)} for the {@code k} rows up to the end of
+     * the page) instead of sorting every match; a cursor page always costs that of a first page. A page cached
+     * for the same query since the last write is returned as is, its alarms in an unmodifiable list, and so is
+     * one being computed for it by another request.
+     * <p>
+     * Sorted by {@value #SORT_BY_RELEVANCE}, the matches of the text query come best first, ties in id order,
+     * and are paged by offset only.
+     *
+     * @throws IllegalArgumentException if {@code cursor} is malformed or was issued for another sort order, or
+     *                                  sorting by relevance without a text query or with a cursor
+     */
+    public AlarmPage queryAlarms(Map<String, String> filters, int page, int pageSize, String sortBy, String sortOrder,
+                                 String cursor) {
+        boolean byRelevance = SORT_BY_RELEVANCE.equalsIgnoreCase(sortBy);
+        AlarmField sortField = sortBy == null || sortBy.isEmpty() || byRelevance ? null : AlarmField.fromName(sortBy);
+        boolean descending = sortField != null && "desc".equalsIgnoreCase(sortOrder);
+        // Unsorted listings come in id order, which is also what a cursor needs to resume them
+        AlarmField orderField = sortField != null ? sortField : AlarmField.ID;
+        AlarmCursor after = cursor == null || cursor.isEmpty() ? null : AlarmCursor.decode(cursor);
+        if (after != null && (byRelevance || after.getField() != orderField || after.isDescending() != descending)) {
+            throw new IllegalArgumentException("Cursor does not match the sort order");
+        }
+        AlarmFilterPlan plan = filterCompiler.compile(filters);
+        if (byRelevance && plan.getTextQuery() == null) {
+            throw new IllegalArgumentException("Sorting by relevance needs a text query");
+        }
+        if (plan.matchesNothing()) {
+            return new AlarmPage(new ArrayList<>(), 0, null);
+        }
+
+        AlarmStore.Snapshot snapshot = alarmStore.snapshot();
+        String key = (after != null ? "after=" + cursor : "page=" + page) + "&size=" + pageSize
+                + "&sort=" + (byRelevance ? "RELEVANCE" : orderField.name()) + (descending ? ",desc&" : ",asc&")
+                + plan.getSignature();
+        return resultCache.getOrCompute(key, snapshot.getGeneration(), () -> {
+            AlarmPage result = byRelevance
+                    ? rankedPage(snapshot, plan, page, pageSize)
+                    : computePage(snapshot, plan, page, pageSize, sortField, orderField, descending, after);
+            return new AlarmPage(Collections.unmodifiableList(result.getData()), result.getTotal(),
+                    result.getNextCursor());
+        });
+    }
+
+    private AlarmPage computePage(AlarmStore.Snapshot snapshot, AlarmFilterPlan plan, int page, int pageSize,
+                                  AlarmField sortField, AlarmField orderField, boolean descending,
+                                  AlarmCursor after) {
+        AlarmColumns alarmColumns = snapshot.getColumns();
+        if (alarmRepository != null && plan.getTextQuery() == null) {
+            return queryDatabase(plan, alarmColumns, page, pageSize, orderField, descending, after);
+        }
+        AlarmColumns.RowComparator comparator = alarmColumns.comparator(orderField, descending);
+        if (after != null) {
+            return pageAfter(snapshot, plan, pageSize, comparator, alarmColumns.after(after), orderField, descending);
+        }
+        int[] candidates = plan.isMatchAll() ? null : parallelScan.select(snapshot.getIndex(), plan);
+        int first = alarmColumns.first();
+        int total = candidates == null ? alarmColumns.count() : candidates.length;
+
+        long start = (long) (page - 1) * pageSize;
+        if (page < 1 || pageSize < 1 || start >= total) {
+            return new AlarmPage(new ArrayList<>(), total, null);
+        }
+        int end = (int) Math.min(start + pageSize, total);
+        int[] rows;
+        int from = (int) start;
+        if (sortField == null) {
+            // Rows already come in id order
+            rows = candidates;
+        } else if (end <= total / 2) {
+            rows = parallelScan.top(candidates, first, total, end, comparator, null);
+        } else {
+            rows = candidates == null ? allRows(first, total) : candidates;
+            RowSort.sort(rows, total, comparator);
+        }
+
+        List<Alarm> data = new ArrayList<>(end - from);
+        for (int i = from; i < end; i++) {
+            data.add(alarmColumns.toAlarm(rows == null ? first + i : rows[i]));
+        }
+        int last = rows == null ? first + end - 1 : rows[end - 1];
+        String nextCursor = end < total ? alarmColumns.cursorAt(last, orderField, descending).encode() : null;
+        return new AlarmPage(data, total, nextCursor);
+    }
+
+    /**
+     * A page of the matches of a text query by relevance: the best {@code page * pageSize} are selected, each
+     * scan task keeping its own and the tasks' merged, and the last {@code pageSize} of them returned.
+     */
+    private AlarmPage rankedPage(AlarmStore.Snapshot snapshot, AlarmFilterPlan plan, int page, int pageSize) {
+        if (page < 1 || pageSize < 1) {
+            return new AlarmPage(new ArrayList<>(), getTotal(snapshot, plan), null);
+        }
+        int start = (int) Math.min((long) (page - 1) * pageSize, Integer.MAX_VALUE);
+        int end = (int) Math.min((long) page * pageSize, Integer.MAX_VALUE);
+        AlarmIndex.Ranked ranked = parallelScan.rank(snapshot.getIndex(), plan, end);
+        List<Alarm> data = new ArrayList<>(Math.max(0, ranked.size() - start));
+        for (int i = start; i < ranked.size(); i++) {
+            data.add(snapshot.getColumns().toAlarm(ranked.row(i)));
+        }
+        return new AlarmPage(data, ranked.getTotal(), null);
+    }
+
+    /**
+     * Keyset page: one pass over the matches counts them and keeps the first {@code pageSize + 1} sorting after
+     * the cursor, the extra one telling whether there is a next page.
+     */
+    private AlarmPage pageAfter(AlarmStore.Snapshot snapshot, AlarmFilterPlan plan, int pageSize,
+                                AlarmColumns.RowComparator comparator, AlarmColumns.RowMatcher after,
+                                AlarmField orderField, boolean descending) {
+        if (pageSize < 1) {
+            return new AlarmPage(new ArrayList<>(), getTotal(snapshot, plan), null);
+        }
+        AlarmColumns alarmColumns = snapshot.getColumns();
+        int[] candidates = plan.isMatchAll() ? null : parallelScan.select(snapshot.getIndex(), plan);
+        int total = candidates == null ? alarmColumns.count() : candidates.length;
+        int[] rows = parallelScan.top(candidates, alarmColumns.first(), total, pageSize + 1, comparator, after);
+        int count = Math.min(rows.length, pageSize);
+        List<Alarm> data = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            data.add(alarmColumns.toAlarm(rows[i]));
+        }
+        String nextCursor = rows.length > pageSize
+                ? alarmColumns.cursorAt(rows[count - 1], orderField, descending).encode()
+                : null;
+        return new AlarmPage(data, total, nextCursor);
+    }
+
+    /**
+     * A page from the database. Offset and cursor pages alike come with their total in the same statement,
+     * except past the last page; a cursor page reads one alarm more to tell whether another page follows.
+     */
+    private AlarmPage queryDatabase(AlarmFilterPlan plan, AlarmColumns alarmColumns, int page, int pageSize,
+                                    AlarmField orderField, boolean descending, AlarmCursor after) {
+        if (pageSize < 1 || after == null && page < 1) {
+            return new AlarmPage(new ArrayList<>(), alarmRepository.count(AlarmSql.count(plan, alarmColumns)), null);
+        }
+        AlarmPage rows;
+        boolean more;
+        if (after != null) {
+            rows = alarmRepository.findPage(AlarmSql.pageAfter(plan, alarmColumns, after, pageSize + 1));
+            more = rows.getData().size() > pageSize;
+        } else {
+            long start = (long) (page - 1) * pageSize;
+            rows = alarmRepository.findPage(AlarmSql.page(plan, alarmColumns, orderField, descending, start, pageSize));
+            more = rows.getTotal() > start + rows.getData().size();
+        }
+        List<Alarm> data = more && after != null
+                ? new ArrayList<>(rows.getData().subList(0, pageSize))
+                : rows.getData();
+        int total = rows.getTotal() >= 0
+                ? rows.getTotal()
+                : alarmRepository.count(AlarmSql.count(plan, alarmColumns));
+        String nextCursor = more
+                ? AlarmSql.cursorAt(data.get(data.size() - 1), orderField, descending).encode()
+                : null;
+        return new AlarmPage(data, total, nextCursor);
+    }
+
+    private static int[] allRows(int first, int count) {
+        int[] rows = new int[count];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = first + i;
+        }
+        return rows;
+    }
+
+    /**
+     * The compiled form of {@code filters}, shared with the queries using the same filters.
+     */
+    public AlarmFilterPlan compileFilters(Map<String, String> filters) {
+        return filterCompiler.compile(filters);
+    }
+
+    public AlarmStore.Snapshot getSnapshot() {
+        return alarmStore.snapshot();
+    }
+
+    /**
+     * Ids of the alarms added or updated, in order; a change shows in {@link #getSnapshot()} once it is logged.
+     */
+    public AlarmChangeLog getChangeLog() {
+        return alarmStore.changes();
+    }
+
     public List<Alarm> getAlarms(Map<String, String> filters, int page, int pageSize, String sortBy, String sortOrder) {
-        List<Alarm> filteredAlarms = new ArrayList<>(mockAlarms);
-        
-        // Apply filters
-        for (Map.Entry<String, String> filter : filters.entrySet()) {
-            String key = filter.getKey();
-            String value = filter.getValue();
-            
-            if (value != null && !value.isEmpty()) {
-                filteredAlarms = filteredAlarms.stream()
-                    .filter(alarm -> {
-                        String alarmValue = getAlarmPropertyValue(alarm, key);
-                        return alarmValue != null && alarmValue.toLowerCase().contains(value.toLowerCase());
-                    })
-                    .collect(Collectors.toList());
+        return queryAlarms(filters, page, pageSize, sortBy, sortOrder).getData();
+    }
+    
+    public int getTotalAlarms(Map<String, String> filters) {
+        AlarmFilterPlan plan = filterCompiler.compile(filters);
+        AlarmStore.Snapshot snapshot = alarmStore.snapshot();
+        return resultCache.getOrCompute("total&" + plan.getSignature(), snapshot.getGeneration(), () -> {
+            int total = alarmRepository != null && !plan.matchesNothing() && plan.getTextQuery() == null
+                    ? alarmRepository.count(AlarmSql.count(plan, snapshot.getColumns()))
+                    : getTotal(snapshot, plan);
+            return new AlarmPage(Collections.emptyList(), total, null);
+        }).getTotal();
+    }
+
+    private int getTotal(AlarmStore.Snapshot snapshot, AlarmFilterPlan plan) {
+        return plan.isMatchAll() ? snapshot.getColumns().count() : parallelScan.count(snapshot.getIndex(), plan);
+    }
+
+    /**
+     * Hits, misses and estimated size of the cached query results.
+     */
+    public QueryResultCache.Stats getResultCacheStats() {
+        return resultCache.getStats();
+    }
+
+    private static long estimateBytes(AlarmPage page) {
+        // The page with its list, then per alarm the object, its boxed ids and count and its timestamps
+        long bytes = 48 + QueryResultCache.estimate(page.getNextCursor());
+        for (Alarm alarm : page.getData()) {
+            bytes += 8 + 112 + 4 * 16 + 2 * 72
+                    + QueryResultCache.estimate(alarm.getGatewayName())
+                    + QueryResultCache.estimate(alarm.getType())
+                    + QueryResultCache.estimate(alarm.getSeverity())
+                    + QueryResultCache.estimate(alarm.getMessage())
+                    + QueryResultCache.estimate(alarm.getStatus())
+                    + QueryResultCache.estimate(alarm.getCallType())
+                    + QueryResultCache.estimate(alarm.getCarrier())
+                    + QueryResultCache.estimate(alarm.getSiteName())
+                    + QueryResultCache.estimate(alarm.getCaller())
+                    + QueryResultCache.estimate(alarm.getCaller_number())
+                    + QueryResultCache.estimate(alarm.getCallee_number());
+        }
+        return bytes;
+    }
+    
+    /**
+     * Stores a new alarm under the next id, or folds it into the open alarm it repeats; a missing timestamp
+     * becomes the current time.
+     *
+     * @return the alarm stored, or the one folded into with its occurrences so far
+     */
+    public Alarm addAlarm(Alarm alarm) {
+        if (correlator == null) {
+            long id = addAlarms(List.of(alarm));
+            return alarmStore.snapshot().getColumns().toAlarm((int) (id - 1));
+        }
+        AlarmCorrelator.Batch batch = correlate(List.of(alarm));
+        Alarm stored = alarmStore.snapshot().getColumns().toAlarm((int) (batch.id(0) - 1));
+        stored.setOccurrences(batch.occurrences(0));
+        stored.setLastSeen(batch.lastSeen(0));
+        return stored;
+    }
+
+    /**
+     * Stores {@code alarms} like {@link #addAlarms}, except that with correlation on the repeats of an open
+     * alarm fold into it.
+     *
+     * @throws IllegalArgumentException if an alarm is {@code null} or has a value out of range; none of the
+     *                                  batch is stored or folded then
+     */
+    public AlarmIngestion ingestAlarms(List<Alarm> alarms) {
+        if (correlator == null) {
+            long firstId = addAlarms(alarms);
+            long[] ids = new long[alarms.size()];
+            for (int i = 0; i < ids.length; i++) {
+                ids[i] = firstId + i;
             }
+            return new AlarmIngestion(ids, ids.length, 0);
         }
-        
-        // Apply sorting
-        if (sortBy != null && !sortBy.isEmpty()) {
-            int sortMultiplier = "desc".equalsIgnoreCase(sortOrder) ? -1 : 1;
-            
-            filteredAlarms.sort((a, b) -> {
-                String aValue = getAlarmPropertyValue(a, sortBy);
-                String bValue = getAlarmPropertyValue(b, sortBy);
-                
-                if (aValue == null) return sortMultiplier * -1;
-                if (bValue == null) return sortMultiplier;
-                
-                if (sortBy.equals("timestamp")) {
-                    return sortMultiplier * a.getTimestamp().compareTo(b.getTimestamp());
-                }
-                
-                return sortMultiplier * aValue.compareTo(bValue);
-            });
+        AlarmCorrelator.Batch batch = correlate(alarms);
+        return new AlarmIngestion(batch.ids(), batch.getFresh().size(), batch.getFolded());
+    }
+
+    private AlarmCorrelator.Batch correlate(List<Alarm> alarms) {
+        correlationLock.lock();
+        try {
+            AlarmCorrelator.Batch batch = correlator.correlate(alarms, alarmStore.snapshot().getColumns(),
+                    LocalDateTime.now());
+            long firstId = batch.getFresh().isEmpty() ? 0 : addAlarms(batch.getFresh());
+            correlator.commit(batch, firstId);
+            return batch;
+        } finally {
+            correlationLock.unlock();
         }
-        
-        // Apply pagination
-        int start = (page - 1) * pageSize;
-        int end = Math.min(start + pageSize, filteredAlarms.size());
-        
-        if (start >= filteredAlarms.size()) {
-            return new ArrayList<>();
+    }
+
+    /**
+     * Stores {@code alarms} under consecutive ids in one append, concurrently with other batches and with the
+     * queries.
+     *
+     * @return the id of the first alarm
+     * @throws IllegalArgumentException if an alarm is {@code null} or has a value out of range; none of the
+     *                                  batch is stored then
+     */
+    public long addAlarms(List<Alarm> alarms) {
+        if (alarmRepository == null) {
+            return alarmStore.append(alarms);
+        }
+        persistLock.lock();
+        try {
+            long firstId = alarmStore.snapshot().getColumns().size() + 1L;
+            LocalDateTime now = LocalDateTime.now();
+            List<Alarm> rows = new ArrayList<>(alarms.size());
+            for (int i = 0; i < alarms.size(); i++) {
+                rows.add(toPersisted(alarms.get(i), firstId + i, now));
+            }
+            alarmRepository.insertAll(rows);
+            if (alarmStore.append(rows) != firstId) {
+                throw new IllegalStateException("Alarm store and database ids diverged at " + firstId);
+            }
+            return firstId;
+        } finally {
+            persistLock.unlock();
         }
-        
-        return filteredAlarms.subList(start, end);
     }
     
-    public int getTotalAlarms(Map<String, String> filters) {
-        List<Alarm> filteredAlarms = new ArrayList<>(mockAlarms);
-        
-        // Apply filters
-        for (Map.Entry<String, String> filter : filters.entrySet()) {
-            String key = filter.getKey();
-            String value = filter.getValue();
-            
-            if (value != null && !value.isEmpty()) {
-                filteredAlarms = filteredAlarms.stream()
-                    .filter(alarm -> {
-                        String alarmValue = getAlarmPropertyValue(alarm, key);
-                        return alarmValue != null && alarmValue.toLowerCase().contains(value.toLowerCase());
-                    })
-                    .collect(Collectors.toList());
+    /**
+     * Replaces the alarm with the given id; a missing timestamp, occurrences or last-seen time keeps the
+     * previous one, the status stays as it is (see {@link #changeStatuses}), and the version moves on.
+     *
+     * @return the stored alarm, or {@code null} if there is no alarm with that id
+     */
+    public Alarm updateAlarm(Long id, Alarm alarm) {
+        if (id == null) {
+            return null;
+        }
+        if (alarmRepository == null) {
+            return alarmStore.update(id, alarm);
+        }
+        persistLock.lock();
+        try {
+            AlarmColumns alarmColumns = alarmStore.snapshot().getColumns();
+            if (id <= alarmColumns.first() || id > alarmColumns.size()) {
+                return null;
             }
+            Alarm previous = alarmColumns.toAlarm((int) (id - 1));
+            Alarm row = toPersisted(alarm, id, previous.getTimestamp());
+            if (alarm.getOccurrences() == null) {
+                row.setOccurrences(previous.getOccurrences());
+            }
+            if (alarm.getLastSeen() == null) {
+                row.setLastSeen(previous.getLastSeen());
+            }
+            row.setStatus(previous.getStatus());
+            row.setVersion(previous.getVersion() + 1);
+            alarmRepository.save(row);
+            return alarmStore.update(id, row);
+        } finally {
+            persistLock.unlock();
         }
-        
-        return filteredAlarms.size();
+    }
+
+    /**
+     * Moves alarms along the {@link AlarmStatus} workflow, each given by its id, the version it was read at and
+     * its new status, and each only if it is still at that version. Transitions of alarms in different store
+     * chunks run concurrently with each other and with appends; see {@link AlarmStore#changeStatus}.
+     * <p>
+     * With the database as the record, the transitions are checked against the store and then made there with
+     * the same version condition, in one batch; those the database refuses are conflicts, and only the others
+     * reach the store.
+     *
+     * @return the outcome of every transition, in the order given
+     * @throws IllegalArgumentException if a transition has no id or version, or a status outside the workflow
+     */
+    public AlarmStatusChange changeStatuses(List<Alarm> transitions) {
+        AlarmStatusChange change = AlarmStatusChange.of(transitions);
+        if (alarmRepository == null) {
+            alarmStore.changeStatus(change);
+            return change;
+        }
+        persistLock.lock();
+        try {
+            change.check(alarmStore.snapshot().getColumns());
+            int[] pending = new int[change.size()];
+            long[] ids = new long[change.size()];
+            int[] versions = new int[change.size()];
+            String[] statuses = new String[change.size()];
+            int count = 0;
+            for (int i = 0; i < change.size(); i++) {
+                if (change.isPending(i)) {
+                    pending[count] = i;
+                    ids[count] = change.id(i);
+                    versions[count] = change.expectedVersion(i);
+                    statuses[count] = change.target(i).getLabel();
+                    count++;
+                }
+            }
+            if (count > 0) {
+                int[] updated = alarmRepository.updateStatuses(ids, versions, statuses, count);
+                for (int k = 0; k < count; k++) {
+                    if (updated[k] == 0) {
+                        change.conflict(pending[k]);
+                    }
+                }
+                alarmStore.changeStatus(change);
+            }
+            return change;
+        } finally {
+            persistLock.unlock();
+        }
+    }
+
+    /**
+     * The row to persist for {@code alarm}, equal to what the store will hold; timestamps are cut to the
+     * microseconds most databases keep.
+     */
+    private static Alarm toPersisted(Alarm alarm, long id, LocalDateTime defaultTimestamp) {
+        Alarm row = AlarmColumns.normalize(alarm, id, defaultTimestamp);
+        row.setTimestamp(row.getTimestamp().truncatedTo(ChronoUnit.MICROS));
+        row.setLastSeen(row.getLastSeen().truncatedTo(ChronoUnit.MICROS));
+        return row;
     }
     
+    /**
+     * Alarm counts, durations and charges over a time range, from counters maintained as alarms are stored, so
+     * the cost depends on the number of minute/hour/day buckets merged and not on the number of alarms.
+     *
+     * @param groupBy  a categorical property to break the totals down by, or {@code null}
+     * @param from     ISO start of the range (inclusive, to the minute), or {@code null} for the first alarm
+     * @param to       ISO end of the range (exclusive, to the minute), or {@code null} for after the last alarm
+     * @param interval {@code minute}, {@code hour} or {@code day} for a series too, or {@code null}
+     * @throws IllegalArgumentException if a parameter is invalid
+     */
+    public AlarmAggregation getAggregations(String groupBy, String from, String to, String interval) {
+        AlarmField groupField = null;
+        if (groupBy != null && !groupBy.isEmpty()) {
+            groupField = AlarmField.fromName(groupBy);
+            if (groupField == null || !AlarmColumns.isDictionaryEncoded(groupField)) {
+                throw new IllegalArgumentException("Cannot group alarms by " + groupBy);
+            }
+        }
+        AlarmAggregates.Interval seriesInterval = null;
+        if (interval != null && !interval.isEmpty()) {
+            seriesInterval = AlarmAggregates.Interval.fromName(interval);
+            if (seriesInterval == null) {
+                throw new IllegalArgumentException("Unknown interval " + interval);
+            }
+        }
+        return alarmStore.aggregate(groupField, parseTimestamp(from), parseTimestamp(to), seriesInterval);
+    }
+
+    private static LocalDateTime parseTimestamp(String value) {
+        if (value == null || value.isEmpty()) {
+            return null;
+        }
+        try {
+            return LocalDateTime.parse(value);
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid timestamp " + value, e);
+        }
+    }
+
     public List<String> getCallTypes() {
         return alarmOptions.get("callTypes");
     }
@@ -99,37 +802,32 @@ public class AlarmService {
         return alarmOptions.get("statuses");
     }
     
+    /**
+     * Values of {@code field} containing {@code query} for autocomplete, those starting with it first and the
+     * most frequent first. Served by the {@link AlarmSuggestionIndex} except for the numeric ids, which are
+     * still matched row by row.
+     */
     public List<String> getSuggestions(String field, String query, int limit) {
-        return mockAlarms.stream()
-            .map(alarm -> getAlarmPropertyValue(alarm, field))
-            .filter(Objects::nonNull)
-            .filter(value -> value.toLowerCase().contains(query.toLowerCase()))
-            .distinct()
-            .limit(limit)
-            .collect(Collectors.toList());
-    }
-    
-    private String getAlarmPropertyValue(Alarm alarm, String propertyName) {
-        switch (propertyName.toLowerCase()) {
-            case "id": return String.valueOf(alarm.getId());
-            case "gatewayid": return String.valueOf(alarm.getGatewayId());
-            case "gatewayname": return alarm.getGatewayName();
-            case "type": return alarm.getType();
-            case "severity": return alarm.getSeverity();
-            case "message": return alarm.getMessage();
-            case "status": return alarm.getStatus();
-            case "calltype": return alarm.getCallType();
-            case "carrier": return alarm.getCarrier();
-            case "siteid": return String.valueOf(alarm.getSiteId());
-            case "sitename": return alarm.getSiteName();
-            case "caller_number": return alarm.getCaller_number();
-            case "callee_number": return alarm.getCallee_number();
-            default: return null;
+        AlarmField alarmField = AlarmField.fromName(field);
+        if (alarmField == null || !alarmField.isFilterable() || limit < 1) {
+            return new ArrayList<>();
+        }
+        String needle = query.toLowerCase(Locale.ROOT);
+        if (alarmStore.hasSuggestionIndex(alarmField)) {
+            return alarmStore.suggest(alarmField, needle, limit);
+        }
+        AlarmColumns alarmColumns = alarmStore.snapshot().getColumns();
+        Set<String> suggestions = new LinkedHashSet<>();
+        for (int row = alarmColumns.first(); row < alarmColumns.size() && suggestions.size() < limit; row++) {
+            String value = alarmColumns.text(alarmField, row);
+            if (value != null && AlarmFilterPlan.containsIgnoreCase(value, needle)) {
+                suggestions.add(value);
+            }
         }
+        return new ArrayList<>(suggestions);
     }
     
-    private List<Alarm> generateMockAlarms() {
-        List<Alarm> alarms = new ArrayList<>();
+    private void generateMockAlarms(int count) {
 
         String[] types = {"Connection Lost", "Power Failure", "Hardware Error", "Configuration Error", "Security Alert"};
         String[] severities = {"Low", "Medium", "High", "Critical"};
@@ -149,7 +847,8 @@ public class AlarmService {
             "Software update failed"
         };
 
-        for (int i = 1; i <= 100; i++) {
+        List<Alarm> batch = new ArrayList<>(MOCK_BATCH_SIZE);
+        for (int i = 1; i <= count; i++) {
             Long id = (long) i;
             Long gatewayId = (long) i;
             Long siteId = (long) i;
@@ -159,7 +858,7 @@ public class AlarmService {
             boolean isMissed = i % 5 == 0; // Every 5th alarm will be a missed call
             String carrier = i % 3 == 0 ? carriers[i % carriers.length] : null;
             
-            alarms.add(Alarm.builder()
+            Alarm alarm = Alarm.builder()
                     .id(id)
                     .gatewayId(gatewayId)
                     .gatewayName("Gateway " + (i % 50 + 1))
@@ -178,10 +877,13 @@ public class AlarmService {
                     .callee_number(generateRandomPhone())
                     .duration_seconds(isMissed ? 0 : new Random().nextInt(3600)) // Max 1 hour
                     .charge_amount(isMissed ? 0.0 : Math.round(new Random().nextDouble() * 10.0 * 100.0) / 100.0) // Max $10 with 2 decimal places
-                    .build());
+                    .build();
+            batch.add(alarm);
+            if (batch.size() == MOCK_BATCH_SIZE || i == count) {
+                addAlarms(batch);
+                batch.clear();
+            }
         }
-        
-        return alarms;
     }
     
     /**
@@ -0,0 +1,556 @@
+package com.gateway.backend.service;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmChangeLog;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.AlarmFilterPlan;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.stereotype.Service;
+import org.springframework.web.servlet.mvc.method.annotation.ResponseBodyEmitter;
+import org.springframework.web.servlet.mvc.method.annotation.SseEmitter;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Server-sent events of the alarms added or updated, for dashboards that would otherwise poll the listing.
+ * <p>
+ * A single fan-out thread follows the {@link AlarmChangeLog}: each change is matched once per distinct filter
+ * among the subscribers and serialized once, then queued on every matching subscriber. Queues are bounded and
+ * keyed by alarm, so an alarm changing again before it was sent replaces its pending event. A small pool of
+ * sender threads writes the queues out, one subscriber at a time each; connections themselves hold no thread.
+ * A write still blocked after the send timeout means the client stopped reading: the subscriber is dropped and
+ * the pool gets a thread in place of the blocked one until the write returns, so stalled clients cannot hold
+ * up the others.
+ * <p>
+ * Event ids are change sequences: a client reconnecting with {@code Last-Event-ID} gets the matching changes
+ * it missed, as long as they are still in the log and fit its queue. Otherwise it gets a {@code reset} event
+ * and should reload the listing. A subscriber whose queue overflows is disconnected; its reconnection resumes
+ * from the last event it actually received.
+ */
+@Service
+public class AlarmStreamService {
+
+    private static final Logger logger = LoggerFactory.getLogger(AlarmStreamService.class);
+
+    private static final int READ_BATCH = 4096;
+    private static final long RESET_KEY = 0;
+    private static final MediaType TEXT_PLAIN = new MediaType("text", "plain", StandardCharsets.UTF_8);
+
+    private static final int IDLE = 0;
+    private static final int SENDING = 1;
+    private static final int STALLED = 2;
+
+    private final AlarmService alarmService;
+    private final ObjectMapper objectMapper;
+    private final int bufferSize;
+    private final long timeoutMillis;
+    private final long heartbeatNanos;
+    private final long pollNanos;
+    private final int senderThreads;
+    private final long sendTimeoutNanos;
+
+    private final Queue<Subscriber> arrivals = new ConcurrentLinkedQueue<>();
+    private final Queue<Subscriber> departures = new ConcurrentLinkedQueue<>();
+    private final AtomicInteger subscriberCount = new AtomicInteger();
+    private volatile boolean running;
+    private volatile Thread fanOut;
+    private ThreadPoolExecutor senders;
+
+    // Owned by the fan-out thread
+    private final Map<String, List<Subscriber>> subscribersByFilter = new HashMap<>();
+    private final long[] changedIds = new long[READ_BATCH];
+    private final List<Subscriber> ready = new ArrayList<>();
+    private long position;
+
+    @Autowired
+    public AlarmStreamService(
+            AlarmService alarmService,
+            MappingJackson2HttpMessageConverter jsonConverter,
+            @Value("${alarms.stream.buffer-size:1024}") int bufferSize,
+            @Value("${alarms.stream.timeout-seconds:1800}") long timeoutSeconds,
+            @Value("${alarms.stream.heartbeat-seconds:15}") long heartbeatSeconds,
+            @Value("${alarms.stream.poll-interval-ms:50}") long pollIntervalMs,
+            @Value("${alarms.stream.sender-threads:4}") int senderThreads,
+            @Value("${alarms.stream.send-timeout-ms:10000}") long sendTimeoutMs) {
+        this.alarmService = alarmService;
+        // Same serialization as the REST responses
+        this.objectMapper = jsonConverter.getObjectMapper();
+        this.bufferSize = Math.max(1, bufferSize);
+        this.timeoutMillis = TimeUnit.SECONDS.toMillis(timeoutSeconds);
+        this.heartbeatNanos = TimeUnit.SECONDS.toNanos(heartbeatSeconds);
+        this.pollNanos = TimeUnit.MILLISECONDS.toNanos(pollIntervalMs);
+        this.senderThreads = Math.max(1, senderThreads);
+        this.sendTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeoutMs);
+    }
+
+    @PostConstruct
+    public void start() {
+        AtomicInteger threads = new AtomicInteger();
+        senders = new ThreadPoolExecutor(senderThreads, senderThreads, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+                    Thread thread = new Thread(runnable, "alarm-stream-sender-" + threads.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                });
+        position = alarmService.getChangeLog().lastSequence();
+        running = true;
+        Thread thread = new Thread(this::fanOut, "alarm-stream-fan-out");
+        thread.setDaemon(true);
+        fanOut = thread;
+        thread.start();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        Thread thread = fanOut;
+        if (thread != null) {
+            LockSupport.unpark(thread);
+        }
+        if (senders != null) {
+            senders.shutdownNow();
+        }
+    }
+
+    /**
+     * Opens a stream of the changed alarms matching {@code filters}, the same filters as the listing takes.
+     *
+     * @param lastEventId the id of the last event received on a previous connection, or {@code null} to only
+     *                    get the changes from now on
+     */
+    public SseEmitter subscribe(Map<String, String> filters, String lastEventId) {
+        AlarmFilterPlan plan = alarmService.compileFilters(filters);
+        SseEmitter emitter = new SseEmitter(timeoutMillis);
+        Subscriber subscriber = new Subscriber(emitter, plan, parseEventId(lastEventId));
+        emitter.onCompletion(subscriber::close);
+        emitter.onTimeout(subscriber::close);
+        emitter.onError(error -> subscriber.close());
+        subscriberCount.incrementAndGet();
+        arrivals.add(subscriber);
+        LockSupport.unpark(fanOut);
+        return emitter;
+    }
+
+    public int getSubscriberCount() {
+        return subscriberCount.get();
+    }
+
+    private static long parseEventId(String lastEventId) {
+        if (lastEventId == null || lastEventId.isBlank()) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(lastEventId.trim());
+        } catch (NumberFormatException e) {
+            // Not one of ours: the client gets a reset
+            return Long.MAX_VALUE;
+        }
+    }
+
+    private void fanOut() {
+        long nextHeartbeat = System.nanoTime() + heartbeatNanos;
+        while (running) {
+            try {
+                leave();
+                join();
+                forward();
+                long now = System.nanoTime();
+                abandonStalledSends(now);
+                if (now - nextHeartbeat >= 0) {
+                    heartbeat();
+                    nextHeartbeat = now + heartbeatNanos;
+                }
+                for (Subscriber subscriber : ready) {
+                    subscriber.ready = false;
+                    subscriber.schedule();
+                }
+                ready.clear();
+                if (arrivals.isEmpty() && position == alarmService.getChangeLog().lastSequence()) {
+                    LockSupport.parkNanos(this, pollNanos);
+                }
+            } catch (RuntimeException e) {
+                logger.error("Alarm stream fan-out failed", e);
+            }
+        }
+    }
+
+    private void markReady(Subscriber subscriber) {
+        if (!subscriber.ready) {
+            subscriber.ready = true;
+            ready.add(subscriber);
+        }
+    }
+
+    private void leave() {
+        for (Subscriber subscriber; (subscriber = departures.poll()) != null; ) {
+            String key = subscriber.plan.getSignature();
+            List<Subscriber> subscribers = subscribersByFilter.get(key);
+            if (subscribers != null && subscribers.remove(subscriber) && subscribers.isEmpty()) {
+                subscribersByFilter.remove(key);
+            }
+        }
+    }
+
+    /**
+     * Registers the new subscribers, replaying the changes they missed up to the current position first.
+     */
+    private void join() {
+        for (Subscriber subscriber; (subscriber = arrivals.poll()) != null; ) {
+            if (subscriber.closed.get()) {
+                continue;
+            }
+            if (subscriber.lastEventId >= 0 && !replay(subscriber)) {
+                subscriber.reset(position);
+            }
+            if (subscriber.hasPending()) {
+                markReady(subscriber);
+            }
+            subscribersByFilter.computeIfAbsent(subscriber.plan.getSignature(), key -> new ArrayList<>())
+                    .add(subscriber);
+        }
+    }
+
+    /**
+     * @return {@code false} if the missed changes cannot all be delivered
+     */
+    private boolean replay(Subscriber subscriber) {
+        if (subscriber.lastEventId > position) {
+            return false;
+        }
+        long from = subscriber.lastEventId + 1;
+        AlarmChangeLog changeLog = alarmService.getChangeLog();
+        while (from <= position) {
+            int count = changeLog.read(from, changedIds);
+            if (count < 0) {
+                return false;
+            }
+            count = (int) Math.min(count, position - from + 1);
+            AlarmColumns columns = alarmService.getSnapshot().getColumns();
+            for (int i = 0; i < count; i++) {
+                if (changedIds[i] <= columns.first()) {
+                    // Dropped by retention since
+                    continue;
+                }
+                Alarm alarm = columns.toAlarm((int) (changedIds[i] - 1));
+                if (subscriber.plan.matches(alarm) && !subscriber.offer(new Event(from + i, alarm.getId(), toJson(alarm)))) {
+                    return false;
+                }
+            }
+            from += count;
+        }
+        return true;
+    }
+
+    private void forward() {
+        AlarmChangeLog changeLog = alarmService.getChangeLog();
+        long last = changeLog.lastSequence();
+        if (subscribersByFilter.isEmpty()) {
+            position = last;
+            return;
+        }
+        while (position < last) {
+            int count = changeLog.read(position + 1, changedIds);
+            if (count < 0) {
+                logger.warn("Alarm stream fell behind the change log, resetting {} subscriber(s)",
+                        subscriberCount.get());
+                position = last;
+                for (List<Subscriber> subscribers : subscribersByFilter.values()) {
+                    for (Subscriber subscriber : subscribers) {
+                        subscriber.reset(position);
+                        markReady(subscriber);
+                    }
+                }
+                return;
+            }
+            AlarmColumns columns = alarmService.getSnapshot().getColumns();
+            for (int i = 0; i < count; i++) {
+                if (changedIds[i] > columns.first()) {
+                    dispatch(position + 1 + i, columns.toAlarm((int) (changedIds[i] - 1)));
+                }
+            }
+            position += count;
+        }
+    }
+
+    private void dispatch(long sequence, Alarm alarm) {
+        Event event = null;
+        for (List<Subscriber> subscribers : subscribersByFilter.values()) {
+            if (!subscribers.get(0).plan.matches(alarm)) {
+                continue;
+            }
+            if (event == null) {
+                event = new Event(sequence, alarm.getId(), toJson(alarm));
+            }
+            for (Subscriber subscriber : subscribers) {
+                if (!subscriber.offer(event)) {
+                    logger.debug("Dropping slow alarm stream subscriber after {} pending events", bufferSize);
+                    subscriber.drop();
+                }
+                markReady(subscriber);
+            }
+        }
+    }
+
+    private void heartbeat() {
+        for (List<Subscriber> subscribers : subscribersByFilter.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.heartbeat();
+                markReady(subscriber);
+            }
+        }
+    }
+
+    private void abandonStalledSends(long now) {
+        for (List<Subscriber> subscribers : subscribersByFilter.values()) {
+            for (Subscriber subscriber : subscribers) {
+                subscriber.abandonIfStalled(now);
+            }
+        }
+    }
+
+    /**
+     * Gives the pool a thread in place of one blocked in a stalled send; the core size grows after the maximum
+     * and shrinks before it, which the pool requires.
+     */
+    private void addSender() {
+        synchronized (senders) {
+            senders.setMaximumPoolSize(senders.getMaximumPoolSize() + 1);
+            senders.setCorePoolSize(senders.getCorePoolSize() + 1);
+        }
+    }
+
+    /**
+     * Takes back the thread {@link #addSender} added, once the stalled send returned.
+     */
+    private void removeSender() {
+        synchronized (senders) {
+            senders.setCorePoolSize(senders.getCorePoolSize() - 1);
+            senders.setMaximumPoolSize(senders.getMaximumPoolSize() - 1);
+        }
+    }
+
+    private String toJson(Alarm alarm) {
+        try {
+            return objectMapper.writeValueAsString(alarm);
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Cannot serialize alarm " + alarm.getId(), e);
+        }
+    }
+
+    /**
+     * An alarm change ready to send, or a reset when {@code json} is {@code null}.
+     */
+    private record Event(long sequence, long alarmId, String json) {
+    }
+
+    private final class Subscriber {
+        private final SseEmitter emitter;
+        private final AlarmFilterPlan plan;
+        private final long lastEventId;
+        private final AtomicBoolean scheduled = new AtomicBoolean();
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private final Object sendLock = new Object();
+        private final AtomicInteger sendState = new AtomicInteger(IDLE);
+        private volatile long sendStartedNanos;
+        // Owned by the fan-out thread: already in the ready list
+        private boolean ready;
+
+        // Guarded by this; pending events by alarm id, in sequence order
+        private final LinkedHashMap<Long, Event> pending = new LinkedHashMap<>();
+        private boolean heartbeatDue;
+        private boolean dropped;
+
+        private Subscriber(SseEmitter emitter, AlarmFilterPlan plan, long lastEventId) {
+            this.emitter = emitter;
+            this.plan = plan;
+            this.lastEventId = lastEventId;
+        }
+
+        /**
+         * @return {@code false} if the queue is full
+         */
+        synchronized boolean offer(Event event) {
+            if (dropped) {
+                return true;
+            }
+            // Re-inserted rather than replaced, so that events stay in sequence order
+            if (pending.remove(event.alarmId()) == null && pending.size() >= bufferSize) {
+                return false;
+            }
+            pending.put(event.alarmId(), event);
+            return true;
+        }
+
+        synchronized boolean hasPending() {
+            return !pending.isEmpty();
+        }
+
+        synchronized void reset(long sequence) {
+            pending.clear();
+            pending.put(RESET_KEY, new Event(sequence, RESET_KEY, null));
+        }
+
+        synchronized void drop() {
+            pending.clear();
+            dropped = true;
+        }
+
+        synchronized void heartbeat() {
+            heartbeatDue = true;
+        }
+
+        void schedule() {
+            if (!closed.get() && scheduled.compareAndSet(false, true)) {
+                try {
+                    senders.execute(this::drain);
+                } catch (RejectedExecutionException e) {
+                    scheduled.set(false);
+                }
+            }
+        }
+
+        /**
+         * Writes out the pending events, on a sender thread; they go out in one write per batch.
+         */
+        private void drain() {
+            try {
+                while (true) {
+                    List<Event> events;
+                    boolean comment;
+                    boolean complete;
+                    synchronized (this) {
+                        complete = dropped;
+                        events = new ArrayList<>(pending.values());
+                        pending.clear();
+                        comment = heartbeatDue && events.isEmpty();
+                        heartbeatDue = false;
+                        if (events.isEmpty() && !comment && !complete) {
+                            scheduled.set(false);
+                            return;
+                        }
+                    }
+                    Set<ResponseBodyEmitter.DataWithMediaType> data = new LinkedHashSet<>();
+                    if (comment) {
+                        data.addAll(SseEmitter.event().comment("heartbeat").build());
+                    }
+                    for (Event event : events) {
+                        data.addAll(toSse(event).build());
+                    }
+                    synchronized (sendLock) {
+                        if (closed.get()) {
+                            return;
+                        }
+                        if (complete) {
+                            // It reconnects and resumes from the last event it received
+                            close();
+                            emitter.complete();
+                            return;
+                        }
+                        send(data);
+                    }
+                }
+            } catch (IOException | IllegalStateException e) {
+                // The client went away; the container reports it through the emitter callbacks too
+                logger.debug("Alarm stream send failed: {}", e.toString());
+                close();
+                scheduled.set(false);
+            }
+        }
+
+        /**
+         * Sends {@code data} under the watch of the fan-out thread, which {@link #abandonIfStalled abandons} the
+         * subscriber if the send blocks for longer than the send timeout.
+         */
+        private void send(Set<ResponseBodyEmitter.DataWithMediaType> data) throws IOException {
+            sendStartedNanos = System.nanoTime();
+            sendState.set(SENDING);
+            boolean stalled;
+            try {
+                emitter.send(data);
+            } finally {
+                stalled = !sendState.compareAndSet(SENDING, IDLE);
+                if (stalled) {
+                    sendState.set(IDLE);
+                    removeSender();
+                }
+            }
+            if (stalled) {
+                // Only now: the emitter cannot be completed while a send holds it
+                emitter.completeWithError(new IOException("Alarm stream send timed out"));
+            }
+        }
+
+        /**
+         * Drops the subscriber if a send has been blocked for longer than the send timeout, and lends the pool
+         * another thread until that send returns. Called by the fan-out thread.
+         */
+        void abandonIfStalled(long now) {
+            if (sendState.get() == SENDING && now - sendStartedNanos > sendTimeoutNanos
+                    && sendState.compareAndSet(SENDING, STALLED)) {
+                logger.debug("Dropping alarm stream subscriber that stopped reading");
+                addSender();
+                if (closed.compareAndSet(false, true)) {
+                    depart();
+                }
+            }
+        }
+
+        private SseEmitter.SseEventBuilder toSse(Event event) {
+            SseEmitter.SseEventBuilder builder = SseEmitter.event().id(Long.toString(event.sequence()));
+            if (event.json() == null) {
+                return builder.name("reset").data(Long.toString(event.sequence()), TEXT_PLAIN);
+            }
+            return builder.name("alarm").data(event.json(), TEXT_PLAIN);
+        }
+
+        /**
+         * Stops the sends; called from the emitter callbacks too, where waiting for a send in progress keeps it
+         * from writing to a response the container has recycled for another request. An abandoned subscriber
+         * sends nothing more, and its stalled send holds the connection until it returns anyway, so the
+         * callbacks do not wait for it.
+         */
+        void close() {
+            if (closed.get()) {
+                return;
+            }
+            synchronized (sendLock) {
+                if (!closed.compareAndSet(false, true)) {
+                    return;
+                }
+            }
+            depart();
+        }
+
+        private void depart() {
+            subscriberCount.decrementAndGet();
+            departures.add(this);
+            LockSupport.unpark(fanOut);
+        }
+    }
+}
@@ -0,0 +1,17 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Gateway;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of a gateway search together with the number of gateways matching its query.
+ */
+@Getter
+@AllArgsConstructor
+public class GatewayPage {
+    private final List<Gateway> data;
+    private final int total;
+}
@@ -1,38 +1,93 @@
 package com.gateway.backend.service;
 
 import com.gateway.backend.model.Gateway;
+import com.gateway.backend.service.cache.QueryResultCache;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import java.time.LocalDateTime;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
 import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 
+/**
+ * Mock gateways. Search pages are cached by normalized query in a {@link QueryResultCache}, stamped with a
+ * generation that every configuration save moves on, so no page outlives a write.
+ */
 @Service
 public class GatewayService {
 
     private final List<Gateway> mockGateways;
+    private final AtomicLong generation = new AtomicLong();
+    private final QueryResultCache<GatewayPage> resultCache;
 
     public GatewayService() {
-        this.mockGateways = generateMockGateways();
+        this(50);
+    }
+
+    public GatewayService(int mockGatewayCount) {
+        this(mockGatewayCount, 0, 0);
+    }
+
+    /**
+     * @param cacheMaxEntries most search results cached, {@code 0} to disable the cache
+     * @param cacheMaxBytes   most estimated bytes of cached results
+     */
+    @Autowired
+    public GatewayService(@Value("${gateways.cache.max-entries:256}") int cacheMaxEntries,
+                          @Value("${gateways.cache.max-bytes:8388608}") long cacheMaxBytes) {
+        this(50, cacheMaxEntries, cacheMaxBytes);
+    }
+
+    private GatewayService(int mockGatewayCount, int cacheMaxEntries, long cacheMaxBytes) {
+        this.mockGateways = generateMockGateways(mockGatewayCount);
+        this.resultCache = new QueryResultCache<>("Gateway search", cacheMaxEntries, cacheMaxBytes, false,
+                GatewayService::estimateBytes);
     }
 
     public List<Gateway> searchGateways(String query, int page, int pageSize, String sortBy, String sortOrder) {
+        return queryGateways(query, page, pageSize, sortBy, sortOrder).getData();
+    }
+
+    /**
+     * A page of the gateways whose name or serial contains {@code query} (ignored under 3 characters) and their
+     * number, from the cache when the same search was made since the last write. The page is unmodifiable.
+     */
+    public GatewayPage queryGateways(String query, int page, int pageSize, String sortBy, String sortOrder) {
+        String needle = query != null && query.length() >= 3 ? query.toLowerCase(Locale.ROOT) : "";
+        boolean sorted = sortBy != null && !sortBy.isEmpty();
+        boolean descending = sorted && "desc".equalsIgnoreCase(sortOrder);
+        String key = "page=" + page + "&size=" + pageSize + "&sort=" + (sorted ? sortBy : "")
+                + (descending ? ",desc&q=" : ",asc&q=") + needle;
+        return resultCache.getOrCompute(key, generation.get(),
+                () -> search(needle, page, pageSize, sorted ? sortBy : null, descending));
+    }
+
+    private GatewayPage search(String needle, int page, int pageSize, String sortBy, boolean descending) {
         List<Gateway> filteredGateways = mockGateways;
         
-        if (query != null && !query.isEmpty() && query.length() >= 3) {
+        if (!needle.isEmpty()) {
             filteredGateways = filteredGateways.stream()
                 .filter(gateway -> 
-                    gateway.getName().toLowerCase().contains(query.toLowerCase()) ||
-                    gateway.getSerial().toLowerCase().contains(query.toLowerCase()))
+                    gateway.getName().toLowerCase().contains(needle) ||
+                    gateway.getSerial().toLowerCase().contains(needle))
                 .collect(Collectors.toList());
         }
         
-        if (sortBy != null && !sortBy.isEmpty()) {
-            int sortMultiplier = "desc".equalsIgnoreCase(sortOrder) ? -1 : 1;
+        if (sortBy != null) {
+            // Sort a copy: the full list is shared by concurrent searches
+            if (filteredGateways == mockGateways) {
+                filteredGateways = new ArrayList<>(mockGateways);
+            }
+
+            int sortMultiplier = descending ? -1 : 1;
             
             filteredGateways.sort((a, b) -> {
                 switch (sortBy) {
@@ -52,25 +107,46 @@ public class GatewayService {
             });
         }
         
-        int start = (page - 1) * pageSize;
-        int end = Math.min(start + pageSize, filteredGateways.size());
+        int total = filteredGateways.size();
+        long start = (long) (page - 1) * pageSize;
         
-        if (start >= filteredGateways.size()) {
-            return new ArrayList<>();
+        if (page < 1 || pageSize < 1 || start >= total) {
+            return new GatewayPage(Collections.emptyList(), total);
         }
         
-        return filteredGateways.subList(start, end);
+        int end = (int) Math.min(start + pageSize, total);
+        List<Gateway> data = new ArrayList<>(filteredGateways.subList((int) start, end));
+        return new GatewayPage(Collections.unmodifiableList(data), total);
     }
     
     public int getTotalGateways(String query) {
-        if (query != null && !query.isEmpty() && query.length() >= 3) {
-            return (int) mockGateways.stream()
-                .filter(gateway -> 
-                    gateway.getName().toLowerCase().contains(query.toLowerCase()) ||
-                    gateway.getSerial().toLowerCase().contains(query.toLowerCase()))
-                .count();
+        return queryGateways(query, 1, 0, null, null).getTotal();
+    }
+
+    /**
+     * Hits, misses and estimated size of the cached search results.
+     */
+    public QueryResultCache.Stats getResultCacheStats() {
+        return resultCache.getStats();
+    }
+
+    private static long estimateBytes(GatewayPage page) {
+        // The page with its list, then per gateway the object, its boxed fields and its timestamp
+        long bytes = 48;
+        for (Gateway gateway : page.getData()) {
+            bytes += 8 + 72 + 16 + 16 + 72
+                    + QueryResultCache.estimate(gateway.getName())
+                    + QueryResultCache.estimate(gateway.getSerial())
+                    + QueryResultCache.estimate(gateway.getModel())
+                    + QueryResultCache.estimate(gateway.getFirmware())
+                    + QueryResultCache.estimate(gateway.getIp())
+                    + QueryResultCache.estimate(gateway.getStatus())
+                    + QueryResultCache.estimate(gateway.getSiteId())
+                    + QueryResultCache.estimate(gateway.getSiteName())
+                    + QueryResultCache.estimate(gateway.getCallType())
+                    + QueryResultCache.estimate(gateway.getCarrier());
         }
-        return mockGateways.size();
+        return bytes;
     }
     
     public Map<String, String> validateGatewayParameters(Object parameters) {
@@ -107,10 +183,11 @@ public class GatewayService {
     public boolean saveGatewayConfiguration(Object config) {
         // In a real application, this would save the configuration
         // For this mock, we always return true
+        generation.incrementAndGet();
         return true;
     }
 
-    private List<Gateway> generateMockGateways() {
+    private List<Gateway> generateMockGateways(int count) {
         List<Gateway> gateways = new ArrayList<>();
         
         String[] models = {"GW-1000", "GW-2000", "GW-3000", "GW-4000", "GW-5000"};
@@ -119,7 +196,7 @@ public class GatewayService {
         String[] callTypes = {"Voice", "Data", "SMS", "MMS", "Video"};
         String[] carriers = {"AT&T", "Verizon", "T-Mobile", "Sprint", "Vodafone", "Orange", "Telefonica"};
         
-        for (int i = 1; i <= 50; i++) {
+        for (int i = 1; i <= count; i++) {
             Long id = (long) i;
             String siteId = String.valueOf(i);
             
@@ -2,6 +2,8 @@ package com.gateway.backend.service;
 
 import com.gateway.backend.model.Meter;
 import com.gateway.backend.model.MeterParameter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 
 import java.util.ArrayList;
@@ -11,12 +13,18 @@ import java.util.UUID;
 
 @Service
 public class MeterService {
+
+    private static final Logger logger = LoggerFactory.getLogger(MeterService.class);
     
     private final List<Meter> mockMeters;
     private List<MeterParameter> mockParameters;
     
     public MeterService() {
-        this.mockMeters = generateMockMeters();
+        this(15);
+    }
+    
+    public MeterService(int mockMeterCount) {
+        this.mockMeters = generateMockMeters(mockMeterCount);
         this.mockParameters = generateAllMockParameters();
     }
     
@@ -26,25 +34,25 @@ public class MeterService {
     
     public List<MeterParameter> getAllParameters(Long meterId) {
         if (meterId == null) {
-            System.out.println("Returning all mock parameters");
+            logger.debug("Returning all {} mock parameters", mockParameters.size());
             return mockParameters;
         } else {
             List<MeterParameter> filteredList = mockParameters.stream()
                     .filter(parameter -> meterId.equals(parameter.getMeterId()))
                     .collect(Collectors.toList());
-            System.out.println("Returning filtered list for meterId: " + meterId + ", list: " + filteredList);
+            logger.debug("Returning {} parameters for meterId {}", filteredList.size(), meterId);
             return filteredList;
         }
     }
     
-    private List<Meter> generateMockMeters() {
+    private List<Meter> generateMockMeters(int count) {
         List<Meter> meters = new ArrayList<>();
         
         String[] types = {"Electric", "Gas", "Water", "Temperature", "Pressure"};
         String[] protocols = {"Modbus", "BACnet", "MQTT", "SNMP", "OPC-UA"};
         String[] manufacturers = {"Schneider Electric", "Siemens", "Honeywell", "Johnson Controls", "ABB", "GE"};
         
-        for (int i = 1; i <= 15; i++) {
+        for (int i = 1; i <= count; i++) {
             meters.add(Meter.builder()
                     .id((long) i)
                     .name("Meter " + i)
@@ -0,0 +1,367 @@
+package com.gateway.backend.service.alarm;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+
+/**
+ * Pre-aggregated counters for {@code /alarms/aggregations}: per minute, hour and day of their timestamp, the
+ * number of alarms and the sums of their durations and charges, in total and per value of every categorical
+ * property.
+ * <p>
+ * A time range is covered with the coarsest buckets that fit in it (whole days, then hours, then minutes at
+ * its ends), so answering it costs the number of buckets merged, never a scan of the alarms. Rows are counted
+ * once, in order, as the store publishes them; an update moves its row from the buckets of its previous values
+ * to those of the new ones. Not thread-safe: the owner serializes writes against reads.
+ */
+public class AlarmAggregates {
+
+    /**
+     * A series with more buckets than this is refused; a coarser interval answers it.
+     */
+    static final int MAX_SERIES_BUCKETS = 10_000;
+
+    public enum Interval {
+        MINUTE(60), HOUR(3_600), DAY(86_400);
+
+        private final long seconds;
+
+        Interval(long seconds) {
+            this.seconds = seconds;
+        }
+
+        /**
+         * @return the interval with that name, ignoring case, or {@code null} if there is none
+         */
+        public static Interval fromName(String name) {
+            for (Interval interval : values()) {
+                if (interval.name().equalsIgnoreCase(name)) {
+                    return interval;
+                }
+            }
+            return null;
+        }
+
+        long floor(long epochSecond) {
+            return Math.floorDiv(epochSecond, seconds) * seconds;
+        }
+
+        long ceil(long epochSecond) {
+            return -Math.floorDiv(-epochSecond, seconds) * seconds;
+        }
+    }
+
+    /** Coarsest first, the order in which a range is covered. */
+    private static final Interval[] LEVELS = {Interval.DAY, Interval.HOUR, Interval.MINUTE};
+
+    private final Map<Interval, TreeMap<Long, Bucket>> buckets = new EnumMap<>(Interval.class);
+    private volatile int countedRows;
+
+    public AlarmAggregates() {
+        for (Interval interval : Interval.values()) {
+            buckets.put(interval, new TreeMap<>());
+        }
+    }
+
+    /**
+     * Whether rows of {@code columns} are not counted yet.
+     */
+    public boolean isBehind(AlarmColumns columns) {
+        return countedRows < columns.size();
+    }
+
+    /**
+     * Counts the rows of {@code columns} not counted yet.
+     */
+    public void catchUp(AlarmColumns columns) {
+        Bucket[] last = new Bucket[LEVELS.length];
+        for (int row = Math.max(countedRows, columns.first()); row < columns.size(); row++) {
+            long epochSecond = Math.floorDiv(columns.timestampNanos(row), 1_000_000_000L);
+            for (int level = 0; level < LEVELS.length; level++) {
+                // Rows of a batch mostly share their buckets
+                Bucket bucket = last[level];
+                if (bucket == null || LEVELS[level].floor(epochSecond) != bucket.start) {
+                    bucket = bucketAt(LEVELS[level], epochSecond);
+                    last[level] = bucket;
+                }
+                bucket.add(columns, row, 1);
+            }
+        }
+        countedRows = Math.max(countedRows, columns.size());
+    }
+
+    /**
+     * Moves {@code row} from the buckets of its values in {@code before} to those of its values in
+     * {@code after}, if the row was counted already.
+     */
+    public void replace(AlarmColumns before, AlarmColumns after, int row) {
+        if (row >= countedRows) {
+            return;
+        }
+        long beforeSecond = Math.floorDiv(before.timestampNanos(row), 1_000_000_000L);
+        long afterSecond = Math.floorDiv(after.timestampNanos(row), 1_000_000_000L);
+        for (Interval interval : LEVELS) {
+            bucketAt(interval, beforeSecond).add(before, row, -1);
+            bucketAt(interval, afterSecond).add(after, row, 1);
+        }
+    }
+
+    /**
+     * Takes the rows {@code from} to {@code to} of {@code columns}, which are being dropped, out of their
+     * buckets, and discards the buckets left without alarms; the rows not counted yet never will be.
+     */
+    public void remove(AlarmColumns columns, int from, int to) {
+        for (int row = from; row < Math.min(to, countedRows); row++) {
+            long epochSecond = Math.floorDiv(columns.timestampNanos(row), 1_000_000_000L);
+            for (Interval interval : LEVELS) {
+                Bucket bucket = bucketAt(interval, epochSecond);
+                bucket.add(columns, row, -1);
+                if (bucket.count == 0) {
+                    buckets.get(interval).remove(bucket.start);
+                }
+            }
+        }
+        countedRows = Math.max(countedRows, to);
+    }
+
+    private Bucket bucketAt(Interval interval, long epochSecond) {
+        long start = interval.floor(epochSecond);
+        return buckets.get(interval).computeIfAbsent(start, Bucket::new);
+    }
+
+    /**
+     * Totals of the alarms timestamped in {@code [from, to)}, both taken to the minute, grouped by
+     * {@code groupBy} and, with an {@code interval}, also per bucket of it. Buckets without alarms are left out
+     * of the series.
+     *
+     * @param groupBy  a categorical property, or {@code null} not to group
+     * @param from     the start of the range, or {@code null} for the first alarm
+     * @param to       the end of the range, or {@code null} for after the last alarm
+     * @param interval the buckets of the series, or {@code null} for none
+     * @throws IllegalArgumentException if {@code groupBy} is not categorical or the series would be too long
+     */
+    public AlarmAggregation aggregate(AlarmColumns columns, AlarmField groupBy, LocalDateTime from,
+                                      LocalDateTime to, Interval interval) {
+        int slot = groupBy == null ? -1 : AlarmColumns.dictionarySlot(groupBy);
+        TreeMap<Long, Bucket> minutes = buckets.get(Interval.MINUTE);
+        long start = from != null ? Interval.MINUTE.floor(toEpochSecond(from))
+                : minutes.isEmpty() ? 0 : minutes.firstKey();
+        long end = to != null ? Interval.MINUTE.floor(toEpochSecond(to))
+                : minutes.isEmpty() ? 0 : minutes.lastKey() + Interval.MINUTE.seconds;
+
+        AlarmDictionary dictionary = groupBy == null ? null : columns.dictionary(groupBy);
+        Totals total = new Totals(slot);
+        cover(0, start, end, total);
+
+        List<AlarmAggregation.Bucket> series = null;
+        if (interval != null) {
+            series = new ArrayList<>();
+            if (start < end) {
+                NavigableMap<Long, Bucket> inRange = buckets.get(interval)
+                        .subMap(interval.floor(start), true, end, false);
+                if (inRange.size() > MAX_SERIES_BUCKETS) {
+                    throw new IllegalArgumentException("Too many " + interval.name().toLowerCase(Locale.ROOT)
+                            + " buckets in the range, use a coarser interval");
+                }
+                for (Bucket bucket : inRange.values()) {
+                    long bucketEnd = bucket.start + interval.seconds;
+                    Totals totals = new Totals(slot);
+                    if (bucket.start >= start && bucketEnd <= end) {
+                        totals.merge(bucket);
+                    } else {
+                        // Cut by the range
+                        cover(0, Math.max(bucket.start, start), Math.min(bucketEnd, end), totals);
+                    }
+                    if (totals.count > 0) {
+                        series.add(new AlarmAggregation.Bucket(toTimestamp(bucket.start),
+                                totals.toTotals(), totals.toGroups(dictionary)));
+                    }
+                }
+            }
+        }
+        return new AlarmAggregation(groupBy == null ? null : groupBy.getPropertyName(),
+                from != null ? toTimestamp(start) : null, to != null ? toTimestamp(end) : null,
+                interval == null ? null : interval.name().toLowerCase(Locale.ROOT),
+                total.toTotals(), total.toGroups(dictionary), series);
+    }
+
+    /**
+     * Merges {@code [from, to)} into {@code totals}: the whole buckets of {@code LEVELS[level]} inside the range,
+     * the ends with the finer levels.
+     */
+    private void cover(int level, long from, long to, Totals totals) {
+        if (from >= to) {
+            return;
+        }
+        Interval interval = LEVELS[level];
+        long first = interval == Interval.MINUTE ? from : interval.ceil(from);
+        long last = interval == Interval.MINUTE ? to : interval.floor(to);
+        if (first >= last) {
+            cover(level + 1, from, to, totals);
+            return;
+        }
+        if (interval != Interval.MINUTE) {
+            cover(level + 1, from, first, totals);
+        }
+        for (Bucket bucket : buckets.get(interval).subMap(first, true, last, false).values()) {
+            totals.merge(bucket);
+        }
+        if (interval != Interval.MINUTE) {
+            cover(level + 1, last, to, totals);
+        }
+    }
+
+    private static long toEpochSecond(LocalDateTime timestamp) {
+        return Math.floorDiv(AlarmColumns.toNanos(timestamp), 1_000_000_000L);
+    }
+
+    private static LocalDateTime toTimestamp(long epochSecond) {
+        return AlarmColumns.toTimestamp(epochSecond * 1_000_000_000L);
+    }
+
+    /**
+     * The counters of one bucket: the totals, and per categorical property and value the same three numbers,
+     * in an open-addressing table keyed by property slot and dictionary code.
+     */
+    private static final class Bucket {
+        private static final int SLOTS = AlarmColumns.DICTIONARY_FIELDS.length;
+
+        final long start;
+        long count;
+        long durationSeconds;
+        long chargeCents;
+
+        /** {@code slot + SLOTS * code + 1}, {@code 0} for a free entry. */
+        long[] keys = new long[32];
+        long[] counts = new long[32];
+        long[] durations = new long[32];
+        long[] cents = new long[32];
+        private int used;
+
+        Bucket(long start) {
+            this.start = start;
+        }
+
+        void add(AlarmColumns columns, int row, int sign) {
+            int duration = columns.durationSeconds(row);
+            int charge = columns.chargeCents(row);
+            count += sign;
+            durationSeconds += (long) sign * duration;
+            chargeCents += (long) sign * charge;
+            for (int slot = 0; slot < SLOTS; slot++) {
+                int entry = entry(slot + (long) SLOTS * columns.code(slot, row) + 1);
+                counts[entry] += sign;
+                durations[entry] += (long) sign * duration;
+                cents[entry] += (long) sign * charge;
+            }
+        }
+
+        private int entry(long key) {
+            int mask = keys.length - 1;
+            int entry = Long.hashCode(key * 0x9E3779B97F4A7C15L) & mask;
+            while (keys[entry] != 0) {
+                if (keys[entry] == key) {
+                    return entry;
+                }
+                entry = (entry + 1) & mask;
+            }
+            if (2 * (used + 1) > keys.length) {
+                grow();
+                return entry(key);
+            }
+            keys[entry] = key;
+            used++;
+            return entry;
+        }
+
+        private void grow() {
+            long[] oldKeys = keys;
+            long[] oldCounts = counts;
+            long[] oldDurations = durations;
+            long[] oldCents = cents;
+            int capacity = oldKeys.length * 2;
+            keys = new long[capacity];
+            counts = new long[capacity];
+            durations = new long[capacity];
+            cents = new long[capacity];
+            used = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] != 0) {
+                    int entry = entry(oldKeys[i]);
+                    counts[entry] = oldCounts[i];
+                    durations[entry] = oldDurations[i];
+                    cents[entry] = oldCents[i];
+                }
+            }
+        }
+    }
+
+    /**
+     * Buckets merged so far, with the groups of one property indexed by dictionary code.
+     */
+    private static final class Totals {
+        private final int slot;
+        long count;
+        long durationSeconds;
+        long chargeCents;
+        long[] groupCounts = new long[0];
+        long[] groupDurations = new long[0];
+        long[] groupCents = new long[0];
+
+        Totals(int slot) {
+            this.slot = slot;
+        }
+
+        void merge(Bucket bucket) {
+            count += bucket.count;
+            durationSeconds += bucket.durationSeconds;
+            chargeCents += bucket.chargeCents;
+            if (slot < 0) {
+                return;
+            }
+            for (int entry = 0; entry < bucket.keys.length; entry++) {
+                long key = bucket.keys[entry] - 1;
+                if (key >= 0 && key % Bucket.SLOTS == slot) {
+                    int code = (int) (key / Bucket.SLOTS);
+                    if (code >= groupCounts.length) {
+                        int length = Math.max(code + 1, groupCounts.length * 2);
+                        groupCounts = Arrays.copyOf(groupCounts, length);
+                        groupDurations = Arrays.copyOf(groupDurations, length);
+                        groupCents = Arrays.copyOf(groupCents, length);
+                    }
+                    groupCounts[code] += bucket.counts[entry];
+                    groupDurations[code] += bucket.durations[entry];
+                    groupCents[code] += bucket.cents[entry];
+                }
+            }
+        }
+
+        AlarmAggregation.Totals toTotals() {
+            return new AlarmAggregation.Totals(count, durationSeconds, chargeCents / 100.0);
+        }
+
+        /**
+         * The groups holding alarms, most alarms first, or {@code null} when not grouping.
+         */
+        List<AlarmAggregation.Group> toGroups(AlarmDictionary dictionary) {
+            if (slot < 0) {
+                return null;
+            }
+            List<AlarmAggregation.Group> groups = new ArrayList<>();
+            for (int code = 0; code < groupCounts.length; code++) {
+                if (groupCounts[code] > 0) {
+                    groups.add(new AlarmAggregation.Group(dictionary.value(code), groupCounts[code],
+                            groupDurations[code], groupCents[code] / 100.0));
+                }
+            }
+            groups.sort((a, b) -> Long.compare(b.getCount(), a.getCount()));
+            return groups;
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.gateway.backend.service.alarm;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.time.LocalDateTime;
+import java.util.List;
+
+/**
+ * Alarm counts and sums over a time range: in total, per value of the grouping property (if any) and, when an
+ * interval was asked for, per bucket of that interval holding alarms.
+ */
+@Getter
+@AllArgsConstructor
+public class AlarmAggregation {
+    private final String groupBy;
+    private final LocalDateTime from;
+    private final LocalDateTime to;
+    private final String interval;
+    private final Totals total;
+    private final List<Group> groups;
+    private final List<Bucket> buckets;
+
+    @Getter
+    @AllArgsConstructor
+    public static class Totals {
+        private final long count;
+        private final long durationSeconds;
+        private final double chargeAmount;
+    }
+
+    /**
+     * The totals of the alarms with one value of the grouping property ({@code null} for those without).
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Group {
+        private final String value;
+        private final long count;
+        private final long durationSeconds;
+        private final double chargeAmount;
+    }
+
+    @Getter
+    @AllArgsConstructor
+    public static class Bucket {
+        private final LocalDateTime start;
+        private final Totals total;
+        private final List<Group> groups;
+    }
+}
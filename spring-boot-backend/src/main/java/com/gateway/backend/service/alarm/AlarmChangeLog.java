@@ -0,0 +1,76 @@
+package com.gateway.backend.service.alarm;
+
+import java.lang.invoke.VarHandle;
+
+/**
+ * Bounded history of alarm changes: the id of every alarm appended or updated, numbered by a sequence that
+ * starts at 1. Only the latest {@code capacity} changes are kept, in a ring, so readers must expect the start
+ * of the range they ask for to have been overwritten.
+ * <p>
+ * There is one writer at a time (the {@link AlarmStore} records appends in their publication order, and status
+ * changes in between, taking turns on the log); readers never block it and detect overwrites, seqlock style, by
+ * rechecking how far the writer has got after reading.
+ */
+public final class AlarmChangeLog {
+
+    private final long[] ids;
+    private final int mask;
+    private volatile long lastSequence;
+    /** The sequence the writer is recording up to, ahead of {@link #lastSequence} while it writes. */
+    private volatile long writingSequence;
+
+    AlarmChangeLog(int capacity) {
+        if (Integer.bitCount(capacity) != 1) {
+            throw new IllegalArgumentException("Capacity must be a power of two");
+        }
+        this.ids = new long[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * The sequence of the latest change, {@code 0} before the first one.
+     */
+    public long lastSequence() {
+        return lastSequence;
+    }
+
+    /**
+     * The oldest sequence still held, which is {@code lastSequence() + 1} when nothing has been recorded.
+     */
+    public long firstRetained() {
+        return Math.max(1, lastSequence - mask);
+    }
+
+    /**
+     * Copies the ids of the changes from sequence {@code from} on, up to the latest one and at most
+     * {@code ids.length} of them.
+     *
+     * @return how many ids were copied, or {@code -1} if change {@code from} is no longer held
+     */
+    public int read(long from, long[] into) {
+        long last = lastSequence;
+        if (from < Math.max(1, last - mask)) {
+            return -1;
+        }
+        int count = (int) Math.max(0, Math.min(into.length, last - from + 1));
+        for (int i = 0; i < count; i++) {
+            into[i] = ids[(int) ((from + i - 1) & mask)];
+        }
+        // The writer may have lapped us while copying
+        VarHandle.loadLoadFence();
+        return from < writingSequence - mask ? -1 : count;
+    }
+
+    /**
+     * Records that the alarms with ids {@code firstId} to {@code firstId + count - 1} changed.
+     */
+    synchronized void record(long firstId, int count) {
+        long next = lastSequence;
+        writingSequence = next + count;
+        VarHandle.storeStoreFence();
+        for (int i = 0; i < count; i++) {
+            ids[(int) (next++ & mask)] = firstId + i;
+        }
+        lastSequence = next;
+    }
+}
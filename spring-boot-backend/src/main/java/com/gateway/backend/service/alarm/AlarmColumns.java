@@ -0,0 +1,604 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * Column store for alarms: every property lives in a primitive array, split in chunks of {@value #CHUNK_SIZE}
+ * rows so growing never copies what is already stored.
+ * <ul>
+ *     <li>ids and the timestamp are {@code long}s ({@link #NULL_LONG} for {@code null}; the timestamp as
+ *     nanoseconds since the epoch, UTC);</li>
+ *     <li>categorical properties ({@link #DICTIONARY_FIELDS}) are {@code int} codes into an
+ *     {@link AlarmDictionary} per property;</li>
+ *     <li>{@code duration_seconds} is an {@code int} and {@code charge_amount} an {@code int} number of cents;</li>
+ *     <li>{@code occurrences} is an {@code int}, at least 1, and {@code lastSeen} a {@code long} like the
+ *     timestamp, which it defaults to;</li>
+ *     <li>{@code version} is an {@code int}, at least 1;</li>
+ *     <li>only the free-text properties ({@link #TEXT_FIELDS}) keep their {@code String}s.</li>
+ * </ul>
+ * Filters and sort orders are evaluated on the columns ({@link #matcher}, {@link #comparator}); an
+ * {@link Alarm} is only built by {@link #toAlarm(int)} for the rows actually returned.
+ * <p>
+ * An instance is an immutable view of the rows {@link #first()} to {@link #size()}, handed out by
+ * {@link AlarmStore}: rows below the size are never written again in the chunks it sees (an update copies its
+ * chunk), so it can be read from any number of threads without locking. Rows below the first belong to chunks
+ * dropped by retention and cannot be read any more.
+ */
+public class AlarmColumns {
+
+    static final int CHUNK_SHIFT = 12;
+    static final int CHUNK_SIZE = 1 << CHUNK_SHIFT;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    public static final long NULL_LONG = Long.MIN_VALUE;
+
+    static final AlarmField[] LONG_FIELDS = {
+            AlarmField.ID, AlarmField.GATEWAY_ID, AlarmField.SITE_ID, AlarmField.TIMESTAMP, AlarmField.LAST_SEEN};
+    static final AlarmField[] DICTIONARY_FIELDS = {
+            AlarmField.GATEWAY_NAME, AlarmField.TYPE, AlarmField.SEVERITY, AlarmField.STATUS,
+            AlarmField.CALL_TYPE, AlarmField.CARRIER, AlarmField.SITE_NAME, AlarmField.CALLER};
+    static final AlarmField[] TEXT_FIELDS = {
+            AlarmField.MESSAGE, AlarmField.CALLER_NUMBER, AlarmField.CALLEE_NUMBER};
+    static final AlarmField[] INT_FIELDS = {
+            AlarmField.DURATION_SECONDS, AlarmField.CHARGE_AMOUNT, AlarmField.OCCURRENCES, AlarmField.VERSION};
+    /** The numeric properties {@link AlarmFilterPlan.Range}s filter on. */
+    static final AlarmField[] RANGE_FIELDS = {
+            AlarmField.TIMESTAMP, AlarmField.DURATION_SECONDS, AlarmField.CHARGE_AMOUNT};
+
+    private static final int LONG = 0;
+    private static final int DICTIONARY = 1;
+    private static final int TEXT = 2;
+    private static final int INT = 3;
+
+    private static final int[] KIND = new int[AlarmField.values().length];
+    private static final int[] SLOT = new int[AlarmField.values().length];
+
+    static {
+        assign(LONG_FIELDS, LONG);
+        assign(DICTIONARY_FIELDS, DICTIONARY);
+        assign(TEXT_FIELDS, TEXT);
+        assign(INT_FIELDS, INT);
+    }
+
+    private static void assign(AlarmField[] fields, int kind) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            KIND[fields[slot].ordinal()] = kind;
+            SLOT[fields[slot].ordinal()] = slot;
+        }
+    }
+
+    /**
+     * Row predicate evaluated on the columns.
+     */
+    public interface RowMatcher {
+        boolean matches(int row);
+    }
+
+    /**
+     * Row order evaluated on the columns.
+     */
+    public interface RowComparator {
+        int compare(int a, int b);
+    }
+
+    private final Chunk[] chunks;
+    private final int first;
+    private final int size;
+    private final AlarmDictionary[] dictionaryBySlot;
+
+    AlarmColumns(Chunk[] chunks, int first, int size, AlarmDictionary[] dictionaryBySlot) {
+        this.chunks = chunks;
+        this.first = first;
+        this.size = size;
+        this.dictionaryBySlot = dictionaryBySlot;
+    }
+
+    static AlarmDictionary[] newDictionaries() {
+        AlarmDictionary[] dictionaries = new AlarmDictionary[DICTIONARY_FIELDS.length];
+        for (int slot = 0; slot < dictionaries.length; slot++) {
+            dictionaries[slot] = new AlarmDictionary();
+        }
+        return dictionaries;
+    }
+
+    /**
+     * The first row still stored, at the start of a chunk; the rows before it have expired.
+     */
+    public int first() {
+        return first;
+    }
+
+    /**
+     * One past the last row.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Number of rows stored, {@code size() - first()}.
+     */
+    public int count() {
+        return size - first;
+    }
+
+    public static boolean isDictionaryEncoded(AlarmField field) {
+        return KIND[field.ordinal()] == DICTIONARY;
+    }
+
+    /**
+     * Position of a categorical property among the {@link #DICTIONARY_FIELDS}.
+     */
+    static int dictionarySlot(AlarmField field) {
+        if (!isDictionaryEncoded(field)) {
+            throw new IllegalArgumentException(field + " is not categorical");
+        }
+        return SLOT[field.ordinal()];
+    }
+
+    public static boolean isText(AlarmField field) {
+        return KIND[field.ordinal()] == TEXT;
+    }
+
+    public AlarmDictionary dictionary(AlarmField field) {
+        return isDictionaryEncoded(field) ? dictionaryBySlot[SLOT[field.ordinal()]] : null;
+    }
+
+    /**
+     * Rejects alarms whose values do not fit the columns, before any row is reserved for them.
+     *
+     * @throws IllegalArgumentException if the alarm is {@code null}, or a timestamp or the charge is out of range
+     */
+    static void validate(Alarm alarm) {
+        if (alarm == null) {
+            throw new IllegalArgumentException("Alarm is null");
+        }
+        try {
+            toNanos(alarm.getTimestamp());
+            toNanos(alarm.getLastSeen());
+            toCents(alarm.getCharge_amount());
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Alarm value out of range", e);
+        }
+    }
+
+    /**
+     * A copy of {@code alarm} as it reads back once stored under {@code id}: a missing timestamp becomes
+     * {@code defaultTimestamp}, the charge is rounded to the cent, the occurrences and last-seen time default
+     * to one at the timestamp, and the version to 1.
+     *
+     * @throws IllegalArgumentException if the alarm is {@code null} or has a value out of range
+     */
+    public static Alarm normalize(Alarm alarm, long id, LocalDateTime defaultTimestamp) {
+        validate(alarm);
+        LocalDateTime timestamp = alarm.getTimestamp() != null ? alarm.getTimestamp() : defaultTimestamp;
+        return Alarm.builder()
+                .id(id)
+                .gatewayId(alarm.getGatewayId())
+                .gatewayName(alarm.getGatewayName())
+                .type(alarm.getType())
+                .severity(alarm.getSeverity())
+                .message(alarm.getMessage())
+                .timestamp(timestamp)
+                .status(alarm.getStatus())
+                .callType(alarm.getCallType())
+                .carrier(alarm.getCarrier())
+                .siteId(alarm.getSiteId())
+                .siteName(alarm.getSiteName())
+                .caller(alarm.getCaller())
+                .caller_number(alarm.getCaller_number())
+                .callee_number(alarm.getCallee_number())
+                .duration_seconds(alarm.getDuration_seconds())
+                .charge_amount(toCents(alarm.getCharge_amount()) / 100.0)
+                .occurrences(atLeastOne(alarm.getOccurrences()))
+                .lastSeen(alarm.getLastSeen() != null ? alarm.getLastSeen() : timestamp)
+                .version(atLeastOne(alarm.getVersion()))
+                .build();
+    }
+
+    private static int atLeastOne(Integer count) {
+        return count == null ? 1 : Math.max(1, count);
+    }
+
+    /**
+     * Writes {@code alarm} with {@code id} at {@code offset} of {@code chunk}; a missing timestamp becomes
+     * {@code defaultNanos}, missing occurrences and last-seen time one at the timestamp, and a missing version
+     * 1.
+     */
+    static void write(Chunk chunk, int offset, long id, long defaultNanos, Alarm alarm,
+                      AlarmDictionary[] dictionaryBySlot) {
+        long timestamp = toNanos(alarm.getTimestamp());
+        chunk.longs[SLOT[AlarmField.ID.ordinal()]][offset] = id;
+        chunk.longs[SLOT[AlarmField.GATEWAY_ID.ordinal()]][offset] = toLong(alarm.getGatewayId());
+        chunk.longs[SLOT[AlarmField.SITE_ID.ordinal()]][offset] = toLong(alarm.getSiteId());
+        chunk.longs[SLOT[AlarmField.TIMESTAMP.ordinal()]][offset] = timestamp == NULL_LONG ? defaultNanos : timestamp;
+        for (int slot = 0; slot < DICTIONARY_FIELDS.length; slot++) {
+            chunk.codes[slot][offset] = dictionaryBySlot[slot].acquire(DICTIONARY_FIELDS[slot].text(alarm));
+        }
+        for (int slot = 0; slot < TEXT_FIELDS.length; slot++) {
+            chunk.texts[slot][offset] = TEXT_FIELDS[slot].text(alarm);
+        }
+        chunk.ints[SLOT[AlarmField.DURATION_SECONDS.ordinal()]][offset] = alarm.getDuration_seconds();
+        chunk.ints[SLOT[AlarmField.CHARGE_AMOUNT.ordinal()]][offset] = toCents(alarm.getCharge_amount());
+        chunk.ints[SLOT[AlarmField.VERSION.ordinal()]][offset] = atLeastOne(alarm.getVersion());
+        long lastSeen = toNanos(alarm.getLastSeen());
+        writeOccurrences(chunk, offset, atLeastOne(alarm.getOccurrences()),
+                lastSeen == NULL_LONG ? chunk.longs[SLOT[AlarmField.TIMESTAMP.ordinal()]][offset] : lastSeen);
+    }
+
+    /**
+     * Overwrites the occurrences and last-seen time at {@code offset} of {@code chunk}.
+     */
+    static void writeOccurrences(Chunk chunk, int offset, int occurrences, long lastSeenNanos) {
+        chunk.ints[SLOT[AlarmField.OCCURRENCES.ordinal()]][offset] = occurrences;
+        chunk.longs[SLOT[AlarmField.LAST_SEEN.ordinal()]][offset] = lastSeenNanos;
+    }
+
+    /**
+     * Overwrites the version at {@code offset} of {@code chunk}.
+     */
+    static void writeVersion(Chunk chunk, int offset, int version) {
+        chunk.ints[SLOT[AlarmField.VERSION.ordinal()]][offset] = version;
+    }
+
+    /**
+     * Overwrites the status at {@code offset} of {@code chunk} and sets its version.
+     */
+    static void writeStatus(Chunk chunk, int offset, String status, int version,
+                            AlarmDictionary[] dictionaryBySlot) {
+        int slot = SLOT[AlarmField.STATUS.ordinal()];
+        chunk.codes[slot][offset] = dictionaryBySlot[slot].acquire(status);
+        writeVersion(chunk, offset, version);
+    }
+
+    /**
+     * Builds the {@link Alarm} stored at {@code row}.
+     */
+    public Alarm toAlarm(int row) {
+        checkRow(row);
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int offset = row & CHUNK_MASK;
+        return Alarm.builder()
+                .id(toBoxed(chunk.longs[SLOT[AlarmField.ID.ordinal()]][offset]))
+                .gatewayId(toBoxed(chunk.longs[SLOT[AlarmField.GATEWAY_ID.ordinal()]][offset]))
+                .gatewayName(decode(chunk, AlarmField.GATEWAY_NAME, offset))
+                .type(decode(chunk, AlarmField.TYPE, offset))
+                .severity(decode(chunk, AlarmField.SEVERITY, offset))
+                .message(chunk.texts[SLOT[AlarmField.MESSAGE.ordinal()]][offset])
+                .timestamp(toTimestamp(chunk.longs[SLOT[AlarmField.TIMESTAMP.ordinal()]][offset]))
+                .status(decode(chunk, AlarmField.STATUS, offset))
+                .callType(decode(chunk, AlarmField.CALL_TYPE, offset))
+                .carrier(decode(chunk, AlarmField.CARRIER, offset))
+                .siteId(toBoxed(chunk.longs[SLOT[AlarmField.SITE_ID.ordinal()]][offset]))
+                .siteName(decode(chunk, AlarmField.SITE_NAME, offset))
+                .caller(decode(chunk, AlarmField.CALLER, offset))
+                .caller_number(chunk.texts[SLOT[AlarmField.CALLER_NUMBER.ordinal()]][offset])
+                .callee_number(chunk.texts[SLOT[AlarmField.CALLEE_NUMBER.ordinal()]][offset])
+                .duration_seconds(chunk.ints[SLOT[AlarmField.DURATION_SECONDS.ordinal()]][offset])
+                .charge_amount(chunk.ints[SLOT[AlarmField.CHARGE_AMOUNT.ordinal()]][offset] / 100.0)
+                .occurrences(chunk.ints[SLOT[AlarmField.OCCURRENCES.ordinal()]][offset])
+                .lastSeen(toTimestamp(chunk.longs[SLOT[AlarmField.LAST_SEEN.ordinal()]][offset]))
+                .version(chunk.ints[SLOT[AlarmField.VERSION.ordinal()]][offset])
+                .build();
+    }
+
+    private String decode(Chunk chunk, AlarmField field, int offset) {
+        int slot = SLOT[field.ordinal()];
+        return dictionaryBySlot[slot].value(chunk.codes[slot][offset]);
+    }
+
+    /**
+     * Dictionary code of a categorical property.
+     */
+    public int code(AlarmField field, int row) {
+        return chunks[row >>> CHUNK_SHIFT].codes[SLOT[field.ordinal()]][row & CHUNK_MASK];
+    }
+
+    long timestampNanos(int row) {
+        return chunks[row >>> CHUNK_SHIFT].longs[SLOT[AlarmField.TIMESTAMP.ordinal()]][row & CHUNK_MASK];
+    }
+
+    int durationSeconds(int row) {
+        return chunks[row >>> CHUNK_SHIFT].ints[SLOT[AlarmField.DURATION_SECONDS.ordinal()]][row & CHUNK_MASK];
+    }
+
+    int chargeCents(int row) {
+        return chunks[row >>> CHUNK_SHIFT].ints[SLOT[AlarmField.CHARGE_AMOUNT.ordinal()]][row & CHUNK_MASK];
+    }
+
+    public int version(int row) {
+        return chunks[row >>> CHUNK_SHIFT].ints[SLOT[AlarmField.VERSION.ordinal()]][row & CHUNK_MASK];
+    }
+
+    /**
+     * Dictionary code of the {@code slot}-th of the {@link #DICTIONARY_FIELDS}.
+     */
+    int code(int slot, int row) {
+        return chunks[row >>> CHUNK_SHIFT].codes[slot][row & CHUNK_MASK];
+    }
+
+    /**
+     * Value of a categorical or free-text property.
+     */
+    public String text(AlarmField field, int row) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int slot = SLOT[field.ordinal()];
+        switch (KIND[field.ordinal()]) {
+            case DICTIONARY:
+                return dictionaryBySlot[slot].value(chunk.codes[slot][row & CHUNK_MASK]);
+            case TEXT:
+                return chunk.texts[slot][row & CHUNK_MASK];
+            case LONG:
+                long value = chunk.longs[slot][row & CHUNK_MASK];
+                return value == NULL_LONG ? null : Long.toString(value);
+            default:
+                throw new IllegalArgumentException(field + " has no text value");
+        }
+    }
+
+    /**
+     * The row test of a {@code contains} condition. On a categorical property the needle is matched once per
+     * distinct value and rows only compare their code.
+     */
+    RowMatcher matcher(AlarmFilterPlan.Condition condition) {
+        AlarmField field = condition.field;
+        String needle = condition.needle;
+        int slot = SLOT[field.ordinal()];
+        switch (KIND[field.ordinal()]) {
+            case DICTIONARY:
+                return codeMatcher(field, dictionaryBySlot[slot].matching(needle));
+            case TEXT:
+                return row -> {
+                    String value = chunks[row >>> CHUNK_SHIFT].texts[slot][row & CHUNK_MASK];
+                    return value != null && AlarmFilterPlan.containsIgnoreCase(value, needle);
+                };
+            case LONG:
+                return row -> {
+                    long value = chunks[row >>> CHUNK_SHIFT].longs[slot][row & CHUNK_MASK];
+                    return value != NULL_LONG && Long.toString(value).contains(needle);
+                };
+            default:
+                throw new IllegalArgumentException(field + " cannot be filtered with contains");
+        }
+    }
+
+    /**
+     * Rows of a categorical property whose code is set in {@code matchingCodes}.
+     */
+    RowMatcher codeMatcher(AlarmField field, boolean[] matchingCodes) {
+        int slot = SLOT[field.ordinal()];
+        return row -> matchingCodes[chunks[row >>> CHUNK_SHIFT].codes[slot][row & CHUNK_MASK]];
+    }
+
+    /**
+     * Value of one of the {@link #RANGE_FIELDS}, in its column units.
+     */
+    long rangeValue(AlarmField field, int row) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int slot = SLOT[field.ordinal()];
+        return KIND[field.ordinal()] == LONG
+                ? chunk.longs[slot][row & CHUNK_MASK]
+                : chunk.ints[slot][row & CHUNK_MASK];
+    }
+
+    /**
+     * Rows whose value is in {@code range}.
+     */
+    RowMatcher rangeMatcher(AlarmFilterPlan.Range range) {
+        int slot = SLOT[range.field.ordinal()];
+        long from = range.from;
+        long to = range.to;
+        if (KIND[range.field.ordinal()] == LONG) {
+            return row -> {
+                long value = chunks[row >>> CHUNK_SHIFT].longs[slot][row & CHUNK_MASK];
+                return value >= from && value < to;
+            };
+        }
+        return row -> {
+            int value = chunks[row >>> CHUNK_SHIFT].ints[slot][row & CHUNK_MASK];
+            return value >= from && value < to;
+        };
+    }
+
+    /**
+     * Row order by {@code field} with {@code null} first (last when descending), ties in row order.
+     */
+    public RowComparator comparator(AlarmField field, boolean descending) {
+        int slot = SLOT[field.ordinal()];
+        int sign = descending ? -1 : 1;
+        RowComparator byValue;
+        switch (KIND[field.ordinal()]) {
+            case LONG:
+                byValue = (a, b) -> Long.compare(
+                        chunks[a >>> CHUNK_SHIFT].longs[slot][a & CHUNK_MASK],
+                        chunks[b >>> CHUNK_SHIFT].longs[slot][b & CHUNK_MASK]);
+                break;
+            case DICTIONARY:
+                int[] ranks = dictionaryBySlot[slot].ranks();
+                byValue = (a, b) -> Integer.compare(
+                        ranks[chunks[a >>> CHUNK_SHIFT].codes[slot][a & CHUNK_MASK]],
+                        ranks[chunks[b >>> CHUNK_SHIFT].codes[slot][b & CHUNK_MASK]]);
+                break;
+            case TEXT:
+                byValue = (a, b) -> compareNullsFirst(
+                        chunks[a >>> CHUNK_SHIFT].texts[slot][a & CHUNK_MASK],
+                        chunks[b >>> CHUNK_SHIFT].texts[slot][b & CHUNK_MASK]);
+                break;
+            default:
+                byValue = (a, b) -> Integer.compare(
+                        chunks[a >>> CHUNK_SHIFT].ints[slot][a & CHUNK_MASK],
+                        chunks[b >>> CHUNK_SHIFT].ints[slot][b & CHUNK_MASK]);
+                break;
+        }
+        return (a, b) -> {
+            int order = sign * byValue.compare(a, b);
+            return order != 0 ? order : Integer.compare(a, b);
+        };
+    }
+
+    /**
+     * Cursor positioned on {@code row} in the order of {@link #comparator(AlarmField, boolean)}.
+     */
+    public AlarmCursor cursorAt(int row, AlarmField field, boolean descending) {
+        Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+        int offset = row & CHUNK_MASK;
+        int slot = SLOT[field.ordinal()];
+        long id = chunk.longs[SLOT[AlarmField.ID.ordinal()]][offset];
+        switch (KIND[field.ordinal()]) {
+            case LONG:
+                return new AlarmCursor(field, descending, true, chunk.longs[slot][offset], null, id);
+            case INT:
+                return new AlarmCursor(field, descending, true, chunk.ints[slot][offset], null, id);
+            default:
+                return new AlarmCursor(field, descending, false, 0, text(field, row), id);
+        }
+    }
+
+    /**
+     * Rows sorting strictly after {@code cursor} in the order of {@link #comparator(AlarmField, boolean)}.
+     * Ties on the sort value are broken by id, which follows the row order.
+     */
+    public RowMatcher after(AlarmCursor cursor) {
+        AlarmField field = cursor.getField();
+        int kind = KIND[field.ordinal()];
+        boolean numeric = kind == LONG || kind == INT;
+        if (numeric != cursor.isNumeric()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        int slot = SLOT[field.ordinal()];
+        int idSlot = SLOT[AlarmField.ID.ordinal()];
+        int sign = cursor.isDescending() ? -1 : 1;
+        long id = cursor.getId();
+        long number = cursor.getNumber();
+        String text = cursor.getText();
+        switch (kind) {
+            case LONG:
+                return row -> {
+                    Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+                    int order = sign * Long.compare(chunk.longs[slot][row & CHUNK_MASK], number);
+                    return order > 0 || order == 0 && chunk.longs[idSlot][row & CHUNK_MASK] > id;
+                };
+            case INT:
+                return row -> {
+                    Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+                    int order = sign * Long.compare(chunk.ints[slot][row & CHUNK_MASK], number);
+                    return order > 0 || order == 0 && chunk.longs[idSlot][row & CHUNK_MASK] > id;
+                };
+            case DICTIONARY:
+                // One string comparison per distinct value, not per row
+                AlarmDictionary dictionary = dictionaryBySlot[slot];
+                int[] orderByCode = new int[dictionary.size()];
+                for (int code = 0; code < orderByCode.length; code++) {
+                    orderByCode[code] = sign * Integer.signum(compareNullsFirst(dictionary.value(code), text));
+                }
+                return row -> {
+                    Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+                    int order = orderByCode[chunk.codes[slot][row & CHUNK_MASK]];
+                    return order > 0 || order == 0 && chunk.longs[idSlot][row & CHUNK_MASK] > id;
+                };
+            default:
+                return row -> {
+                    Chunk chunk = chunks[row >>> CHUNK_SHIFT];
+                    int order = sign * Integer.signum(compareNullsFirst(chunk.texts[slot][row & CHUNK_MASK], text));
+                    return order > 0 || order == 0 && chunk.longs[idSlot][row & CHUNK_MASK] > id;
+                };
+        }
+    }
+
+    private static int compareNullsFirst(String a, String b) {
+        if (a == null) {
+            return b == null ? 0 : -1;
+        }
+        return b == null ? 1 : a.compareTo(b);
+    }
+
+    private void checkRow(int row) {
+        if (row < first || row >= size) {
+            throw new IndexOutOfBoundsException("Row " + row + " out of " + first + " to " + size);
+        }
+    }
+
+    static long toLong(Long value) {
+        return value == null ? NULL_LONG : value;
+    }
+
+    private static Long toBoxed(long value) {
+        return value == NULL_LONG ? null : value;
+    }
+
+    static long toNanos(LocalDateTime timestamp) {
+        if (timestamp == null) {
+            return NULL_LONG;
+        }
+        return Math.addExact(Math.multiplyExact(timestamp.toEpochSecond(ZoneOffset.UTC), 1_000_000_000L),
+                timestamp.getNano());
+    }
+
+    static LocalDateTime toTimestamp(long nanos) {
+        if (nanos == NULL_LONG) {
+            return null;
+        }
+        return LocalDateTime.ofEpochSecond(Math.floorDiv(nanos, 1_000_000_000L),
+                (int) Math.floorMod(nanos, 1_000_000_000L), ZoneOffset.UTC);
+    }
+
+    /**
+     * Charges are amounts of money and are kept to the cent.
+     */
+    static int toCents(double amount) {
+        return Math.toIntExact(Math.round(amount * 100));
+    }
+
+    /**
+     * One {@value #CHUNK_SIZE}-row slice of every column.
+     */
+    static final class Chunk {
+        final long[][] longs;
+        final int[][] codes;
+        final String[][] texts;
+        final int[][] ints;
+
+        Chunk() {
+            longs = new long[LONG_FIELDS.length][CHUNK_SIZE];
+            codes = new int[DICTIONARY_FIELDS.length][CHUNK_SIZE];
+            texts = new String[TEXT_FIELDS.length][CHUNK_SIZE];
+            ints = new int[INT_FIELDS.length][CHUNK_SIZE];
+        }
+
+        private Chunk(Chunk source) {
+            longs = deepCopy(source.longs);
+            codes = deepCopy(source.codes);
+            texts = new String[source.texts.length][];
+            for (int slot = 0; slot < texts.length; slot++) {
+                texts[slot] = source.texts[slot].clone();
+            }
+            ints = deepCopy(source.ints);
+        }
+
+        /**
+         * Copy to write an update into, leaving this chunk untouched for the views that read it.
+         */
+        Chunk copy() {
+            return new Chunk(this);
+        }
+
+        private static long[][] deepCopy(long[][] columns) {
+            long[][] copy = new long[columns.length][];
+            for (int slot = 0; slot < copy.length; slot++) {
+                copy[slot] = columns[slot].clone();
+            }
+            return copy;
+        }
+
+        private static int[][] deepCopy(int[][] columns) {
+            int[][] copy = new int[columns.length][];
+            for (int slot = 0; slot < copy.length; slot++) {
+                copy[slot] = columns[slot].clone();
+            }
+            return copy;
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Folds repeats of an alarm into the one stored first, so a gateway raising the same fault over and over costs
+ * one row and not thousands.
+ * <p>
+ * Alarms correlate by gateway, type and severity. The first of a kind opens a window on its stored row; each
+ * repeat raised no later than the window after the latest one folds into that row (its occurrences count up
+ * and its last-seen time moves on) instead of being stored. A repeat after a longer pause, or after the stored
+ * alarm changed status or expired, opens a new window on a new row. Times are the alarms' own timestamps, so a
+ * replayed feed folds like a live one.
+ * <p>
+ * Folds into stored rows are not written at once: the windows they touched are collected, and
+ * {@link #drain()} hands them over in one batch for {@link AlarmStore#updateOccurrences}. Folds into a row
+ * stored in the same {@link #correlate} batch are carried by the row itself.
+ * <p>
+ * At most {@code maxOpen} windows are kept, the least recently folded into going first; {@link #expire()}
+ * closes the windows no repeat can reach any more, those the window behind the newest alarm seen. Not thread
+ * safe: the owner serializes all calls.
+ */
+public class AlarmCorrelator {
+
+    private record Key(Long gatewayId, String type, String severity) {
+    }
+
+    private static final class Window {
+        final Key key;
+        /** {@code 0} until the row is stored. */
+        long id;
+        /** Position among the fresh alarms of the batch storing the row. */
+        int freshIndex = -1;
+        final String status;
+        int occurrences;
+        long lastSeen;
+        boolean dirty;
+
+        Window(Key key, String status, int occurrences, long lastSeen) {
+            this.key = key;
+            this.status = status;
+            this.occurrences = occurrences;
+            this.lastSeen = lastSeen;
+        }
+    }
+
+    private final long windowNanos;
+    private final int maxOpen;
+    private final LinkedHashMap<Key, Window> open = new LinkedHashMap<>(16, 0.75f, true);
+    /** Windows folded into since the last {@link #drain()}, open or not any more. */
+    private final List<Window> dirty = new ArrayList<>();
+    private long newestSeen = AlarmColumns.NULL_LONG;
+
+    /**
+     * @param window  longest pause between two repeats that still fold
+     * @param maxOpen most windows kept open
+     */
+    public AlarmCorrelator(Duration window, int maxOpen) {
+        this.windowNanos = window.toNanos();
+        this.maxOpen = Math.max(1, maxOpen);
+    }
+
+    /**
+     * Works out which of {@code alarms} fold into an open window and which are stored, without changing any
+     * window yet: {@link #commit} does once the alarms to store are. A missing timestamp becomes {@code now}.
+     *
+     * @param columns the stored alarms, to check that a window's row is still there and unchanged
+     * @throws IllegalArgumentException if an alarm is {@code null} or has a value out of range
+     */
+    public Batch correlate(List<Alarm> alarms, AlarmColumns columns, LocalDateTime now) {
+        Batch batch = new Batch(alarms.size());
+        Map<Key, Window> touched = new HashMap<>();
+        for (int i = 0; i < alarms.size(); i++) {
+            Alarm alarm = AlarmColumns.normalize(alarms.get(i), 0, now);
+            long timestamp = AlarmColumns.toNanos(alarm.getTimestamp());
+            Key key = new Key(alarm.getGatewayId(), alarm.getType(), alarm.getSeverity());
+            Window window = touched.get(key);
+            if (window == null) {
+                Window stored = open.get(key);
+                if (stored != null && isOpen(stored, columns)) {
+                    // Folded into a copy, so that nothing changes before the commit
+                    window = new Window(key, stored.status, stored.occurrences, stored.lastSeen);
+                    window.id = stored.id;
+                    batch.stored.put(window, stored);
+                }
+            }
+            if (window != null && timestamp - window.lastSeen <= windowNanos) {
+                window.occurrences = (int) Math.min(Integer.MAX_VALUE,
+                        (long) window.occurrences + alarm.getOccurrences());
+                window.lastSeen = Math.max(window.lastSeen, AlarmColumns.toNanos(alarm.getLastSeen()));
+                if (window.id == 0) {
+                    // Stored in this batch: the row carries the count
+                    Alarm row = batch.fresh.get(window.freshIndex);
+                    row.setOccurrences(window.occurrences);
+                    row.setLastSeen(AlarmColumns.toTimestamp(window.lastSeen));
+                }
+                batch.targets[i] = window;
+                batch.folded++;
+            } else {
+                window = new Window(key, alarm.getStatus(), alarm.getOccurrences(),
+                        AlarmColumns.toNanos(alarm.getLastSeen()));
+                window.freshIndex = batch.fresh.size();
+                batch.freshWindows.add(window);
+                batch.fresh.add(alarm);
+                batch.targets[i] = window;
+            }
+            touched.put(key, window);
+            batch.newest = Math.max(batch.newest, window.lastSeen);
+        }
+        batch.touched = touched;
+        return batch;
+    }
+
+    private static boolean isOpen(Window window, AlarmColumns columns) {
+        return window.id > columns.first() && window.id <= columns.size()
+                && Objects.equals(columns.text(AlarmField.STATUS, (int) (window.id - 1)), window.status);
+    }
+
+    /**
+     * Applies {@code batch} now that its {@link Batch#getFresh() fresh alarms} are stored from {@code firstId}
+     * on.
+     */
+    public void commit(Batch batch, long firstId) {
+        for (int i = 0; i < batch.freshWindows.size(); i++) {
+            batch.freshWindows.get(i).id = firstId + i;
+        }
+        batch.stored.forEach((copy, stored) -> {
+            if (copy.occurrences != stored.occurrences || copy.lastSeen != stored.lastSeen) {
+                stored.occurrences = copy.occurrences;
+                stored.lastSeen = copy.lastSeen;
+                markDirty(stored);
+            }
+        });
+        for (Window window : batch.touched.values()) {
+            if (!batch.stored.containsKey(window)) {
+                open.put(window.key, window);
+            }
+        }
+        for (int i = 0; i < batch.targets.length; i++) {
+            Window window = batch.targets[i];
+            batch.ids[i] = window.id;
+            batch.occurrences[i] = window.occurrences;
+            batch.lastSeen[i] = window.lastSeen;
+        }
+        newestSeen = Math.max(newestSeen, batch.newest);
+        Iterator<Window> eldest = open.values().iterator();
+        while (open.size() > maxOpen) {
+            eldest.next();
+            eldest.remove();
+        }
+    }
+
+    private void markDirty(Window window) {
+        if (!window.dirty) {
+            window.dirty = true;
+            dirty.add(window);
+        }
+    }
+
+    /**
+     * The occurrences and last-seen times folded into stored rows since the last call.
+     */
+    public Updates drain() {
+        Updates updates = new Updates(dirty);
+        for (Window window : dirty) {
+            window.dirty = false;
+        }
+        dirty.clear();
+        return updates;
+    }
+
+    /**
+     * Takes back {@code updates} that could not be written, to be drained again with the next ones.
+     */
+    public void retry(Updates updates) {
+        for (Window window : updates.windows) {
+            markDirty(window);
+        }
+    }
+
+    /**
+     * Closes the windows whose latest alarm is more than the window older than the newest alarm seen.
+     *
+     * @return how many were closed
+     */
+    public int expire() {
+        if (newestSeen == AlarmColumns.NULL_LONG) {
+            return 0;
+        }
+        long cutoff = newestSeen - windowNanos;
+        int closed = 0;
+        for (Iterator<Window> it = open.values().iterator(); it.hasNext(); ) {
+            if (it.next().lastSeen < cutoff) {
+                it.remove();
+                closed++;
+            }
+        }
+        return closed;
+    }
+
+    public int openWindows() {
+        return open.size();
+    }
+
+    /**
+     * How a batch of alarms correlates: the alarms to store, and after {@link #commit} the row each alarm
+     * ended up in.
+     */
+    public static final class Batch {
+        private final List<Alarm> fresh = new ArrayList<>();
+        private final List<Window> freshWindows = new ArrayList<>();
+        /** The windows stored rows were folded into, by their copy in the batch. */
+        private final Map<Window, Window> stored = new HashMap<>();
+        private final Window[] targets;
+        private final long[] ids;
+        private final int[] occurrences;
+        private final long[] lastSeen;
+        private Map<Key, Window> touched;
+        private int folded;
+        private long newest = AlarmColumns.NULL_LONG;
+
+        private Batch(int size) {
+            targets = new Window[size];
+            ids = new long[size];
+            occurrences = new int[size];
+            lastSeen = new long[size];
+        }
+
+        /**
+         * Copies of the alarms that open a window, to store in this order.
+         */
+        public List<Alarm> getFresh() {
+            return fresh;
+        }
+
+        /**
+         * Number of alarms folded into another one.
+         */
+        public int getFolded() {
+            return folded;
+        }
+
+        public int size() {
+            return targets.length;
+        }
+
+        /**
+         * Id of the row the {@code i}th alarm was stored in or folded into.
+         */
+        public long id(int i) {
+            return ids[i];
+        }
+
+        public long[] ids() {
+            return ids.clone();
+        }
+
+        /**
+         * Occurrences of that row once the batch is in.
+         */
+        public int occurrences(int i) {
+            return occurrences[i];
+        }
+
+        public LocalDateTime lastSeen(int i) {
+            return AlarmColumns.toTimestamp(lastSeen[i]);
+        }
+    }
+
+    /**
+     * Occurrences and last-seen times to write back, by id.
+     */
+    public static final class Updates {
+        private final List<Window> windows;
+        private final long[] ids;
+        private final int[] occurrences;
+        private final long[] lastSeen;
+
+        private Updates(List<Window> dirty) {
+            windows = new ArrayList<>(dirty);
+            ids = new long[windows.size()];
+            occurrences = new int[windows.size()];
+            lastSeen = new long[windows.size()];
+            for (int i = 0; i < ids.length; i++) {
+                Window window = windows.get(i);
+                ids[i] = window.id;
+                occurrences[i] = window.occurrences;
+                lastSeen[i] = window.lastSeen;
+            }
+        }
+
+        public int size() {
+            return ids.length;
+        }
+
+        public boolean isEmpty() {
+            return ids.length == 0;
+        }
+
+        /**
+         * Cuts the last-seen times to the microseconds most databases keep.
+         */
+        public void truncateToMicros() {
+            for (int i = 0; i < lastSeen.length; i++) {
+                lastSeen[i] -= Math.floorMod(lastSeen[i], 1000L);
+            }
+        }
+
+        /**
+         * Writes the updates into {@code store}.
+         *
+         * @return how many alarms were still there to update
+         */
+        public int applyTo(AlarmStore store) {
+            return store.updateOccurrences(ids, occurrences, lastSeen, ids.length);
+        }
+
+        public long[] getIds() {
+            return ids;
+        }
+
+        public int[] getOccurrences() {
+            return occurrences;
+        }
+
+        public LocalDateTime[] getLastSeen() {
+            LocalDateTime[] timestamps = new LocalDateTime[lastSeen.length];
+            for (int i = 0; i < timestamps.length; i++) {
+                timestamps[i] = AlarmColumns.toTimestamp(lastSeen[i]);
+            }
+            return timestamps;
+        }
+    }
+}
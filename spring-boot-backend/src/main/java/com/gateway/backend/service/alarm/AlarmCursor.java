@@ -0,0 +1,125 @@
+package com.gateway.backend.service.alarm;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Base64;
+
+/**
+ * Keyset position in an alarm listing: the sort field and direction, the sort value of the last alarm
+ * returned and its id. The next page is whatever sorts strictly after that position, so it costs the same
+ * however deep the client has scrolled.
+ * <p>
+ * Clients only ever see the opaque {@link #encode() encoded} form.
+ */
+public final class AlarmCursor {
+
+    private static final byte VERSION = 1;
+    private static final byte NUMBER = 0;
+    private static final byte TEXT = 1;
+    private static final byte NULL_TEXT = 2;
+
+    private final AlarmField field;
+    private final boolean descending;
+    private final boolean numeric;
+    private final long number;
+    private final String text;
+    private final long id;
+
+    AlarmCursor(AlarmField field, boolean descending, boolean numeric, long number, String text, long id) {
+        this.field = field;
+        this.descending = descending;
+        this.numeric = numeric;
+        this.number = number;
+        this.text = text;
+        this.id = id;
+    }
+
+    public AlarmField getField() {
+        return field;
+    }
+
+    public boolean isDescending() {
+        return descending;
+    }
+
+    boolean isNumeric() {
+        return numeric;
+    }
+
+    long getNumber() {
+        return number;
+    }
+
+    String getText() {
+        return text;
+    }
+
+    long getId() {
+        return id;
+    }
+
+    public String encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            out.writeByte(field.ordinal());
+            out.writeBoolean(descending);
+            if (numeric) {
+                out.writeByte(NUMBER);
+                out.writeLong(number);
+            } else if (text == null) {
+                out.writeByte(NULL_TEXT);
+            } else {
+                out.writeByte(TEXT);
+                out.writeUTF(text);
+            }
+            out.writeLong(id);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(bytes.toByteArray());
+    }
+
+    /**
+     * @throws IllegalArgumentException if {@code encoded} is not a cursor produced by {@link #encode()}
+     */
+    public static AlarmCursor decode(String encoded) {
+        byte[] bytes;
+        try {
+            bytes = Base64.getUrlDecoder().decode(encoded);
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            if (in.readByte() != VERSION) {
+                throw new IllegalArgumentException("Unsupported cursor version");
+            }
+            AlarmField[] fields = AlarmField.values();
+            int ordinal = in.readUnsignedByte();
+            if (ordinal >= fields.length) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            boolean descending = in.readBoolean();
+            byte kind = in.readByte();
+            long number = 0;
+            String text = null;
+            if (kind == NUMBER) {
+                number = in.readLong();
+            } else if (kind == TEXT) {
+                text = in.readUTF();
+            } else if (kind != NULL_TEXT) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            long id = in.readLong();
+            if (in.read() != -1) {
+                throw new IllegalArgumentException("Invalid cursor");
+            }
+            return new AlarmCursor(fields[ordinal], descending, kind == NUMBER, number, text, id);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid cursor", e);
+        }
+    }
+}
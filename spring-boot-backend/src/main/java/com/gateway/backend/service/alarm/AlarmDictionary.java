@@ -0,0 +1,111 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Dictionary of the distinct values of one categorical alarm column. Code {@code 0} stands for {@code null},
+ * so a freshly allocated code column reads as all nulls.
+ * <p>
+ * Values are only ever added, and a value keeps its code for good. Looking a value up is lock-free, so
+ * concurrent writers only contend when they bring a value the dictionary has never seen; readers may use any
+ * code they found in a published row.
+ */
+public class AlarmDictionary {
+
+    public static final int NULL_CODE = 0;
+
+    private final Map<String, Integer> codes = new ConcurrentHashMap<>();
+    private volatile String[] values = new String[16];
+    private volatile int size = 1;
+
+    private volatile int[] ranks;
+
+    /**
+     * Code of {@code value}, adding it if it is new.
+     */
+    public int acquire(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        synchronized (this) {
+            code = codes.get(value);
+            if (code == null) {
+                code = size;
+                String[] current = values;
+                if (code == current.length) {
+                    current = Arrays.copyOf(current, code * 2);
+                }
+                current[code] = value;
+                values = current;
+                size = code + 1;
+                // Published last: whoever finds the code also finds its value
+                codes.put(value, code);
+            }
+            return code;
+        }
+    }
+
+    /**
+     * @return the code of {@code value}, or {@code -1} if no alarm ever had it
+     */
+    public int find(String value) {
+        if (value == null) {
+            return NULL_CODE;
+        }
+        Integer code = codes.get(value);
+        return code == null ? -1 : code;
+    }
+
+    public String value(int code) {
+        return values[code];
+    }
+
+    /**
+     * Number of codes, including {@link #NULL_CODE}.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Marks the codes whose value contains {@code lowerNeedle}, ignoring case. The value is tested once per
+     * distinct value instead of once per row; {@link #NULL_CODE} never matches.
+     */
+    public boolean[] matching(String lowerNeedle) {
+        boolean[] matches = new boolean[size];
+        String[] current = values;
+        for (int code = 1; code < matches.length; code++) {
+            matches[code] = AlarmFilterPlan.containsIgnoreCase(current[code], lowerNeedle);
+        }
+        return matches;
+    }
+
+    /**
+     * Sort position of every code: comparing ranks orders rows like comparing their values, with
+     * {@code null} first. Computed again only when values were added.
+     */
+    public int[] ranks() {
+        int count = size;
+        int[] current = ranks;
+        if (current == null || current.length != count) {
+            String[] sorted = values;
+            Integer[] order = new Integer[count - 1];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i + 1;
+            }
+            Arrays.sort(order, (a, b) -> sorted[a].compareTo(sorted[b]));
+            current = new int[count];
+            for (int i = 0; i < order.length; i++) {
+                current[order[i]] = i + 1;
+            }
+            ranks = current;
+        }
+        return current;
+    }
+}
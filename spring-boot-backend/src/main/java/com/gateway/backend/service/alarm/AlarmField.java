@@ -0,0 +1,117 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Alarm properties addressable by name from the {@code /alarms} query parameters.
+ * <p>
+ * A name is resolved once per query (case-insensitively, as the old {@code switch} did) and the resulting
+ * constant carries a direct accessor, so rows are never matched against property names. The fields the old
+ * {@code switch} knew can be used as {@code contains} filters; every field can be sorted on with its natural type.
+ */
+public enum AlarmField {
+    ID("id", 3, alarm -> toText(alarm.getId()), Comparator.comparing(Alarm::getId, nullsFirst())),
+    GATEWAY_ID("gatewayId", 3, alarm -> toText(alarm.getGatewayId()), Comparator.comparing(Alarm::getGatewayId, nullsFirst())),
+    GATEWAY_NAME("gatewayName", 2, Alarm::getGatewayName),
+    TYPE("type", 1, Alarm::getType),
+    SEVERITY("severity", 1, Alarm::getSeverity),
+    MESSAGE("message", 4, Alarm::getMessage),
+    TIMESTAMP("timestamp", 0, null, Comparator.comparing(Alarm::getTimestamp, nullsFirst())),
+    STATUS("status", 1, Alarm::getStatus),
+    CALL_TYPE("callType", 1, Alarm::getCallType),
+    CARRIER("carrier", 1, Alarm::getCarrier),
+    SITE_ID("siteId", 3, alarm -> toText(alarm.getSiteId()), Comparator.comparing(Alarm::getSiteId, nullsFirst())),
+    SITE_NAME("siteName", 2, Alarm::getSiteName),
+    CALLER("caller", 0, false, Alarm::getCaller),
+    CALLER_NUMBER("caller_number", 2, Alarm::getCaller_number),
+    CALLEE_NUMBER("callee_number", 2, Alarm::getCallee_number),
+    DURATION_SECONDS("duration_seconds", 0, null, Comparator.comparingInt(Alarm::getDuration_seconds)),
+    CHARGE_AMOUNT("charge_amount", 0, null, Comparator.comparingDouble(Alarm::getCharge_amount)),
+    OCCURRENCES("occurrences", 0, null, Comparator.comparing(Alarm::getOccurrences, nullsFirst())),
+    LAST_SEEN("lastSeen", 0, null, Comparator.comparing(Alarm::getLastSeen, nullsFirst())),
+    VERSION("version", 0, null, Comparator.comparing(Alarm::getVersion, nullsFirst()));
+
+    private static final Map<String, AlarmField> BY_NAME = new HashMap<>();
+
+    static {
+        for (AlarmField field : values()) {
+            BY_NAME.put(field.propertyName.toLowerCase(Locale.ROOT), field);
+        }
+    }
+
+    private final String propertyName;
+    private final int cost;
+    private final boolean filterable;
+    private final Function<Alarm, String> text;
+    private final Comparator<Alarm> ascending;
+
+    AlarmField(String propertyName, int cost, Function<Alarm, String> text) {
+        this(propertyName, cost, true, text);
+    }
+
+    AlarmField(String propertyName, int cost, boolean filterable, Function<Alarm, String> text) {
+        this(propertyName, cost, filterable, text, Comparator.comparing(text, nullsFirst()));
+    }
+
+    AlarmField(String propertyName, int cost, Function<Alarm, String> text, Comparator<Alarm> ascending) {
+        this(propertyName, cost, text != null, text, ascending);
+    }
+
+    AlarmField(String propertyName, int cost, boolean filterable, Function<Alarm, String> text,
+               Comparator<Alarm> ascending) {
+        this.propertyName = propertyName;
+        this.cost = cost;
+        this.filterable = filterable;
+        this.text = text;
+        this.ascending = ascending;
+    }
+
+    /**
+     * @return the field for a query parameter or sort key, or {@code null} if no alarm property has that name
+     */
+    public static AlarmField fromName(String name) {
+        return name == null ? null : BY_NAME.get(name.toLowerCase(Locale.ROOT));
+    }
+
+    public String getPropertyName() {
+        return propertyName;
+    }
+
+    public boolean isFilterable() {
+        return filterable;
+    }
+
+    /**
+     * Relative cost of evaluating a {@code contains} filter on this field: short categorical values first,
+     * numbers that have to be rendered and long free text last.
+     */
+    int getCost() {
+        return cost;
+    }
+
+    /**
+     * The value a {@code contains} filter is matched against (for {@code caller}, which cannot be filtered on,
+     * just the value), {@code null} when the alarm has none.
+     */
+    public String text(Alarm alarm) {
+        return text.apply(alarm);
+    }
+
+    public Comparator<Alarm> comparator(boolean descending) {
+        return descending ? ascending.reversed() : ascending;
+    }
+
+    private static String toText(Long value) {
+        return value == null ? null : value.toString();
+    }
+
+    private static <T extends Comparable<? super T>> Comparator<T> nullsFirst() {
+        return Comparator.nullsFirst(Comparator.naturalOrder());
+    }
+}
@@ -0,0 +1,44 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Compiles {@code /alarms} filter maps into {@link AlarmFilterPlan}s and keeps the plans by normalized
+ * signature, so the handful of filter combinations the dashboards send are resolved only once.
+ */
+public class AlarmFilterCompiler {
+
+    private static final int DEFAULT_MAX_PLANS = 1024;
+
+    private final int maxPlans;
+    private final Map<String, AlarmFilterPlan> plans = new ConcurrentHashMap<>();
+
+    public AlarmFilterCompiler() {
+        this(DEFAULT_MAX_PLANS);
+    }
+
+    public AlarmFilterCompiler(int maxPlans) {
+        this.maxPlans = maxPlans;
+    }
+
+    public AlarmFilterPlan compile(Map<String, String> filters) {
+        SortedMap<String, String> normalized = AlarmFilterPlan.normalize(filters);
+        String signature = AlarmFilterPlan.signature(normalized);
+        AlarmFilterPlan plan = plans.get(signature);
+        if (plan == null) {
+            plan = AlarmFilterPlan.compile(signature, normalized);
+            // Free-text needles make the key space unbounded; start over rather than grow without limit
+            if (plans.size() >= maxPlans) {
+                plans.clear();
+            }
+            plans.put(signature, plan);
+        }
+        return plan;
+    }
+
+    public int size() {
+        return plans.size();
+    }
+}
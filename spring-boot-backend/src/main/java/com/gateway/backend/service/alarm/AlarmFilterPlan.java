@@ -0,0 +1,341 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+/**
+ * A filter map compiled into a conjunction of {@code contains} conditions and of typed {@link Range ranges}:
+ * <ul>
+ *     <li>on the timestamp, from {@value #TIMESTAMP_FROM} (inclusive) and {@value #TIMESTAMP_TO} (exclusive) as
+ *     ISO date-times;</li>
+ *     <li>on {@code duration_seconds}, from {@value #MIN_DURATION} and {@value #MAX_DURATION} (both inclusive)
+ *     as whole seconds;</li>
+ *     <li>on {@code charge_amount}, from {@value #MIN_CHARGE} and {@value #MAX_CHARGE} (both inclusive) as
+ *     decimal amounts, compared to the cent.</li>
+ * </ul>
+ * and of an {@link AlarmTextQuery} on the message and type, from {@value #TEXT_QUERY}.
+ * <p>
+ * Every condition holds its resolved {@link AlarmField} and a needle lowercased once at compile time, and the
+ * conditions are ordered cheapest first so most rows are rejected before the expensive fields are read.
+ * A filter on a property alarms do not have can never match, exactly like before.
+ */
+public final class AlarmFilterPlan {
+
+    public static final String TIMESTAMP_FROM = "timestampFrom";
+    public static final String TIMESTAMP_TO = "timestampTo";
+    public static final String MIN_DURATION = "minDuration";
+    public static final String MAX_DURATION = "maxDuration";
+    public static final String MIN_CHARGE = "minCharge";
+    public static final String MAX_CHARGE = "maxCharge";
+    public static final String TEXT_QUERY = "q";
+
+    private static final AlarmFilterPlan MATCH_ALL = new AlarmFilterPlan("", Collections.emptyList(),
+            Collections.emptyList(), null, false);
+
+    private final String signature;
+    private final Condition[] conditions;
+    /** At most one per field, in {@link AlarmField} order. */
+    private final Range[] ranges;
+    /** {@code null} without one. */
+    private final AlarmTextQuery textQuery;
+    private final boolean matchesNothing;
+
+    private AlarmFilterPlan(String signature, List<Condition> conditions, List<Range> ranges,
+                            AlarmTextQuery textQuery, boolean matchesNothing) {
+        this.signature = signature;
+        this.conditions = conditions.toArray(new Condition[0]);
+        this.ranges = ranges.toArray(new Range[0]);
+        this.textQuery = textQuery;
+        this.matchesNothing = matchesNothing;
+    }
+
+    /**
+     * Canonical form of a filter map: blank values dropped, keys and values lowercased and keys sorted.
+     */
+    static SortedMap<String, String> normalize(Map<String, String> filters) {
+        TreeMap<String, String> normalized = new TreeMap<>();
+        if (filters != null) {
+            for (Map.Entry<String, String> filter : filters.entrySet()) {
+                String value = filter.getValue();
+                if (value != null && !value.isEmpty()) {
+                    normalized.put(filter.getKey().toLowerCase(Locale.ROOT), value.toLowerCase(Locale.ROOT));
+                }
+            }
+        }
+        return normalized;
+    }
+
+    /**
+     * Unambiguous key of a normalized filter map (every part is length-prefixed), so equivalent maps share
+     * one compiled plan whatever characters the values contain.
+     */
+    static String signature(SortedMap<String, String> normalized) {
+        if (normalized.isEmpty()) {
+            return "";
+        }
+        StringBuilder signature = new StringBuilder();
+        normalized.forEach((key, value) -> signature
+                .append(key.length()).append(':').append(key)
+                .append(value.length()).append(':').append(value));
+        return signature.toString();
+    }
+
+    /**
+     * @throws IllegalArgumentException if a range bound is not a valid value for its property, or the text query
+     *                                  has no term
+     */
+    static AlarmFilterPlan compile(String signature, SortedMap<String, String> normalized) {
+        if (normalized.isEmpty()) {
+            return MATCH_ALL;
+        }
+        List<Condition> conditions = new ArrayList<>(normalized.size());
+        boolean matchesNothing = false;
+        AlarmTextQuery textQuery = null;
+        // Per field, the inclusive lower and exclusive upper bound in column units
+        Map<AlarmField, long[]> bounds = new EnumMap<>(AlarmField.class);
+        for (Map.Entry<String, String> filter : normalized.entrySet()) {
+            String key = filter.getKey();
+            String value = filter.getValue();
+            AlarmField field = AlarmField.fromName(key);
+            if (key.equals(TEXT_QUERY)) {
+                textQuery = AlarmTextQuery.parse(value);
+            } else if (key.equals(TIMESTAMP_FROM.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.TIMESTAMP)[0] = parseNanos(value);
+            } else if (key.equals(TIMESTAMP_TO.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.TIMESTAMP)[1] = parseNanos(value);
+            } else if (key.equals(MIN_DURATION.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.DURATION_SECONDS)[0] = parseSeconds(value);
+            } else if (key.equals(MAX_DURATION.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.DURATION_SECONDS)[1] = after(parseSeconds(value));
+            } else if (key.equals(MIN_CHARGE.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.CHARGE_AMOUNT)[0] = parseCents(value, RoundingMode.CEILING);
+            } else if (key.equals(MAX_CHARGE.toLowerCase(Locale.ROOT))) {
+                boundsOf(bounds, AlarmField.CHARGE_AMOUNT)[1] = after(parseCents(value, RoundingMode.FLOOR));
+            } else if (field == null || !field.isFilterable()) {
+                matchesNothing = true;
+            } else {
+                conditions.add(new Condition(field, value));
+            }
+        }
+        List<Range> ranges = new ArrayList<>(bounds.size());
+        for (Map.Entry<AlarmField, long[]> range : bounds.entrySet()) {
+            long from = range.getValue()[0];
+            long to = range.getValue()[1];
+            matchesNothing |= from >= to;
+            ranges.add(new Range(range.getKey(), from, to));
+        }
+        // Cheapest field first; on equal cost the longer (more selective) needle first
+        conditions.sort(Comparator.comparingInt((Condition condition) -> condition.field.getCost())
+                .thenComparingInt(condition -> -condition.needle.length()));
+        return new AlarmFilterPlan(signature, conditions, ranges, textQuery, matchesNothing);
+    }
+
+    private static long[] boundsOf(Map<AlarmField, long[]> bounds, AlarmField field) {
+        return bounds.computeIfAbsent(field, f -> new long[]{Long.MIN_VALUE, Long.MAX_VALUE});
+    }
+
+    /**
+     * The exclusive bound right after an inclusive one.
+     */
+    private static long after(long inclusive) {
+        return inclusive == Long.MAX_VALUE ? inclusive : inclusive + 1;
+    }
+
+    private static long parseNanos(String lowerValue) {
+        try {
+            return AlarmColumns.toNanos(LocalDateTime.parse(lowerValue.toUpperCase(Locale.ROOT)));
+        } catch (DateTimeParseException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid timestamp " + lowerValue, e);
+        }
+    }
+
+    private static long parseSeconds(String value) {
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid duration " + value, e);
+        }
+    }
+
+    /**
+     * A charge bound in cents, rounded towards the inside of the range.
+     */
+    private static long parseCents(String value, RoundingMode rounding) {
+        try {
+            return new BigDecimal(value.trim()).movePointRight(2).setScale(0, rounding).longValueExact();
+        } catch (NumberFormatException | ArithmeticException e) {
+            throw new IllegalArgumentException("Invalid charge " + value, e);
+        }
+    }
+
+    /**
+     * Plan of a single {@code contains} condition on a filterable field.
+     */
+    static AlarmFilterPlan contains(AlarmField field, String lowerNeedle) {
+        SortedMap<String, String> normalized = new TreeMap<>();
+        normalized.put(field.getPropertyName().toLowerCase(Locale.ROOT), lowerNeedle);
+        return compile(signature(normalized), normalized);
+    }
+
+    public String getSignature() {
+        return signature;
+    }
+
+    public boolean matchesNothing() {
+        return matchesNothing;
+    }
+
+    public boolean isMatchAll() {
+        return conditions.length == 0 && ranges.length == 0 && textQuery == null && !matchesNothing;
+    }
+
+    /**
+     * The full-text query, or {@code null}.
+     */
+    public AlarmTextQuery getTextQuery() {
+        return textQuery;
+    }
+
+    Condition[] getConditions() {
+        return conditions;
+    }
+
+    Range[] getRanges() {
+        return ranges;
+    }
+
+    public boolean matches(Alarm alarm) {
+        if (matchesNothing) {
+            return false;
+        }
+        for (Range range : ranges) {
+            if (!range.contains(range.valueOf(alarm))) {
+                return false;
+            }
+        }
+        for (Condition condition : conditions) {
+            if (!condition.matches(alarm)) {
+                return false;
+            }
+        }
+        return textQuery == null || textQuery.matches(alarm.getMessage(), alarm.getType());
+    }
+
+    /**
+     * Case-insensitive {@code contains} without lowercasing (and copying) the value: positions are skipped on
+     * the first character and only candidates are compared with {@link String#regionMatches}.
+     */
+    public static boolean containsIgnoreCase(String value, String lowerNeedle) {
+        int length = lowerNeedle.length();
+        if (length == 0) {
+            return true;
+        }
+        char first = lowerNeedle.charAt(0);
+        char firstUpper = Character.toUpperCase(first);
+        int last = value.length() - length;
+        for (int i = 0; i <= last; i++) {
+            char c = value.charAt(i);
+            if ((c == first || c == firstUpper || (c > 0x7f && Character.toLowerCase(c) == first))
+                    && value.regionMatches(true, i + 1, lowerNeedle, 1, length - 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return "AlarmFilterPlan" + List.of(conditions) + (ranges.length > 0 ? " " + List.of(ranges) : "")
+                + (textQuery != null ? " text " + textQuery : "") + (matchesNothing ? " (matches nothing)" : "");
+    }
+
+    static final class Condition {
+        final AlarmField field;
+        final String needle;
+
+        Condition(AlarmField field, String needle) {
+            this.field = field;
+            this.needle = needle;
+        }
+
+        boolean matches(Alarm alarm) {
+            String value = field.text(alarm);
+            return value != null && containsIgnoreCase(value, needle);
+        }
+
+        @Override
+        public String toString() {
+            return field.getPropertyName() + " contains '" + needle + "'";
+        }
+    }
+
+    /**
+     * Values of a numeric property in {@code [from, to)}, in the units of its column: nanoseconds since the
+     * epoch, UTC, for the timestamp, seconds for the duration and cents for the charge. {@link Long#MIN_VALUE}
+     * and {@link Long#MAX_VALUE} leave a side open.
+     */
+    static final class Range {
+        final AlarmField field;
+        final long from;
+        final long to;
+
+        Range(AlarmField field, long from, long to) {
+            this.field = field;
+            this.from = from;
+            this.to = to;
+        }
+
+        boolean contains(long value) {
+            return value >= from && value < to;
+        }
+
+        /**
+         * Whether values in {@code [min, max]} can all, some or none be in the range: {@code 1}, {@code 0} or
+         * {@code -1}.
+         */
+        int overlaps(long min, long max) {
+            if (max < from || min >= to) {
+                return -1;
+            }
+            return min >= from && max < to ? 1 : 0;
+        }
+
+        long valueOf(Alarm alarm) {
+            switch (field) {
+                case TIMESTAMP:
+                    return AlarmColumns.toNanos(alarm.getTimestamp());
+                case DURATION_SECONDS:
+                    return alarm.getDuration_seconds();
+                case CHARGE_AMOUNT:
+                    return AlarmColumns.toCents(alarm.getCharge_amount());
+                default:
+                    throw new IllegalStateException(field + " has no range");
+            }
+        }
+
+        @Override
+        public String toString() {
+            return field.getPropertyName() + " in [" + format(from) + ", " + format(to) + ")";
+        }
+
+        private String format(long bound) {
+            if (bound == Long.MIN_VALUE || bound == Long.MAX_VALUE) {
+                return "";
+            }
+            return field == AlarmField.TIMESTAMP ? String.valueOf(AlarmColumns.toTimestamp(bound)) : Long.toString(bound);
+        }
+    }
+}
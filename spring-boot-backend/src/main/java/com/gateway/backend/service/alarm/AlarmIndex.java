@@ -0,0 +1,981 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.IntConsumer;
+
+/**
+ * Per-field secondary indexes over the rows of an {@link AlarmColumns}.
+ * <p>
+ * Rows are grouped in blocks that line up with the column chunks ({@value #BLOCK_SIZE} rows). Inside a block:
+ * <ul>
+ *     <li>categorical fields ({@link AlarmColumns#DICTIONARY_FIELDS}) keep a posting list per dictionary code;
+ *     a {@code contains} filter is resolved against the distinct values first and then is the union of the
+ *     postings of the matching codes;</li>
+ *     <li>free-text fields ({@link AlarmColumns#TEXT_FIELDS}) keep a posting list per lowercase trigram; a needle
+ *     of three or more characters only has to be checked on the rows in the intersection of its trigrams'
+ *     postings;</li>
+ *     <li>numeric fields ({@link AlarmColumns#RANGE_FIELDS}) keep their values sorted, with the row of each; a
+ *     {@link AlarmFilterPlan.Range range} is the run of rows between two binary searches, and a block whose
+ *     smallest and largest value are outside it (or both inside) is skipped (or taken whole) without even
+ *     that.</li>
+ * </ul>
+ * The message and type together also have an {@link AlarmTextIndex} per block for {@link AlarmTextQuery}s,
+ * whose matches {@link #rank} orders by BM25 relevance.
+ * <p>
+ * The candidate rows of a block are the intersection of the ranges and postings of every condition, as bitmaps.
+ * <p>
+ * A block is {@link #seal sealed} once its chunk is full and never changes afterwards (an update to one of its
+ * rows seals a new one, a status change only {@link #reseal reindexes} the status), so an instance is an
+ * immutable view like the columns it belongs to. Sealing compacts the postings into sorted arrays searched by
+ * bisection; the {@link AlarmStore} expires whole blocks by their newest timestamp. Rows of chunks without a
+ * block yet, and conditions the index cannot answer (ids, needles shorter than a trigram, values matching too
+ * many codes), are checked on the columns.
+ */
+public class AlarmIndex {
+
+    static final int BLOCK_SHIFT = AlarmColumns.CHUNK_SHIFT;
+    static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int WORDS = BLOCK_SIZE / 64;
+
+    /**
+     * Beyond this many matching values, merging postings costs more than reading the code column.
+     */
+    private static final int MAX_UNION_CODES = 64;
+
+    /** BM25 term frequency saturation and document length normalization. */
+    private static final float BM25_K1 = 1.2f;
+    private static final float BM25_B = 0.75f;
+
+    private static final AlarmField[] CODE_FIELDS = AlarmColumns.DICTIONARY_FIELDS;
+    private static final AlarmField[] TRIGRAM_FIELDS = AlarmColumns.TEXT_FIELDS;
+    private static final AlarmField[] SORTED_FIELDS = AlarmColumns.RANGE_FIELDS;
+    private static final int TIMESTAMP_SLOT = slotOf(SORTED_FIELDS, AlarmField.TIMESTAMP);
+
+    private final AlarmColumns columns;
+    /** Per chunk, {@code null} until the chunk is sealed; may be shorter than the number of chunks. */
+    private final Block[] blocks;
+
+    AlarmIndex(AlarmColumns columns, Block[] blocks) {
+        this.columns = columns;
+        this.blocks = blocks;
+    }
+
+    /**
+     * Indexes the full chunk {@code chunk} of {@code columns}.
+     */
+    static Block seal(AlarmColumns columns, int chunk) {
+        @SuppressWarnings("unchecked")
+        Map<Integer, Posting>[] codes = new Map[CODE_FIELDS.length];
+        @SuppressWarnings("unchecked")
+        Map<Long, Posting>[] trigrams = new Map[TRIGRAM_FIELDS.length];
+        for (int slot = 0; slot < codes.length; slot++) {
+            codes[slot] = new HashMap<>();
+        }
+        for (int slot = 0; slot < trigrams.length; slot++) {
+            trigrams[slot] = new HashMap<>();
+        }
+        int base = chunk << BLOCK_SHIFT;
+        for (int offset = 0; offset < BLOCK_SIZE; offset++) {
+            int row = base + offset;
+            for (int slot = 0; slot < CODE_FIELDS.length; slot++) {
+                int code = columns.code(CODE_FIELDS[slot], row);
+                if (code != AlarmDictionary.NULL_CODE) {
+                    codes[slot].computeIfAbsent(code, c -> new Posting()).add(offset);
+                }
+            }
+            for (int slot = 0; slot < TRIGRAM_FIELDS.length; slot++) {
+                String value = columns.text(TRIGRAM_FIELDS[slot], row);
+                if (value != null) {
+                    for (long key : trigrams(value)) {
+                        trigrams[slot].computeIfAbsent(key, k -> new Posting()).add(offset);
+                    }
+                }
+            }
+        }
+        SortedColumn[] sorted = new SortedColumn[SORTED_FIELDS.length];
+        for (int slot = 0; slot < sorted.length; slot++) {
+            sorted[slot] = SortedColumn.of(columns, SORTED_FIELDS[slot], base);
+        }
+        return new Block(codes, trigrams, sorted, AlarmTextIndex.build(columns, base));
+    }
+
+    /**
+     * {@code block}, sealed over chunk {@code chunk}, with the postings of the categorical {@code field} taken
+     * again from {@code columns} and everything else shared, for a change to that field alone.
+     */
+    static Block reseal(Block block, AlarmColumns columns, int chunk, AlarmField field) {
+        int slot = AlarmColumns.dictionarySlot(field);
+        Map<Integer, Posting> codes = new HashMap<>();
+        int base = chunk << BLOCK_SHIFT;
+        for (int offset = 0; offset < BLOCK_SIZE; offset++) {
+            int code = columns.code(slot, base + offset);
+            if (code != AlarmDictionary.NULL_CODE) {
+                codes.computeIfAbsent(code, c -> new Posting()).add(offset);
+            }
+        }
+        return new Block(block, slot, codes);
+    }
+
+    /**
+     * The rows matching {@code plan}, in row order.
+     */
+    public int[] select(AlarmFilterPlan plan) {
+        RowCollector rows = new RowCollector();
+        scan(plan, rows);
+        return rows.toArray();
+    }
+
+    /**
+     * Hands every row matching {@code plan} to {@code action}, in row order, without collecting them first.
+     */
+    public void forEach(AlarmFilterPlan plan, IntConsumer action) {
+        scan(plan, action);
+    }
+
+    /**
+     * Number of rows matching {@code plan}; when the indexes answer every condition the columns are not read.
+     */
+    public int count(AlarmFilterPlan plan) {
+        return scan(plan, null);
+    }
+
+    /**
+     * The {@code k} rows matching {@code plan} most relevant to its text query, best first, and the number of
+     * rows matching it.
+     *
+     * @throws IllegalArgumentException if the plan has no text query
+     */
+    public Ranked rank(AlarmFilterPlan plan, int k) {
+        return prepareRanking(plan).run(firstBlock(), endBlock(), k);
+    }
+
+    private int scan(AlarmFilterPlan plan, IntConsumer out) {
+        return prepare(plan).run(firstBlock(), endBlock(), out);
+    }
+
+    /**
+     * The first block holding rows that are still stored.
+     */
+    int firstBlock() {
+        return columns.first() >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * One past the last block holding rows, sealed or not.
+     */
+    int endBlock() {
+        return (columns.size() + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+    }
+
+    /**
+     * {@code plan} resolved against the dictionaries and split into the conditions the postings answer and those
+     * left to check on the columns, ready to be {@link Scan#run run} over any range of blocks, from any number of
+     * threads at once.
+     */
+    Scan prepare(AlarmFilterPlan plan) {
+        return new Scan(plan);
+    }
+
+    /**
+     * Like {@link #prepare}, for {@link #rank}: the collection statistics of the text query are gathered over
+     * every block first.
+     *
+     * @throws IllegalArgumentException if the plan has no text query
+     */
+    Ranker prepareRanking(AlarmFilterPlan plan) {
+        if (plan.getTextQuery() == null) {
+            throw new IllegalArgumentException("Sorting by relevance needs a text query");
+        }
+        return new Ranker(plan);
+    }
+
+    final class Scan {
+        private final boolean empty;
+        private final AlarmFilterPlan.Range[] ranges;
+        private final int[] rangeSlots;
+        private final List<int[]> unionCodes = new ArrayList<>();
+        private final List<Integer> unionSlots = new ArrayList<>();
+        private final List<long[]> trigramKeys = new ArrayList<>();
+        private final List<Integer> trigramSlots = new ArrayList<>();
+        private final AlarmTextQuery.Clause[] textClauses;
+        private final AlarmColumns.RowMatcher[] check;
+        private final AlarmColumns.RowMatcher[] checkAll;
+
+        private Scan(AlarmFilterPlan plan) {
+            boolean empty = plan.matchesNothing();
+            ranges = plan.getRanges();
+            rangeSlots = new int[ranges.length];
+            for (int i = 0; i < ranges.length; i++) {
+                rangeSlots[i] = slotOf(SORTED_FIELDS, ranges[i].field);
+            }
+            List<AlarmColumns.RowMatcher> residual = new ArrayList<>();
+            for (AlarmFilterPlan.Condition condition : plan.getConditions()) {
+                int codeSlot = slotOf(CODE_FIELDS, condition.field);
+                int trigramSlot = slotOf(TRIGRAM_FIELDS, condition.field);
+                if (codeSlot >= 0) {
+                    boolean[] matching = columns.dictionary(condition.field).matching(condition.needle);
+                    int[] codes = codesOf(matching);
+                    if (codes.length == 0) {
+                        empty = true;
+                    } else if (codes.length <= MAX_UNION_CODES) {
+                        unionSlots.add(codeSlot);
+                        unionCodes.add(codes);
+                    } else {
+                        residual.add(columns.codeMatcher(condition.field, matching));
+                    }
+                } else if (trigramSlot >= 0 && isTrigramSearchable(condition.needle)) {
+                    trigramSlots.add(trigramSlot);
+                    trigramKeys.add(trigrams(condition.needle));
+                    residual.add(columns.matcher(condition));
+                } else {
+                    residual.add(columns.matcher(condition));
+                }
+            }
+            this.empty = empty;
+            textClauses = plan.getTextQuery() != null
+                    ? plan.getTextQuery().getClauses()
+                    : new AlarmTextQuery.Clause[0];
+            check = residual.toArray(new AlarmColumns.RowMatcher[0]);
+            checkAll = matchersOf(plan);
+        }
+
+        /**
+         * Counts (and hands to {@code out}, if set, in row order) the matching rows of the blocks
+         * {@code [fromBlock, toBlock)}.
+         */
+        int run(int fromBlock, int toBlock, IntConsumer out) {
+            if (empty) {
+                return 0;
+            }
+            int total = 0;
+            int size = columns.size();
+            long[] candidates = new long[WORDS];
+            long[] scratch = new long[WORDS];
+            for (int b = fromBlock; b < toBlock && b << BLOCK_SHIFT < size; b++) {
+                Block block = b < blocks.length ? blocks[b] : null;
+                int base = b << BLOCK_SHIFT;
+                if (block == null) {
+                    fillRows(candidates, Math.min(BLOCK_SIZE, size - base));
+                    total += collect(candidates, base, checkAll, out);
+                    continue;
+                }
+                if (!block.overlapsAll(ranges, rangeSlots)) {
+                    continue;
+                }
+                fillRows(candidates, BLOCK_SIZE);
+
+                boolean none = false;
+                for (int i = 0; i < ranges.length && !none; i++) {
+                    none = !block.intersectRange(rangeSlots[i], ranges[i], candidates, scratch);
+                }
+                for (int i = 0; i < unionSlots.size() && !none; i++) {
+                    Arrays.fill(scratch, 0L);
+                    int slot = unionSlots.get(i);
+                    for (int code : unionCodes.get(i)) {
+                        Posting posting = block.codePosting(slot, code);
+                        if (posting != null) {
+                            posting.orInto(scratch);
+                        }
+                    }
+                    none = !and(candidates, scratch);
+                }
+                for (int i = 0; i < trigramSlots.size() && !none; i++) {
+                    none = !block.intersectTrigrams(trigramSlots.get(i), trigramKeys.get(i), candidates, scratch);
+                }
+                for (int i = 0; i < textClauses.length && !none; i++) {
+                    Arrays.fill(scratch, 0L);
+                    block.text.evaluate(textClauses[i], scratch, null);
+                    none = !and(candidates, scratch);
+                }
+                if (none) {
+                    continue;
+                }
+
+                total += collect(candidates, base, check, out);
+            }
+            return total;
+        }
+    }
+
+    /**
+     * Counts (and hands to {@code out}, if set) the candidate rows passing every matcher.
+     */
+    private static int collect(long[] candidates, int base, AlarmColumns.RowMatcher[] check, IntConsumer out) {
+        int total = 0;
+        if (out == null && check.length == 0) {
+            for (long word : candidates) {
+                total += Long.bitCount(word);
+            }
+            return total;
+        }
+        for (int w = 0; w < WORDS; w++) {
+            long word = candidates[w];
+            while (word != 0) {
+                int row = base + (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                if (matchesAll(check, row)) {
+                    total++;
+                    if (out != null) {
+                        out.accept(row);
+                    }
+                }
+            }
+        }
+        return total;
+    }
+
+    private AlarmColumns.RowMatcher[] matchersOf(AlarmFilterPlan plan) {
+        List<AlarmColumns.RowMatcher> matchers = new ArrayList<>();
+        for (AlarmFilterPlan.Range range : plan.getRanges()) {
+            matchers.add(columns.rangeMatcher(range));
+        }
+        for (AlarmFilterPlan.Condition condition : plan.getConditions()) {
+            matchers.add(columns.matcher(condition));
+        }
+        AlarmTextQuery textQuery = plan.getTextQuery();
+        if (textQuery != null) {
+            matchers.add(row -> textQuery.matches(document(row)));
+        }
+        return matchers.toArray(new AlarmColumns.RowMatcher[0]);
+    }
+
+    private String[] document(int row) {
+        return AlarmTextQuery.analyze(columns.text(AlarmField.MESSAGE, row), columns.text(AlarmField.TYPE, row));
+    }
+
+    /**
+     * Ranks the rows matching a plan by the BM25 relevance of their message and type to its text query, each
+     * clause scoring like a term: a prefix by the occurrences of all the terms it covers, a phrase by its own
+     * occurrences. The document frequencies and the average document length are those of every stored alarm,
+     * summed over the blocks when prepared; rows of unsealed blocks are analyzed on the fly.
+     */
+    final class Ranker {
+        private final Scan scan;
+        private final AlarmTextQuery.Clause[] clauses;
+        private final float[] weights;
+        private final float averageLength;
+
+        private Ranker(AlarmFilterPlan plan) {
+            scan = new Scan(plan);
+            clauses = plan.getTextQuery().getClauses();
+            long[] frequencies = new long[clauses.length];
+            long totalLength = 0;
+            long[] scratch = new long[WORDS];
+            int size = columns.size();
+            for (int b = firstBlock(), endBlock = endBlock(); b < endBlock; b++) {
+                Block block = b < blocks.length ? blocks[b] : null;
+                if (block != null) {
+                    totalLength += block.text.totalLength();
+                    for (int c = 0; c < clauses.length; c++) {
+                        frequencies[c] += block.text.documentFrequency(clauses[c], scratch);
+                    }
+                    continue;
+                }
+                int end = Math.min((b + 1) << BLOCK_SHIFT, size);
+                for (int row = Math.max(b << BLOCK_SHIFT, columns.first()); row < end; row++) {
+                    String[] document = document(row);
+                    totalLength += AlarmTextQuery.length(document);
+                    for (int c = 0; c < clauses.length; c++) {
+                        if (AlarmTextQuery.frequency(clauses[c], document) > 0) {
+                            frequencies[c]++;
+                        }
+                    }
+                }
+            }
+            long documents = Math.max(1, columns.count());
+            averageLength = Math.max(1f, (float) totalLength / documents);
+            weights = new float[clauses.length];
+            for (int c = 0; c < clauses.length; c++) {
+                // Never negative, however common the clause
+                weights[c] = (float) Math.log(1 + (documents - frequencies[c] + 0.5) / (frequencies[c] + 0.5));
+            }
+        }
+
+        /**
+         * The {@code k} best rows of the blocks {@code [fromBlock, toBlock)} and the number of rows matching there.
+         */
+        Ranked run(int fromBlock, int toBlock, int k) {
+            TopScores top = new TopScores(k);
+            AlarmIndex.RowCollector rows = new AlarmIndex.RowCollector();
+            int[][] frequencies = new int[clauses.length][BLOCK_SIZE];
+            long[] scratch = new long[WORDS];
+            int total = 0;
+            for (int b = fromBlock; b < toBlock; b++) {
+                rows.clear();
+                int matching = scan.run(b, b + 1, rows);
+                if (matching == 0) {
+                    continue;
+                }
+                total += matching;
+                Block block = b < blocks.length ? blocks[b] : null;
+                int base = b << BLOCK_SHIFT;
+                if (block != null) {
+                    for (int c = 0; c < clauses.length; c++) {
+                        Arrays.fill(frequencies[c], 0);
+                        block.text.evaluate(clauses[c], scratch, frequencies[c]);
+                    }
+                }
+                for (int i = 0; i < rows.count; i++) {
+                    int row = rows.rows[i];
+                    float score = 0;
+                    if (block != null) {
+                        int offset = row - base;
+                        int length = block.text.length(offset);
+                        for (int c = 0; c < clauses.length; c++) {
+                            score += score(c, frequencies[c][offset], length);
+                        }
+                    } else {
+                        String[] document = document(row);
+                        int length = AlarmTextQuery.length(document);
+                        for (int c = 0; c < clauses.length; c++) {
+                            score += score(c, AlarmTextQuery.frequency(clauses[c], document), length);
+                        }
+                    }
+                    top.offer(score, row);
+                }
+            }
+            return new Ranked(top.toSortedArray(), total);
+        }
+
+        private float score(int clause, int frequency, int length) {
+            return weights[clause] * frequency * (BM25_K1 + 1)
+                    / (frequency + BM25_K1 * (1 - BM25_B + BM25_B * length / averageLength));
+        }
+    }
+
+    /**
+     * The best {@code k} of the rows offered, by descending score and then in row order, each packed in a
+     * {@code long} that orders like that: the score's bits (never negative) above the inverted row.
+     */
+    private static final class TopScores {
+        private final long[] heap;
+        private int size;
+
+        TopScores(int k) {
+            heap = new long[Math.max(0, k)];
+        }
+
+        void offer(float score, int row) {
+            if (heap.length == 0) {
+                return;
+            }
+            long packed = pack(score, row);
+            if (size < heap.length) {
+                heap[size] = packed;
+                siftUp(size++);
+            } else if (packed > heap[0]) {
+                heap[0] = packed;
+                siftDown();
+            }
+        }
+
+        /** Min-heap on the packed value: the worst kept row on top. */
+        private void siftUp(int i) {
+            long value = heap[i];
+            while (i > 0 && heap[(i - 1) >>> 1] > value) {
+                heap[i] = heap[(i - 1) >>> 1];
+                i = (i - 1) >>> 1;
+            }
+            heap[i] = value;
+        }
+
+        private void siftDown() {
+            long value = heap[0];
+            int i = 0;
+            while (true) {
+                int child = 2 * i + 1;
+                if (child >= size) {
+                    break;
+                }
+                if (child + 1 < size && heap[child + 1] < heap[child]) {
+                    child++;
+                }
+                if (heap[child] >= value) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = value;
+        }
+
+        long[] toSortedArray() {
+            long[] sorted = Arrays.copyOf(heap, size);
+            Arrays.sort(sorted);
+            reverse(sorted);
+            return sorted;
+        }
+    }
+
+    private static long pack(float score, int row) {
+        return (long) Float.floatToIntBits(score) << 32 | (Integer.MAX_VALUE - row);
+    }
+
+    private static void reverse(long[] values) {
+        for (int i = 0, j = values.length - 1; i < j; i++, j--) {
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Rows ranked by relevance, best first, with the number of rows that matched.
+     */
+    public static final class Ranked {
+        /** Score and row of each, see {@link TopScores}. */
+        private final long[] top;
+        private final int total;
+
+        private Ranked(long[] top, int total) {
+            this.top = top;
+            this.total = total;
+        }
+
+        /**
+         * Merges the rankings of disjoint ranges of blocks.
+         */
+        static Ranked merge(List<Ranked> parts, int k) {
+            if (parts.size() == 1) {
+                return parts.get(0);
+            }
+            int length = 0;
+            int total = 0;
+            for (Ranked part : parts) {
+                length += part.top.length;
+                total += part.total;
+            }
+            long[] all = new long[length];
+            int at = 0;
+            for (Ranked part : parts) {
+                System.arraycopy(part.top, 0, all, at, part.top.length);
+                at += part.top.length;
+            }
+            Arrays.sort(all);
+            reverse(all);
+            return new Ranked(Arrays.copyOf(all, Math.min(Math.max(0, k), all.length)), total);
+        }
+
+        public int size() {
+            return top.length;
+        }
+
+        public int row(int i) {
+            return Integer.MAX_VALUE - (int) top[i];
+        }
+
+        public float score(int i) {
+            return Float.intBitsToFloat((int) (top[i] >>> 32));
+        }
+
+        public int getTotal() {
+            return total;
+        }
+    }
+
+    private static int slotOf(AlarmField[] fields, AlarmField field) {
+        for (int slot = 0; slot < fields.length; slot++) {
+            if (fields[slot] == field) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static int[] codesOf(boolean[] matching) {
+        int count = 0;
+        for (boolean match : matching) {
+            if (match) {
+                count++;
+            }
+        }
+        int[] codes = new int[count];
+        for (int code = 0, i = 0; code < matching.length; code++) {
+            if (matching[code]) {
+                codes[i++] = code;
+            }
+        }
+        return codes;
+    }
+
+    private static boolean matchesAll(AlarmColumns.RowMatcher[] matchers, int row) {
+        for (AlarmColumns.RowMatcher matcher : matchers) {
+            if (!matcher.matches(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Only ASCII needles go through the trigram postings: beyond ASCII, per-character and per-string case
+     * folding can disagree, so such needles are checked row by row instead.
+     */
+    static boolean isTrigramSearchable(String needle) {
+        if (needle.length() < 3) {
+            return false;
+        }
+        for (int i = 0; i < needle.length(); i++) {
+            if (needle.charAt(i) > 0x7f) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Distinct lowercase trigrams of {@code value}, each packed as three 16-bit chars, sorted.
+     */
+    static long[] trigrams(String value) {
+        int count = value.length() - 2;
+        if (count <= 0) {
+            return new long[0];
+        }
+        long[] keys = new long[count];
+        long c0 = Character.toLowerCase(value.charAt(0));
+        long c1 = Character.toLowerCase(value.charAt(1));
+        for (int i = 0; i < count; i++) {
+            long c2 = Character.toLowerCase(value.charAt(i + 2));
+            keys[i] = c0 << 32 | c1 << 16 | c2;
+            c0 = c1;
+            c1 = c2;
+        }
+        Arrays.sort(keys);
+        int distinct = 1;
+        for (int i = 1; i < count; i++) {
+            if (keys[i] != keys[distinct - 1]) {
+                keys[distinct++] = keys[i];
+            }
+        }
+        return distinct == count ? keys : Arrays.copyOf(keys, distinct);
+    }
+
+    private static void fillRows(long[] bitmap, int rows) {
+        int full = rows >>> 6;
+        Arrays.fill(bitmap, 0, full, -1L);
+        Arrays.fill(bitmap, full, WORDS, 0L);
+        if ((rows & 63) != 0) {
+            bitmap[full] = (1L << rows) - 1;
+        }
+    }
+
+    /**
+     * {@code target &= bitmap}; returns {@code false} if no bit is left.
+     */
+    private static boolean and(long[] target, long[] bitmap) {
+        long any = 0;
+        for (int i = 0; i < WORDS; i++) {
+            target[i] &= bitmap[i];
+            any |= target[i];
+        }
+        return any != 0;
+    }
+
+    static final class RowCollector implements IntConsumer {
+        private int[] rows = new int[256];
+        private int count;
+
+        void clear() {
+            count = 0;
+        }
+
+        @Override
+        public void accept(int row) {
+            if (count == rows.length) {
+                rows = Arrays.copyOf(rows, count * 2);
+            }
+            rows[count++] = row;
+        }
+
+        int[] toArray() {
+            return Arrays.copyOf(rows, count);
+        }
+    }
+
+    /**
+     * The postings of one sealed chunk, per field as sorted keys and the postings in the same order, its
+     * sorted numeric columns and its text index.
+     */
+    static final class Block {
+        private final int[][] codeKeys = new int[CODE_FIELDS.length][];
+        private final Posting[][] codePostings = new Posting[CODE_FIELDS.length][];
+        private final long[][] trigramKeys = new long[TRIGRAM_FIELDS.length][];
+        private final Posting[][] trigramPostings = new Posting[TRIGRAM_FIELDS.length][];
+        private final SortedColumn[] sorted;
+        private final AlarmTextIndex text;
+
+        private Block(Map<Integer, Posting>[] codes, Map<Long, Posting>[] trigrams, SortedColumn[] sorted,
+                      AlarmTextIndex text) {
+            for (int slot = 0; slot < codes.length; slot++) {
+                setCodes(slot, codes[slot]);
+            }
+            for (int slot = 0; slot < trigrams.length; slot++) {
+                long[] keys = new long[trigrams[slot].size()];
+                int i = 0;
+                for (long key : trigrams[slot].keySet()) {
+                    keys[i++] = key;
+                }
+                Arrays.sort(keys);
+                Posting[] postings = new Posting[keys.length];
+                for (i = 0; i < keys.length; i++) {
+                    postings[i] = trigrams[slot].get(keys[i]).compact();
+                }
+                trigramKeys[slot] = keys;
+                trigramPostings[slot] = postings;
+            }
+            this.sorted = sorted;
+            this.text = text;
+        }
+
+        /**
+         * A copy of {@code source} with the postings of the categorical field at {@code slot} replaced.
+         */
+        private Block(Block source, int slot, Map<Integer, Posting> codes) {
+            System.arraycopy(source.codeKeys, 0, codeKeys, 0, codeKeys.length);
+            System.arraycopy(source.codePostings, 0, codePostings, 0, codePostings.length);
+            System.arraycopy(source.trigramKeys, 0, trigramKeys, 0, trigramKeys.length);
+            System.arraycopy(source.trigramPostings, 0, trigramPostings, 0, trigramPostings.length);
+            setCodes(slot, codes);
+            this.sorted = source.sorted;
+            this.text = source.text;
+        }
+
+        private void setCodes(int slot, Map<Integer, Posting> codes) {
+            int[] keys = new int[codes.size()];
+            int i = 0;
+            for (int code : codes.keySet()) {
+                keys[i++] = code;
+            }
+            Arrays.sort(keys);
+            Posting[] postings = new Posting[keys.length];
+            for (i = 0; i < keys.length; i++) {
+                postings[i] = codes.get(keys[i]).compact();
+            }
+            codeKeys[slot] = keys;
+            codePostings[slot] = postings;
+        }
+
+        /**
+         * The newest timestamp in the block.
+         */
+        long maxNanos() {
+            return sorted[TIMESTAMP_SLOT].max();
+        }
+
+        /**
+         * Whether some rows of the block can be in every one of {@code ranges}, on the sorted columns at
+         * {@code slots}.
+         */
+        boolean overlapsAll(AlarmFilterPlan.Range[] ranges, int[] slots) {
+            for (int i = 0; i < ranges.length; i++) {
+                SortedColumn column = sorted[slots[i]];
+                if (ranges[i].overlaps(column.min(), column.max()) < 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * {@code candidates &= rows in range}; returns {@code false} if no candidate is left.
+         */
+        boolean intersectRange(int slot, AlarmFilterPlan.Range range, long[] candidates, long[] scratch) {
+            SortedColumn column = sorted[slot];
+            int overlap = range.overlaps(column.min(), column.max());
+            if (overlap > 0) {
+                return true;
+            }
+            if (overlap < 0) {
+                return false;
+            }
+            Arrays.fill(scratch, 0L);
+            column.orInto(range.from, range.to, scratch);
+            return and(candidates, scratch);
+        }
+
+        Posting codePosting(int slot, int code) {
+            int i = Arrays.binarySearch(codeKeys[slot], code);
+            return i < 0 ? null : codePostings[slot][i];
+        }
+
+        /**
+         * {@code candidates &= rows containing every trigram}; returns {@code false} if no candidate is left.
+         */
+        boolean intersectTrigrams(int slot, long[] keys, long[] candidates, long[] scratch) {
+            Posting[] lists = new Posting[keys.length];
+            for (int i = 0; i < keys.length; i++) {
+                int at = Arrays.binarySearch(trigramKeys[slot], keys[i]);
+                if (at < 0) {
+                    return false;
+                }
+                lists[i] = trigramPostings[slot][at];
+            }
+            // Shortest lists first empty the candidates soonest
+            Arrays.sort(lists, (a, b) -> Integer.compare(a.cardinality(), b.cardinality()));
+            for (Posting list : lists) {
+                Arrays.fill(scratch, 0L);
+                list.orInto(scratch);
+                if (!and(candidates, scratch)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The values of a numeric column in one block in ascending order ({@code long}s or {@code int}s, as in the
+     * column), with the row offset of each, so the rows with values in a range are a contiguous run found by
+     * two binary searches.
+     */
+    private static final class SortedColumn {
+        private final long[] longs;
+        private final int[] ints;
+        private final char[] offsets;
+
+        private SortedColumn(long[] longs, int[] ints, char[] offsets) {
+            this.longs = longs;
+            this.ints = ints;
+            this.offsets = offsets;
+        }
+
+        static SortedColumn of(AlarmColumns columns, AlarmField field, int base) {
+            int[] rows = new int[BLOCK_SIZE];
+            for (int offset = 0; offset < BLOCK_SIZE; offset++) {
+                rows[offset] = base + offset;
+            }
+            RowSort.sort(rows, BLOCK_SIZE,
+                    (a, b) -> Long.compare(columns.rangeValue(field, a), columns.rangeValue(field, b)));
+            boolean wide = field == AlarmField.TIMESTAMP;
+            long[] longs = wide ? new long[BLOCK_SIZE] : null;
+            int[] ints = wide ? null : new int[BLOCK_SIZE];
+            char[] offsets = new char[BLOCK_SIZE];
+            for (int i = 0; i < BLOCK_SIZE; i++) {
+                long value = columns.rangeValue(field, rows[i]);
+                if (wide) {
+                    longs[i] = value;
+                } else {
+                    ints[i] = (int) value;
+                }
+                offsets[i] = (char) (rows[i] - base);
+            }
+            return new SortedColumn(longs, ints, offsets);
+        }
+
+        long min() {
+            return value(0);
+        }
+
+        long max() {
+            return value(offsets.length - 1);
+        }
+
+        private long value(int i) {
+            return longs != null ? longs[i] : ints[i];
+        }
+
+        /**
+         * Index of the first value not below {@code bound}.
+         */
+        private int lowerBound(long bound) {
+            int low = 0;
+            int high = offsets.length;
+            while (low < high) {
+                int mid = (low + high) >>> 1;
+                if (value(mid) < bound) {
+                    low = mid + 1;
+                } else {
+                    high = mid;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Sets the bits of the rows with values in {@code [from, to)}.
+         */
+        void orInto(long from, long to, long[] target) {
+            for (int i = lowerBound(from), end = lowerBound(to); i < end; i++) {
+                target[offsets[i] >>> 6] |= 1L << offsets[i];
+            }
+        }
+    }
+
+    /**
+     * Sorted row offsets within a block: a {@code char[]} while sparse, a bitmap once it holds more than
+     * {@value #MAX_SPARSE} rows (the point where the bitmap is smaller).
+     */
+    private static final class Posting {
+        private static final int MAX_SPARSE = WORDS * 4;
+
+        private char[] offsets = new char[4];
+        private int count;
+        private long[] bitmap;
+
+        int cardinality() {
+            return count;
+        }
+
+        void add(int offset) {
+            if (bitmap != null) {
+                long bit = 1L << offset;
+                if ((bitmap[offset >>> 6] & bit) == 0) {
+                    bitmap[offset >>> 6] |= bit;
+                    count++;
+                }
+                return;
+            }
+            // Appends arrive in row order, so the common case is a plain append
+            int at = count == 0 || offsets[count - 1] < offset
+                    ? count
+                    : Arrays.binarySearch(offsets, 0, count, (char) offset);
+            if (at >= 0 && at < count) {
+                return;
+            }
+            if (at < 0) {
+                at = -at - 1;
+            }
+            if (count == MAX_SPARSE) {
+                bitmap = new long[WORDS];
+                for (int i = 0; i < count; i++) {
+                    bitmap[offsets[i] >>> 6] |= 1L << offsets[i];
+                }
+                offsets = null;
+                add(offset);
+                return;
+            }
+            if (count == offsets.length) {
+                offsets = Arrays.copyOf(offsets, Math.min(count * 2, MAX_SPARSE));
+            }
+            System.arraycopy(offsets, at, offsets, at + 1, count - at);
+            offsets[at] = (char) offset;
+            count++;
+        }
+
+        /**
+         * Trims the sparse offsets to their count once no more rows are added.
+         */
+        Posting compact() {
+            if (offsets != null && offsets.length > count) {
+                offsets = Arrays.copyOf(offsets, count);
+            }
+            return this;
+        }
+
+        void orInto(long[] target) {
+            if (bitmap != null) {
+                for (int i = 0; i < WORDS; i++) {
+                    target[i] |= bitmap[i];
+                }
+                return;
+            }
+            for (int i = 0; i < count; i++) {
+                target[offsets[i] >>> 6] |= 1L << offsets[i];
+            }
+        }
+    }
+}
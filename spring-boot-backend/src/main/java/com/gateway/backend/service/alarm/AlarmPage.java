@@ -0,0 +1,19 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.util.List;
+
+/**
+ * One page of an alarm query together with the number of alarms matching its filters and, when more alarms
+ * follow, the {@link AlarmCursor#encode() cursor} of the next page ({@code null} otherwise).
+ */
+@Getter
+@AllArgsConstructor
+public class AlarmPage {
+    private final List<Alarm> data;
+    private final int total;
+    private final String nextCursor;
+}
@@ -0,0 +1,307 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An SQL statement over the {@code alarm} table and its parameters, translated from an {@link AlarmFilterPlan},
+ * a sort order and a page or {@link AlarmCursor}.
+ * <p>
+ * Filters are written so the database can use its indexes where the data allows it: a {@code contains} filter
+ * on a categorical property is resolved against the distinct values in the {@link AlarmColumns} dictionaries
+ * first, like the in-memory index does, and becomes an {@code IN} list on the column. Free-text and numeric
+ * filters can only be {@code LIKE} scans, and a timestamp range bounds the indexed column. Sorting is on the
+ * column in the requested direction then on the id ascending, as in memory, so an index on {@code (column, id)}
+ * delivers the rows in order and a keyset page reads just the rows it returns. Nulls sort first (last when
+ * descending), as in memory.
+ * <p>
+ * The page statements return the number of matching alarms in a {@value #TOTAL_COLUMN} column next to every
+ * row, from a subquery the database evaluates once, so a page and its total take one round trip.
+ */
+public final class AlarmSql {
+
+    public static final String TOTAL_COLUMN = "total_count";
+
+    /** Beyond this many matching values an {@code IN} list costs more than a {@code LIKE} scan. */
+    private static final int MAX_IN_VALUES = 64;
+
+    private static final Map<AlarmField, String> COLUMNS = new EnumMap<>(AlarmField.class);
+
+    static {
+        COLUMNS.put(AlarmField.ID, "a.id");
+        COLUMNS.put(AlarmField.GATEWAY_ID, "a.gateway_id");
+        COLUMNS.put(AlarmField.GATEWAY_NAME, "a.gateway_name");
+        COLUMNS.put(AlarmField.TYPE, "a.type");
+        COLUMNS.put(AlarmField.SEVERITY, "a.severity");
+        COLUMNS.put(AlarmField.MESSAGE, "a.message");
+        COLUMNS.put(AlarmField.TIMESTAMP, "a.timestamp");
+        COLUMNS.put(AlarmField.STATUS, "a.status");
+        COLUMNS.put(AlarmField.CALL_TYPE, "a.call_type");
+        COLUMNS.put(AlarmField.CARRIER, "a.carrier");
+        COLUMNS.put(AlarmField.SITE_ID, "a.site_id");
+        COLUMNS.put(AlarmField.SITE_NAME, "a.site_name");
+        COLUMNS.put(AlarmField.CALLER, "a.caller");
+        COLUMNS.put(AlarmField.CALLER_NUMBER, "a.caller_number");
+        COLUMNS.put(AlarmField.CALLEE_NUMBER, "a.callee_number");
+        COLUMNS.put(AlarmField.DURATION_SECONDS, "a.duration_seconds");
+        COLUMNS.put(AlarmField.CHARGE_AMOUNT, "a.charge_amount");
+        COLUMNS.put(AlarmField.OCCURRENCES, "a.occurrences");
+        COLUMNS.put(AlarmField.LAST_SEEN, "a.last_seen");
+        COLUMNS.put(AlarmField.VERSION, "a.version");
+    }
+
+    private final String sql;
+    private final List<Object> parameters;
+
+    private AlarmSql(String sql, List<Object> parameters) {
+        this.sql = sql;
+        this.parameters = Collections.unmodifiableList(parameters);
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public List<Object> getParameters() {
+        return parameters;
+    }
+
+    /**
+     * The number of alarms matching {@code plan}.
+     *
+     * @param columns the alarms whose dictionaries resolve categorical filters to values
+     */
+    public static AlarmSql count(AlarmFilterPlan plan, AlarmColumns columns) {
+        List<Object> parameters = new ArrayList<>();
+        String where = where(plan, columns, parameters);
+        return new AlarmSql("SELECT COUNT(*) FROM alarm a WHERE " + where, parameters);
+    }
+
+    /**
+     * The alarms {@code offset} to {@code offset + limit - 1} matching {@code plan} in the order of
+     * {@code field}, with the total.
+     */
+    public static AlarmSql page(AlarmFilterPlan plan, AlarmColumns columns, AlarmField field, boolean descending,
+                                long offset, int limit) {
+        List<Object> parameters = new ArrayList<>();
+        String where = where(plan, columns, parameters);
+        List<Object> pageParameters = new ArrayList<>(parameters);
+        pageParameters.addAll(parameters);
+        pageParameters.add(limit);
+        pageParameters.add(offset);
+        return new AlarmSql(select(where) + " WHERE " + where + orderBy(field, descending)
+                + " LIMIT ? OFFSET ?", pageParameters);
+    }
+
+    /**
+     * The first {@code limit} alarms matching {@code plan} that sort after {@code after}, with the total of
+     * those matching {@code plan} wherever they sort.
+     */
+    public static AlarmSql pageAfter(AlarmFilterPlan plan, AlarmColumns columns, AlarmCursor after, int limit) {
+        List<Object> parameters = new ArrayList<>();
+        String where = where(plan, columns, parameters);
+        List<Object> pageParameters = new ArrayList<>(parameters);
+        pageParameters.addAll(parameters);
+        String keyset = keyset(after, pageParameters);
+        pageParameters.add(limit);
+        return new AlarmSql(select(where) + " WHERE " + where + " AND " + keyset
+                + orderBy(after.getField(), after.isDescending()) + " LIMIT ?", pageParameters);
+    }
+
+    /**
+     * Cursor positioned on {@code alarm} in the order of the page statements.
+     */
+    public static AlarmCursor cursorAt(Alarm alarm, AlarmField field, boolean descending) {
+        long id = alarm.getId();
+        switch (field) {
+            case ID:
+                return new AlarmCursor(field, descending, true, id, null, id);
+            case GATEWAY_ID:
+                return new AlarmCursor(field, descending, true, toLong(alarm.getGatewayId()), null, id);
+            case SITE_ID:
+                return new AlarmCursor(field, descending, true, toLong(alarm.getSiteId()), null, id);
+            case TIMESTAMP:
+                return new AlarmCursor(field, descending, true, AlarmColumns.toNanos(alarm.getTimestamp()), null, id);
+            case DURATION_SECONDS:
+                return new AlarmCursor(field, descending, true, alarm.getDuration_seconds(), null, id);
+            case CHARGE_AMOUNT:
+                return new AlarmCursor(field, descending, true, AlarmColumns.toCents(alarm.getCharge_amount()), null,
+                        id);
+            case OCCURRENCES:
+                return new AlarmCursor(field, descending, true,
+                        alarm.getOccurrences() == null ? AlarmColumns.NULL_LONG : alarm.getOccurrences(), null, id);
+            case LAST_SEEN:
+                return new AlarmCursor(field, descending, true, AlarmColumns.toNanos(alarm.getLastSeen()), null, id);
+            case VERSION:
+                return new AlarmCursor(field, descending, true,
+                        alarm.getVersion() == null ? AlarmColumns.NULL_LONG : alarm.getVersion(), null, id);
+            default:
+                return new AlarmCursor(field, descending, false, 0, field.text(alarm), id);
+        }
+    }
+
+    /**
+     * A range bound as a column value. Charges are stored as amounts, so a bound of {@code n} cents is taken half
+     * a cent lower: compared with amounts that are whole cents, it splits them exactly where {@code n} does.
+     */
+    private static Object bound(AlarmField field, long value) {
+        switch (field) {
+            case TIMESTAMP:
+                return AlarmColumns.toTimestamp(value);
+            case CHARGE_AMOUNT:
+                return (value - 0.5) / 100.0;
+            default:
+                return value;
+        }
+    }
+
+    private static String select(String where) {
+        return "SELECT a.*, (SELECT COUNT(*) FROM alarm a WHERE " + where + ") AS " + TOTAL_COLUMN
+                + " FROM alarm a";
+    }
+
+    private static String where(AlarmFilterPlan plan, AlarmColumns columns, List<Object> parameters) {
+        if (plan.matchesNothing()) {
+            return "1 = 0";
+        }
+        if (plan.getTextQuery() != null) {
+            // Answered by the text index of the store; LIKE cannot rank nor tell terms apart
+            throw new IllegalArgumentException("Text queries are not translated to SQL");
+        }
+        List<String> conditions = new ArrayList<>();
+        // First, the timestamp leading, as its index serves it
+        for (AlarmFilterPlan.Range range : plan.getRanges()) {
+            String column = COLUMNS.get(range.field);
+            if (range.from != Long.MIN_VALUE) {
+                conditions.add(column + " >= ?");
+                parameters.add(bound(range.field, range.from));
+            }
+            if (range.to != Long.MAX_VALUE) {
+                conditions.add(column + " < ?");
+                parameters.add(bound(range.field, range.to));
+            }
+        }
+        for (AlarmFilterPlan.Condition condition : plan.getConditions()) {
+            String column = COLUMNS.get(condition.field);
+            if (AlarmColumns.isDictionaryEncoded(condition.field)) {
+                AlarmDictionary dictionary = columns.dictionary(condition.field);
+                List<String> values = valuesOf(dictionary, dictionary.matching(condition.needle));
+                if (values.isEmpty()) {
+                    parameters.clear();
+                    return "1 = 0";
+                }
+                if (values.size() <= MAX_IN_VALUES) {
+                    conditions.add(column + " IN (" + String.join(", ", Collections.nCopies(values.size(), "?")) + ")");
+                    parameters.addAll(values);
+                    continue;
+                }
+            }
+            String text = AlarmColumns.isText(condition.field) || AlarmColumns.isDictionaryEncoded(condition.field)
+                    ? "LOWER(" + column + ")"
+                    : "CAST(" + column + " AS VARCHAR)";
+            conditions.add(text + " LIKE ? ESCAPE '\\'");
+            parameters.add("%" + escapeLike(condition.needle) + "%");
+        }
+        return conditions.isEmpty() ? "1 = 1" : String.join(" AND ", conditions);
+    }
+
+    private static List<String> valuesOf(AlarmDictionary dictionary, boolean[] matching) {
+        List<String> values = new ArrayList<>();
+        for (int code = 0; code < matching.length; code++) {
+            if (matching[code] && code != AlarmDictionary.NULL_CODE) {
+                values.add(dictionary.value(code));
+            }
+        }
+        return values;
+    }
+
+    private static String escapeLike(String needle) {
+        return needle.replace("\\", "\\\\").replace("%", "\\%").replace("_", "\\_");
+    }
+
+    private static String orderBy(AlarmField field, boolean descending) {
+        String direction = descending ? " DESC NULLS LAST" : " ASC NULLS FIRST";
+        if (field == AlarmField.ID) {
+            return " ORDER BY a.id" + direction;
+        }
+        return " ORDER BY " + COLUMNS.get(field) + direction + ", a.id ASC";
+    }
+
+    /**
+     * The rows sorting strictly after {@code after}: nulls come first ascending and last descending, and ties
+     * follow in id order either way. Apart from the nulls, the condition bounds the column itself, so an index on
+     * it can seek to the cursor.
+     */
+    private static String keyset(AlarmCursor after, List<Object> parameters) {
+        AlarmField field = after.getField();
+        String column = COLUMNS.get(field);
+        boolean descending = after.isDescending();
+        String beyond = descending ? " < " : " > ";
+        Object value = cursorValue(after);
+        if (field == AlarmField.ID) {
+            parameters.add(after.getId());
+            return "a.id" + beyond + "?";
+        }
+        if (value == null) {
+            parameters.add(after.getId());
+            return descending
+                    ? "(" + column + " IS NULL AND a.id > ?)"
+                    : "(" + column + " IS NOT NULL OR a.id > ?)";
+        }
+        parameters.add(value);
+        parameters.add(value);
+        parameters.add(after.getId());
+        String condition = column + (descending ? " <= " : " >= ") + "? AND (" + column + beyond
+                + "? OR a.id > ?)";
+        return descending && isNullable(field)
+                ? "(" + condition + " OR " + column + " IS NULL)"
+                : condition;
+    }
+
+    /**
+     * Whether the column can hold nulls; stored alarms always have a timestamp.
+     */
+    private static boolean isNullable(AlarmField field) {
+        switch (field) {
+            case ID:
+            case TIMESTAMP:
+            case DURATION_SECONDS:
+            case CHARGE_AMOUNT:
+                return false;
+            default:
+                return true;
+        }
+    }
+
+    private static Object cursorValue(AlarmCursor cursor) {
+        AlarmField field = cursor.getField();
+        boolean numeric = !AlarmColumns.isText(field) && !AlarmColumns.isDictionaryEncoded(field);
+        if (numeric != cursor.isNumeric()) {
+            throw new IllegalArgumentException("Invalid cursor");
+        }
+        if (!numeric) {
+            return cursor.getText();
+        }
+        long number = cursor.getNumber();
+        switch (field) {
+            case TIMESTAMP:
+            case LAST_SEEN:
+                return AlarmColumns.toTimestamp(number);
+            case CHARGE_AMOUNT:
+                return number / 100.0;
+            case DURATION_SECONDS:
+                return (int) number;
+            default:
+                return number == AlarmColumns.NULL_LONG ? null : number;
+        }
+    }
+
+    private static long toLong(Long value) {
+        return value == null ? AlarmColumns.NULL_LONG : value;
+    }
+}
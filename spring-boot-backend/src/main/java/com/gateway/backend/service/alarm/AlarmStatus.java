@@ -0,0 +1,45 @@
+package com.gateway.backend.service.alarm;
+
+/**
+ * The steps of the status workflow of an alarm, in order: raised {@link #OPEN}, taken up {@link #IN_PROGRESS},
+ * {@link #RESOLVED}, then {@link #CLOSED}.
+ * <p>
+ * An alarm only moves forward, possibly over steps (an operator may close an open alarm outright). An alarm
+ * whose status is none of the steps, or that has none, may move to any of them.
+ */
+public enum AlarmStatus {
+    OPEN("Open"), IN_PROGRESS("In Progress"), RESOLVED("Resolved"), CLOSED("Closed");
+
+    private final String label;
+
+    AlarmStatus(String label) {
+        this.label = label;
+    }
+
+    /**
+     * The status as alarms hold it.
+     */
+    public String getLabel() {
+        return label;
+    }
+
+    /**
+     * @return the step with that label, ignoring case, or {@code null} if there is none
+     */
+    public static AlarmStatus fromLabel(String label) {
+        for (AlarmStatus status : values()) {
+            if (status.label.equalsIgnoreCase(label)) {
+                return status;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Whether an alarm with status {@code current} may move to this step.
+     */
+    public boolean follows(String current) {
+        AlarmStatus from = fromLabel(current);
+        return from == null || from.ordinal() < ordinal();
+    }
+}
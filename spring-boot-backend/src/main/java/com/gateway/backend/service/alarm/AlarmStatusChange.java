@@ -0,0 +1,177 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.util.List;
+
+/**
+ * A batch of status transitions, each naming an alarm by id, the version it was read at and the
+ * {@link AlarmStatus} to move it to, and once {@link AlarmStore#changeStatus applied} the outcome of each.
+ * <p>
+ * Every transition is a compare-and-set on its own alarm: it only happens if the alarm is still at the version
+ * given, and then moves it to the next version. A transition that fails does not hold back the others; it
+ * reports the version and status the alarm is at instead, for the caller to read again and retry.
+ */
+public final class AlarmStatusChange {
+
+    public enum Outcome {
+        /** Moved to the new status, at the next version. */
+        UPDATED,
+        /** The alarm is at another version than the one given: it changed since it was read. */
+        CONFLICT,
+        /** No alarm has that id, or not any more. */
+        NOT_FOUND,
+        /** The alarm cannot move from its status to the new one. */
+        INVALID_TRANSITION
+    }
+
+    private final long[] ids;
+    private final int[] expectedVersions;
+    private final AlarmStatus[] targets;
+    private final Outcome[] outcomes;
+    private final int[] versions;
+    private final String[] statuses;
+
+    private AlarmStatusChange(int size) {
+        ids = new long[size];
+        expectedVersions = new int[size];
+        targets = new AlarmStatus[size];
+        outcomes = new Outcome[size];
+        versions = new int[size];
+        statuses = new String[size];
+    }
+
+    /**
+     * The transitions given by the {@code id}, {@code version} and {@code status} of {@code alarms}; their other
+     * properties are ignored.
+     *
+     * @throws IllegalArgumentException if an alarm is {@code null}, has no id or version, or a status that is not
+     *                                  a step of the workflow
+     */
+    public static AlarmStatusChange of(List<Alarm> alarms) {
+        AlarmStatusChange change = new AlarmStatusChange(alarms.size());
+        for (int i = 0; i < alarms.size(); i++) {
+            Alarm alarm = alarms.get(i);
+            if (alarm == null || alarm.getId() == null || alarm.getVersion() == null) {
+                throw new IllegalArgumentException("Status change " + i + " needs the id and version of an alarm");
+            }
+            AlarmStatus target = AlarmStatus.fromLabel(alarm.getStatus());
+            if (target == null) {
+                throw new IllegalArgumentException("Unknown alarm status " + alarm.getStatus());
+            }
+            change.ids[i] = alarm.getId();
+            change.expectedVersions[i] = alarm.getVersion();
+            change.targets[i] = target;
+        }
+        return change;
+    }
+
+    public int size() {
+        return ids.length;
+    }
+
+    public long id(int i) {
+        return ids[i];
+    }
+
+    public int expectedVersion(int i) {
+        return expectedVersions[i];
+    }
+
+    public AlarmStatus target(int i) {
+        return targets[i];
+    }
+
+    /**
+     * Whether the {@code i}th transition has no outcome yet.
+     */
+    public boolean isPending(int i) {
+        return outcomes[i] == null;
+    }
+
+    /**
+     * @return the outcome of the {@code i}th transition, {@code null} while it is pending
+     */
+    public Outcome outcome(int i) {
+        return outcomes[i];
+    }
+
+    /**
+     * The version the alarm of the {@code i}th transition is at, {@code null} if it was not found.
+     */
+    public Integer version(int i) {
+        return outcomes[i] == Outcome.NOT_FOUND ? null : versions[i];
+    }
+
+    /**
+     * The status the alarm of the {@code i}th transition is at, {@code null} if it was not found.
+     */
+    public String status(int i) {
+        return statuses[i];
+    }
+
+    /**
+     * Number of transitions with that outcome.
+     */
+    public int count(Outcome outcome) {
+        int count = 0;
+        for (Outcome o : outcomes) {
+            if (o == outcome) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks every pending transition against {@code columns}, settling those that cannot happen there.
+     */
+    public void check(AlarmColumns columns) {
+        for (int i = 0; i < ids.length; i++) {
+            if (isPending(i)) {
+                check(columns, i);
+            }
+        }
+    }
+
+    /**
+     * Checks the {@code i}th transition against {@code columns}: the alarm must be there, at the expected
+     * version and at a status the target follows. If it is not, the transition is settled with the alarm as it
+     * is; if it is, the alarm's version and status are noted and it stays pending.
+     *
+     * @return whether the transition can happen
+     */
+    boolean check(AlarmColumns columns, int i) {
+        long id = ids[i];
+        if (id <= columns.first() || id > columns.size()) {
+            outcomes[i] = Outcome.NOT_FOUND;
+            return false;
+        }
+        int row = (int) (id - 1);
+        versions[i] = columns.version(row);
+        statuses[i] = columns.text(AlarmField.STATUS, row);
+        if (versions[i] != expectedVersions[i]) {
+            outcomes[i] = Outcome.CONFLICT;
+            return false;
+        }
+        if (!targets[i].follows(statuses[i])) {
+            outcomes[i] = Outcome.INVALID_TRANSITION;
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * Settles the pending {@code i}th transition as a conflict with a change made elsewhere, leaving the
+     * version and status {@link #check} noted.
+     */
+    public void conflict(int i) {
+        outcomes[i] = Outcome.CONFLICT;
+    }
+
+    void updated(int i, int version) {
+        outcomes[i] = Outcome.UPDATED;
+        versions[i] = version;
+        statuses[i] = targets[i].getLabel();
+    }
+}
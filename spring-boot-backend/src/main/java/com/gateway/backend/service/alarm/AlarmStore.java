@@ -0,0 +1,630 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * Concurrent alarm store: any number of threads append batches while readers query immutable
+ * {@link Snapshot}s without taking a lock.
+ * <p>
+ * An append reserves a range of rows with one atomic increment, writes its alarms into the column chunks in
+ * parallel with the other writers, and then publishes: batches become visible strictly in reservation order,
+ * by moving the published high-water mark over their range and installing a new snapshot. The writer that
+ * completes a chunk seals its index block, outside the publication order. Ids are assigned from the rows, so
+ * the alarm with id {@code n} always sits at row {@code n - 1}.
+ * <p>
+ * Updates are rare: they copy the chunk of the row (and reseal its block) and exclude appends while doing so.
+ * The occurrence counts kept up by alarm correlation change more often, so {@link #updateOccurrences} takes a
+ * whole batch of them at once, copying each chunk it touches once, and reseals nothing: no index covers them.
+ * <p>
+ * Status changes come in batches from operators and must not hold up the appends, so {@link #changeStatus}
+ * excludes neither appends nor other status changes: it locks one chunk at a time, on a lock of its own that
+ * appends only share while they write into that chunk. Under it, each alarm's version is compared before its
+ * new status and version are set in a copy of the chunk, and the copy is published with the status postings of
+ * its block reindexed and the suggestions and aggregates moved over, all under their locks: an appender's
+ * catch-up never counts the new status of a row the moves then take the old one back from.
+ * <p>
+ * The chunks are also the time segments of the store: alarms arrive about in timestamp order, so each sealed
+ * chunk covers a short stretch of time, whose bounds its index block records. Retention
+ * ({@link #dropExpired}) drops the leading chunks whose newest alarm has expired by releasing them as a whole,
+ * like an update excluding appends; the ids of the alarms left do not change.
+ * <p>
+ * The {@link AlarmAggregates} are brought up to date by whichever appending thread finds them free, so writers
+ * never wait on each other for them, and by the aggregation queries.
+ */
+public class AlarmStore {
+
+    private static final int CHANGE_LOG_CAPACITY = 1 << 18;
+    private static final int CHUNK_LOCKS = 64;
+
+    private final AlarmDictionary[] dictionaries = AlarmColumns.newDictionaries();
+    private final AlarmSuggestionIndex suggestionIndex = new AlarmSuggestionIndex();
+    private final ReadWriteLock suggestionLock = new ReentrantReadWriteLock();
+    private final AlarmAggregates aggregates = new AlarmAggregates();
+    private final Lock aggregateLock = new ReentrantLock();
+
+    /** Shared by appends and status changes, exclusive for updates. */
+    private final ReadWriteLock writeLock = new ReentrantReadWriteLock();
+    /**
+     * Striped by chunk: shared by the appends writing into a chunk and the sealing of its block, exclusive for
+     * the status changes copying it.
+     */
+    private final ReadWriteLock[] chunkLocks = new ReadWriteLock[CHUNK_LOCKS];
+    private final AtomicInteger reserved = new AtomicInteger();
+    private volatile int published;
+    /** Rows before it are dropped; changed under the exclusive write lock only. */
+    private volatile int first;
+    private volatile AlarmColumns.Chunk[] chunks = new AlarmColumns.Chunk[0];
+    private final AtomicReference<Snapshot> current;
+    private final AlarmChangeLog changeLog = new AlarmChangeLog(CHANGE_LOG_CAPACITY);
+
+    public AlarmStore() {
+        current = new AtomicReference<>(new Snapshot(new AlarmColumns(chunks, 0, 0, dictionaries), new AlarmIndex.Block[0], 0));
+        for (int i = 0; i < chunkLocks.length; i++) {
+            chunkLocks[i] = new ReentrantReadWriteLock();
+        }
+    }
+
+    private ReadWriteLock chunkLock(int chunk) {
+        return chunkLocks[chunk & (CHUNK_LOCKS - 1)];
+    }
+
+    /**
+     * The alarms published so far and their indexes, consistent with each other.
+     */
+    public Snapshot snapshot() {
+        return current.get();
+    }
+
+    /**
+     * Every append and update, in publication order; a change is recorded once the snapshot shows it.
+     */
+    public AlarmChangeLog changes() {
+        return changeLog;
+    }
+
+    /**
+     * Appends {@code alarms} under consecutive ids; a missing timestamp becomes the time of the call. The
+     * alarms themselves are not modified.
+     *
+     * @return the id of the first alarm
+     * @throws IllegalArgumentException if an alarm is {@code null} or has a value out of range; nothing is
+     *                                  stored then
+     */
+    public long append(List<Alarm> alarms) {
+        for (Alarm alarm : alarms) {
+            AlarmColumns.validate(alarm);
+        }
+        long now = AlarmColumns.toNanos(LocalDateTime.now());
+        int count = alarms.size();
+        writeLock.readLock().lock();
+        try {
+            int start = reserve(count);
+            int end = start + count;
+            ensureChunks(end);
+            try {
+                int row = start;
+                while (row < end) {
+                    int chunk = row >>> AlarmColumns.CHUNK_SHIFT;
+                    int chunkEnd = Math.min(end, (chunk + 1) << AlarmColumns.CHUNK_SHIFT);
+                    Lock chunkLock = chunkLock(chunk).readLock();
+                    chunkLock.lock();
+                    try {
+                        // Looked up under the lock: a status change may have replaced the chunk with a copy
+                        AlarmColumns.Chunk target = chunks[chunk];
+                        for (; row < chunkEnd; row++) {
+                            AlarmColumns.write(target, row & (AlarmColumns.CHUNK_SIZE - 1), row + 1L, now,
+                                    alarms.get(row - start), dictionaries);
+                        }
+                    } finally {
+                        chunkLock.unlock();
+                    }
+                }
+            } finally {
+                // Later batches wait for this one: publish even if writing failed half way
+                publish(start, end);
+            }
+            sealCompletedChunks(start, end);
+            if (aggregateLock.tryLock()) {
+                try {
+                    aggregates.catchUp(current.get().getColumns());
+                } finally {
+                    aggregateLock.unlock();
+                }
+            }
+            return start + 1L;
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    private int reserve(int count) {
+        while (true) {
+            int start = reserved.get();
+            if (start > Integer.MAX_VALUE - count) {
+                throw new IllegalStateException("Alarm store is full");
+            }
+            if (reserved.compareAndSet(start, start + count)) {
+                return start;
+            }
+        }
+    }
+
+    /**
+     * The chunk array covering rows up to {@code end}, growing it if needed. Writers share the chunk objects;
+     * a new array is installed only when chunks are added, or one is replaced by a status change.
+     */
+    private AlarmColumns.Chunk[] ensureChunks(int end) {
+        int needed = (end + AlarmColumns.CHUNK_SIZE - 1) >>> AlarmColumns.CHUNK_SHIFT;
+        AlarmColumns.Chunk[] array = chunks;
+        if (array.length >= needed) {
+            return array;
+        }
+        synchronized (this) {
+            array = chunks;
+            if (array.length < needed) {
+                int length = array.length;
+                array = Arrays.copyOf(array, needed);
+                for (int i = length; i < needed; i++) {
+                    array[i] = new AlarmColumns.Chunk();
+                }
+                chunks = array;
+            }
+            return array;
+        }
+    }
+
+    /**
+     * Waits for the batches reserved before {@code [start, end)} to be published, then publishes it.
+     */
+    private void publish(int start, int end) {
+        for (int spins = 0; published != start; spins++) {
+            if (spins < 100) {
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        // A status change swaps a chunk and installs the snapshot showing it under the same monitor, so no
+        // snapshot has the columns of a status change without its reindexed status postings
+        synchronized (this) {
+            current.updateAndGet(snapshot -> snapshot.withColumns(new AlarmColumns(chunks, first, end,
+                    dictionaries)));
+        }
+        changeLog.record(start + 1L, end - start);
+        published = end;
+    }
+
+    private void sealCompletedChunks(int start, int end) {
+        // The chunks whose last row is in [start, end)
+        for (int chunk = start >>> AlarmColumns.CHUNK_SHIFT; (chunk + 1) << AlarmColumns.CHUNK_SHIFT <= end; chunk++) {
+            int sealed = chunk;
+            Lock chunkLock = chunkLock(sealed).readLock();
+            chunkLock.lock();
+            try {
+                AlarmIndex.Block block = AlarmIndex.seal(current.get().getColumns(), sealed);
+                current.updateAndGet(snapshot -> snapshot.withBlock(sealed, block));
+            } finally {
+                chunkLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Replaces the alarm with the given id. Occurrences and a last-seen time the alarm leaves {@code null} keep
+     * their stored values; the version moves on to the next one, whatever the alarm gives. The status is kept
+     * as it is too: it only moves through {@link #changeStatus}, from the version a caller read.
+     *
+     * @return the stored alarm, or {@code null} if there is no alarm with that id
+     * @throws IllegalArgumentException if the alarm has a value out of range
+     */
+    public Alarm update(long id, Alarm alarm) {
+        AlarmColumns.validate(alarm);
+        writeLock.writeLock().lock();
+        try {
+            Snapshot before = current.get();
+            AlarmColumns columns = before.getColumns();
+            if (id <= columns.first() || id > columns.size()) {
+                return null;
+            }
+            int row = (int) (id - 1);
+            int chunk = row >>> AlarmColumns.CHUNK_SHIFT;
+            Alarm previous = columns.toAlarm(row);
+            long timestamp = AlarmColumns.toNanos(previous.getTimestamp());
+
+            AlarmColumns.Chunk[] array = chunks.clone();
+            array[chunk] = array[chunk].copy();
+            int offset = row & (AlarmColumns.CHUNK_SIZE - 1);
+            AlarmColumns.write(array[chunk], offset, id, timestamp, alarm, dictionaries);
+            if (alarm.getOccurrences() == null || alarm.getLastSeen() == null) {
+                Integer occurrences = alarm.getOccurrences() != null
+                        ? alarm.getOccurrences()
+                        : previous.getOccurrences();
+                LocalDateTime lastSeen = alarm.getLastSeen() != null ? alarm.getLastSeen() : previous.getLastSeen();
+                AlarmColumns.writeOccurrences(array[chunk], offset, Math.max(1, occurrences),
+                        AlarmColumns.toNanos(lastSeen));
+            }
+            AlarmColumns.writeStatus(array[chunk], offset, previous.getStatus(), previous.getVersion() + 1,
+                    dictionaries);
+            chunks = array;
+            AlarmColumns updated = new AlarmColumns(array, columns.first(), columns.size(), dictionaries);
+
+            suggestionLock.writeLock().lock();
+            aggregateLock.lock();
+            try {
+                Snapshot after = before.withColumns(updated);
+                if (before.isSealed(chunk)) {
+                    after = after.withBlock(chunk, AlarmIndex.seal(updated, chunk));
+                }
+                current.set(after);
+                suggestionIndex.replace(columns, updated, row);
+                aggregates.replace(columns, updated, row);
+            } finally {
+                aggregateLock.unlock();
+                suggestionLock.writeLock().unlock();
+            }
+            changeLog.record(id, 1);
+            return updated.toAlarm(row);
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Sets the occurrences and last-seen time (in nanoseconds, see {@link AlarmColumns#toNanos}) of the alarms
+     * {@code ids[0, count)}, all in one new snapshot. Ids no longer or not yet stored are skipped.
+     *
+     * @return how many alarms were updated
+     */
+    public int updateOccurrences(long[] ids, int[] occurrences, long[] lastSeenNanos, int count) {
+        writeLock.writeLock().lock();
+        try {
+            Snapshot before = current.get();
+            AlarmColumns columns = before.getColumns();
+            AlarmColumns.Chunk[] array = chunks.clone();
+            boolean[] copied = new boolean[array.length];
+            int updated = 0;
+            for (int i = 0; i < count; i++) {
+                long id = ids[i];
+                if (id <= columns.first() || id > columns.size()) {
+                    continue;
+                }
+                int row = (int) (id - 1);
+                int chunk = row >>> AlarmColumns.CHUNK_SHIFT;
+                if (!copied[chunk]) {
+                    array[chunk] = array[chunk].copy();
+                    copied[chunk] = true;
+                }
+                AlarmColumns.writeOccurrences(array[chunk], row & (AlarmColumns.CHUNK_SIZE - 1),
+                        Math.max(1, occurrences[i]), lastSeenNanos[i]);
+                updated++;
+            }
+            if (updated == 0) {
+                return 0;
+            }
+            chunks = array;
+            current.set(before.withColumns(new AlarmColumns(array, columns.first(), columns.size(), dictionaries)));
+            for (int i = 0; i < count; i++) {
+                if (ids[i] > columns.first() && ids[i] <= columns.size()) {
+                    changeLog.record(ids[i], 1);
+                }
+            }
+            return updated;
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the pending transitions of {@code change}, concurrently with appends, queries and other status
+     * changes, one chunk at a time in id order: see the class comment. Each transition is
+     * {@link AlarmStatusChange#check checked} against the alarm as it is under the chunk lock, so of two
+     * transitions of the same alarm from the same version, in this batch or another, only the first happens.
+     *
+     * @return how many alarms changed status
+     */
+    public int changeStatus(AlarmStatusChange change) {
+        writeLock.readLock().lock();
+        try {
+            // Chunk, then position in the batch
+            long[] order = new long[change.size()];
+            int pending = 0;
+            AlarmColumns visible = current.get().getColumns();
+            for (int i = 0; i < change.size(); i++) {
+                if (change.isPending(i) && change.check(visible, i)) {
+                    long chunk = (change.id(i) - 1) >>> AlarmColumns.CHUNK_SHIFT;
+                    order[pending++] = chunk << 32 | i;
+                }
+            }
+            Arrays.sort(order, 0, pending);
+            int changed = 0;
+            int from = 0;
+            while (from < pending) {
+                int chunk = (int) (order[from] >>> 32);
+                int to = from + 1;
+                while (to < pending && (int) (order[to] >>> 32) == chunk) {
+                    to++;
+                }
+                changed += changeStatus(change, order, from, to, chunk);
+                from = to;
+            }
+            return changed;
+        } finally {
+            writeLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Applies the transitions {@code order[from, to)} of {@code change}, all of alarms in {@code chunk}.
+     */
+    private int changeStatus(AlarmStatusChange change, long[] order, int from, int to, int chunk) {
+        Lock chunkLock = chunkLock(chunk).writeLock();
+        chunkLock.lock();
+        try {
+            Snapshot before = current.get();
+            AlarmColumns columns = before.getColumns();
+            AlarmColumns view = columns;
+            AlarmColumns.Chunk copy = null;
+            int[] rows = new int[to - from];
+            int changed = 0;
+            for (int k = from; k < to; k++) {
+                int i = (int) order[k];
+                if (!change.check(view, i)) {
+                    continue;
+                }
+                if (copy == null) {
+                    // The chunk itself, not the snapshot's: appends may have written rows not published yet
+                    copy = chunks[chunk].copy();
+                    AlarmColumns.Chunk[] array = chunks.clone();
+                    array[chunk] = copy;
+                    view = new AlarmColumns(array, columns.first(), columns.size(), dictionaries);
+                }
+                int row = (int) (change.id(i) - 1);
+                int version = view.version(row) + 1;
+                AlarmColumns.writeStatus(copy, row & (AlarmColumns.CHUNK_SIZE - 1), change.target(i).getLabel(),
+                        version, dictionaries);
+                change.updated(i, version);
+                rows[changed++] = row;
+            }
+            if (changed == 0) {
+                return 0;
+            }
+            AlarmIndex.Block block = before.isSealed(chunk)
+                    ? AlarmIndex.reseal(before.blocks[chunk], view, chunk, AlarmField.STATUS)
+                    : null;
+
+            suggestionLock.writeLock().lock();
+            aggregateLock.lock();
+            try {
+                // The copy goes live with the snapshot showing it, under the monitor a publish takes, and no
+                // catch-up counts it before the moves below: one in between would count the new status of rows
+                // not counted yet, which the moves would then count again
+                Snapshot after;
+                synchronized (this) {
+                    AlarmColumns.Chunk[] array = chunks.clone();
+                    array[chunk] = copy;
+                    chunks = array;
+                    after = current.updateAndGet(snapshot -> snapshot.withChunk(
+                            new AlarmColumns(array, snapshot.columns.first(), snapshot.columns.size(), dictionaries),
+                            chunk, block));
+                }
+                for (int k = 0; k < changed; k++) {
+                    suggestionIndex.replace(columns, after.getColumns(), rows[k]);
+                    aggregates.replace(columns, after.getColumns(), rows[k]);
+                }
+            } finally {
+                aggregateLock.unlock();
+                suggestionLock.writeLock().unlock();
+            }
+            for (int k = 0; k < changed; k++) {
+                changeLog.record(rows[k] + 1L, 1);
+            }
+            return changed;
+        } finally {
+            chunkLock.unlock();
+        }
+    }
+
+    /**
+     * Starts an empty store at {@code row}, as if the rows before it had been appended and dropped, so that the
+     * next alarm appended gets the id {@code row + 1}.
+     *
+     * @throws IllegalStateException if the store is not empty or {@code row} is not at the start of a chunk
+     */
+    public void skipTo(int row) {
+        writeLock.writeLock().lock();
+        try {
+            if (reserved.get() != 0 || (row & (AlarmColumns.CHUNK_SIZE - 1)) != 0 || row < 0) {
+                throw new IllegalStateException("Cannot start the alarm store at row " + row);
+            }
+            AlarmColumns.Chunk[] array = new AlarmColumns.Chunk[row >>> AlarmColumns.CHUNK_SHIFT];
+            chunks = array;
+            first = row;
+            reserved.set(row);
+            published = row;
+            current.set(new Snapshot(new AlarmColumns(array, row, row, dictionaries), new AlarmIndex.Block[0],
+                    current.get().generation + 1));
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * Drops the leading sealed chunks whose alarms are all timestamped before {@code cutoff}. Releasing a chunk
+     * does not depend on its rows, only their counts in the suggestions and aggregates are taken back. A chunk
+     * stays as long as one before it does, even if all its alarms have expired.
+     *
+     * @return the number of alarms dropped
+     */
+    public int dropExpired(LocalDateTime cutoff) {
+        long cutoffNanos = AlarmColumns.toNanos(cutoff);
+        writeLock.writeLock().lock();
+        try {
+            Snapshot before = current.get();
+            AlarmColumns columns = before.getColumns();
+            int from = columns.first();
+            int to = from;
+            while (to + AlarmColumns.CHUNK_SIZE <= columns.size() && before.isSealed(to >>> AlarmColumns.CHUNK_SHIFT)
+                    && before.blocks[to >>> AlarmColumns.CHUNK_SHIFT].maxNanos() < cutoffNanos) {
+                to += AlarmColumns.CHUNK_SIZE;
+            }
+            if (to == from) {
+                return 0;
+            }
+            AlarmColumns.Chunk[] array = chunks.clone();
+            Arrays.fill(array, from >>> AlarmColumns.CHUNK_SHIFT, to >>> AlarmColumns.CHUNK_SHIFT, null);
+            AlarmColumns remaining = new AlarmColumns(array, to, columns.size(), dictionaries);
+
+            suggestionLock.writeLock().lock();
+            aggregateLock.lock();
+            try {
+                suggestionIndex.remove(columns, from, to);
+                aggregates.remove(columns, from, to);
+                chunks = array;
+                first = to;
+                current.set(before.dropped(remaining, to >>> AlarmColumns.CHUNK_SHIFT));
+            } finally {
+                aggregateLock.unlock();
+                suggestionLock.writeLock().unlock();
+            }
+            return to - from;
+        } finally {
+            writeLock.writeLock().unlock();
+        }
+    }
+
+    /**
+     * See {@link AlarmSuggestionIndex#suggest}; counts the alarms appended since the last call first.
+     */
+    public List<String> suggest(AlarmField field, String lowerNeedle, int limit) {
+        indexSuggestions();
+        suggestionLock.readLock().lock();
+        try {
+            Snapshot snapshot = current.get();
+            return suggestionIndex.suggest(snapshot.getColumns(), snapshot.getIndex(), field, lowerNeedle, limit);
+        } finally {
+            suggestionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * See {@link AlarmSuggestionIndex#count}; counts the alarms appended since the last call first.
+     */
+    int suggestionCount(AlarmField field, String value) {
+        indexSuggestions();
+        suggestionLock.readLock().lock();
+        try {
+            return suggestionIndex.count(field, value);
+        } finally {
+            suggestionLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * Counts the alarms appended since the suggestions were last brought up to date.
+     */
+    public void indexSuggestions() {
+        if (suggestionIndex.isBehind(current.get().getColumns())) {
+            suggestionLock.writeLock().lock();
+            try {
+                suggestionIndex.catchUp(current.get().getColumns());
+            } finally {
+                suggestionLock.writeLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * See {@link AlarmAggregates#aggregate}; counts the alarms appended and not counted yet first.
+     */
+    public AlarmAggregation aggregate(AlarmField groupBy, LocalDateTime from, LocalDateTime to,
+                                      AlarmAggregates.Interval interval) {
+        aggregateLock.lock();
+        try {
+            AlarmColumns columns = current.get().getColumns();
+            aggregates.catchUp(columns);
+            return aggregates.aggregate(columns, groupBy, from, to, interval);
+        } finally {
+            aggregateLock.unlock();
+        }
+    }
+
+    public boolean hasSuggestionIndex(AlarmField field) {
+        return suggestionIndex.isIndexed(field);
+    }
+
+    /**
+     * Published alarms and the index blocks sealed over them.
+     */
+    public static final class Snapshot {
+        private final AlarmColumns columns;
+        private final AlarmIndex.Block[] blocks;
+        private final AlarmIndex index;
+        private final long generation;
+
+        private Snapshot(AlarmColumns columns, AlarmIndex.Block[] blocks, long generation) {
+            this.columns = columns;
+            this.blocks = blocks;
+            this.index = new AlarmIndex(columns, blocks);
+            this.generation = generation;
+        }
+
+        public AlarmColumns getColumns() {
+            return columns;
+        }
+
+        public AlarmIndex getIndex() {
+            return index;
+        }
+
+        /**
+         * Grows with every append, update and drop the snapshot shows, but not when an index block is sealed:
+         * two snapshots of the same generation hold the same alarms.
+         */
+        public long getGeneration() {
+            return generation;
+        }
+
+        private boolean isSealed(int chunk) {
+            return chunk < blocks.length && blocks[chunk] != null;
+        }
+
+        private Snapshot withColumns(AlarmColumns newer) {
+            return newer.size() >= columns.size() ? new Snapshot(newer, blocks, generation + 1) : this;
+        }
+
+        private Snapshot dropped(AlarmColumns remaining, int chunks) {
+            AlarmIndex.Block[] kept = blocks.clone();
+            Arrays.fill(kept, 0, Math.min(chunks, kept.length), null);
+            return new Snapshot(remaining, kept, generation + 1);
+        }
+
+        /**
+         * With {@code newer}, in which one chunk was replaced, and the block of that chunk replaced as well if
+         * {@code block} is set.
+         */
+        private Snapshot withChunk(AlarmColumns newer, int chunk, AlarmIndex.Block block) {
+            AlarmIndex.Block[] sealed = blocks;
+            if (block != null) {
+                sealed = Arrays.copyOf(blocks, Math.max(blocks.length, chunk + 1));
+                sealed[chunk] = block;
+            }
+            return new Snapshot(newer, sealed, generation + 1);
+        }
+
+        private Snapshot withBlock(int chunk, AlarmIndex.Block block) {
+            AlarmIndex.Block[] sealed = Arrays.copyOf(blocks, Math.max(blocks.length, chunk + 1));
+            sealed[chunk] = block;
+            return new Snapshot(columns, sealed, generation);
+        }
+    }
+}
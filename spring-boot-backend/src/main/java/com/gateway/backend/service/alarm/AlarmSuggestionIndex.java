@@ -0,0 +1,539 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.Set;
+
+/**
+ * Autocomplete index for {@code /alarms/suggestions}: per property, the distinct values with the number of
+ * alarms holding each, ordered by lowercase value.
+ * <p>
+ * A prefix is a contiguous range of that order, and a max-tree over the counts yields the most frequent
+ * values of the range first, so a lookup costs about the size of its result, not the number of alarms. New
+ * values are collected in a small buffer and then in sorted runs merged like a binary counter, which keeps
+ * adding a value cheap. Values no longer held by any alarm keep their place with a count of {@code 0} and are
+ * never suggested, the way {@link AlarmDictionary} keeps unused codes.
+ * <p>
+ * The numeric properties are not indexed: every alarm has its own id. Rows are counted in order, catching up
+ * with the store when asked for suggestions, so ingestion does not pay for them. Not thread-safe: the owner
+ * serializes writes against reads.
+ */
+public class AlarmSuggestionIndex {
+
+    /**
+     * Up to this many distinct values, values containing the query elsewhere than at the start are found by
+     * going through all of them.
+     */
+    private static final int MAX_SCANNED_TERMS = 4096;
+
+    private final Map<AlarmField, Terms> terms = new EnumMap<>(AlarmField.class);
+    private volatile int indexedRows;
+
+    public AlarmSuggestionIndex() {
+        for (AlarmField field : AlarmColumns.DICTIONARY_FIELDS) {
+            if (field.isFilterable()) {
+                terms.put(field, new Terms());
+            }
+        }
+        for (AlarmField field : AlarmColumns.TEXT_FIELDS) {
+            terms.put(field, new Terms());
+        }
+    }
+
+    public boolean isIndexed(AlarmField field) {
+        return terms.containsKey(field);
+    }
+
+    /**
+     * Whether rows of {@code columns} are not counted yet.
+     */
+    public boolean isBehind(AlarmColumns columns) {
+        return indexedRows < columns.size();
+    }
+
+    /**
+     * Counts the values of the rows of {@code columns} not counted yet.
+     */
+    public void catchUp(AlarmColumns columns) {
+        for (int row = Math.max(indexedRows, columns.first()); row < columns.size(); row++) {
+            add(columns, row);
+        }
+        indexedRows = Math.max(indexedRows, columns.size());
+    }
+
+    /**
+     * Takes back the counts of the rows {@code from} to {@code to} of {@code columns}, which are being dropped;
+     * the rows not counted yet never will be.
+     */
+    public void remove(AlarmColumns columns, int from, int to) {
+        for (int row = from; row < Math.min(to, indexedRows); row++) {
+            int dropped = row;
+            terms.forEach((field, fieldTerms) -> {
+                String value = columns.text(field, dropped);
+                if (value != null) {
+                    fieldTerms.decrement(value);
+                }
+            });
+        }
+        indexedRows = Math.max(indexedRows, to);
+    }
+
+    /**
+     * Moves the counts of {@code row} from its values in {@code before} to those in {@code after}, if the row
+     * was counted already.
+     */
+    public void replace(AlarmColumns before, AlarmColumns after, int row) {
+        if (row < indexedRows) {
+            terms.forEach((field, fieldTerms) -> {
+                String previous = before.text(field, row);
+                String current = after.text(field, row);
+                if (previous == null ? current != null : !previous.equals(current)) {
+                    if (previous != null) {
+                        fieldTerms.decrement(previous);
+                    }
+                    if (current != null) {
+                        fieldTerms.increment(current);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * How many of the counted alarms have {@code value} for {@code field}.
+     */
+    public int count(AlarmField field, String value) {
+        Terms fieldTerms = terms.get(field);
+        int term = fieldTerms == null ? -1 : fieldTerms.find(value);
+        return term < 0 ? 0 : fieldTerms.counts[term];
+    }
+
+    private void add(AlarmColumns columns, int row) {
+        terms.forEach((field, fieldTerms) -> {
+            String value = columns.text(field, row);
+            if (value != null) {
+                fieldTerms.increment(value);
+            }
+        });
+    }
+
+    /**
+     * Up to {@code limit} values of {@code field} containing {@code lowerNeedle}, ignoring case: the values
+     * starting with it first, then the others, each group most frequent first and then alphabetically.
+     * <p>
+     * When the property has many distinct values, the ones containing the needle elsewhere are found through
+     * the trigram postings of {@link AlarmIndex}; a needle too short for them takes the first such values met.
+     */
+    public List<String> suggest(AlarmColumns columns, AlarmIndex index, AlarmField field, String lowerNeedle,
+                                int limit) {
+        Terms fieldTerms = terms.get(field);
+        List<String> suggestions = new ArrayList<>(Math.min(limit, 16));
+        if (fieldTerms == null || limit < 1) {
+            return suggestions;
+        }
+        fieldTerms.prefixed(lowerNeedle, limit, suggestions);
+        if (suggestions.size() < limit && !lowerNeedle.isEmpty()) {
+            List<Integer> infix = new ArrayList<>();
+            if (fieldTerms.size <= MAX_SCANNED_TERMS) {
+                for (int term = 0; term < fieldTerms.size; term++) {
+                    if (fieldTerms.counts[term] > 0 && fieldTerms.isInfix(term, lowerNeedle)) {
+                        infix.add(term);
+                    }
+                }
+            } else if (!AlarmIndex.isTrigramSearchable(lowerNeedle)) {
+                // Too short for the trigrams: the first values found, in order of first appearance
+                int wanted = limit - suggestions.size();
+                for (int term = 0; term < fieldTerms.size && infix.size() < wanted; term++) {
+                    if (fieldTerms.counts[term] > 0 && fieldTerms.isInfix(term, lowerNeedle)) {
+                        infix.add(term);
+                    }
+                }
+            } else {
+                Set<Integer> seen = new HashSet<>();
+                for (int row : index.select(AlarmFilterPlan.contains(field, lowerNeedle))) {
+                    int term = fieldTerms.find(columns.text(field, row));
+                    if (term >= 0 && fieldTerms.isInfix(term, lowerNeedle) && seen.add(term)) {
+                        infix.add(term);
+                    }
+                }
+            }
+            infix.sort(fieldTerms.byRank());
+            for (int i = 0; i < infix.size() && suggestions.size() < limit; i++) {
+                suggestions.add(fieldTerms.values[infix.get(i)]);
+            }
+        }
+        return suggestions;
+    }
+
+    /**
+     * The distinct values of one property. A value is a term id into parallel arrays, found through an
+     * open-addressing hash table; its position in the lowercase order is either the unsorted {@link #buffer}
+     * or one of the sorted {@link #runs}.
+     */
+    private static final class Terms {
+        private static final int BUFFER_SIZE = 256;
+        private static final int POSITION_BITS = 26;
+        private static final int IN_BUFFER = -1;
+
+        String[] values = new String[64];
+        String[] keys = new String[64];
+        int[] counts = new int[64];
+        /** Run index and position of every term, or {@link #IN_BUFFER}. */
+        int[] locations = new int[64];
+        int size;
+
+        /** Term id + 1 per slot, {@code 0} for an empty slot. */
+        private int[] table = new int[128];
+
+        private final int[] buffer = new int[BUFFER_SIZE];
+        private int buffered;
+        /** Sorted runs, oldest (and largest) first. */
+        private final List<Run> runs = new ArrayList<>();
+
+        void increment(String value) {
+            int term = find(value);
+            if (term < 0) {
+                term = insert(value);
+            }
+            counts[term]++;
+            int location = locations[term];
+            if (location != IN_BUFFER) {
+                runs.get(location >>> POSITION_BITS).raise(location & ((1 << POSITION_BITS) - 1), counts[term]);
+            }
+        }
+
+        void decrement(String value) {
+            int term = find(value);
+            if (term >= 0) {
+                // The maxima of the runs stay upper bounds; lookups only ever expand them a little further
+                counts[term]--;
+            }
+        }
+
+        int find(String value) {
+            if (value == null) {
+                return -1;
+            }
+            int mask = table.length - 1;
+            for (int slot = spread(value.hashCode()) & mask; table[slot] != 0; slot = (slot + 1) & mask) {
+                int term = table[slot] - 1;
+                if (values[term].equals(value)) {
+                    return term;
+                }
+            }
+            return -1;
+        }
+
+        private int insert(String value) {
+            if (size == values.length) {
+                int capacity = size * 2;
+                values = Arrays.copyOf(values, capacity);
+                keys = Arrays.copyOf(keys, capacity);
+                counts = Arrays.copyOf(counts, capacity);
+                locations = Arrays.copyOf(locations, capacity);
+            }
+            int term = size++;
+            values[term] = value;
+            keys[term] = value.toLowerCase(Locale.ROOT);
+            locations[term] = IN_BUFFER;
+            if (size * 2 > table.length) {
+                rehash(table.length * 2);
+            } else {
+                place(term);
+            }
+            buffer[buffered++] = term;
+            if (buffered == BUFFER_SIZE) {
+                flush();
+            }
+            return term;
+        }
+
+        private void rehash(int capacity) {
+            table = new int[capacity];
+            for (int term = 0; term < size; term++) {
+                place(term);
+            }
+        }
+
+        private void place(int term) {
+            int mask = table.length - 1;
+            int slot = spread(values[term].hashCode()) & mask;
+            while (table[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            table[slot] = term + 1;
+        }
+
+        private static int spread(int hash) {
+            return hash ^ (hash >>> 16);
+        }
+
+        /**
+         * Sorts the buffer into a new run, then merges the newest runs while the older one is less than twice
+         * as large, so there are only logarithmically many runs and every term is merged a logarithmic number of
+         * times.
+         */
+        private void flush() {
+            int[] sorted = sort(Arrays.copyOf(buffer, buffered));
+            buffered = 0;
+            runs.add(null);
+            install(runs.size() - 1, sorted);
+            while (runs.size() > 1
+                    && runs.get(runs.size() - 2).terms.length <= 2 * runs.get(runs.size() - 1).terms.length) {
+                Run newer = runs.remove(runs.size() - 1);
+                Run older = runs.get(runs.size() - 1);
+                install(runs.size() - 1, merge(older.terms, newer.terms));
+            }
+        }
+
+        private void install(int runIndex, int[] sortedTerms) {
+            if (sortedTerms.length >= 1 << POSITION_BITS) {
+                throw new IllegalStateException("Too many distinct values");
+            }
+            runs.set(runIndex, new Run(sortedTerms, counts));
+            for (int position = 0; position < sortedTerms.length; position++) {
+                locations[sortedTerms[position]] = runIndex << POSITION_BITS | position;
+            }
+        }
+
+        private int[] sort(int[] termIds) {
+            Integer[] boxed = new Integer[termIds.length];
+            for (int i = 0; i < termIds.length; i++) {
+                boxed[i] = termIds[i];
+            }
+            Arrays.sort(boxed, (a, b) -> compareOrder(a, b));
+            for (int i = 0; i < termIds.length; i++) {
+                termIds[i] = boxed[i];
+            }
+            return termIds;
+        }
+
+        private int[] merge(int[] a, int[] b) {
+            int[] merged = new int[a.length + b.length];
+            int i = 0;
+            int j = 0;
+            int k = 0;
+            while (i < a.length && j < b.length) {
+                merged[k++] = compareOrder(a[i], b[j]) <= 0 ? a[i++] : b[j++];
+            }
+            while (i < a.length) {
+                merged[k++] = a[i++];
+            }
+            while (j < b.length) {
+                merged[k++] = b[j++];
+            }
+            return merged;
+        }
+
+        private int compareOrder(int a, int b) {
+            int order = keys[a].compareTo(keys[b]);
+            return order != 0 ? order : values[a].compareTo(values[b]);
+        }
+
+        boolean isInfix(int term, String lowerNeedle) {
+            String key = keys[term];
+            return !key.startsWith(lowerNeedle) && key.contains(lowerNeedle);
+        }
+
+        /**
+         * Most frequent first, then alphabetically.
+         */
+        Comparator<Integer> byRank() {
+            return (a, b) -> {
+                int order = Integer.compare(counts[b], counts[a]);
+                return order != 0 ? order : values[a].compareTo(values[b]);
+            };
+        }
+
+        /**
+         * Adds to {@code out} the {@code limit} best ranked values starting with {@code lowerNeedle}. Ranges of
+         * the runs enter the queue with the maximum count under them and are only split when they reach the head,
+         * so only the branches leading to the result are visited.
+         */
+        void prefixed(String lowerNeedle, int limit, List<String> out) {
+            PriorityQueue<Candidate> queue = new PriorityQueue<>();
+            for (int i = 0; i < buffered; i++) {
+                offerTerm(queue, buffer[i], lowerNeedle);
+            }
+            for (Run run : runs) {
+                int from = run.lowerBound(keys, lowerNeedle);
+                int to = run.prefixEnd(keys, lowerNeedle, from);
+                run.cover(from, to, this, queue);
+            }
+            while (!queue.isEmpty() && out.size() < limit) {
+                Candidate candidate = queue.poll();
+                if (candidate.run == null) {
+                    out.add(values[candidate.term]);
+                } else {
+                    candidate.run.expand(candidate.node, this, queue);
+                }
+            }
+        }
+
+        void offerTerm(PriorityQueue<Candidate> queue, int term, String lowerNeedle) {
+            if (counts[term] > 0 && keys[term].startsWith(lowerNeedle)) {
+                queue.add(new Candidate(counts[term], null, 0, term, values[term]));
+            }
+        }
+
+        void offerTerm(PriorityQueue<Candidate> queue, int term) {
+            if (counts[term] > 0) {
+                queue.add(new Candidate(counts[term], null, 0, term, values[term]));
+            }
+        }
+    }
+
+    /**
+     * Term ids in lowercase order with a max-tree over the counts of {@value #BLOCK_SIZE}-term blocks. The tree
+     * is exact when the run is built and raised on every increment; decrements leave it as an upper bound.
+     */
+    private static final class Run {
+        private static final int BLOCK_SHIFT = 4;
+        private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+
+        final int[] terms;
+        /** Heap-ordered: node {@code 1} is the root, the blocks are the leaves from {@link #leaves} on. */
+        private final int[] tree;
+        private final int leaves;
+
+        Run(int[] terms, int[] counts) {
+            this.terms = terms;
+            int blocks = (terms.length + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+            this.leaves = Integer.highestOneBit(Math.max(blocks, 1) * 2 - 1);
+            this.tree = new int[leaves * 2];
+            for (int position = 0; position < terms.length; position++) {
+                int leaf = leaves + (position >>> BLOCK_SHIFT);
+                tree[leaf] = Math.max(tree[leaf], counts[terms[position]]);
+            }
+            for (int node = leaves - 1; node > 0; node--) {
+                tree[node] = Math.max(tree[2 * node], tree[2 * node + 1]);
+            }
+        }
+
+        void raise(int position, int count) {
+            for (int node = leaves + (position >>> BLOCK_SHIFT); node > 0 && tree[node] < count; node >>>= 1) {
+                tree[node] = count;
+            }
+        }
+
+        /**
+         * First position whose key is not before {@code lowerNeedle}.
+         */
+        int lowerBound(String[] keys, String lowerNeedle) {
+            int low = 0;
+            int high = terms.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[terms[middle]].compareTo(lowerNeedle) < 0) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * First position from {@code from} on whose key does not start with {@code lowerNeedle}.
+         */
+        int prefixEnd(String[] keys, String lowerNeedle, int from) {
+            int low = from;
+            int high = terms.length;
+            while (low < high) {
+                int middle = (low + high) >>> 1;
+                if (keys[terms[middle]].startsWith(lowerNeedle)) {
+                    low = middle + 1;
+                } else {
+                    high = middle;
+                }
+            }
+            return low;
+        }
+
+        /**
+         * Queues positions {@code [from, to)}: whole blocks as the few tree nodes covering them, the terms of the
+         * partial blocks at either end one by one.
+         */
+        void cover(int from, int to, Terms owner, PriorityQueue<Candidate> queue) {
+            int firstBlock = (from + BLOCK_SIZE - 1) >>> BLOCK_SHIFT;
+            int endBlock = to >>> BLOCK_SHIFT;
+            if (firstBlock >= endBlock) {
+                for (int position = from; position < to; position++) {
+                    owner.offerTerm(queue, terms[position]);
+                }
+                return;
+            }
+            for (int position = from; position < firstBlock << BLOCK_SHIFT; position++) {
+                owner.offerTerm(queue, terms[position]);
+            }
+            for (int position = endBlock << BLOCK_SHIFT; position < to; position++) {
+                owner.offerTerm(queue, terms[position]);
+            }
+            for (int low = firstBlock + leaves, high = endBlock + leaves; low < high; low >>>= 1, high >>>= 1) {
+                if ((low & 1) == 1) {
+                    offerNode(queue, low++);
+                }
+                if ((high & 1) == 1) {
+                    offerNode(queue, --high);
+                }
+            }
+        }
+
+        void expand(int node, Terms owner, PriorityQueue<Candidate> queue) {
+            if (node >= leaves) {
+                int start = (node - leaves) << BLOCK_SHIFT;
+                int end = Math.min(start + BLOCK_SIZE, terms.length);
+                for (int position = start; position < end; position++) {
+                    owner.offerTerm(queue, terms[position]);
+                }
+            } else {
+                offerNode(queue, 2 * node);
+                offerNode(queue, 2 * node + 1);
+            }
+        }
+
+        private void offerNode(PriorityQueue<Candidate> queue, int node) {
+            if (tree[node] > 0) {
+                queue.add(new Candidate(tree[node], this, node, -1, null));
+            }
+        }
+    }
+
+    /**
+     * A term with its count, or a tree node with the maximum count under it. Higher counts come first; on a
+     * tie nodes come before terms, since they may still hold an alphabetically smaller term with that count.
+     */
+    private static final class Candidate implements Comparable<Candidate> {
+        final int count;
+        final Run run;
+        final int node;
+        final int term;
+        final String value;
+
+        Candidate(int count, Run run, int node, int term, String value) {
+            this.count = count;
+            this.run = run;
+            this.node = node;
+            this.term = term;
+            this.value = value;
+        }
+
+        @Override
+        public int compareTo(Candidate other) {
+            if (count != other.count) {
+                return Integer.compare(other.count, count);
+            }
+            if ((run == null) != (other.run == null)) {
+                return run != null ? -1 : 1;
+            }
+            return run != null ? 0 : value.compareTo(other.value);
+        }
+    }
+}
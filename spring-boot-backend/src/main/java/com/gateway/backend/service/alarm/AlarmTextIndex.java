@@ -0,0 +1,303 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Inverted index of the message and type of the alarms in one sealed {@link AlarmIndex} block, for
+ * {@link AlarmTextQuery}s: the sorted dictionary of the block's terms, and per term its compressed postings.
+ * <p>
+ * The postings of a term list, for every alarm holding it, the row offset in the block, the number of
+ * occurrences and their positions, all as variable-length integers (seven bits a byte) and the offsets and
+ * positions as gaps from the previous one, so most take one byte. All terms share one byte array. A prefix is a
+ * contiguous run of the sorted dictionary, and a phrase is checked on the positions of its terms. The length of
+ * every document is kept for ranking.
+ * <p>
+ * Immutable once built, like the block.
+ */
+final class AlarmTextIndex {
+
+    private static final int BLOCK_SIZE = AlarmIndex.BLOCK_SIZE;
+
+    private final String[] terms;
+    private final int[] documentFrequencies;
+    /** Where the postings of each term start in {@link #postings}, and where the last one ends. */
+    private final int[] starts;
+    private final byte[] postings;
+    /** Terms per document, capped at {@link Character#MAX_VALUE}. */
+    private final char[] lengths;
+    private final long totalLength;
+
+    private AlarmTextIndex(String[] terms, int[] documentFrequencies, int[] starts, byte[] postings, char[] lengths,
+                           long totalLength) {
+        this.terms = terms;
+        this.documentFrequencies = documentFrequencies;
+        this.starts = starts;
+        this.postings = postings;
+        this.lengths = lengths;
+        this.totalLength = totalLength;
+    }
+
+    /**
+     * Indexes the {@value AlarmIndex#BLOCK_SIZE} rows of {@code columns} from {@code base}.
+     */
+    static AlarmTextIndex build(AlarmColumns columns, int base) {
+        Map<String, PostingWriter> writers = new HashMap<>();
+        char[] lengths = new char[BLOCK_SIZE];
+        long totalLength = 0;
+        Map<String, int[]> positions = new HashMap<>();
+        for (int offset = 0; offset < BLOCK_SIZE; offset++) {
+            int row = base + offset;
+            String[] document = AlarmTextQuery.analyze(columns.text(AlarmField.MESSAGE, row),
+                    columns.text(AlarmField.TYPE, row));
+            positions.clear();
+            for (int position = 0; position < document.length; position++) {
+                if (document[position] != null) {
+                    // Slot 0 holds the count
+                    int[] at = positions.computeIfAbsent(document[position], term -> new int[4]);
+                    if (at[0] + 1 == at.length) {
+                        at = Arrays.copyOf(at, at.length * 2);
+                        positions.put(document[position], at);
+                    }
+                    at[++at[0]] = position;
+                }
+            }
+            for (Map.Entry<String, int[]> term : positions.entrySet()) {
+                writers.computeIfAbsent(term.getKey(), t -> new PostingWriter()).add(offset, term.getValue());
+            }
+            int length = AlarmTextQuery.length(document);
+            lengths[offset] = (char) Math.min(length, Character.MAX_VALUE);
+            totalLength += length;
+        }
+
+        String[] terms = writers.keySet().toArray(new String[0]);
+        Arrays.sort(terms);
+        int[] documentFrequencies = new int[terms.length];
+        int[] starts = new int[terms.length + 1];
+        for (int t = 0; t < terms.length; t++) {
+            PostingWriter writer = writers.get(terms[t]);
+            documentFrequencies[t] = writer.documents;
+            starts[t + 1] = starts[t] + writer.size;
+        }
+        byte[] postings = new byte[starts[terms.length]];
+        for (int t = 0; t < terms.length; t++) {
+            PostingWriter writer = writers.get(terms[t]);
+            System.arraycopy(writer.bytes, 0, postings, starts[t], writer.size);
+        }
+        return new AlarmTextIndex(terms, documentFrequencies, starts, postings, lengths, totalLength);
+    }
+
+    /**
+     * Terms of the document at {@code offset}.
+     */
+    int length(int offset) {
+        return lengths[offset];
+    }
+
+    /**
+     * Terms of every document of the block.
+     */
+    long totalLength() {
+        return totalLength;
+    }
+
+    /**
+     * Number of documents of the block matching {@code clause}; {@code scratch} is overwritten.
+     */
+    int documentFrequency(AlarmTextQuery.Clause clause, long[] scratch) {
+        if (clause.kind == AlarmTextQuery.Kind.TERM) {
+            int t = Arrays.binarySearch(terms, clause.terms[0]);
+            return t < 0 ? 0 : documentFrequencies[t];
+        }
+        Arrays.fill(scratch, 0L);
+        evaluate(clause, scratch, null);
+        int count = 0;
+        for (long word : scratch) {
+            count += Long.bitCount(word);
+        }
+        return count;
+    }
+
+    /**
+     * Sets the bits of the documents matching {@code clause} in {@code documents} and, if {@code frequencies}
+     * is set, adds its occurrences in every document to it.
+     */
+    void evaluate(AlarmTextQuery.Clause clause, long[] documents, int[] frequencies) {
+        switch (clause.kind) {
+            case TERM: {
+                int t = Arrays.binarySearch(terms, clause.terms[0]);
+                if (t >= 0) {
+                    decode(t, documents, frequencies, null);
+                }
+                break;
+            }
+            case PREFIX: {
+                String prefix = clause.terms[0];
+                for (int t = lowerBound(prefix); t < terms.length && terms[t].startsWith(prefix); t++) {
+                    decode(t, documents, frequencies, null);
+                }
+                break;
+            }
+            default:
+                evaluatePhrase(clause.terms, documents, frequencies);
+                break;
+        }
+    }
+
+    /**
+     * Documents holding the terms of {@code phrase} at consecutive positions: the candidates are the documents
+     * holding them all, starting with the rarest term, and the positions of the first term are then checked
+     * against those of the others.
+     */
+    private void evaluatePhrase(String[] phrase, long[] documents, int[] frequencies) {
+        int[] ids = new int[phrase.length];
+        int rarest = 0;
+        for (int i = 0; i < phrase.length; i++) {
+            ids[i] = Arrays.binarySearch(terms, phrase[i]);
+            if (ids[i] < 0) {
+                return;
+            }
+            if (documentFrequencies[ids[i]] < documentFrequencies[ids[rarest]]) {
+                rarest = i;
+            }
+        }
+        long[] candidates = new long[documents.length];
+        decode(ids[rarest], candidates, null, null);
+        int[][][] positions = new int[phrase.length][][];
+        for (int i = 0; i < phrase.length; i++) {
+            positions[i] = new int[BLOCK_SIZE][];
+            long[] holding = new long[documents.length];
+            decode(ids[i], holding, null, positions[i]);
+            long any = 0;
+            for (int w = 0; w < candidates.length; w++) {
+                candidates[w] &= holding[w];
+                any |= candidates[w];
+            }
+            if (any == 0) {
+                return;
+            }
+        }
+        for (int w = 0; w < candidates.length; w++) {
+            long word = candidates[w];
+            while (word != 0) {
+                int offset = (w << 6) + Long.numberOfTrailingZeros(word);
+                word &= word - 1;
+                int count = 0;
+                for (int start : positions[0][offset]) {
+                    boolean inRow = true;
+                    for (int i = 1; i < phrase.length && inRow; i++) {
+                        inRow = Arrays.binarySearch(positions[i][offset], start + i) >= 0;
+                    }
+                    if (inRow) {
+                        count++;
+                    }
+                }
+                if (count > 0) {
+                    documents[w] |= 1L << offset;
+                    if (frequencies != null) {
+                        frequencies[offset] += count;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads the postings of term {@code t}: sets the bit of every document holding it, adds its occurrences
+     * and keeps its positions, for the arguments that are set.
+     */
+    private void decode(int t, long[] documents, int[] frequencies, int[][] positions) {
+        byte[] bytes = postings;
+        int at = starts[t];
+        int end = starts[t + 1];
+        int offset = -1;
+        while (at < end) {
+            int value = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[at++];
+                value |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            offset += value;
+            int count = 0;
+            for (int shift = 0; ; shift += 7) {
+                byte b = bytes[at++];
+                count |= (b & 0x7f) << shift;
+                if (b >= 0) {
+                    break;
+                }
+            }
+            documents[offset >>> 6] |= 1L << offset;
+            if (frequencies != null) {
+                frequencies[offset] += count;
+            }
+            int[] kept = positions != null ? new int[count] : null;
+            int position = -1;
+            for (int i = 0; i < count; i++) {
+                int gap = 0;
+                for (int shift = 0; ; shift += 7) {
+                    byte b = bytes[at++];
+                    gap |= (b & 0x7f) << shift;
+                    if (b >= 0) {
+                        break;
+                    }
+                }
+                position += gap;
+                if (kept != null) {
+                    kept[i] = position;
+                }
+            }
+            if (kept != null) {
+                positions[offset] = kept;
+            }
+        }
+    }
+
+    /**
+     * Index of the first term not below {@code prefix}.
+     */
+    private int lowerBound(String prefix) {
+        int t = Arrays.binarySearch(terms, prefix);
+        return t >= 0 ? t : -t - 1;
+    }
+
+    /**
+     * The postings of one term while the block is indexed, in document order.
+     */
+    private static final class PostingWriter {
+        byte[] bytes = new byte[16];
+        int size;
+        int documents;
+        private int lastOffset = -1;
+
+        /**
+         * @param positions the number of positions, then the positions in ascending order
+         */
+        void add(int offset, int[] positions) {
+            writeInt(offset - lastOffset);
+            lastOffset = offset;
+            documents++;
+            int count = positions[0];
+            writeInt(count);
+            int last = -1;
+            for (int i = 1; i <= count; i++) {
+                writeInt(positions[i] - last);
+                last = positions[i];
+            }
+        }
+
+        private void writeInt(int value) {
+            if (size + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            while ((value & ~0x7f) != 0) {
+                bytes[size++] = (byte) (value & 0x7f | 0x80);
+                value >>>= 7;
+            }
+            bytes[size++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,207 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A full-text query over the {@code message} and {@code type} of the alarms, the {@value AlarmFilterPlan#TEXT_QUERY}
+ * parameter of {@code /alarms}: a conjunction of clauses, each a word ({@code threshold}), a prefix
+ * ({@code thresh*}) or a quoted phrase ({@code "power supply"}).
+ * <p>
+ * Text is split into terms on every character that is not a letter or a digit, and terms are lowercased, the
+ * same way for the alarms and the query; a word made of several terms ({@code power-supply}) is a phrase. An
+ * alarm is one document: the terms of its message, then those of its type, at consecutive positions except for
+ * a gap between the two fields, so no phrase spans them.
+ * <p>
+ * The {@link AlarmTextIndex} answers queries on sealed index blocks; {@link #matches} and {@link #frequency}
+ * evaluate them on the {@link #analyze analyzed} text of a single alarm.
+ */
+public final class AlarmTextQuery {
+
+    /** What a clause matches: one term, every term starting with it, or its terms in a row. */
+    enum Kind { TERM, PREFIX, PHRASE }
+
+    private final Clause[] clauses;
+
+    private AlarmTextQuery(Clause[] clauses) {
+        this.clauses = clauses;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the query has no term at all
+     */
+    public static AlarmTextQuery parse(String query) {
+        List<Clause> clauses = new ArrayList<>();
+        int i = 0;
+        int length = query.length();
+        while (i < length) {
+            char c = query.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+            } else if (c == '"') {
+                int end = query.indexOf('"', i + 1);
+                if (end < 0) {
+                    end = length;
+                }
+                addWord(clauses, query.substring(i + 1, end), false);
+                i = end + 1;
+            } else {
+                int end = i;
+                while (end < length && !Character.isWhitespace(query.charAt(end)) && query.charAt(end) != '"') {
+                    end++;
+                }
+                String word = query.substring(i, end);
+                boolean prefix = word.endsWith("*");
+                addWord(clauses, prefix ? word.substring(0, word.length() - 1) : word, prefix);
+                i = end;
+            }
+        }
+        if (clauses.isEmpty()) {
+            throw new IllegalArgumentException("Text query " + query + " has no term to search");
+        }
+        return new AlarmTextQuery(clauses.toArray(new Clause[0]));
+    }
+
+    private static void addWord(List<Clause> clauses, String word, boolean prefix) {
+        String[] terms = tokenize(word);
+        if (terms.length == 0) {
+            return;
+        }
+        if (prefix) {
+            // The terms before the last are whole words
+            for (int t = 0; t < terms.length - 1; t++) {
+                clauses.add(new Clause(Kind.TERM, terms[t]));
+            }
+            clauses.add(new Clause(Kind.PREFIX, terms[terms.length - 1]));
+        } else if (terms.length == 1) {
+            clauses.add(new Clause(Kind.TERM, terms[0]));
+        } else {
+            clauses.add(new Clause(Kind.PHRASE, terms));
+        }
+    }
+
+    Clause[] getClauses() {
+        return clauses;
+    }
+
+    /**
+     * The lowercase terms of {@code text}, in order, {@code null} giving none.
+     */
+    static String[] tokenize(String text) {
+        if (text == null) {
+            return new String[0];
+        }
+        List<String> terms = new ArrayList<>();
+        int length = text.length();
+        int start = -1;
+        for (int i = 0; i <= length; i++) {
+            boolean inTerm = i < length && Character.isLetterOrDigit(text.charAt(i));
+            if (inTerm && start < 0) {
+                start = i;
+            } else if (!inTerm && start >= 0) {
+                terms.add(text.substring(start, i).toLowerCase(Locale.ROOT));
+                start = -1;
+            }
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    /**
+     * The document of an alarm: the term at each position, {@code null} for the gap between the fields.
+     */
+    static String[] analyze(String message, String type) {
+        String[] messageTerms = tokenize(message);
+        String[] typeTerms = tokenize(type);
+        if (typeTerms.length == 0) {
+            return messageTerms;
+        }
+        String[] document = Arrays.copyOf(messageTerms, messageTerms.length + 1 + typeTerms.length);
+        System.arraycopy(typeTerms, 0, document, messageTerms.length + 1, typeTerms.length);
+        return document;
+    }
+
+    /**
+     * Number of terms of a document, the gap aside.
+     */
+    static int length(String[] document) {
+        int length = 0;
+        for (String term : document) {
+            if (term != null) {
+                length++;
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Whether every clause occurs in {@code document}.
+     */
+    boolean matches(String[] document) {
+        for (Clause clause : clauses) {
+            if (frequency(clause, document) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    public boolean matches(String message, String type) {
+        return matches(analyze(message, type));
+    }
+
+    /**
+     * Occurrences of {@code clause} in {@code document}.
+     */
+    static int frequency(Clause clause, String[] document) {
+        int count = 0;
+        String[] terms = clause.terms;
+        for (int position = 0; position + terms.length <= document.length; position++) {
+            if (clause.matchesAt(document, position)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    @Override
+    public String toString() {
+        return Arrays.toString(clauses);
+    }
+
+    static final class Clause {
+        final Kind kind;
+        /** One term, or the terms of a phrase. */
+        final String[] terms;
+
+        Clause(Kind kind, String... terms) {
+            this.kind = kind;
+            this.terms = terms;
+        }
+
+        private boolean matchesAt(String[] document, int position) {
+            if (kind == Kind.PREFIX) {
+                return document[position] != null && document[position].startsWith(terms[0]);
+            }
+            for (int t = 0; t < terms.length; t++) {
+                if (!terms[t].equals(document[position + t])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public String toString() {
+            switch (kind) {
+                case PREFIX:
+                    return terms[0] + "*";
+                case PHRASE:
+                    return '"' + String.join(" ", terms) + '"';
+                default:
+                    return terms[0];
+            }
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the large alarm scans of a query on a dedicated {@link ForkJoinPool} instead of the request thread.
+ * <p>
+ * A scan is split in contiguous ranges of index blocks (or of rows, or of candidate rows), one task each, with
+ * at least {@code minRowsPerTask} rows per task and at most {@code maxTasksPerQuery} tasks, so one heavy query
+ * cannot take every worker; smaller scans run sequentially on the calling thread. Every task produces a partial
+ * result over its range, which are combined in range order: counts are summed, row lists concatenated, and
+ * top-K selections, each already sorted, are merged with {@link RowSort#merge}, or by score for relevance.
+ * <p>
+ * The pool is shared by all queries and takes their tasks first come, first served.
+ */
+public class ParallelAlarmScan {
+
+    private final ForkJoinPool pool;
+    private final int maxTasksPerQuery;
+    private final int minRowsPerTask;
+
+    /**
+     * @param parallelism      worker threads of the pool
+     * @param maxTasksPerQuery most tasks a single scan is split into
+     * @param minRowsPerTask   fewest rows worth a task; scans of fewer than twice as many stay sequential
+     */
+    public ParallelAlarmScan(int parallelism, int maxTasksPerQuery, int minRowsPerTask) {
+        AtomicInteger threads = new AtomicInteger();
+        this.pool = new ForkJoinPool(Math.max(1, parallelism), forkJoinPool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(forkJoinPool);
+            thread.setName("alarm-scan-" + threads.incrementAndGet());
+            return thread;
+        }, null, true);
+        this.maxTasksPerQuery = Math.max(1, maxTasksPerQuery);
+        this.minRowsPerTask = Math.max(AlarmIndex.BLOCK_SIZE, minRowsPerTask);
+    }
+
+    public void shutdown() {
+        pool.shutdownNow();
+    }
+
+    /**
+     * See {@link AlarmIndex#count}.
+     */
+    public int count(AlarmIndex index, AlarmFilterPlan plan) {
+        AlarmIndex.Scan scan = index.prepare(plan);
+        int total = 0;
+        for (int partial : runBlocks(index, (from, to) -> scan.run(from, to, null))) {
+            total += partial;
+        }
+        return total;
+    }
+
+    /**
+     * See {@link AlarmIndex#select}.
+     */
+    public int[] select(AlarmIndex index, AlarmFilterPlan plan) {
+        AlarmIndex.Scan scan = index.prepare(plan);
+        List<int[]> parts = runBlocks(index, (from, to) -> {
+            AlarmIndex.RowCollector rows = new AlarmIndex.RowCollector();
+            scan.run(from, to, rows);
+            return rows.toArray();
+        });
+        if (parts.size() == 1) {
+            return parts.get(0);
+        }
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        int[] rows = new int[length];
+        int at = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, rows, at, part.length);
+            at += part.length;
+        }
+        return rows;
+    }
+
+    /**
+     * See {@link AlarmIndex#rank}; every task keeps its own best {@code k}, merged by score.
+     */
+    public AlarmIndex.Ranked rank(AlarmIndex index, AlarmFilterPlan plan, int k) {
+        AlarmIndex.Ranker ranker = index.prepareRanking(plan);
+        return AlarmIndex.Ranked.merge(runBlocks(index, (from, to) -> ranker.run(from, to, k)), k);
+    }
+
+    /**
+     * The first {@code k} rows in {@code comparator} order among {@code candidates[0, count)}, or among the
+     * rows {@code first} to {@code first + count} when {@code candidates} is {@code null}, skipping those
+     * {@code filter} rejects if it is set.
+     */
+    public int[] top(int[] candidates, int first, int count, int k, AlarmColumns.RowComparator comparator,
+                     AlarmColumns.RowMatcher filter) {
+        List<int[]> parts = run(count, (from, to) -> {
+            RowSort.TopK topK = new RowSort.TopK(k, comparator);
+            for (int i = from; i < to; i++) {
+                int row = candidates == null ? first + i : candidates[i];
+                if (filter == null || filter.matches(row)) {
+                    topK.offer(row);
+                }
+            }
+            return topK.toSortedArray();
+        });
+        return parts.size() == 1 ? parts.get(0) : RowSort.merge(parts.toArray(new int[0][]), k, comparator);
+    }
+
+    private interface RangeTask<T> {
+        T run(int from, int to);
+    }
+
+    private <T> List<T> runBlocks(AlarmIndex index, RangeTask<T> task) {
+        int firstBlock = index.firstBlock();
+        int blocks = index.endBlock() - firstBlock;
+        return split(blocks, (long) blocks * AlarmIndex.BLOCK_SIZE,
+                (from, to) -> task.run(firstBlock + from, firstBlock + to));
+    }
+
+    private <T> List<T> run(int count, RangeTask<T> task) {
+        return split(count, count, task);
+    }
+
+    /**
+     * Runs {@code task} over {@code [0, units)}, split in as many ranges as {@code rows} allows.
+     */
+    private <T> List<T> split(int units, long rows, RangeTask<T> task) {
+        int tasks = (int) Math.min(Math.min(maxTasksPerQuery, rows / minRowsPerTask), units);
+        if (tasks < 2) {
+            List<T> result = new ArrayList<>(1);
+            result.add(task.run(0, units));
+            return result;
+        }
+        List<Callable<T>> callables = new ArrayList<>(tasks);
+        for (int i = 0; i < tasks; i++) {
+            int from = (int) ((long) units * i / tasks);
+            int to = (int) ((long) units * (i + 1) / tasks);
+            callables.add(() -> task.run(from, to));
+        }
+        List<T> results = new ArrayList<>(tasks);
+        try {
+            for (Future<T> future : pool.invokeAll(callables)) {
+                results.add(future.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scanning alarms", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new IllegalStateException("Alarm scan failed", e.getCause());
+        }
+        return results;
+    }
+}
@@ -0,0 +1,182 @@
+package com.gateway.backend.service.alarm;
+
+import java.util.Arrays;
+
+/**
+ * Sorting and top-K selection of row numbers with a {@link AlarmColumns.RowComparator}, without boxing them.
+ */
+public final class RowSort {
+
+    private static final int INSERTION_SORT_THRESHOLD = 24;
+
+    private RowSort() {
+    }
+
+    /**
+     * Stable merge sort of {@code rows[0, length)}.
+     */
+    public static void sort(int[] rows, int length, AlarmColumns.RowComparator comparator) {
+        if (length < 2) {
+            return;
+        }
+        int[] buffer = new int[length];
+        System.arraycopy(rows, 0, buffer, 0, length);
+        mergeSort(buffer, rows, 0, length, comparator);
+    }
+
+    /**
+     * Sorts {@code target[from, to)}, using {@code source}, which holds the same elements, as scratch space.
+     */
+    private static void mergeSort(int[] source, int[] target, int from, int to, AlarmColumns.RowComparator comparator) {
+        int length = to - from;
+        if (length <= INSERTION_SORT_THRESHOLD) {
+            for (int i = from + 1; i < to; i++) {
+                int row = target[i];
+                int j = i - 1;
+                while (j >= from && comparator.compare(target[j], row) > 0) {
+                    target[j + 1] = target[j];
+                    j--;
+                }
+                target[j + 1] = row;
+            }
+            return;
+        }
+        int middle = (from + to) >>> 1;
+        mergeSort(target, source, from, middle, comparator);
+        mergeSort(target, source, middle, to, comparator);
+        if (comparator.compare(source[middle - 1], source[middle]) <= 0) {
+            System.arraycopy(source, from, target, from, length);
+            return;
+        }
+        for (int i = from, left = from, right = middle; i < to; i++) {
+            if (right >= to || left < middle && comparator.compare(source[left], source[right]) <= 0) {
+                target[i] = source[left++];
+            } else {
+                target[i] = source[right++];
+            }
+        }
+    }
+
+    /**
+     * The first {@code k} rows of the union of {@code runs}, each sorted in comparator order: a k-way merge
+     * whose heap holds the head of every run, so it costs {@code O(k log runs)}.
+     */
+    public static int[] merge(int[][] runs, int k, AlarmColumns.RowComparator comparator) {
+        int available = 0;
+        for (int[] run : runs) {
+            available += run.length;
+        }
+        int[] merged = new int[Math.max(0, Math.min(k, available))];
+        // Heap of run numbers, ordered by the row at their position
+        int[] heads = new int[runs.length];
+        int[] positions = new int[runs.length];
+        int size = 0;
+        for (int run = 0; run < runs.length; run++) {
+            if (runs[run].length > 0) {
+                heads[size++] = run;
+            }
+        }
+        AlarmColumns.RowComparator byHead = (a, b) -> comparator.compare(runs[a][positions[a]], runs[b][positions[b]]);
+        for (int i = size / 2 - 1; i >= 0; i--) {
+            siftDownMin(heads, i, size, byHead);
+        }
+        for (int i = 0; i < merged.length; i++) {
+            int run = heads[0];
+            merged[i] = runs[run][positions[run]++];
+            if (positions[run] == runs[run].length) {
+                heads[0] = heads[--size];
+            }
+            siftDownMin(heads, 0, size, byHead);
+        }
+        return merged;
+    }
+
+    private static void siftDownMin(int[] heap, int i, int size, AlarmColumns.RowComparator comparator) {
+        int item = heap[i];
+        int half = size >>> 1;
+        while (i < half) {
+            int child = 2 * i + 1;
+            int right = child + 1;
+            if (right < size && comparator.compare(heap[right], heap[child]) < 0) {
+                child = right;
+            }
+            if (comparator.compare(item, heap[child]) <= 0) {
+                break;
+            }
+            heap[i] = heap[child];
+            i = child;
+        }
+        heap[i] = item;
+    }
+
+    /**
+     * Bounded max-heap keeping the {@code k} first rows offered in comparator order, so selecting one page out
+     * of {@code n} matches costs {@code O(n log k)} instead of a full sort.
+     */
+    public static final class TopK {
+        private final int k;
+        private final AlarmColumns.RowComparator comparator;
+        private final int[] heap;
+        private int size;
+
+        public TopK(int k, AlarmColumns.RowComparator comparator) {
+            this.k = k;
+            this.comparator = comparator;
+            this.heap = new int[Math.max(k, 0)];
+        }
+
+        public void offer(int row) {
+            if (size < k) {
+                heap[size] = row;
+                siftUp(size++);
+            } else if (k > 0 && comparator.compare(row, heap[0]) < 0) {
+                heap[0] = row;
+                siftDown(0);
+            }
+        }
+
+        public int size() {
+            return size;
+        }
+
+        /**
+         * The kept rows in comparator order.
+         */
+        public int[] toSortedArray() {
+            int[] rows = Arrays.copyOf(heap, size);
+            sort(rows, size, comparator);
+            return rows;
+        }
+
+        private void siftUp(int i) {
+            int row = heap[i];
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (comparator.compare(heap[parent], row) >= 0) {
+                    break;
+                }
+                heap[i] = heap[parent];
+                i = parent;
+            }
+            heap[i] = row;
+        }
+
+        private void siftDown(int i) {
+            int row = heap[i];
+            int half = size >>> 1;
+            while (i < half) {
+                int child = 2 * i + 1;
+                int right = child + 1;
+                if (right < size && comparator.compare(heap[right], heap[child]) > 0) {
+                    child = right;
+                }
+                if (comparator.compare(row, heap[child]) >= 0) {
+                    break;
+                }
+                heap[i] = heap[child];
+                i = child;
+            }
+            heap[i] = row;
+        }
+    }
+}
@@ -0,0 +1,276 @@
+package com.gateway.backend.service.cache;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+/**
+ * Bounded LRU cache of query results, keyed by the normalized query and stamped with the generation of the
+ * data they were computed from.
+ * <p>
+ * The owner of the data counts a new generation on every write and passes the generation a query reads to
+ * {@link #get} and {@link #put}. Only results of the newest generation seen are kept: the first call with a
+ * newer one drops every entry, and results of an older one are neither served nor stored, so a hit is always
+ * what the query would compute now.
+ * <p>
+ * Entries are evicted least recently used first once there are more than {@code maxEntries} of them or their
+ * estimated sizes add up to more than {@code maxBytes}; a result larger than that is not cached at all.
+ * <p>
+ * With coalescing on, {@link #getOrCompute} also shares computations in flight: callers missing the same key
+ * at the same generation while one of them computes it wait for that result instead of computing their own.
+ * This works with the cache itself disabled too.
+ */
+public class QueryResultCache<V> {
+
+    private static final Logger logger = LoggerFactory.getLogger(QueryResultCache.class);
+
+    /** Map entry, key and cache entry objects around each result. */
+    private static final long ENTRY_OVERHEAD = 112;
+
+    /**
+     * Estimates the heap retained by a cached result.
+     */
+    public interface Weigher<V> {
+        long weigh(V value);
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long bytes;
+
+        Entry(V value, long bytes) {
+            this.value = value;
+            this.bytes = bytes;
+        }
+    }
+
+    /**
+     * Counters of a cache at one point in time.
+     */
+    @Getter
+    @AllArgsConstructor
+    public static class Stats {
+        private final long hits;
+        private final long misses;
+        private final double hitRatio;
+        private final long evictions;
+        private final long invalidations;
+        private final long coalesced;
+        private final int size;
+        private final long estimatedBytes;
+        private final long generation;
+    }
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final Weigher<V> weigher;
+    private final boolean coalesce;
+    /** Computations running for {@link #getOrCompute}, by generation and key. */
+    private final ConcurrentHashMap<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    /** Guards itself, {@link #bytes} and {@link #generation}. */
+    private final LinkedHashMap<String, Entry<V>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long bytes;
+    private long generation = Long.MIN_VALUE;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+
+    /**
+     * @param name       what is cached, for the log
+     * @param maxEntries most results kept, {@code 0} to disable the cache
+     * @param maxBytes   most estimated bytes kept
+     * @param coalesce   whether concurrent {@link #getOrCompute} calls for the same result share its computation
+     */
+    public QueryResultCache(String name, int maxEntries, long maxBytes, boolean coalesce, Weigher<V> weigher) {
+        this.maxEntries = Math.max(0, maxEntries);
+        this.maxBytes = Math.max(0, maxBytes);
+        this.coalesce = coalesce;
+        this.weigher = weigher;
+        if (isEnabled()) {
+            logger.info("{} cache enabled (max {} entries, {} bytes, coalescing {})", name, maxEntries, maxBytes,
+                    coalesce ? "on" : "off");
+        }
+    }
+
+    public boolean isEnabled() {
+        return maxEntries > 0 && maxBytes > 0;
+    }
+
+    /**
+     * The result cached for {@code key} at {@code generation}, or {@code null}.
+     */
+    public V get(String key, long generation) {
+        if (!isEnabled()) {
+            return null;
+        }
+        synchronized (entries) {
+            if (advance(generation)) {
+                Entry<V> entry = entries.get(key);
+                if (entry != null) {
+                    hits.increment();
+                    return entry.value;
+                }
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * Caches {@code value}, computed at {@code generation}, unless a newer generation was seen already.
+     */
+    public void put(String key, long generation, V value) {
+        if (!isEnabled()) {
+            return;
+        }
+        long weight = ENTRY_OVERHEAD + 2L * key.length() + weigher.weigh(value);
+        if (weight > maxBytes) {
+            return;
+        }
+        synchronized (entries) {
+            if (!advance(generation)) {
+                return;
+            }
+            Entry<V> previous = entries.put(key, new Entry<>(value, weight));
+            bytes += weight - (previous != null ? previous.bytes : 0);
+            Iterator<Entry<V>> eldest = entries.values().iterator();
+            while (entries.size() > maxEntries || bytes > maxBytes) {
+                bytes -= eldest.next().bytes;
+                eldest.remove();
+                evictions.increment();
+            }
+        }
+    }
+
+    /**
+     * The result for {@code key} at {@code generation}: cached, or computed by a concurrent call for the same
+     * key and generation, or else computed by {@code computation} on this thread and cached. An exception of
+     * the computation reaches every caller sharing it.
+     */
+    public V getOrCompute(String key, long generation, Supplier<V> computation) {
+        V cached = get(key, generation);
+        if (cached != null) {
+            return cached;
+        }
+        if (!coalesce) {
+            V value = computation.get();
+            put(key, generation, value);
+            return value;
+        }
+        String flightKey = generation + "#" + key;
+        CompletableFuture<V> own = new CompletableFuture<>();
+        CompletableFuture<V> running = inFlight.putIfAbsent(flightKey, own);
+        if (running != null) {
+            coalesced.increment();
+            return await(running);
+        }
+        try {
+            V value = computation.get();
+            put(key, generation, value);
+            own.complete(value);
+            return value;
+        } catch (RuntimeException | Error e) {
+            own.completeExceptionally(e);
+            throw e;
+        } finally {
+            inFlight.remove(flightKey, own);
+        }
+    }
+
+    private static <V> V await(CompletableFuture<V> running) {
+        try {
+            return running.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Moves to {@code newer} if it is, dropping the entries of the generation before.
+     *
+     * @return whether {@code newer} is the current generation now
+     */
+    private boolean advance(long newer) {
+        if (newer > generation) {
+            invalidations.add(entries.size());
+            entries.clear();
+            bytes = 0;
+            generation = newer;
+        }
+        return newer == generation;
+    }
+
+    public long getHits() {
+        return hits.sum();
+    }
+
+    public long getMisses() {
+        return misses.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Entries dropped because the data changed.
+     */
+    public long getInvalidations() {
+        return invalidations.sum();
+    }
+
+    /**
+     * {@link #getOrCompute} calls served by another call's computation.
+     */
+    public long getCoalesced() {
+        return coalesced.sum();
+    }
+
+    public int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public long getEstimatedBytes() {
+        synchronized (entries) {
+            return bytes;
+        }
+    }
+
+    public Stats getStats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        long lookups = hitCount + missCount;
+        synchronized (entries) {
+            return new Stats(hitCount, missCount, lookups == 0 ? 0 : (double) hitCount / lookups, evictions.sum(),
+                    invalidations.sum(), coalesced.sum(), entries.size(), bytes,
+                    generation == Long.MIN_VALUE ? 0 : generation);
+        }
+    }
+
+    /**
+     * Rough heap size of a string held by a cached result, {@code 0} for {@code null}.
+     */
+    public static long estimate(String value) {
+        return value == null ? 0 : 40 + 2L * value.length();
+    }
+}
@@ -0,0 +1,264 @@
+package com.gateway.backend.controller;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.client.TestRestTemplate;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * The alarm endpoints over HTTP, through the security filter chain, with token validation off.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "security.token.validation.enabled=false",
+        "logging.level.org.springframework.web=INFO",
+        "logging.level.org.springframework.security=INFO"})
+class AlarmControllerTest {
+
+    private static final ParameterizedTypeReference<Map<String, Object>> JSON_OBJECT =
+            new ParameterizedTypeReference<>() {
+            };
+
+    @Autowired
+    private TestRestTemplate rest;
+
+    private static Map<String, Object> alarm(String message, String severity) {
+        return Map.of(
+                "gatewayId", 7,
+                "gatewayName", "Gateway 7",
+                "type", "Power Failure",
+                "severity", severity,
+                "message", message,
+                "status", "Open",
+                "timestamp", "2024-03-01T10:15:30");
+    }
+
+    private ResponseEntity<Map<String, Object>> exchange(HttpMethod method, String url, Object body,
+                                                         Object... variables) {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setContentType(MediaType.APPLICATION_JSON);
+        return rest.exchange(url, method, new HttpEntity<>(body, headers), JSON_OBJECT, variables);
+    }
+
+    @SuppressWarnings("unchecked")
+    private List<Map<String, Object>> list(String message) {
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.GET,
+                "/alarms?message={message}&sortBy=id&sortOrder=asc&pageSize=50", null, message);
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        return (List<Map<String, Object>>) response.getBody().get("data");
+    }
+
+    @Test
+    void postsABatchAndReadsItBack() {
+        String message = "batch " + UUID.randomUUID();
+        List<Map<String, Object>> batch = List.of(
+                alarm(message + " one", "High"),
+                alarm(message + " two", "Low"),
+                alarm(message + " three", "Critical"));
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.POST, "/alarms/batch", batch);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("count", 3).containsEntry("stored", 3);
+        List<?> ids = (List<?>) response.getBody().get("ids");
+        assertThat(ids).hasSize(3);
+
+        List<Map<String, Object>> stored = list(message);
+        assertThat(stored).extracting(alarm -> alarm.get("id")).containsExactlyElementsOf(ids);
+        assertThat(stored).extracting(alarm -> alarm.get("message"))
+                .containsExactly(message + " one", message + " two", message + " three");
+        assertThat(stored).extracting(alarm -> alarm.get("severity")).containsExactly("High", "Low", "Critical");
+        assertThat(stored).allSatisfy(alarm -> assertThat(alarm).containsEntry("version", 1));
+    }
+
+    @Test
+    void postsAnAlarmAndReadsItBack() {
+        String message = "single " + UUID.randomUUID();
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.POST, "/alarms", alarm(message, "High"));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("message", message).containsEntry("version", 1);
+        assertThat(list(message)).singleElement().satisfies(stored -> {
+            assertThat(stored).containsEntry("id", response.getBody().get("id"));
+            assertThat(stored).containsEntry("timestamp", List.of(2024, 3, 1, 10, 15, 30));
+        });
+    }
+
+    @Test
+    void rejectsAnAlarmWithAValueOutOfRange() {
+        String message = "out of range " + UUID.randomUUID();
+        Map<String, Object> alarm = new HashMap<>(alarm(message, "High"));
+        alarm.put("charge_amount", 1e12);
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.POST, "/alarms", alarm);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).containsKey("error");
+        assertThat(list(message)).isEmpty();
+    }
+
+    @Test
+    void putsAnAlarmAndReadsItBack() {
+        String message = "replaced " + UUID.randomUUID();
+        Object id = exchange(HttpMethod.POST, "/alarms", alarm(message, "Low")).getBody().get("id");
+
+        Map<String, Object> replacement = new HashMap<>(alarm(message + " again", "Critical"));
+        replacement.put("status", "Closed");
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.PUT, "/alarms/{id}", replacement, id);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("id", id).containsEntry("version", 2);
+        assertThat(list(message)).singleElement().satisfies(stored -> {
+            assertThat(stored).containsEntry("id", id);
+            assertThat(stored).containsEntry("message", message + " again");
+            assertThat(stored).containsEntry("severity", "Critical");
+            // The status only moves through PATCH /alarms/status
+            assertThat(stored).containsEntry("status", "Open");
+            assertThat(stored).containsEntry("version", 2);
+        });
+    }
+
+    @Test
+    void putsToAnUnknownAlarmAreNotFound() {
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.PUT, "/alarms/{id}",
+                alarm("nobody", "Low"), Integer.MAX_VALUE);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.NOT_FOUND);
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    void patchesStatusesAndReportsEachOutcome() {
+        String message = "patched " + UUID.randomUUID();
+        List<Map<String, Object>> batch = List.of(alarm(message, "High"), alarm(message, "High"),
+                alarm(message, "Low"));
+        List<?> ids = (List<?>) exchange(HttpMethod.POST, "/alarms/batch", batch).getBody().get("ids");
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.PATCH, "/alarms/status", List.of(
+                Map.of("id", ids.get(0), "version", 1, "status", "In Progress"),
+                Map.of("id", ids.get(1), "version", 3, "status", "Closed"),
+                Map.of("id", ids.get(2), "version", 1, "status", "Open"),
+                Map.of("id", Integer.MAX_VALUE, "version", 1, "status", "Closed")));
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("count", 4).containsEntry("updated", 1)
+                .containsEntry("conflicts", 1);
+        List<Map<String, Object>> results = (List<Map<String, Object>>) response.getBody().get("results");
+        assertThat(results).extracting(result -> result.get("outcome"))
+                .containsExactly("UPDATED", "CONFLICT", "INVALID_TRANSITION", "NOT_FOUND");
+        assertThat(results.get(0)).containsEntry("version", 2).containsEntry("status", "In Progress");
+        assertThat(results.get(1)).containsEntry("version", 1).containsEntry("status", "Open");
+        assertThat(list(message)).extracting(alarm -> alarm.get("status"), alarm -> alarm.get("version"))
+                .containsExactly(tuple("In Progress", 2), tuple("Open", 1), tuple("Open", 1));
+    }
+
+    @Test
+    void rejectsStatusChangesMissingAField() {
+        String message = "unpatched " + UUID.randomUUID();
+        Object id = exchange(HttpMethod.POST, "/alarms", alarm(message, "Low")).getBody().get("id");
+
+        for (String transitions : new String[]{
+                "[{\"version\": 1, \"status\": \"Closed\"}]",
+                "[{\"id\": " + id + ", \"status\": \"Closed\"}]",
+                "[{\"id\": " + id + ", \"version\": 1, \"status\": \"Closed\"}, {\"id\": " + id
+                        + ", \"version\": 1}]",
+                "[{\"id\": " + id + ", \"version\": 1, \"status\": \"Done\"}]",
+                "[{\"id\": " + id + ", \"version\": 1, \"status\": \"Closed\"}, null]"}) {
+            ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.PATCH, "/alarms/status", transitions);
+
+            assertThat(response.getStatusCode()).as(transitions).isEqualTo(HttpStatus.BAD_REQUEST);
+            assertThat(response.getBody()).as(transitions).containsKey("error");
+        }
+        assertThat(list(message)).singleElement().satisfies(stored -> {
+            assertThat(stored).containsEntry("status", "Open");
+            assertThat(stored).containsEntry("version", 1);
+        });
+    }
+
+    @Test
+    void allowsPatchFromTheFrontendOrigin() {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setOrigin("http://localhost:5173");
+        headers.setAccessControlRequestMethod(HttpMethod.PATCH);
+        headers.setAccessControlRequestHeaders(List.of("Content-Type"));
+
+        ResponseEntity<Void> response = rest.exchange("/alarms/status", HttpMethod.OPTIONS,
+                new HttpEntity<>(headers), Void.class);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getHeaders().getAccessControlAllowOrigin()).isEqualTo("http://localhost:5173");
+        assertThat(response.getHeaders().getAccessControlAllowMethods()).contains(HttpMethod.PATCH);
+    }
+
+    @Test
+    void rejectsABatchWithANullAlarm() {
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.POST, "/alarms/batch",
+                "[{\"message\": \"fine\"}, null]");
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(response.getBody()).containsKey("error");
+    }
+
+    @Test
+    void filtersByRangesAndRejectsInvalidBounds() {
+        String message = "ranged " + UUID.randomUUID();
+        List<Map<String, Object>> batch = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            Map<String, Object> alarm = new HashMap<>(alarm(message, "Low"));
+            alarm.put("duration_seconds", 60 * i);
+            alarm.put("charge_amount", 1.25 * i);
+            batch.add(alarm);
+        }
+        List<?> ids = (List<?>) exchange(HttpMethod.POST, "/alarms/batch", batch).getBody().get("ids");
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.GET,
+                "/alarms?message={message}&minDuration=60&maxCharge=2.5&sortBy=id&sortOrder=asc", null, message);
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat((List<?>) response.getBody().get("data")).extracting(alarm -> ((Map<?, ?>) alarm).get("id"))
+                .isEqualTo(ids.subList(1, 3));
+        assertThat(exchange(HttpMethod.GET, "/alarms?minDuration=soon", null).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(exchange(HttpMethod.GET, "/alarms?timestampFrom=2024-02-30T00:00:00", null).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+
+    @Test
+    void searchesTheTextBestMatchFirst() {
+        String tag = "t" + UUID.randomUUID().toString().replace("-", "");
+        List<Map<String, Object>> batch = List.of(
+                alarm("Fan " + tag + " noise", "Low"),
+                alarm(tag + " " + tag + " " + tag, "Low"),
+                alarm("Unrelated", "Low"));
+        List<?> ids = (List<?>) exchange(HttpMethod.POST, "/alarms/batch", batch).getBody().get("ids");
+
+        ResponseEntity<Map<String, Object>> response = exchange(HttpMethod.GET,
+                "/alarms?q={tag}&sortBy=relevance", null, tag.toUpperCase());
+
+        assertThat(response.getStatusCode()).isEqualTo(HttpStatus.OK);
+        assertThat(response.getBody()).containsEntry("total", 2);
+        assertThat((List<?>) response.getBody().get("data")).extracting(alarm -> ((Map<?, ?>) alarm).get("id"))
+                .isEqualTo(List.of(ids.get(1), ids.get(0)));
+        assertThat(exchange(HttpMethod.GET, "/alarms?message={tag}&sortBy=relevance", null, tag).getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+        assertThat(exchange(HttpMethod.GET, "/alarms?q={q}", null, "\"\"").getStatusCode())
+                .isEqualTo(HttpStatus.BAD_REQUEST);
+    }
+}
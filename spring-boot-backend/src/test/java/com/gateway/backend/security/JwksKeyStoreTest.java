@@ -0,0 +1,167 @@
+package com.gateway.backend.security;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Runs the key store against a stub JWKS endpoint that can be made to answer, fail or hang.
+ */
+class JwksKeyStoreTest {
+
+    private enum Mode { ANSWER, FAIL, HANG }
+
+    private final AtomicInteger requests = new AtomicInteger();
+    private volatile Mode mode = Mode.ANSWER;
+
+    private TestTokens tokens;
+    private HttpServer server;
+    private ExecutorService serverThreads;
+    private String jwksUrl;
+
+    @BeforeEach
+    void startStub() throws Exception {
+        tokens = new TestTokens("key-1", "http://keycloak.test/realms/gateway");
+        String jwks = tokens.jwksJson();
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        server.createContext("/certs", exchange -> {
+            requests.incrementAndGet();
+            switch (mode) {
+                case ANSWER:
+                    respond(exchange, 200, jwks);
+                    break;
+                case FAIL:
+                    respond(exchange, 503, "unavailable");
+                    break;
+                case HANG:
+                    try {
+                        Thread.sleep(5_000);
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+                    exchange.close();
+                    break;
+            }
+        });
+        serverThreads = Executors.newCachedThreadPool();
+        server.setExecutor(serverThreads);
+        server.start();
+        jwksUrl = "http://127.0.0.1:" + server.getAddress().getPort() + "/certs";
+    }
+
+    @AfterEach
+    void stopStub() {
+        server.stop(0);
+        serverThreads.shutdownNow();
+    }
+
+    private static void respond(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+
+    private JwksKeyStore keyStore(JwksKeyStore.Settings settings) throws Exception {
+        return new JwksKeyStore(JwksKeyStore.urlKeySource(jwksUrl, 200, 200), settings);
+    }
+
+    @Test
+    void aHangingEndpointFailsTheFetchWithinTheReadTimeout() throws Exception {
+        JwksKeyStore store = keyStore(JwksKeyStore.Settings.builder().build());
+        mode = Mode.HANG;
+
+        long start = System.nanoTime();
+        assertThatThrownBy(store::refresh).isInstanceOf(Exception.class);
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000;
+
+        assertThat(elapsedMillis).isLessThan(2_000);
+        assertThat(store.getKey("key-1")).isNull();
+    }
+
+    @Test
+    void repeatedFailuresOpenTheCircuitAndStopFetching() throws Exception {
+        JwksKeyStore store = keyStore(JwksKeyStore.Settings.builder()
+                .refetchCooldown(Duration.ZERO)
+                .negativeCache(Duration.ZERO)
+                .circuitFailureThreshold(3)
+                .circuitOpenDuration(Duration.ofMinutes(1))
+                .build());
+        mode = Mode.FAIL;
+
+        for (int i = 0; i < 2; i++) {
+            assertThat(store.getKey("key-1")).isNull();
+            assertThat(store.isCircuitOpen()).isFalse();
+        }
+        assertThat(store.getKey("key-1")).isNull();
+        assertThat(store.isCircuitOpen()).isTrue();
+        assertThat(requests.get()).isEqualTo(3);
+
+        mode = Mode.ANSWER;
+        for (int i = 0; i < 10; i++) {
+            assertThat(store.getKey("key-1")).isNull();
+        }
+        assertThat(requests.get()).isEqualTo(3);
+    }
+
+    @Test
+    void servesStaleKeysDuringAnOutageUpToMaxStale() throws Exception {
+        JwksKeyStore store = keyStore(JwksKeyStore.Settings.builder()
+                .maxStale(Duration.ofMillis(600))
+                .circuitFailureThreshold(1)
+                .circuitOpenDuration(Duration.ofMinutes(1))
+                .build());
+        store.refresh();
+        mode = Mode.FAIL;
+
+        assertThatThrownBy(store::refresh).isInstanceOf(Exception.class);
+        assertThat(store.isCircuitOpen()).isTrue();
+        assertThat(store.getKey("key-1")).isEqualTo(tokens.jwk().getPublicKey());
+
+        Thread.sleep(800);
+        assertThat(store.getKey("key-1")).isNull();
+    }
+
+    @Test
+    void recoversOnceTheEndpointAnswersAgain() throws Exception {
+        JwksKeyStore store = keyStore(JwksKeyStore.Settings.builder()
+                .refetchCooldown(Duration.ZERO)
+                .negativeCache(Duration.ZERO)
+                .maxStale(Duration.ofMillis(100))
+                .circuitFailureThreshold(2)
+                .circuitOpenDuration(Duration.ofMillis(300))
+                .build());
+        store.refresh();
+        mode = Mode.FAIL;
+        Thread.sleep(150);
+
+        assertThat(store.getKey("key-1")).isNull();
+        assertThat(store.getKey("key-1")).isNull();
+        assertThat(store.isCircuitOpen()).isTrue();
+
+        mode = Mode.ANSWER;
+        assertThat(store.getKey("key-1")).isNull();
+        Thread.sleep(400);
+
+        assertThat(store.isCircuitOpen()).isFalse();
+        assertThat(store.getKey("key-1")).isEqualTo(tokens.jwk().getPublicKey());
+        assertThat(store.isCircuitOpen()).isFalse();
+    }
+}
@@ -0,0 +1,79 @@
+package com.gateway.backend.security;
+
+import ch.qos.logback.classic.Level;
+import ch.qos.logback.classic.Logger;
+import ch.qos.logback.classic.spi.ILoggingEvent;
+import ch.qos.logback.core.read.ListAppender;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.LoggerFactory;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class JwtTokenValidatorTest {
+
+    private static final String SERVER = "http://keycloak.test";
+    private static final String REALM = "gateway";
+
+    private final Logger validatorLogger = (Logger) LoggerFactory.getLogger(JwtTokenValidator.class);
+    private final ListAppender<ILoggingEvent> logged = new ListAppender<>();
+
+    private TestTokens tokens;
+    private JwtTokenValidator validator;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        tokens = new TestTokens("key-1", SERVER + "/realms/" + REALM);
+        JwksKeyStore keyStore = new JwksKeyStore(() -> List.of(tokens.jwk()), JwksKeyStore.Settings.builder().build());
+        keyStore.refresh();
+        validator = new JwtTokenValidator(keyStore, VerifiedTokenCache.disabled(), SERVER, REALM);
+        logged.start();
+        validatorLogger.addAppender(logged);
+    }
+
+    @AfterEach
+    void tearDown() {
+        validatorLogger.detachAppender(logged);
+    }
+
+    @Test
+    void verifiesATokenSignedByTheRealm() throws Exception {
+        VerifiedPrincipal principal = validator.verify(tokens.mint("alice", 60));
+
+        assertThat(principal).isNotNull();
+        assertThat(principal.getSubject()).isEqualTo("alice");
+        assertThat(principal.getRealmRoles()).containsExactly("user");
+    }
+
+    @Test
+    void rejectsGarbageWithoutErrorsOrStackTraces() throws Exception {
+        String valid = tokens.mint("alice", 60);
+        String signingInput = valid.substring(0, valid.lastIndexOf('.'));
+        List<String> garbage = List.of(
+                "a.b.c",
+                part("not json") + "." + part("{}") + ".c2ln",
+                part("{\"alg\":\"RS256\",") + "." + part("{}") + ".c2ln",
+                part("[1,2]") + "." + part("{}") + ".c2ln",
+                "!!!." + part("{}") + ".c2ln",
+                signingInput + ".c2hvcnQ");
+
+        for (String token : garbage) {
+            assertThat(validator.verify(token)).as(token).isNull();
+        }
+
+        assertThat(logged.list).hasSize(garbage.size());
+        assertThat(logged.list).allSatisfy(event -> {
+            assertThat(event.getLevel()).isEqualTo(Level.WARN);
+            assertThat(event.getThrowableProxy()).isNull();
+            assertThat(event.getFormattedMessage()).startsWith("Token validation failed: Malformed token");
+        });
+    }
+
+    private static String part(String json) {
+        return TestTokens.BASE64_URL.encodeToString(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
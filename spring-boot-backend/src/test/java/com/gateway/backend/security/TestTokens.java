@@ -0,0 +1,82 @@
+package com.gateway.backend.security;
+
+import com.auth0.jwk.Jwk;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An RSA signing key with the JWK Keycloak would publish for it, minting RS256 access tokens.
+ */
+final class TestTokens {
+
+    static final Base64.Encoder BASE64_URL = Base64.getUrlEncoder().withoutPadding();
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+
+    private final String kid;
+    private final String issuer;
+    private final KeyPair keyPair;
+
+    TestTokens(String kid, String issuer) throws Exception {
+        this.kid = kid;
+        this.issuer = issuer;
+        KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+        generator.initialize(2048);
+        this.keyPair = generator.generateKeyPair();
+    }
+
+    Map<String, Object> jwkValues() {
+        RSAPublicKey publicKey = (RSAPublicKey) keyPair.getPublic();
+        Map<String, Object> values = new LinkedHashMap<>();
+        values.put("kid", kid);
+        values.put("kty", "RSA");
+        values.put("alg", "RS256");
+        values.put("use", "sig");
+        values.put("n", BASE64_URL.encodeToString(unsigned(publicKey.getModulus().toByteArray())));
+        values.put("e", BASE64_URL.encodeToString(unsigned(publicKey.getPublicExponent().toByteArray())));
+        return values;
+    }
+
+    Jwk jwk() {
+        return Jwk.fromValues(jwkValues());
+    }
+
+    String jwksJson() throws Exception {
+        return MAPPER.writeValueAsString(Map.of("keys", List.of(jwkValues())));
+    }
+
+    String mint(String subject, long ttlSeconds) throws Exception {
+        long now = System.currentTimeMillis() / 1000;
+        Map<String, Object> header = new LinkedHashMap<>();
+        header.put("alg", "RS256");
+        header.put("typ", "JWT");
+        header.put("kid", kid);
+        Map<String, Object> claims = new LinkedHashMap<>();
+        claims.put("exp", now + ttlSeconds);
+        claims.put("iat", now);
+        claims.put("iss", issuer);
+        claims.put("aud", "account");
+        claims.put("sub", subject);
+        claims.put("preferred_username", subject);
+        claims.put("realm_access", Map.of("roles", List.of("user")));
+        String signingInput = BASE64_URL.encodeToString(MAPPER.writeValueAsBytes(header)) + "."
+                + BASE64_URL.encodeToString(MAPPER.writeValueAsBytes(claims));
+        Signature signature = Signature.getInstance("SHA256withRSA");
+        signature.initSign(keyPair.getPrivate());
+        signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+        return signingInput + "." + BASE64_URL.encodeToString(signature.sign());
+    }
+
+    private static byte[] unsigned(byte[] bytes) {
+        return bytes.length > 1 && bytes[0] == 0 ? Arrays.copyOfRange(bytes, 1, bytes.length) : bytes;
+    }
+}
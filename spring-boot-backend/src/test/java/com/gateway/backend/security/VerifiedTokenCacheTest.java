@@ -0,0 +1,88 @@
+package com.gateway.backend.security;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class VerifiedTokenCacheTest {
+
+    private static VerifiedPrincipal principal(String subject, Instant expiresAt) {
+        return new VerifiedPrincipal(subject, subject, "issuer", expiresAt, List.of("gateway"), Set.of(), Map.of());
+    }
+
+    @Test
+    void hitsUntilTheTokenExpires() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, 16, Duration.ofMinutes(5));
+        ByteBuffer live = cache.key("live");
+        ByteBuffer expired = cache.key("expired");
+
+        cache.put(live, principal("live", Instant.now().plusSeconds(60)));
+        cache.put(expired, principal("expired", Instant.now().minusSeconds(1)));
+
+        assertThat(cache.get(cache.key("live")).getSubject()).isEqualTo("live");
+        assertThat(cache.get(expired)).isNull();
+        assertThat(cache.getHits()).isEqualTo(1);
+        assertThat(cache.getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void staysWithinItsSizeAndKeepsRecentlyReadEntries() {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, 64, Duration.ofMinutes(5));
+        Instant exp = Instant.now().plusSeconds(60);
+        ByteBuffer hot = cache.key("hot");
+        cache.put(hot, principal("hot", exp));
+
+        for (int i = 0; i < 1000; i++) {
+            cache.put(cache.key("token-" + i), principal("token-" + i, exp));
+            assertThat(cache.get(hot)).as("hot entry after %d puts", i).isNotNull();
+        }
+
+        assertThat(cache.size()).isLessThanOrEqualTo(64);
+        assertThat(cache.getEvictions()).isGreaterThanOrEqualTo(1000 + 1 - 64);
+    }
+
+    @Test
+    void concurrentReadersAndWritersKeepTheBound() throws Exception {
+        VerifiedTokenCache cache = new VerifiedTokenCache(true, 128, Duration.ofMinutes(5));
+        Instant exp = Instant.now().plusSeconds(60);
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < 8; t++) {
+                int thread = t;
+                futures.add(pool.submit(() -> {
+                    for (int i = 0; i < 5000; i++) {
+                        String token = "t" + ((thread * 7919 + i) % 512);
+                        ByteBuffer key = cache.key(token);
+                        VerifiedPrincipal cached = cache.get(key);
+                        if (cached == null) {
+                            cache.put(key, principal(token, exp));
+                        } else {
+                            assertThat(cached.getSubject()).isEqualTo(token);
+                        }
+                    }
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdown();
+        }
+
+        // Racing puts can each overshoot by one before they evict.
+        assertThat(cache.size()).isLessThanOrEqualTo(128 + 8);
+        assertThat(cache.getHits() + cache.getMisses()).isEqualTo(8 * 5000);
+    }
+}
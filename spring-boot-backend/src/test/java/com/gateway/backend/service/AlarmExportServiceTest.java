@@ -0,0 +1,153 @@
+package com.gateway.backend.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Exports the same alarms as NDJSON and CSV and checks that both carry every property with the same values.
+ */
+class AlarmExportServiceTest {
+
+    private final MappingJackson2HttpMessageConverter jsonConverter = new MappingJackson2HttpMessageConverter();
+    private final ObjectMapper objectMapper = jsonConverter.getObjectMapper();
+    private AlarmService alarmService;
+    private AlarmExportService exportService;
+
+    @BeforeEach
+    void fill() {
+        alarmService = new AlarmService(0);
+        List<Alarm> alarms = new TestAlarms(16).next(3_000);
+        alarms.get(7).setMessage("Fan \"A\" failed, then \"B\"\r\non rack 2");
+        alarmService.addAlarms(alarms);
+        AlarmColumns columns = alarmService.getSnapshot().getColumns();
+        List<Alarm> transitions = new ArrayList<>();
+        for (int row = 0; row < 3_000; row += 3) {
+            transitions.add(Alarm.builder().id(row + 1L).version(columns.version(row)).status("Closed").build());
+        }
+        alarmService.changeStatuses(transitions);
+        exportService = new AlarmExportService(alarmService, jsonConverter);
+    }
+
+    @AfterEach
+    void stop() {
+        alarmService.stop();
+    }
+
+    private String export(Map<String, String> filters, AlarmExportService.Format format) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        exportService.export(filters, format, out);
+        return out.toString(StandardCharsets.UTF_8);
+    }
+
+    private List<Map<String, Object>> ndjson(Map<String, String> filters) throws IOException {
+        List<Map<String, Object>> alarms = new ArrayList<>();
+        for (String line : export(filters, AlarmExportService.Format.NDJSON).split("\n")) {
+            if (!line.isEmpty()) {
+                alarms.add(objectMapper.readValue(line, new TypeReference<LinkedHashMap<String, Object>>() {
+                }));
+            }
+        }
+        return alarms;
+    }
+
+    /**
+     * Records of RFC 4180 text: quoted fields may hold commas, doubled quotes and line breaks.
+     */
+    private static List<List<String>> csv(String text) {
+        List<List<String>> records = new ArrayList<>();
+        List<String> record = new ArrayList<>();
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < text.length() && text.charAt(i + 1) == '"') {
+                    field.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                record.add(field.toString());
+                field.setLength(0);
+            } else if (c == '\r' && text.charAt(i + 1) == '\n') {
+                record.add(field.toString());
+                field.setLength(0);
+                records.add(record);
+                record = new ArrayList<>();
+                i++;
+            } else {
+                field.append(c);
+            }
+        }
+        return records;
+    }
+
+    @Test
+    void csvHasTheColumnsAndValuesOfTheNdjson() throws IOException {
+        for (Map<String, String> filters : List.of(Map.<String, String>of(), Map.of("severity", "high"),
+                Map.of("status", "closed", "carrier", "t"))) {
+            List<Map<String, Object>> json = ndjson(filters);
+            List<List<String>> records = csv(export(filters, AlarmExportService.Format.CSV));
+
+            assertThat(json).isNotEmpty();
+            assertThat(records.get(0)).as("%s header", filters).containsExactlyElementsOf(json.get(0).keySet());
+            assertThat(records).hasSize(json.size() + 1);
+            for (int i = 0; i < json.size(); i++) {
+                List<String> record = records.get(i + 1);
+                int column = 0;
+                for (Map.Entry<String, Object> property : json.get(i).entrySet()) {
+                    String csvValue = record.get(column++);
+                    Object jsonValue = property.getValue();
+                    String as = filters + " alarm " + json.get(i).get("id") + " " + property.getKey();
+                    if (jsonValue == null) {
+                        assertThat(csvValue).as(as).isEmpty();
+                    } else if (jsonValue instanceof List) {
+                        assertThat(LocalDateTime.parse(csvValue)).as(as)
+                                .isEqualTo(objectMapper.convertValue(jsonValue, LocalDateTime.class));
+                    } else {
+                        assertThat(csvValue).as(as).isEqualTo(jsonValue.toString());
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void exportsTheVersionOfEveryAlarm() throws IOException {
+        List<List<String>> records = csv(export(Map.of(), AlarmExportService.Format.CSV));
+        int versionColumn = records.get(0).indexOf("version");
+
+        assertThat(versionColumn).isEqualTo(records.get(0).size() - 1);
+        AlarmColumns columns = alarmService.getSnapshot().getColumns();
+        for (List<String> record : records.subList(1, records.size())) {
+            int row = Integer.parseInt(record.get(0)) - 1;
+            assertThat(record.get(versionColumn)).isEqualTo(Integer.toString(columns.version(row)));
+        }
+        assertThat(records).extracting(record -> record.get(versionColumn)).contains("1", "2");
+        assertThat(records.get(8).get(records.get(0).indexOf("message")))
+                .isEqualTo("Fan \"A\" failed, then \"B\"\r\non rack 2");
+    }
+}
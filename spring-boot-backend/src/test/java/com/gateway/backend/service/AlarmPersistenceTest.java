@@ -0,0 +1,247 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.repository.AlarmRepository;
+import com.gateway.backend.service.alarm.AlarmColumns;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.AlarmStatusChange;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * {@code alarms.persistence.mode=jpa} on H2: pages, totals and cursor walks queried from the database against
+ * the brute-force listing of the same alarms, versioned status changes, retention and reloading on restart.
+ */
+@SpringBootTest(properties = {
+        "alarms.persistence.mode=jpa",
+        "spring.datasource.url=jdbc:h2:mem:alarm-persistence",
+        "spring.jpa.show-sql=false",
+        "logging.level.org.springframework.web=INFO",
+        "logging.level.org.springframework.security=INFO"})
+class AlarmPersistenceTest {
+
+    private static final int ROWS = 2 * TestAlarms.CHUNK_SIZE + 300;
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "critical"),
+            Map.of("carrier", "t", "type", "error"),
+            Map.of("caller_number", "12"),
+            Map.of("gatewayId", "3", "message", "threshold"),
+            Map.of("timestampFrom", "2024-01-01T03:00:00", "timestampTo", "2024-01-01T09:30:00",
+                    "minCharge", "2.5"),
+            Map.of("minCharge", "2.345", "maxCharge", "7.005", "maxDuration", "1800"),
+            Map.of("minDuration", "1800", "maxDuration", "1800"),
+            Map.of("maxCharge", "0.019", "severity", "high"),
+            Map.of("status", "no such status"));
+    private static final String[] SORTS = {null, "timestamp", "severity", "gatewayId", "carrier", "charge_amount"};
+
+    @Autowired
+    private AlarmRepository alarmRepository;
+
+    private final List<AlarmService> services = new ArrayList<>();
+    private AlarmService service;
+
+    /**
+     * Alarms as a previous run left them in the table, ids from 1 on.
+     */
+    @BeforeEach
+    void fill() {
+        alarmRepository.deleteAllInBatch();
+        List<Alarm> alarms = new TestAlarms(17).next(ROWS);
+        for (int i = 0; i < alarms.size(); i++) {
+            Alarm alarm = alarms.get(i);
+            alarm.setId(i + 1L);
+            alarm.setOccurrences(1);
+            alarm.setLastSeen(alarm.getTimestamp());
+            alarm.setVersion(1);
+        }
+        alarmRepository.insertAll(alarms);
+        service = start();
+    }
+
+    @AfterEach
+    void stop() {
+        services.forEach(AlarmService::stop);
+    }
+
+    /**
+     * A service over the table, as on startup; results are not cached, so every query reaches the database.
+     */
+    private AlarmService start() {
+        AlarmService started = new AlarmService("jpa", alarmRepository, 0, 300, 1, 4, 65536, 0, 0, false, 0,
+                10000, 1000);
+        services.add(started);
+        return started;
+    }
+
+    private AlarmService startCorrelated() {
+        AlarmService started = new AlarmService("jpa", alarmRepository, 0, 300, 1, 4, 65536, 0, 0, false, 60,
+                10000, 3_600_000);
+        services.add(started);
+        return started;
+    }
+
+    private List<Alarm> expected(Map<String, String> filters, String sortBy, boolean descending) {
+        List<Alarm> matches = TestAlarms.matching(service.getSnapshot().getColumns(), service.compileFilters(filters));
+        AlarmField field = sortBy == null ? AlarmField.ID : AlarmField.fromName(sortBy);
+        matches.sort(TestAlarms.order(field, sortBy != null && descending));
+        return matches;
+    }
+
+    private void assertMatchesBruteForce(String when) {
+        for (Map<String, String> filters : FILTERS) {
+            for (String sortBy : SORTS) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    String sortOrder = descending ? "desc" : "asc";
+                    String as = when + " " + filters + " by " + sortBy + " " + sortOrder;
+                    List<Alarm> expected = expected(filters, sortBy, descending);
+
+                    for (int page : new int[]{1, 3, 40}) {
+                        AlarmPage offset = service.queryAlarms(filters, page, 211, sortBy, sortOrder);
+                        int from = Math.min(expected.size(), (page - 1) * 211);
+                        assertThat(offset.getTotal()).as(as).isEqualTo(expected.size());
+                        assertThat(offset.getData()).as("%s page %d", as, page)
+                                .isEqualTo(expected.subList(from, Math.min(expected.size(), from + 211)));
+                    }
+
+                    List<Alarm> walked = new ArrayList<>();
+                    AlarmPage page = service.queryAlarms(filters, 1, 500, sortBy, sortOrder);
+                    walked.addAll(page.getData());
+                    while (page.getNextCursor() != null) {
+                        page = service.queryAlarms(filters, 1, 500, sortBy, sortOrder, page.getNextCursor());
+                        assertThat(page.getTotal()).as(as).isEqualTo(expected.size());
+                        walked.addAll(page.getData());
+                    }
+                    assertThat(TestAlarms.ids(walked)).as(as + " walked").isEqualTo(TestAlarms.ids(expected));
+                }
+            }
+            assertThat(service.getTotalAlarms(filters)).isEqualTo(expected(filters, null, false).size());
+        }
+    }
+
+    @Test
+    void pagesFromTheDatabaseMatchTheListing() {
+        assertThat(service.getSnapshot().getColumns().count()).isEqualTo(ROWS);
+        assertMatchesBruteForce("loaded");
+
+        long firstId = service.addAlarms(new TestAlarms(18).next(700));
+        assertThat(firstId).isEqualTo(ROWS + 1L);
+        assertThat(alarmRepository.count()).isEqualTo(ROWS + 700L);
+        assertMatchesBruteForce("appended");
+    }
+
+    @Test
+    void changesStatusOnlyAtTheVersionTheDatabaseHolds() {
+        AlarmColumns columns = service.getSnapshot().getColumns();
+        List<Long> open = new ArrayList<>();
+        for (int row = 0; open.size() < 3; row++) {
+            if ("Open".equals(columns.toAlarm(row).getStatus())) {
+                open.add(row + 1L);
+            }
+        }
+        // Changed in the database behind the store's back, as by another instance
+        assertThat(alarmRepository.updateStatuses(new long[]{open.get(1)}, new int[]{1}, new String[]{"Resolved"}, 1))
+                .containsExactly(1);
+
+        AlarmStatusChange change = service.changeStatuses(List.of(
+                Alarm.builder().id(open.get(0)).version(1).status("Closed").build(),
+                Alarm.builder().id(open.get(1)).version(1).status("Closed").build(),
+                Alarm.builder().id(open.get(2)).version(2).status("Closed").build()));
+
+        assertThat(change.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+        assertThat(change.outcome(1)).isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+        assertThat(change.outcome(2)).isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+        assertThat(alarmRepository.findById(open.get(0)).orElseThrow())
+                .extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Closed", 2);
+        assertThat(alarmRepository.findById(open.get(1)).orElseThrow())
+                .extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Resolved", 2);
+        assertThat(alarmRepository.findById(open.get(2)).orElseThrow())
+                .extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Open", 1);
+
+        columns = service.getSnapshot().getColumns();
+        assertThat(columns.toAlarm((int) (open.get(0) - 1))).extracting(Alarm::getStatus, Alarm::getVersion)
+                .containsExactly("Closed", 2);
+        assertThat(columns.toAlarm((int) (open.get(1) - 1))).extracting(Alarm::getStatus, Alarm::getVersion)
+                .containsExactly("Open", 1);
+        assertThat(service.queryAlarms(Map.of("status", "closed"), 1, 10_000, "id", "asc").getData())
+                .extracting(Alarm::getId).contains(open.get(0)).doesNotContain(open.get(1), open.get(2));
+    }
+
+    @Test
+    void reloadsWhatItStoredAndKeepsTheIdsPastADrop() {
+        Alarm update = service.getSnapshot().getColumns().toAlarm(41);
+        String status = update.getStatus();
+        update.setMessage("Updated before the restart");
+        update.setStatus("Closed".equals(status) ? "Open" : "Closed");
+        update.setTimestamp(null);
+        service.updateAlarm(42L, update);
+        // The status only moves through changeStatuses
+        assertThat(alarmRepository.findById(42L).orElseThrow()).extracting(Alarm::getStatus, Alarm::getVersion)
+                .containsExactly(status, 2);
+        service.addAlarms(new TestAlarms(19).next(100));
+        List<Alarm> stored = TestAlarms.all(service.getSnapshot().getColumns());
+
+        AlarmService restarted = start();
+        assertThat(TestAlarms.all(restarted.getSnapshot().getColumns())).isEqualTo(stored);
+        assertThat(stored.get(41)).extracting(Alarm::getMessage, Alarm::getStatus, Alarm::getVersion)
+                .containsExactly("Updated before the restart", status, 2);
+
+        AlarmColumns columns = service.getSnapshot().getColumns();
+        LocalDateTime last = TestAlarms.START;
+        for (int row = 0; row < TestAlarms.CHUNK_SIZE; row++) {
+            LocalDateTime timestamp = columns.toAlarm(row).getTimestamp();
+            last = timestamp.isAfter(last) ? timestamp : last;
+        }
+        assertThat(service.dropExpired(last.plusNanos(1))).isEqualTo(TestAlarms.CHUNK_SIZE);
+        assertThat(alarmRepository.count()).isEqualTo(stored.size() - TestAlarms.CHUNK_SIZE);
+        assertThat(alarmRepository.findById((long) TestAlarms.CHUNK_SIZE)).isEmpty();
+        assertMatchesBruteForce("dropped");
+
+        service = start();
+        assertThat(service.getSnapshot().getColumns().first()).isEqualTo(TestAlarms.CHUNK_SIZE);
+        assertThat(TestAlarms.all(service.getSnapshot().getColumns()))
+                .isEqualTo(stored.subList(TestAlarms.CHUNK_SIZE, stored.size()));
+        assertThat(service.addAlarms(new TestAlarms(20).next(1))).isEqualTo(stored.size() + 1L);
+    }
+
+    @Test
+    void writesTheFoldedCountsBackAndFlushesThemOnStop() {
+        AlarmService correlated = startCorrelated();
+        correlated.start();
+        LocalDateTime storm = TestAlarms.START.plusDays(1);
+        List<Alarm> repeats = new ArrayList<>();
+        for (int i = 0; i < 50; i++) {
+            repeats.add(Alarm.builder().gatewayId(7L).type("Power Failure").severity("High").status("Open")
+                    .message("Repeated").timestamp(storm.plusSeconds(10L * i).plusNanos(1_234_567)).build());
+        }
+        AlarmIngestion ingestion = correlated.ingestAlarms(repeats.subList(0, 1));
+        long id = ingestion.getIds()[0];
+        assertThat(id).isEqualTo(ROWS + 1L);
+
+        assertThat(correlated.ingestAlarms(repeats.subList(1, 30)).getFolded()).isEqualTo(29);
+        assertThat(correlated.flushCorrelatedAlarms()).isEqualTo(1);
+        // The database keeps microseconds, and so does the store once the count is written back
+        LocalDateTime lastSeen = storm.plusSeconds(290).plusNanos(1_234_000);
+        assertThat(alarmRepository.findById(id).orElseThrow()).extracting(Alarm::getOccurrences, Alarm::getLastSeen)
+                .containsExactly(30, lastSeen);
+        assertThat(correlated.getSnapshot().getColumns().toAlarm((int) id - 1).getLastSeen()).isEqualTo(lastSeen);
+
+        assertThat(correlated.ingestAlarms(repeats.subList(30, 50)).getFolded()).isEqualTo(20);
+        correlated.stop();
+        assertThat(alarmRepository.findById(id).orElseThrow().getOccurrences()).isEqualTo(50);
+        assertThat(alarmRepository.count()).isEqualTo(ROWS + 1L);
+        assertThat(start().getSnapshot().getColumns().toAlarm((int) id - 1).getOccurrences()).isEqualTo(50);
+    }
+}
@@ -0,0 +1,99 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.TestAlarms;
+import com.gateway.backend.service.cache.QueryResultCache;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * With the result cache on, repeated queries are hits until the next write, and what a query returns after
+ * any kind of write is what it computes afresh.
+ */
+class AlarmServiceCacheTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "high"),
+            Map.of("status", "open", "carrier", "t"),
+            Map.of("q", "memory"));
+
+    private final TestAlarms generator = new TestAlarms(20);
+    private AlarmService service;
+
+    @BeforeEach
+    void fill() {
+        service = new AlarmService("memory", null, 0, 300, 1, 4, 65536, 1024, 64L << 20, false, 0, 10000, 1000);
+        service.addAlarms(generator.next(5_000));
+    }
+
+    @AfterEach
+    void stop() {
+        service.stop();
+    }
+
+    private void assertEveryQueryIsFresh(String when) {
+        for (Map<String, String> filters : FILTERS) {
+            List<Alarm> matches = TestAlarms.matching(service.getSnapshot().getColumns(),
+                    service.compileFilters(filters));
+            List<Alarm> expected = new ArrayList<>(matches);
+            expected.sort(TestAlarms.order(AlarmField.TIMESTAMP, true));
+
+            AlarmPage page = service.queryAlarms(filters, 2, 20, "timestamp", "desc");
+            assertThat(page.getTotal()).as("%s %s", when, filters).isEqualTo(matches.size());
+            assertThat(page.getData()).as("%s %s", when, filters).isEqualTo(expected.subList(20, 40));
+            assertThat(service.getTotalAlarms(filters)).as("%s %s", when, filters).isEqualTo(matches.size());
+        }
+    }
+
+    @Test
+    void repeatedQueriesAreHitsUntilTheNextWrite() {
+        assertEveryQueryIsFresh("first");
+        QueryResultCache.Stats first = service.getResultCacheStats();
+        assertThat(first.getSize()).isEqualTo(2 * FILTERS.size());
+
+        assertEveryQueryIsFresh("repeated");
+        QueryResultCache.Stats repeated = service.getResultCacheStats();
+        assertThat(repeated.getHits() - first.getHits()).isEqualTo(2 * FILTERS.size());
+        assertThat(repeated.getMisses()).isEqualTo(first.getMisses());
+        assertThat(repeated.getEstimatedBytes()).isPositive();
+
+        // Another page, sort or page size is another query
+        service.queryAlarms(Map.of(), 3, 20, "timestamp", "desc");
+        service.queryAlarms(Map.of(), 2, 20, "timestamp", "asc");
+        service.queryAlarms(Map.of(), 2, 21, "timestamp", "desc");
+        assertThat(service.getResultCacheStats().getHits()).isEqualTo(repeated.getHits());
+    }
+
+    @Test
+    void noWriteLeavesAStalePage() {
+        assertEveryQueryIsFresh("before");
+
+        service.addAlarms(generator.next(30));
+        assertEveryQueryIsFresh("appended");
+
+        Alarm update = service.getSnapshot().getColumns().toAlarm(4_990);
+        update.setSeverity("High");
+        update.setMessage("Memory usage exceeds threshold");
+        service.updateAlarm(4_991L, update);
+        assertEveryQueryIsFresh("updated");
+
+        List<Alarm> transitions = new ArrayList<>();
+        for (Alarm alarm : service.queryAlarms(Map.of("status", "open"), 1, 30, "timestamp", "desc").getData()) {
+            transitions.add(Alarm.builder().id(alarm.getId()).version(alarm.getVersion()).status("Closed").build());
+        }
+        service.changeStatuses(transitions);
+        assertEveryQueryIsFresh("status changed");
+
+        assertThat(service.getResultCacheStats().getInvalidations()).isPositive();
+    }
+}
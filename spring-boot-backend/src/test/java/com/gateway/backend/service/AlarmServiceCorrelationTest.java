@@ -0,0 +1,123 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.tuple;
+
+/**
+ * With correlation on, a storm of repeats is stored as one alarm per gateway, type and severity, whose count
+ * the listing shows once the folds are flushed.
+ */
+class AlarmServiceCorrelationTest {
+
+    private static final Map<String, String> STORM = Map.of("message", "storm");
+
+    private AlarmService service;
+
+    @BeforeEach
+    void create() {
+        // Not started: the folds are flushed by the tests, not by the background task
+        service = new AlarmService("memory", null, 0, 300, 1, 4, 65536, 1024, 64L << 20, false, 60, 10000,
+                3_600_000);
+    }
+
+    @AfterEach
+    void stop() {
+        service.stop();
+    }
+
+    private static Alarm raised(long gatewayId, long second) {
+        return Alarm.builder().gatewayId(gatewayId).gatewayName("Gateway " + gatewayId).type("Connection Lost")
+                .severity("High").status("Open").message("Gateway connection lost in a storm")
+                .timestamp(TestAlarms.START.plusSeconds(second)).build();
+    }
+
+    private List<Alarm> storm() {
+        return service.queryAlarms(STORM, 1, 100, "gatewayId", "asc").getData();
+    }
+
+    @Test
+    void aStormIsStoredAsOneAlarmPerGateway() {
+        int before = service.getTotalAlarms(Map.of());
+        int stored = 0;
+        int folded = 0;
+        // Five gateways repeating every three seconds for an hour
+        for (int second = 0; second < 3_600; second += 3 * 100) {
+            List<Alarm> batch = new ArrayList<>();
+            for (int i = 0; i < 100; i++) {
+                for (long gateway = 1; gateway <= 5; gateway++) {
+                    batch.add(raised(gateway, second + 3L * i));
+                }
+            }
+            AlarmIngestion ingestion = service.ingestAlarms(batch);
+            stored += ingestion.getStored();
+            folded += ingestion.getFolded();
+        }
+
+        assertThat(stored).isEqualTo(5);
+        assertThat(folded).isEqualTo(5 * 1_200 - 5);
+        assertThat(service.getTotalAlarms(Map.of())).isEqualTo(before + 5);
+        // Only the repeats of the first batch are on the stored alarms until the flush
+        assertThat(storm()).extracting(Alarm::getOccurrences).containsOnly(100);
+
+        assertThat(service.flushCorrelatedAlarms()).isEqualTo(5);
+        assertThat(storm()).hasSize(5).allSatisfy(alarm -> {
+            assertThat(alarm.getOccurrences()).isEqualTo(1_200);
+            assertThat(alarm.getTimestamp()).isEqualTo(TestAlarms.START);
+            assertThat(alarm.getLastSeen()).isEqualTo(TestAlarms.START.plusSeconds(3_597));
+        });
+        assertThat(service.flushCorrelatedAlarms()).isZero();
+    }
+
+    @Test
+    void addingARepeatReturnsTheAlarmItFoldedInto() {
+        Alarm first = service.addAlarm(raised(1, 0));
+        Alarm repeat = service.addAlarm(raised(1, 30));
+
+        assertThat(repeat.getId()).isEqualTo(first.getId());
+        assertThat(repeat.getOccurrences()).isEqualTo(2);
+        assertThat(repeat.getLastSeen()).isEqualTo(TestAlarms.START.plusSeconds(30));
+        assertThat(service.addAlarm(raised(1, 91)).getId()).as("after a longer pause").isNotEqualTo(first.getId());
+    }
+
+    @Test
+    void anAlarmThatChangedStatusTakesNoMoreRepeats() {
+        Alarm first = service.addAlarm(raised(1, 0));
+        service.addAlarm(raised(1, 10));
+        Alarm resolved = Alarm.builder().id(first.getId()).version(first.getVersion()).status("Resolved").build();
+        service.changeStatuses(List.of(resolved));
+
+        Alarm reopened = service.addAlarm(raised(1, 20));
+        service.flushCorrelatedAlarms();
+
+        assertThat(reopened.getId()).isNotEqualTo(first.getId());
+        assertThat(storm()).extracting(Alarm::getId, Alarm::getStatus, Alarm::getOccurrences).containsExactly(
+                tuple(first.getId(), "Resolved", 2),
+                tuple(reopened.getId(), "Open", 1));
+    }
+
+    @Test
+    void addAlarmsAndAServiceWithoutCorrelationStoreEveryAlarm() {
+        assertThat(service.addAlarms(List.of(raised(1, 0), raised(1, 1)))).isPositive();
+        assertThat(storm()).hasSize(2);
+
+        AlarmService uncorrelated = new AlarmService(0);
+        try {
+            AlarmIngestion ingestion = uncorrelated.ingestAlarms(List.of(raised(1, 0), raised(1, 1)));
+            assertThat(ingestion.getIds()).containsExactly(1, 2);
+            assertThat(ingestion.getFolded()).isZero();
+            assertThat(uncorrelated.flushCorrelatedAlarms()).isZero();
+        } finally {
+            uncorrelated.stop();
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Walks listings by {@code nextCursor} and checks them against the offset pages and the brute-force order.
+ */
+class AlarmServicePagingTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "critical"),
+            Map.of("carrier", "t", "type", "error"));
+
+    private final TestAlarms generator = new TestAlarms(11);
+    private AlarmService service;
+
+    @BeforeEach
+    void fill() {
+        service = new AlarmService(0);
+        for (int i = 0; i < 3; i++) {
+            service.addAlarms(generator.next(3_000));
+        }
+    }
+
+    @AfterEach
+    void stop() {
+        service.stop();
+    }
+
+    private List<Alarm> walk(Map<String, String> filters, int pageSize, String sortBy, String sortOrder) {
+        List<Alarm> walked = new ArrayList<>();
+        AlarmPage page = service.queryAlarms(filters, 1, pageSize, sortBy, sortOrder);
+        walked.addAll(page.getData());
+        while (page.getNextCursor() != null) {
+            assertThat(page.getData()).hasSize(pageSize);
+            page = service.queryAlarms(filters, 1, pageSize, sortBy, sortOrder, page.getNextCursor());
+            walked.addAll(page.getData());
+        }
+        return walked;
+    }
+
+    @Test
+    void cursorPagesWalkTheWholeListingInOrder() {
+        for (Map<String, String> filters : FILTERS) {
+            List<Alarm> matches = TestAlarms.matching(service.getSnapshot().getColumns(),
+                    service.compileFilters(filters));
+            for (String sortBy : new String[]{
+                    null, "timestamp", "severity", "gatewayId", "message", "duration_seconds"}) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    AlarmField field = sortBy == null ? AlarmField.ID : AlarmField.fromName(sortBy);
+                    List<Alarm> expected = new ArrayList<>(matches);
+                    expected.sort(TestAlarms.order(field, sortBy != null && descending));
+
+                    List<Alarm> walked = walk(filters, 97, sortBy, descending ? "desc" : "asc");
+                    assertThat(TestAlarms.ids(walked))
+                            .as("%s by %s %s", filters, sortBy, descending ? "desc" : "asc")
+                            .isEqualTo(TestAlarms.ids(expected));
+                }
+            }
+        }
+    }
+
+    @Test
+    void cursorPagesEqualOffsetPages() {
+        for (Map<String, String> filters : FILTERS) {
+            for (String sortBy : new String[]{"timestamp", "carrier", "charge_amount"}) {
+                AlarmPage offset = service.queryAlarms(filters, 1, 50, sortBy, "desc");
+                for (int page = 2; page <= 6 && offset.getNextCursor() != null; page++) {
+                    AlarmPage byCursor = service.queryAlarms(filters, 1, 50, sortBy, "desc", offset.getNextCursor());
+                    offset = service.queryAlarms(filters, page, 50, sortBy, "desc");
+
+                    assertThat(TestAlarms.ids(byCursor.getData())).as("%s by %s, page %d", filters, sortBy, page)
+                            .isEqualTo(TestAlarms.ids(offset.getData()));
+                    assertThat(byCursor.getTotal()).isEqualTo(offset.getTotal());
+                }
+            }
+        }
+    }
+
+    @Test
+    void deepOffsetPagesSortEveryMatchLikeShallowOnes() {
+        // Past half the matches the page is cut out of a full sort instead of the bounded heap
+        List<Alarm> expected = new ArrayList<>(TestAlarms.all(service.getSnapshot().getColumns()));
+        expected.sort(TestAlarms.order(AlarmField.SEVERITY, false));
+        int pages = (expected.size() + 999) / 1000;
+
+        List<Alarm> paged = new ArrayList<>();
+        for (int page = 1; page <= pages; page++) {
+            paged.addAll(service.queryAlarms(Map.of(), page, 1000, "severity", "asc").getData());
+        }
+        assertThat(TestAlarms.ids(paged)).isEqualTo(TestAlarms.ids(expected));
+    }
+
+    @Test
+    void aCursorKeepsItsPlaceWhileAlarmsArrive() {
+        AlarmPage first = service.queryAlarms(Map.of(), 1, 100, "timestamp", "asc");
+        List<Alarm> before = walk(Map.of(), 100, "timestamp", "asc");
+
+        service.addAlarms(generator.next(500));
+        AlarmPage second = service.queryAlarms(Map.of(), 1, 100, "timestamp", "asc", first.getNextCursor());
+
+        // The new alarms are later than every one listed so far, so they come after the second page
+        assertThat(TestAlarms.ids(second.getData())).isEqualTo(TestAlarms.ids(before.subList(100, 200)));
+        assertThat(second.getTotal()).isEqualTo(before.size() + 500);
+    }
+
+    @Test
+    void theLastPageHasNoCursor() {
+        int total = service.getTotalAlarms(Map.of("severity", "low"));
+
+        assertThat(service.queryAlarms(Map.of("severity", "low"), 1, total, "timestamp", "desc").getNextCursor())
+                .isNull();
+        assertThat(service.queryAlarms(Map.of("severity", "low"), 1, total - 1, "timestamp", "desc").getNextCursor())
+                .isNotNull();
+    }
+
+    @Test
+    void rejectsCursorsOfAnotherOrderAndMalformedOnes() {
+        String cursor = service.queryAlarms(Map.of(), 1, 10, "timestamp", "desc").getNextCursor();
+
+        assertThatThrownBy(() -> service.queryAlarms(Map.of(), 1, 10, "timestamp", "asc", cursor))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.queryAlarms(Map.of(), 1, 10, "severity", "desc", cursor))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.queryAlarms(Map.of(), 1, 10, "timestamp", "desc", "not-a-cursor"))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,133 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.AlarmField;
+import com.gateway.backend.service.alarm.AlarmFilterPlan;
+import com.gateway.backend.service.alarm.AlarmIndex;
+import com.gateway.backend.service.alarm.AlarmPage;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Pages and totals of {@link AlarmService#queryAlarms} against filtering and sorting every alarm one by one.
+ */
+class AlarmServiceQueryTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "high"),
+            Map.of("status", "o", "type", "lost"),
+            Map.of("gatewayName", "way 1", "message", "threshold"),
+            Map.of("gatewayId", "3"),
+            Map.of("carrier", "t"),
+            Map.of("callee_number", "55"),
+            Map.of("q", "exceeds thresh*"),
+            Map.of("q", "\"power supply\"", "severity", "high"),
+            Map.of("nosuch", "x"));
+
+    private static AlarmService service;
+
+    @BeforeAll
+    static void fill() {
+        service = new AlarmService(0);
+        TestAlarms alarms = new TestAlarms(8);
+        for (int i = 0; i < 5; i++) {
+            service.addAlarms(alarms.next(2_000));
+        }
+    }
+
+    @AfterAll
+    static void stop() {
+        service.stop();
+    }
+
+    @Test
+    void pagesAndTotalsMatchABruteForceScan() {
+        for (Map<String, String> filters : FILTERS) {
+            AlarmFilterPlan plan = service.compileFilters(filters);
+            List<Alarm> expected = TestAlarms.matching(service.getSnapshot().getColumns(), plan);
+            for (String sortBy : new String[]{null, "timestamp", "severity", "gatewayId", "carrier", "charge_amount"}) {
+                for (boolean descending : new boolean[]{false, true}) {
+                    AlarmField field = sortBy == null ? AlarmField.ID : AlarmField.fromName(sortBy);
+                    List<Alarm> sorted = expected.stream()
+                            .sorted(TestAlarms.order(field, sortBy != null && descending))
+                            .toList();
+                    for (int page : new int[]{1, 2, 7}) {
+                        AlarmPage result = service.queryAlarms(filters, page, 25, sortBy, descending ? "desc" : "asc");
+                        List<Alarm> expectedPage = sorted.subList(Math.min(sorted.size(), (page - 1) * 25),
+                                Math.min(sorted.size(), page * 25));
+
+                        assertThat(result.getTotal()).as("%s total", filters).isEqualTo(expected.size());
+                        assertThat(TestAlarms.ids(result.getData()))
+                                .as("%s by %s %s, page %d", filters, sortBy, descending ? "desc" : "asc", page)
+                                .isEqualTo(TestAlarms.ids(expectedPage));
+                    }
+                }
+            }
+            assertThat(service.getTotalAlarms(filters)).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    void returnsWholeAlarmsOfThePage() {
+        AlarmPage page = service.queryAlarms(Map.of("severity", "critical"), 1, 10, "timestamp", "desc");
+
+        assertThat(page.getData()).hasSize(10).allSatisfy(alarm -> {
+            assertThat(alarm.getSeverity()).isEqualTo("Critical");
+            assertThat(alarm).isEqualTo(service.getSnapshot().getColumns().toAlarm((int) (alarm.getId() - 1)));
+        });
+    }
+
+    @Test
+    void pagesOutOfRangeAreEmptyButKeepTheTotal() {
+        int total = service.getTotalAlarms(Map.of("severity", "low"));
+
+        assertThat(service.queryAlarms(Map.of("severity", "low"), 0, 10, null, null).getData()).isEmpty();
+        assertThat(service.queryAlarms(Map.of("severity", "low"), 1, 0, null, null).getData()).isEmpty();
+        AlarmPage beyond = service.queryAlarms(Map.of("severity", "low"), 10_000, 10, null, null);
+        assertThat(beyond.getData()).isEmpty();
+        assertThat(beyond.getTotal()).isEqualTo(total);
+    }
+
+    @Test
+    void pagesByRelevanceFollowTheRankingOfEveryMatch() {
+        Map<String, String> filters = Map.of("q", "usage thresh*", "carrier", "t");
+        AlarmIndex.Ranked ranked = service.getSnapshot().getIndex().rank(service.compileFilters(filters), 100_000);
+        List<Long> expected = new ArrayList<>();
+        for (int i = 0; i < ranked.size(); i++) {
+            expected.add(ranked.row(i) + 1L);
+        }
+        assertThat(expected).hasSize(service.getTotalAlarms(filters)).hasSizeGreaterThan(100);
+
+        List<Long> paged = new ArrayList<>();
+        for (int page = 1; page <= 5; page++) {
+            AlarmPage result = service.queryAlarms(filters, page, 25, "relevance", null);
+            assertThat(result.getTotal()).isEqualTo(expected.size());
+            assertThat(result.getNextCursor()).isNull();
+            paged.addAll(TestAlarms.ids(result.getData()));
+        }
+        assertThat(paged).isEqualTo(expected.subList(0, 125));
+        assertThat(service.queryAlarms(filters, 10_000, 25, "RELEVANCE", "desc").getData()).isEmpty();
+    }
+
+    @Test
+    void rejectsSortingByRelevanceWithoutATextQueryOrWithACursor() {
+        String cursor = service.queryAlarms(Map.of("q", "usage"), 1, 10, null, null).getNextCursor();
+
+        assertThatThrownBy(() -> service.queryAlarms(Map.of("message", "usage"), 1, 10, "relevance", null))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.queryAlarms(Map.of("q", "usage"), 1, 10, "relevance", null, cursor))
+                .isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> service.queryAlarms(Map.of("q", "*"), 1, 10, null, null))
+                .isInstanceOf(IllegalArgumentException.class);
+    }
+}
@@ -0,0 +1,127 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.alarm.TestAlarms;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.boot.test.web.server.LocalServerPort;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Streams to clients over real connections, one of which never reads what it is sent.
+ */
+@SpringBootTest(webEnvironment = SpringBootTest.WebEnvironment.RANDOM_PORT, properties = {
+        "security.token.validation.enabled=false",
+        "alarms.stream.sender-threads=1",
+        "alarms.stream.send-timeout-ms=500",
+        "alarms.stream.buffer-size=100000",
+        "alarms.stream.poll-interval-ms=10"})
+class AlarmStreamServiceTest {
+
+    @LocalServerPort
+    private int port;
+
+    @Autowired
+    private AlarmService alarmService;
+
+    @Autowired
+    private AlarmStreamService alarmStreamService;
+
+    private final List<Socket> sockets = new ArrayList<>();
+
+    @AfterEach
+    void disconnect() throws IOException {
+        for (Socket socket : sockets) {
+            socket.close();
+        }
+    }
+
+    /**
+     * Opens {@code /alarms/stream} with {@code query} and returns the connection, its response not read.
+     */
+    private Socket connect(String query, int receiveBuffer) throws IOException {
+        Socket socket = new Socket();
+        sockets.add(socket);
+        socket.setReceiveBufferSize(receiveBuffer);
+        socket.connect(new InetSocketAddress(InetAddress.getLoopbackAddress(), port));
+        OutputStream out = socket.getOutputStream();
+        out.write(("GET /api/alarms/stream?" + query + " HTTP/1.1\r\nHost: localhost\r\n"
+                + "Accept: text/event-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+        out.flush();
+        return socket;
+    }
+
+    /**
+     * Reads the stream until an alarm with the message {@code marker} comes, skipping the chunk framing: the
+     * response is read raw.
+     */
+    private static CompletableFuture<Void> awaitEvent(Socket socket, String marker) {
+        return CompletableFuture.runAsync(() -> {
+            try {
+                BufferedReader reader = new BufferedReader(
+                        new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+                for (String line; (line = reader.readLine()) != null; ) {
+                    if (line.contains("\"message\":\"" + marker + "\"")) {
+                        return;
+                    }
+                }
+                throw new IllegalStateException("Stream ended before " + marker);
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+        });
+    }
+
+    private void awaitSubscribers(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (alarmStreamService.getSubscriberCount() < count && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(alarmStreamService.getSubscriberCount()).isGreaterThanOrEqualTo(count);
+    }
+
+    @Test
+    void aClientThatStopsReadingDoesNotHoldUpTheOthers() throws Exception {
+        int before = alarmStreamService.getSubscriberCount();
+        connect("message=stalled", 1024);
+        awaitSubscribers(before + 1);
+
+        // Far more than the socket buffers hold, so that the sends to the stalled client block
+        TestAlarms generator = new TestAlarms(14);
+        String padding = "x".repeat(8192);
+        List<Alarm> flood = generator.next(2_000);
+        for (Alarm alarm : flood) {
+            alarm.setMessage("stalled " + padding);
+        }
+        alarmService.addAlarms(flood);
+        Thread.sleep(200);
+
+        Socket reader = connect("message=marker", 64 * 1024);
+        awaitSubscribers(before + 2);
+        CompletableFuture<Void> received = awaitEvent(reader, "marker-1");
+        Thread.sleep(100);
+        Alarm marker = generator.next();
+        marker.setMessage("marker-1");
+        alarmService.addAlarm(marker);
+
+        received.get(5, TimeUnit.SECONDS);
+        // The stalled client was dropped, the reader was not
+        assertThat(alarmStreamService.getSubscriberCount()).isEqualTo(before + 1);
+    }
+}
@@ -0,0 +1,66 @@
+package com.gateway.backend.service;
+
+import com.gateway.backend.model.Gateway;
+import com.gateway.backend.service.cache.QueryResultCache;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Search pages served from the cache equal those searched afresh, until a configuration save moves the
+ * generation on.
+ */
+class GatewayServiceTest {
+
+    private final GatewayService service = new GatewayService(256, 1 << 20);
+
+    private List<Gateway> search(String needle, Comparator<Gateway> order) {
+        List<Gateway> matches = new ArrayList<>();
+        for (Gateway gateway : service.queryGateways(null, 1, 1_000, null, null).getData()) {
+            if (gateway.getName().toLowerCase(Locale.ROOT).contains(needle)
+                    || gateway.getSerial().toLowerCase(Locale.ROOT).contains(needle)) {
+                matches.add(gateway);
+            }
+        }
+        matches.sort(order);
+        return matches;
+    }
+
+    @Test
+    void cachedSearchesMatchFreshOnesUntilASave() {
+        List<Gateway> expected = search("way", Comparator.comparing(Gateway::getName).reversed());
+        for (int round = 0; round < 2; round++) {
+            assertThat(service.queryGateways("WAY", 2, 10, "name", "desc").getData())
+                    .isEqualTo(expected.subList(10, 20));
+            assertThat(service.getTotalGateways("way 1")).isEqualTo(search("way 1", (a, b) -> 0).size());
+        }
+        QueryResultCache.Stats stats = service.getResultCacheStats();
+        assertThat(stats.getHits()).isEqualTo(4);
+        assertThat(stats.getMisses()).isEqualTo(3);
+        assertThat(stats.getSize()).isEqualTo(3);
+
+        assertThat(service.saveGatewayConfiguration(Map.of("serialNumber", "SN-1"))).isTrue();
+        service.queryGateways("way", 2, 10, "name", "desc");
+        stats = service.getResultCacheStats();
+        assertThat(stats.getHits()).isEqualTo(4);
+        assertThat(stats.getInvalidations()).isEqualTo(3);
+        assertThat(stats.getSize()).isEqualTo(1);
+    }
+
+    @Test
+    void searchesNamesAndSerialsIgnoringShortQueries() {
+        List<Gateway> page = service.queryGateways("WAY 1", 1, 100, "name", "asc").getData();
+
+        assertThat(page).isNotEmpty()
+                .allMatch(gateway -> gateway.getName().toLowerCase(Locale.ROOT).contains("way 1")
+                        || gateway.getSerial().toLowerCase(Locale.ROOT).contains("way 1"))
+                .isSortedAccordingTo(Comparator.comparing(Gateway::getName));
+        assertThat(service.getTotalGateways("wa")).isEqualTo(50);
+    }
+}
@@ -0,0 +1,239 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Totals, groups and series of {@link AlarmStore#aggregate} against summing every stored alarm in the range,
+ * as alarms are appended, change status and are dropped.
+ */
+class AlarmAggregatesTest {
+
+    private static final LocalDateTime START = TestAlarms.START;
+    private static final List<LocalDateTime[]> RANGES = List.of(
+            new LocalDateTime[]{null, null},
+            new LocalDateTime[]{START.plusHours(30), null},
+            new LocalDateTime[]{null, START.plusHours(30)},
+            new LocalDateTime[]{START.plusHours(5).plusMinutes(17).plusSeconds(42), START.plusHours(53).plusSeconds(9)},
+            new LocalDateTime[]{START.plusDays(1), START.plusDays(2)},
+            new LocalDateTime[]{START.plusMinutes(61), START.plusMinutes(62)},
+            new LocalDateTime[]{START.plusDays(9), START.plusDays(10)},
+            new LocalDateTime[]{START.plusHours(20), START.plusHours(10)});
+
+    private final Random random = new Random(15);
+    private final TestAlarms generator = new TestAlarms(15);
+    private AlarmStore store;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        store.append(spread(2 * AlarmColumns.CHUNK_SIZE + 700));
+    }
+
+    /**
+     * Alarms spread over three days, roughly in time order, a few to the nanosecond.
+     */
+    private List<Alarm> spread(int count) {
+        long[] offsets = random.longs(count, 0, 3 * 86_400_000_000_000L).sorted().toArray();
+        List<Alarm> alarms = generator.next(count);
+        for (int i = 0; i < count; i++) {
+            long nanos = i % 10 == 0 ? offsets[i] : offsets[i] / 1_000_000_000L * 1_000_000_000L;
+            alarms.get(i).setTimestamp(START.plusNanos(nanos));
+        }
+        return alarms;
+    }
+
+    /** Count, duration and cents of a set of alarms. */
+    private static final class Sums {
+        long count;
+        long duration;
+        long cents;
+
+        void add(Alarm alarm) {
+            count++;
+            duration += alarm.getDuration_seconds();
+            cents += Math.round(alarm.getCharge_amount() * 100);
+        }
+
+        void assertEquals(String as, long count, long duration, double charge) {
+            assertThat(new long[]{count, duration, Math.round(charge * 100)}).as(as)
+                    .containsExactly(this.count, this.duration, this.cents);
+        }
+    }
+
+    private static Map<String, Sums> groups(List<Alarm> alarms, AlarmField groupBy) {
+        Map<String, Sums> groups = new HashMap<>();
+        for (Alarm alarm : alarms) {
+            groups.computeIfAbsent(groupBy.text(alarm), value -> new Sums()).add(alarm);
+        }
+        return groups;
+    }
+
+    private static void assertGroups(String as, List<AlarmAggregation.Group> groups, List<Alarm> alarms,
+                                     AlarmField groupBy) {
+        if (groupBy == null) {
+            assertThat(groups).as(as).isNull();
+            return;
+        }
+        Map<String, Sums> expected = groups(alarms, groupBy);
+        assertThat(groups).as(as).hasSize(expected.size());
+        for (int i = 0; i < groups.size(); i++) {
+            AlarmAggregation.Group group = groups.get(i);
+            assertThat(expected).as(as).containsKey(group.getValue());
+            expected.get(group.getValue()).assertEquals(as + " " + group.getValue(), group.getCount(),
+                    group.getDurationSeconds(), group.getChargeAmount());
+            if (i > 0) {
+                assertThat(group.getCount()).as(as + " most first").isLessThanOrEqualTo(groups.get(i - 1).getCount());
+            }
+        }
+    }
+
+    private static LocalDateTime toMinute(LocalDateTime timestamp) {
+        return timestamp == null ? null : timestamp.truncatedTo(ChronoUnit.MINUTES);
+    }
+
+    private static LocalDateTime bucketStart(LocalDateTime timestamp, AlarmAggregates.Interval interval) {
+        switch (interval) {
+            case MINUTE:
+                return timestamp.truncatedTo(ChronoUnit.MINUTES);
+            case HOUR:
+                return timestamp.truncatedTo(ChronoUnit.HOURS);
+            default:
+                return timestamp.truncatedTo(ChronoUnit.DAYS);
+        }
+    }
+
+    private void assertMatchesBruteForce(String when) {
+        List<Alarm> stored = TestAlarms.all(store.snapshot().getColumns());
+        for (LocalDateTime[] range : RANGES) {
+            LocalDateTime from = toMinute(range[0]);
+            LocalDateTime to = toMinute(range[1]);
+            List<Alarm> inRange = new ArrayList<>();
+            for (Alarm alarm : stored) {
+                if ((from == null || !alarm.getTimestamp().isBefore(from))
+                        && (to == null || alarm.getTimestamp().isBefore(to))) {
+                    inRange.add(alarm);
+                }
+            }
+            for (AlarmField groupBy : Arrays.asList(null, AlarmField.SEVERITY, AlarmField.STATUS, AlarmField.CARRIER)) {
+                for (AlarmAggregates.Interval interval : Arrays.asList(null, AlarmAggregates.Interval.MINUTE,
+                        AlarmAggregates.Interval.HOUR, AlarmAggregates.Interval.DAY)) {
+                    String as = when + " " + Arrays.toString(range) + " by " + groupBy + " per " + interval;
+                    AlarmAggregation aggregation = store.aggregate(groupBy, range[0], range[1], interval);
+
+                    assertThat(aggregation.getFrom()).as(as).isEqualTo(from);
+                    assertThat(aggregation.getTo()).as(as).isEqualTo(to);
+                    Sums total = new Sums();
+                    inRange.forEach(total::add);
+                    total.assertEquals(as, aggregation.getTotal().getCount(),
+                            aggregation.getTotal().getDurationSeconds(), aggregation.getTotal().getChargeAmount());
+                    assertGroups(as, aggregation.getGroups(), inRange, groupBy);
+
+                    if (interval == null) {
+                        assertThat(aggregation.getBuckets()).as(as).isNull();
+                        continue;
+                    }
+                    TreeMap<LocalDateTime, List<Alarm>> byBucket = new TreeMap<>();
+                    for (Alarm alarm : inRange) {
+                        byBucket.computeIfAbsent(bucketStart(alarm.getTimestamp(), interval),
+                                start -> new ArrayList<>()).add(alarm);
+                    }
+                    assertThat(aggregation.getBuckets()).extracting(AlarmAggregation.Bucket::getStart).as(as)
+                            .containsExactlyElementsOf(byBucket.keySet());
+                    for (AlarmAggregation.Bucket bucket : aggregation.getBuckets()) {
+                        List<Alarm> alarms = byBucket.get(bucket.getStart());
+                        Sums sums = new Sums();
+                        alarms.forEach(sums::add);
+                        sums.assertEquals(as + " at " + bucket.getStart(), bucket.getTotal().getCount(),
+                                bucket.getTotal().getDurationSeconds(), bucket.getTotal().getChargeAmount());
+                        assertGroups(as + " at " + bucket.getStart(), bucket.getGroups(), alarms, groupBy);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void sumsTheAlarmsOfTheRange() {
+        assertMatchesBruteForce("appended");
+
+        store.append(spread(1_000));
+        assertMatchesBruteForce("appended again");
+    }
+
+    @Test
+    void followsStatusChangesUpdatesAndDrops() {
+        // Counted before the changes, so that they move counts instead of being counted afresh
+        store.aggregate(null, null, null, null);
+        AlarmColumns columns = store.snapshot().getColumns();
+        List<Alarm> transitions = new ArrayList<>();
+        for (int row = 0; row < columns.size(); row += 7) {
+            transitions.add(Alarm.builder().id(row + 1L).version(columns.version(row)).status("Closed").build());
+        }
+        store.changeStatus(AlarmStatusChange.of(transitions));
+        for (long id = 2; id < columns.size(); id += 501) {
+            Alarm alarm = columns.toAlarm((int) id - 1);
+            alarm.setSeverity("Critical");
+            alarm.setCarrier(null);
+            alarm.setDuration_seconds(alarm.getDuration_seconds() + 1000);
+            alarm.setCharge_amount(alarm.getCharge_amount() + 0.25);
+            store.update(id, alarm);
+        }
+        assertMatchesBruteForce("changed");
+
+        LocalDateTime last = START;
+        for (int row = 0; row < AlarmColumns.CHUNK_SIZE; row++) {
+            LocalDateTime timestamp = columns.toAlarm(row).getTimestamp();
+            last = timestamp.isAfter(last) ? timestamp : last;
+        }
+        assertThat(store.dropExpired(last.plusNanos(1))).isEqualTo(AlarmColumns.CHUNK_SIZE);
+        assertMatchesBruteForce("dropped");
+    }
+
+    @Test
+    void rejectsWhatCannotBeAggregated() {
+        AlarmService service = new AlarmService(0);
+        try {
+            service.addAlarms(spread(100));
+
+            assertThat(service.getAggregations("severity", "2024-01-01T00:00", "2024-01-02T00:00", "hour")
+                    .getGroups()).isNotEmpty();
+            assertThatThrownBy(() -> service.getAggregations("message", null, null, null))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> service.getAggregations(null, null, null, "week"))
+                    .isInstanceOf(IllegalArgumentException.class);
+            assertThatThrownBy(() -> service.getAggregations(null, "yesterday", null, null))
+                    .isInstanceOf(IllegalArgumentException.class);
+        } finally {
+            service.stop();
+        }
+    }
+
+    @Test
+    void groupsAlarmsWithoutTheValueUnderNull() {
+        List<Alarm> alarms = spread(20);
+        alarms.forEach(alarm -> alarm.setCarrier(null));
+        AlarmStore small = new AlarmStore();
+        small.append(alarms);
+
+        AlarmAggregation aggregation = small.aggregate(AlarmField.CARRIER, null, null, null);
+        assertThat(aggregation.getGroups()).singleElement()
+                .matches(group -> Objects.isNull(group.getValue()) && group.getCount() == 20);
+    }
+}
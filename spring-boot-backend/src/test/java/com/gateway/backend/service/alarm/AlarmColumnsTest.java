@@ -0,0 +1,144 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Reads back what was appended across several chunks and checks the column orders and the dictionaries
+ * against the alarms themselves.
+ */
+class AlarmColumnsTest {
+
+    private static final int ROWS = 3 * AlarmColumns.CHUNK_SIZE + 123;
+
+    private final List<Alarm> input = new TestAlarms(10).next(ROWS);
+    private AlarmStore store;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        // Uneven batches, so that appends straddle the chunk boundaries
+        for (int from = 0; from < ROWS; from += 1000) {
+            store.append(input.subList(from, Math.min(ROWS, from + 1000)));
+        }
+    }
+
+    @Test
+    void readsBackEveryAlarmAsNormalized() {
+        AlarmColumns columns = store.snapshot().getColumns();
+
+        assertThat(columns.first()).isZero();
+        assertThat(columns.size()).isEqualTo(ROWS);
+        for (int row = 0; row < ROWS; row++) {
+            Alarm expected = AlarmColumns.normalize(input.get(row), row + 1, null);
+            assertThat(columns.toAlarm(row)).as("row %d", row).isEqualTo(expected);
+            assertThat(columns.version(row)).isEqualTo(1);
+        }
+        assertThatThrownBy(() -> columns.toAlarm(ROWS)).isInstanceOf(IndexOutOfBoundsException.class);
+    }
+
+    @Test
+    void keepsNullsAndFillsTheDefaults() {
+        LocalDateTime before = LocalDateTime.now();
+        long id = store.append(List.of(new Alarm(), Alarm.builder().charge_amount(1.005).occurrences(0).build()));
+        AlarmColumns columns = store.snapshot().getColumns();
+
+        Alarm empty = columns.toAlarm((int) id - 1);
+        assertThat(empty.getId()).isEqualTo(id);
+        assertThat(empty.getGatewayId()).isNull();
+        assertThat(empty.getStatus()).isNull();
+        assertThat(empty.getMessage()).isNull();
+        assertThat(empty.getTimestamp()).isAfterOrEqualTo(before);
+        assertThat(empty.getLastSeen()).isEqualTo(empty.getTimestamp());
+        assertThat(empty.getOccurrences()).isEqualTo(1);
+        assertThat(empty.getVersion()).isEqualTo(1);
+        for (AlarmField field : AlarmColumns.DICTIONARY_FIELDS) {
+            assertThat(columns.code(field, (int) id - 1)).isEqualTo(AlarmDictionary.NULL_CODE);
+            assertThat(columns.text(field, (int) id - 1)).isNull();
+        }
+
+        Alarm charged = columns.toAlarm((int) id);
+        assertThat(charged.getCharge_amount()).isEqualTo(AlarmColumns.toCents(1.005) / 100.0);
+        assertThat(charged.getOccurrences()).isEqualTo(1);
+    }
+
+    @Test
+    void storesEachDistinctValueOnce() {
+        AlarmColumns columns = store.snapshot().getColumns();
+
+        for (AlarmField field : AlarmColumns.DICTIONARY_FIELDS) {
+            AlarmDictionary dictionary = columns.dictionary(field);
+            List<String> distinct = new ArrayList<>();
+            for (Alarm alarm : input) {
+                String value = field.text(alarm);
+                if (value != null && !distinct.contains(value)) {
+                    distinct.add(value);
+                }
+            }
+            assertThat(dictionary.size()).as("%s", field).isEqualTo(distinct.size() + 1);
+            for (int row = 0; row < ROWS; row++) {
+                int code = columns.code(field, row);
+                assertThat(dictionary.value(code)).isEqualTo(field.text(input.get(row)));
+                assertThat(dictionary.find(dictionary.value(code))).isEqualTo(code);
+            }
+        }
+        assertThat(columns.dictionary(AlarmField.MESSAGE)).isNull();
+        assertThat(columns.dictionary(AlarmField.SEVERITY).find("Unheard of")).isEqualTo(-1);
+    }
+
+    @Test
+    void ranksOrderCodesLikeTheirValues() {
+        AlarmDictionary dictionary = new AlarmDictionary();
+        for (String value : List.of("pear", "apple", "fig", "banana")) {
+            dictionary.acquire(value);
+        }
+        assertThat(dictionary.acquire("fig")).isEqualTo(3);
+
+        int[] ranks = dictionary.ranks();
+        assertThat(ranks[AlarmDictionary.NULL_CODE]).isZero();
+        Integer[] codes = {1, 2, 3, 4};
+        Arrays.sort(codes, (a, b) -> Integer.compare(ranks[a], ranks[b]));
+        assertThat(Arrays.stream(codes).map(dictionary::value)).containsExactly("apple", "banana", "fig", "pear");
+
+        dictionary.acquire("cherry");
+        assertThat(dictionary.ranks()[dictionary.find("cherry")]).isEqualTo(3);
+        assertThat(dictionary.matching("an")).containsExactly(false, false, false, false, true, false);
+    }
+
+    @Test
+    void sortsRowsLikeTheAlarms() {
+        AlarmColumns columns = store.snapshot().getColumns();
+        List<Alarm> alarms = TestAlarms.all(columns);
+
+        for (AlarmField field : List.of(AlarmField.ID, AlarmField.GATEWAY_ID, AlarmField.TIMESTAMP,
+                AlarmField.SEVERITY, AlarmField.CARRIER, AlarmField.MESSAGE, AlarmField.CALLER_NUMBER,
+                AlarmField.DURATION_SECONDS, AlarmField.CHARGE_AMOUNT)) {
+            for (boolean descending : new boolean[]{false, true}) {
+                AlarmColumns.RowComparator comparator = columns.comparator(field, descending);
+                List<Integer> rows = new ArrayList<>();
+                for (int row = 0; row < ROWS; row++) {
+                    rows.add(row);
+                }
+                rows.sort(comparator::compare);
+                List<Long> sorted = new ArrayList<>(alarms.size());
+                for (int row : rows) {
+                    sorted.add(row + 1L);
+                }
+
+                List<Alarm> expected = new ArrayList<>(alarms);
+                expected.sort(TestAlarms.order(field, descending));
+                assertThat(sorted).as("%s %s", field, descending ? "desc" : "asc")
+                        .isEqualTo(TestAlarms.ids(expected));
+            }
+        }
+    }
+}
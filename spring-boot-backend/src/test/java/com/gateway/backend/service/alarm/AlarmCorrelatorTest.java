@@ -0,0 +1,176 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Repeats within the window of the latest one fold into the alarm stored first, on the alarms' own timestamps;
+ * a pause, another key, a status change or a full set of open windows stores a new one.
+ */
+class AlarmCorrelatorTest {
+
+    private static final LocalDateTime NOW = LocalDateTime.of(2024, 6, 1, 0, 0);
+
+    private final AlarmStore store = new AlarmStore();
+    private final AlarmCorrelator correlator = new AlarmCorrelator(Duration.ofSeconds(60), 3);
+
+    private static Alarm raised(long gatewayId, String severity, long second) {
+        return Alarm.builder().gatewayId(gatewayId).type("Power Failure").severity(severity).status("Open")
+                .message("Power supply failure detected").timestamp(TestAlarms.START.plusSeconds(second)).build();
+    }
+
+    /**
+     * Correlates, stores and commits {@code alarms} the way the service does.
+     */
+    private AlarmCorrelator.Batch ingest(Alarm... alarms) {
+        AlarmCorrelator.Batch batch = correlator.correlate(List.of(alarms), store.snapshot().getColumns(), NOW);
+        long firstId = batch.getFresh().isEmpty() ? 0 : store.append(batch.getFresh());
+        correlator.commit(batch, firstId);
+        return batch;
+    }
+
+    private Alarm stored(long id) {
+        return store.snapshot().getColumns().toAlarm((int) (id - 1));
+    }
+
+    @Test
+    void foldsRepeatsWithinTheWindowOfTheLatestOne() {
+        assertThat(ingest(raised(1, "High", 0)).id(0)).isEqualTo(1);
+
+        // 50 seconds after the last repeat, 110 after the first
+        AlarmCorrelator.Batch repeats = ingest(raised(1, "High", 60), raised(1, "High", 110));
+        assertThat(repeats.getFresh()).isEmpty();
+        assertThat(repeats.getFolded()).isEqualTo(2);
+        assertThat(repeats.ids()).containsExactly(1, 1);
+        assertThat(repeats.occurrences(1)).isEqualTo(3);
+        assertThat(repeats.lastSeen(1)).isEqualTo(TestAlarms.START.plusSeconds(110));
+
+        // The store only learns of the folds once they are drained
+        assertThat(stored(1).getOccurrences()).isEqualTo(1);
+        AlarmCorrelator.Updates updates = correlator.drain();
+        assertThat(updates.getIds()).containsExactly(1);
+        assertThat(updates.getOccurrences()).containsExactly(3);
+        assertThat(updates.applyTo(store)).isEqualTo(1);
+        assertThat(stored(1)).extracting(Alarm::getOccurrences, Alarm::getLastSeen, Alarm::getTimestamp)
+                .containsExactly(3, TestAlarms.START.plusSeconds(110), TestAlarms.START);
+        assertThat(correlator.drain().isEmpty()).isTrue();
+
+        // A pause longer than the window opens a new alarm
+        AlarmCorrelator.Batch late = ingest(raised(1, "High", 171));
+        assertThat(late.id(0)).isEqualTo(2);
+        assertThat(late.occurrences(0)).isEqualTo(1);
+    }
+
+    @Test
+    void repeatsInTheBatchThatStoresTheAlarmAreCountedOnTheAlarm() {
+        AlarmCorrelator.Batch batch = ingest(raised(1, "High", 0), raised(2, "High", 5), raised(1, "High", 10),
+                raised(1, "High", 8), raised(1, "Low", 12), raised(1, "High", 65));
+
+        assertThat(batch.ids()).containsExactly(1, 2, 1, 1, 3, 1);
+        assertThat(batch.getFresh()).hasSize(3);
+        assertThat(batch.getFolded()).isEqualTo(3);
+        // An earlier repeat counts, but does not move the last-seen time back
+        assertThat(stored(1)).extracting(Alarm::getOccurrences, Alarm::getLastSeen)
+                .containsExactly(4, TestAlarms.START.plusSeconds(65));
+        assertThat(stored(2).getOccurrences()).isEqualTo(1);
+        assertThat(correlator.drain().isEmpty()).isTrue();
+    }
+
+    @Test
+    void alarmsOfAnotherGatewayTypeOrSeverityDoNotFold() {
+        Alarm noGateway = raised(1, "High", 2);
+        noGateway.setGatewayId(null);
+        Alarm otherType = raised(1, "High", 3);
+        otherType.setType("Hardware Error");
+        Alarm otherMessage = raised(1, "High", 4);
+        otherMessage.setMessage("Gateway connection lost");
+
+        AlarmCorrelator.Batch batch = ingest(raised(1, "High", 0), raised(2, "High", 1), noGateway, otherType,
+                raised(1, "Critical", 5), otherMessage);
+
+        // The message is not part of the key
+        assertThat(batch.ids()).containsExactly(1, 2, 3, 4, 5, 1);
+    }
+
+    @Test
+    void aStatusChangeOrAnEvictionClosesTheWindow() {
+        ingest(raised(1, "High", 0), raised(2, "High", 0), raised(3, "High", 0));
+        Alarm closed = Alarm.builder().id(1L).version(1).status("Closed").build();
+        assertThat(store.changeStatus(AlarmStatusChange.of(List.of(closed)))).isEqualTo(1);
+
+        AlarmCorrelator.Batch afterClose = ingest(raised(1, "High", 10));
+        assertThat(afterClose.id(0)).isEqualTo(4);
+
+        // Three windows at most: folding into gateway 3 keeps it, so gateway 2 is the least recent
+        assertThat(ingest(raised(3, "High", 20)).id(0)).isEqualTo(3);
+        assertThat(ingest(raised(4, "High", 30)).id(0)).isEqualTo(5);
+        assertThat(correlator.openWindows()).isEqualTo(3);
+        assertThat(ingest(raised(2, "High", 40)).id(0)).isEqualTo(6);
+        assertThat(ingest(raised(3, "High", 50)).id(0)).isEqualTo(3);
+    }
+
+    @Test
+    void expiresTheWindowsNoRepeatCanReachOnTheNewestTimestampSeen() {
+        ingest(raised(1, "High", 0), raised(2, "High", 30));
+        assertThat(correlator.expire()).isZero();
+
+        ingest(raised(3, "High", 61));
+        assertThat(correlator.expire()).isEqualTo(1);
+        assertThat(correlator.openWindows()).isEqualTo(2);
+        assertThat(ingest(raised(1, "High", 62)).id(0)).isEqualTo(4);
+        assertThat(ingest(raised(2, "High", 63)).id(0)).isEqualTo(2);
+    }
+
+    @Test
+    void aBatchThatIsNotCommittedChangesNothing() {
+        ingest(raised(1, "High", 0));
+        AlarmCorrelator.Batch dropped = correlator.correlate(List.of(raised(1, "High", 10), raised(5, "Low", 10)),
+                store.snapshot().getColumns(), NOW);
+        assertThat(dropped.getFolded()).isEqualTo(1);
+        Alarm outOfRange = raised(5, "Low", 10);
+        outOfRange.setCharge_amount(1e12);
+        assertThatThrownBy(() -> correlator.correlate(List.of(raised(1, "High", 10), outOfRange),
+                store.snapshot().getColumns(), NOW)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> correlator.correlate(Arrays.asList(raised(1, "High", 10), null),
+                store.snapshot().getColumns(), NOW)).isInstanceOf(IllegalArgumentException.class);
+
+        assertThat(correlator.drain().isEmpty()).isTrue();
+        AlarmCorrelator.Batch batch = ingest(raised(1, "High", 20));
+        assertThat(batch.occurrences(0)).isEqualTo(2);
+    }
+
+    @Test
+    void updatesThatCouldNotBeWrittenAreDrainedAgainWithTheNextOnes() {
+        ingest(raised(1, "High", 0), raised(2, "High", 0));
+        ingest(raised(1, "High", 10));
+        AlarmCorrelator.Updates failed = correlator.drain();
+
+        correlator.retry(failed);
+        ingest(raised(1, "High", 20), raised(2, "High", 20));
+        AlarmCorrelator.Updates updates = correlator.drain();
+
+        assertThat(updates.getIds()).containsExactlyInAnyOrder(1, 2);
+        assertThat(updates.applyTo(store)).isEqualTo(2);
+        assertThat(stored(1).getOccurrences()).isEqualTo(3);
+        assertThat(stored(2).getOccurrences()).isEqualTo(2);
+    }
+
+    @Test
+    void aMissingTimestampIsNow() {
+        Alarm undated = raised(1, "High", 0);
+        undated.setTimestamp(null);
+
+        AlarmCorrelator.Batch batch = ingest(undated);
+
+        assertThat(stored(batch.id(0))).extracting(Alarm::getTimestamp, Alarm::getLastSeen).containsExactly(NOW, NOW);
+        assertThat(ingest(raised(1, "High", 0)).id(0)).as("long before now, but within the window").isEqualTo(1);
+    }
+}
@@ -0,0 +1,77 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class AlarmFilterPlanTest {
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+
+    @Test
+    void equivalentFilterMapsShareOneCompiledPlan() {
+        Map<String, String> first = new HashMap<>();
+        first.put("Severity", "HIGH");
+        first.put("type", "");
+        Map<String, String> second = Map.of("severity", "high");
+
+        assertThat(compiler.compile(first)).isSameAs(compiler.compile(second));
+        assertThat(compiler.compile(Map.of())).isSameAs(compiler.compile(null));
+        assertThat(compiler.compile(Map.of()).isMatchAll()).isTrue();
+        assertThat(compiler.size()).isEqualTo(2);
+    }
+
+    @Test
+    void signaturesDoNotCollideOnSeparatorCharacters() {
+        AlarmFilterPlan joined = compiler.compile(Map.of("message", "a2:b"));
+        AlarmFilterPlan split = compiler.compile(Map.of("message", "a", "b", "b"));
+
+        assertThat(joined.getSignature()).isNotEqualTo(split.getSignature());
+    }
+
+    @Test
+    void unknownOrUnfilterablePropertiesMatchNothing() {
+        Alarm alarm = Alarm.builder().caller("User 1").message("anything").build();
+
+        assertThat(compiler.compile(Map.of("nosuch", "x")).matchesNothing()).isTrue();
+        assertThat(compiler.compile(Map.of("caller", "user")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("message", "any")).matches(alarm)).isTrue();
+    }
+
+    @Test
+    void conditionsRunCheapestFirstAndLongestNeedleFirst() {
+        Map<String, String> filters = new LinkedHashMap<>();
+        filters.put("message", "lost");
+        filters.put("gatewayName", "gate");
+        filters.put("severity", "hi");
+        filters.put("status", "open");
+
+        AlarmFilterPlan.Condition[] conditions = compiler.compile(filters).getConditions();
+
+        assertThat(conditions).extracting(condition -> condition.field).containsExactly(
+                AlarmField.STATUS, AlarmField.SEVERITY, AlarmField.GATEWAY_NAME, AlarmField.MESSAGE);
+    }
+
+    @Test
+    void matchesEveryConditionIgnoringCase() {
+        Alarm alarm = Alarm.builder().gatewayId(42L).type("Power Failure").severity("High").build();
+
+        assertThat(compiler.compile(Map.of("type", "FAIL", "gatewayId", "4")).matches(alarm)).isTrue();
+        assertThat(compiler.compile(Map.of("type", "fail", "severity", "low")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("siteId", "1")).matches(alarm)).isFalse();
+    }
+
+    @Test
+    void containsIgnoreCaseComparesWithoutLowercasingTheValue() {
+        assertThat(AlarmFilterPlan.containsIgnoreCase("Power Failure", "failure")).isTrue();
+        assertThat(AlarmFilterPlan.containsIgnoreCase("ÄRGER", "ärg")).isTrue();
+        assertThat(AlarmFilterPlan.containsIgnoreCase("abc", "")).isTrue();
+        assertThat(AlarmFilterPlan.containsIgnoreCase("ab", "abc")).isFalse();
+        assertThat(AlarmFilterPlan.containsIgnoreCase("aab", "ab")).isTrue();
+    }
+}
@@ -0,0 +1,135 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * The value postings and trigram postings of the sealed blocks, together with the unsealed tail, give exactly the
+ * rows a brute-force scan of the alarms matches, as chunks are sealed, alarms updated and blocks dropped.
+ */
+class AlarmIndexTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of("severity", "high"),
+            Map.of("severity", "i"),
+            Map.of("status", "progress"),
+            Map.of("gatewayName", "way 1"),
+            Map.of("gatewayName", "gateway"),
+            Map.of("message", "exceeds"),
+            Map.of("message", "ex"),
+            Map.of("message", "ceeds thr"),
+            Map.of("message", "PORT 7"),
+            Map.of("message", "zzz"),
+            Map.of("callee_number", "555"),
+            Map.of("caller_number", "12-"),
+            Map.of("type", "lost", "severity", "low"),
+            Map.of("carrier", "t"),
+            Map.of("gatewayId", "1"),
+            Map.of("siteId", "3", "status", "open"),
+            Map.of("id", "77"));
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+    private AlarmStore store;
+    private TestAlarms alarms;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        alarms = new TestAlarms(9);
+        // Four full chunks, sealed, and a partial one that is not
+        for (int i = 0; i < 17; i++) {
+            store.append(alarms.next(1_000));
+        }
+    }
+
+    private void assertIndexMatchesBruteForce() {
+        AlarmStore.Snapshot snapshot = store.snapshot();
+        for (Map<String, String> filters : FILTERS) {
+            AlarmFilterPlan plan = compiler.compile(filters);
+            List<Long> expected = TestAlarms.ids(TestAlarms.matching(snapshot.getColumns(), plan));
+
+            List<Long> selected = new ArrayList<>();
+            for (int row : snapshot.getIndex().select(plan)) {
+                selected.add(row + 1L);
+            }
+            List<Long> visited = new ArrayList<>();
+            snapshot.getIndex().forEach(plan, row -> visited.add(row + 1L));
+
+            assertThat(selected).as("select %s", filters).isEqualTo(expected);
+            assertThat(visited).as("forEach %s", filters).isEqualTo(expected);
+            assertThat(snapshot.getIndex().count(plan)).as("count %s", filters).isEqualTo(expected.size());
+        }
+    }
+
+    @Test
+    void answersLikeABruteForceScanOverSealedAndUnsealedChunks() {
+        assertThat(store.snapshot().getColumns().size()).isEqualTo(17_000);
+        assertIndexMatchesBruteForce();
+
+        // Seal the fifth chunk with a batch that runs into the sixth
+        store.append(alarms.next(3_000));
+        assertIndexMatchesBruteForce();
+    }
+
+    @Test
+    void followsUpdatesInSealedAndUnsealedChunks() {
+        for (long id : new long[]{1, 77, 4_096, 4_097, 10_000, 16_999}) {
+            Alarm replacement = alarms.next();
+            replacement.setSeverity("High");
+            replacement.setMessage("Replaced: memory usage exceeds threshold on port 7");
+            replacement.setGatewayName(id % 2 == 0 ? null : "Gateway 1");
+            assertThat(store.update(id, replacement)).isNotNull();
+        }
+
+        assertIndexMatchesBruteForce();
+    }
+
+    @Test
+    void followsStatusChangesThatReindexOnlyTheStatus() {
+        AlarmColumns columns = store.snapshot().getColumns();
+        List<Alarm> transitions = new ArrayList<>();
+        for (int row = 0; row < columns.size(); row += 97) {
+            Alarm alarm = columns.toAlarm(row);
+            if (!"Closed".equals(alarm.getStatus())) {
+                transitions.add(Alarm.builder().id(alarm.getId()).version(alarm.getVersion()).status("Closed").build());
+            }
+        }
+        AlarmStatusChange change = AlarmStatusChange.of(transitions);
+
+        assertThat(store.changeStatus(change)).isEqualTo(transitions.size());
+        assertIndexMatchesBruteForce();
+        AlarmFilterPlan closed = compiler.compile(Map.of("status", "closed"));
+        assertThat(store.snapshot().getIndex().count(closed))
+                .isEqualTo(TestAlarms.matching(store.snapshot().getColumns(), closed).size());
+    }
+
+    @Test
+    void dropsWholeExpiredBlocksAndKeepsAnsweringForTheRest() {
+        AlarmColumns columns = store.snapshot().getColumns();
+        // Past the newest alarm of the second chunk, but not of the third
+        int dropped = store.dropExpired(columns.toAlarm(2 * 4_096 - 1).getTimestamp().plusNanos(1));
+
+        assertThat(dropped).isEqualTo(2 * 4_096);
+        assertThat(store.snapshot().getColumns().first()).isEqualTo(2 * 4_096);
+        assertIndexMatchesBruteForce();
+
+        store.append(alarms.next(5_000));
+        assertIndexMatchesBruteForce();
+    }
+
+    @Test
+    void trigramsAreLowercaseAndOnlyAsciiNeedlesOfThreeOrMoreCharactersUseThem() {
+        assertThat(AlarmIndex.isTrigramSearchable("ab")).isFalse();
+        assertThat(AlarmIndex.isTrigramSearchable("abc")).isTrue();
+        assertThat(AlarmIndex.isTrigramSearchable("äbc")).isFalse();
+        assertThat(AlarmIndex.trigrams("PORT")).isEqualTo(AlarmIndex.trigrams("port")).hasSize(2);
+        assertThat(AlarmIndex.trigrams("aaaa")).hasSize(1);
+    }
+}
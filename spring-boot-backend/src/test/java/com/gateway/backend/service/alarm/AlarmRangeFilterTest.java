@@ -0,0 +1,171 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Predicate;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Range filters, alone and combined with {@code contains} conditions and text queries, select exactly the alarms
+ * whose values are within the bounds, as chunks are sealed, alarms updated and blocks dropped. The expected
+ * alarms are found by comparing the alarms' own values, not through the compiled plan.
+ */
+class AlarmRangeFilterTest {
+
+    private static final LocalDateTime FROM = LocalDateTime.parse("2024-01-01T03:00:00");
+    private static final LocalDateTime TO = LocalDateTime.parse("2024-01-01T19:30:00");
+
+    private static final List<Case> CASES = List.of(
+            new Case(Map.of("timestampFrom", "2024-01-01T03:00:00", "timestampTo", "2024-01-01T19:30:00"),
+                    alarm -> !alarm.getTimestamp().isBefore(FROM) && alarm.getTimestamp().isBefore(TO)),
+            new Case(Map.of("timestampTo", "2024-01-01T03:00:00"),
+                    alarm -> alarm.getTimestamp().isBefore(FROM)),
+            new Case(Map.of("timestampFrom", "2024-01-01T19:30:00"),
+                    alarm -> !alarm.getTimestamp().isBefore(TO)),
+            new Case(Map.of("minDuration", "1800", "maxDuration", "1800"),
+                    alarm -> alarm.getDuration_seconds() == 1800),
+            new Case(Map.of("minDuration", "3500"),
+                    alarm -> alarm.getDuration_seconds() >= 3500),
+            new Case(Map.of("maxDuration", "99999999999"),
+                    alarm -> true),
+            new Case(Map.of("minDuration", "3000", "maxDuration", "100"),
+                    alarm -> false),
+            new Case(Map.of("minCharge", "2.5", "maxCharge", "2.5"),
+                    alarm -> alarm.getCharge_amount() == 2.5),
+            new Case(Map.of("minCharge", "2.345", "maxCharge", "7.005"),
+                    alarm -> alarm.getCharge_amount() >= 2.345 && alarm.getCharge_amount() <= 7.005),
+            new Case(Map.of("maxCharge", "0.019"),
+                    alarm -> alarm.getCharge_amount() <= 0.019),
+            new Case(Map.of("minCharge", "0.001", "maxCharge", "0.009"),
+                    alarm -> false),
+            new Case(Map.of("minDuration", "1000", "severity", "high", "message", "exceeds"),
+                    alarm -> alarm.getDuration_seconds() >= 1000 && "High".equals(alarm.getSeverity())
+                            && alarm.getMessage().contains("exceeds")),
+            new Case(Map.of("timestampFrom", "2024-01-01T03:00:00", "maxCharge", "5", "status", "open"),
+                    alarm -> !alarm.getTimestamp().isBefore(FROM) && alarm.getCharge_amount() <= 5
+                            && "Open".equals(alarm.getStatus())),
+            new Case(Map.of("q", "memory", "minCharge", "9", "maxDuration", "1200"),
+                    alarm -> alarm.getMessage().startsWith("Memory") && alarm.getCharge_amount() >= 9
+                            && alarm.getDuration_seconds() <= 1200));
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+    private final Random random = new Random(22);
+    private AlarmStore store;
+    private TestAlarms alarms;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        alarms = new TestAlarms(22);
+        // Four full chunks, sealed, and a partial one that is not
+        for (int i = 0; i < 17; i++) {
+            store.append(shuffled(alarms.next(1_000)));
+        }
+    }
+
+    /**
+     * Moves some timestamps far from the others, so the blocks' timestamps are not in row order.
+     */
+    private List<Alarm> shuffled(List<Alarm> batch) {
+        for (Alarm alarm : batch) {
+            if (random.nextInt(10) == 0) {
+                alarm.setTimestamp(TestAlarms.START.plusSeconds(random.nextInt(86_400)));
+            }
+        }
+        return batch;
+    }
+
+    private void assertRangesMatchTheValues(String when) {
+        AlarmStore.Snapshot snapshot = store.snapshot();
+        List<Alarm> all = TestAlarms.all(snapshot.getColumns());
+        for (Case range : CASES) {
+            List<Long> expected = new ArrayList<>();
+            for (Alarm alarm : all) {
+                if (range.expected.test(alarm)) {
+                    expected.add(alarm.getId());
+                }
+            }
+            AlarmFilterPlan plan = compiler.compile(range.filters);
+
+            List<Long> selected = new ArrayList<>();
+            for (int row : snapshot.getIndex().select(plan)) {
+                selected.add(row + 1L);
+            }
+            assertThat(selected).as("%s %s", when, range.filters).isEqualTo(expected);
+            assertThat(snapshot.getIndex().count(plan)).as("%s %s", when, range.filters).isEqualTo(expected.size());
+            assertThat(TestAlarms.ids(TestAlarms.matching(snapshot.getColumns(), plan)))
+                    .as("%s %s plan", when, range.filters).isEqualTo(expected);
+        }
+    }
+
+    @Test
+    void selectsTheValuesWithinTheBoundsAsChunksAreSealedUpdatedAndDropped() {
+        assertRangesMatchTheValues("filled");
+
+        // Seal the fifth chunk with a batch that runs into the sixth
+        store.append(shuffled(alarms.next(3_000)));
+        assertRangesMatchTheValues("sealed");
+
+        // Move values in and out of the ranges in sealed and unsealed chunks
+        for (long id : new long[]{1, 77, 4_096, 4_097, 10_000, 16_999, 19_500}) {
+            Alarm replacement = alarms.next();
+            replacement.setTimestamp(id % 2 == 0 ? FROM : TO.minusNanos(1));
+            replacement.setDuration_seconds(id % 3 == 0 ? 1800 : 3599);
+            replacement.setCharge_amount(id % 2 == 0 ? 2.5 : 0.01);
+            assertThat(store.update(id, replacement)).isNotNull();
+        }
+        assertRangesMatchTheValues("updated");
+
+        int dropped = store.dropExpired(LocalDateTime.parse("2024-01-02T00:00:00"));
+        assertThat(dropped).isPositive();
+        assertRangesMatchTheValues("dropped");
+    }
+
+    @Test
+    void boundsAreInclusiveExceptTimestampToAndChargesRoundInward() {
+        Alarm alarm = Alarm.builder().timestamp(FROM).duration_seconds(60).charge_amount(1.25).build();
+
+        assertThat(compiler.compile(Map.of("timestampFrom", "2024-01-01T03:00:00")).matches(alarm)).isTrue();
+        assertThat(compiler.compile(Map.of("timestampTo", "2024-01-01T03:00:00")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("timestampTo", "2024-01-01T03:00:00.000000001")).matches(alarm)).isTrue();
+        assertThat(compiler.compile(Map.of("minDuration", "60", "maxDuration", "60")).matches(alarm)).isTrue();
+        assertThat(compiler.compile(Map.of("minDuration", "61")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("minCharge", "1.245", "maxCharge", "1.255")).matches(alarm)).isTrue();
+        assertThat(compiler.compile(Map.of("minCharge", "1.251")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("maxCharge", "1.249")).matches(alarm)).isFalse();
+        assertThat(compiler.compile(Map.of("minCharge", "1.251", "maxCharge", "1.259")).matchesNothing()).isTrue();
+    }
+
+    @Test
+    void rejectsBoundsThatAreNotValuesOfTheirProperty() {
+        for (Map<String, String> filters : List.of(
+                Map.of("timestampFrom", "yesterday"),
+                Map.of("timestampTo", "2024-13-01T00:00:00"),
+                Map.of("minDuration", "1.5"),
+                Map.of("maxDuration", "long"),
+                Map.of("minCharge", "1,25"),
+                Map.of("maxCharge", "1e400000000000"))) {
+            assertThatThrownBy(() -> compiler.compile(filters)).as("%s", filters)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    private static final class Case {
+        final Map<String, String> filters;
+        final Predicate<Alarm> expected;
+
+        Case(Map<String, String> filters, Predicate<Alarm> expected) {
+            this.filters = filters;
+            this.expected = expected;
+        }
+    }
+}
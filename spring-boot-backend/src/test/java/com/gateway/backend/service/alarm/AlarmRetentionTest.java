@@ -0,0 +1,156 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Retention drops whole leading chunks whose newest alarm has expired, leaves the ids of the others as they were,
+ * and the listing keeps matching a scan of the alarms that are left.
+ */
+class AlarmRetentionTest {
+
+    private static final int CHUNK = AlarmColumns.CHUNK_SIZE;
+    /** Four full chunks, sealed, and a partial one that is not. */
+    private static final int ROWS = 4 * CHUNK + 900;
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "high"),
+            Map.of("message", "exceeds", "carrier", "t"),
+            Map.of("timestampFrom", "2024-01-01T09:00:00", "timestampTo", "2024-01-01T13:30:00"),
+            Map.of("timestampTo", "2024-01-01T12:00:00", "status", "open"),
+            Map.of("timestampFrom", "2024-01-01T20:00:00", "minDuration", "1800"));
+
+    private final TestAlarms generator = new TestAlarms(18);
+    private List<Alarm> input;
+
+    @BeforeEach
+    void generate() {
+        input = generator.next(ROWS);
+    }
+
+    private static AlarmStore fill(List<Alarm> alarms) {
+        AlarmStore store = new AlarmStore();
+        for (int from = 0; from < alarms.size(); from += 1000) {
+            store.append(alarms.subList(from, Math.min(alarms.size(), from + 1000)));
+        }
+        return store;
+    }
+
+    /**
+     * The newest timestamp in {@code chunk}, which is what retention compares with the cutoff.
+     */
+    private static LocalDateTime newest(AlarmColumns columns, int chunk) {
+        LocalDateTime newest = LocalDateTime.MIN;
+        for (int row = chunk * CHUNK; row < (chunk + 1) * CHUNK; row++) {
+            LocalDateTime timestamp = columns.toAlarm(row).getTimestamp();
+            newest = timestamp.isAfter(newest) ? timestamp : newest;
+        }
+        return newest;
+    }
+
+    @Test
+    void dropsTheLeadingSealedChunksWhoseNewestAlarmExpired() {
+        AlarmStore store = fill(input);
+        AlarmStore.Snapshot before = store.snapshot();
+        List<Alarm> stored = TestAlarms.all(before.getColumns());
+
+        assertThat(store.dropExpired(newest(before.getColumns(), 0))).as("newest alarm not before the cutoff")
+                .isZero();
+        assertThat(store.dropExpired(newest(before.getColumns(), 1).plusNanos(1))).isEqualTo(2 * CHUNK);
+        AlarmColumns columns = store.snapshot().getColumns();
+        assertThat(columns.first()).isEqualTo(2 * CHUNK);
+        assertThat(columns.count()).isEqualTo(ROWS - 2 * CHUNK);
+        assertThat(TestAlarms.all(columns)).isEqualTo(stored.subList(2 * CHUNK, ROWS));
+        assertThat(store.snapshot().getGeneration()).isGreaterThan(before.getGeneration());
+
+        // The partial chunk is still written to, so it stays however old its alarms are
+        assertThat(store.dropExpired(TestAlarms.START.plusYears(1))).isEqualTo(2 * CHUNK);
+        assertThat(TestAlarms.all(store.snapshot().getColumns())).isEqualTo(stored.subList(4 * CHUNK, ROWS));
+        assertThat(store.dropExpired(TestAlarms.START.plusYears(1))).isZero();
+
+        // Readers of the earlier snapshot still see every alarm
+        assertThat(TestAlarms.all(before.getColumns())).isEqualTo(stored);
+    }
+
+    @Test
+    void aChunkWithAnUnexpiredAlarmHoldsBackTheChunksAfterIt() {
+        input.get(CHUNK + 17).setTimestamp(TestAlarms.START.plusDays(30));
+        AlarmStore store = fill(input);
+        AlarmColumns columns = store.snapshot().getColumns();
+
+        assertThat(store.dropExpired(newest(columns, 3).plusNanos(1))).isEqualTo(CHUNK);
+        assertThat(store.snapshot().getColumns().first()).isEqualTo(CHUNK);
+        assertThat(store.dropExpired(TestAlarms.START.plusDays(30))).isZero();
+        assertThat(store.dropExpired(TestAlarms.START.plusDays(30).plusSeconds(1))).isEqualTo(3 * CHUNK);
+    }
+
+    @Test
+    void dropsNothingUntilAChunkIsFull() {
+        AlarmStore store = new AlarmStore();
+        assertThat(store.dropExpired(LocalDateTime.now())).isZero();
+
+        store.append(input.subList(0, CHUNK - 1));
+        assertThat(store.dropExpired(LocalDateTime.now())).isZero();
+        store.append(input.subList(CHUNK - 1, CHUNK));
+        assertThat(store.dropExpired(LocalDateTime.now())).isEqualTo(CHUNK);
+        assertThat(store.snapshot().getColumns().count()).isZero();
+
+        assertThat(store.append(input.subList(CHUNK, CHUNK + 3))).isEqualTo(CHUNK + 1L);
+        assertThat(TestAlarms.all(store.snapshot().getColumns())).extracting(Alarm::getId)
+                .containsExactly(CHUNK + 1L, CHUNK + 2L, CHUNK + 3L);
+    }
+
+    @Test
+    void listsAndWritesWhatIsLeftAfterADrop() {
+        AlarmService service = new AlarmService(0);
+        try {
+            service.addAlarms(input);
+            AlarmColumns columns = service.getSnapshot().getColumns();
+            String cursor = service.queryAlarms(Map.of(), 1, 50, "id", "asc").getNextCursor();
+            LocalDateTime cutoff = newest(columns, 2).plusNanos(1);
+
+            assertThat(service.dropExpired(cutoff)).isEqualTo(3 * CHUNK);
+            columns = service.getSnapshot().getColumns();
+            for (Map<String, String> filters : FILTERS) {
+                List<Alarm> expected = TestAlarms.matching(columns, service.compileFilters(filters));
+                assertThat(service.getTotalAlarms(filters)).as("%s", filters).isEqualTo(expected.size());
+                List<Alarm> first = sorted(expected, AlarmField.TIMESTAMP).subList(0, Math.min(100, expected.size()));
+                assertThat(service.queryAlarms(filters, 1, 100, "timestamp", "asc").getData()).as("%s", filters)
+                        .isEqualTo(first);
+            }
+            // A cursor on a dropped alarm goes on with the first one left
+            assertThat(service.queryAlarms(Map.of(), 1, 5, "id", "asc", cursor).getData()).extracting(Alarm::getId)
+                    .containsExactly(3L * CHUNK + 1, 3L * CHUNK + 2, 3L * CHUNK + 3, 3L * CHUNK + 4, 3L * CHUNK + 5);
+
+            // Dropped alarms are gone for writes too; the others and new ones keep their ids
+            assertThat(service.updateAlarm(7L, generator.next())).isNull();
+            long kept = 3L * CHUNK + 1;
+            while ("Closed".equals(columns.toAlarm((int) kept - 1).getStatus())) {
+                kept++;
+            }
+            AlarmStatusChange change = service.changeStatuses(List.of(
+                    Alarm.builder().id(7L).version(1).status("Closed").build(),
+                    Alarm.builder().id(kept).version(1).status("Closed").build()));
+            assertThat(change.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.NOT_FOUND);
+            assertThat(change.outcome(1)).isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+            assertThat(service.addAlarms(generator.next(3))).isEqualTo(ROWS + 1L);
+        } finally {
+            service.stop();
+        }
+    }
+
+    private static List<Alarm> sorted(List<Alarm> alarms, AlarmField field) {
+        List<Alarm> sorted = new ArrayList<>(alarms);
+        sorted.sort(TestAlarms.order(field, false));
+        return sorted;
+    }
+}
@@ -0,0 +1,315 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Every status transition is a compare-and-set on its own alarm: it happens at the version read and moves the
+ * version on, or reports where the alarm is; transitions race each other and appends without losing any, and
+ * the status postings, aggregates and suggestion counts follow, even for alarms not counted yet.
+ */
+class AlarmStatusChangeTest {
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+    private final ExecutorService writers = Executors.newFixedThreadPool(8);
+    private AlarmStore store;
+    private TestAlarms alarms;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        alarms = new TestAlarms(25);
+        List<Alarm> batch = alarms.next(3 * AlarmColumns.CHUNK_SIZE + 500);
+        batch.forEach(alarm -> alarm.setStatus("Open"));
+        store.append(batch);
+    }
+
+    @AfterEach
+    void shutdown() {
+        writers.shutdownNow();
+    }
+
+    private static Alarm transition(long id, int version, String status) {
+        return Alarm.builder().id(id).version(version).status(status).build();
+    }
+
+    private Alarm stored(long id) {
+        return store.snapshot().getColumns().toAlarm((int) (id - 1));
+    }
+
+    @Test
+    void reportsTheOutcomeOfEveryTransitionOnItsOwn() {
+        store.changeStatus(AlarmStatusChange.of(List.of(transition(3, 1, "Closed"))));
+
+        AlarmStatusChange change = AlarmStatusChange.of(List.of(
+                transition(1, 1, "in progress"),
+                transition(2, 1, "Closed"),
+                transition(3, 2, "Resolved"),
+                transition(4, 7, "Resolved"),
+                transition(5, 1, "Open"),
+                transition(99_999, 1, "Closed")));
+        assertThat(store.changeStatus(change)).isEqualTo(2);
+
+        assertThat(change.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+        assertThat(change.outcome(1)).as("steps may be skipped").isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+        assertThat(change.outcome(2)).as("never backwards").isEqualTo(AlarmStatusChange.Outcome.INVALID_TRANSITION);
+        assertThat(change.outcome(3)).isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+        assertThat(change.outcome(4)).isEqualTo(AlarmStatusChange.Outcome.INVALID_TRANSITION);
+        assertThat(change.outcome(5)).isEqualTo(AlarmStatusChange.Outcome.NOT_FOUND);
+        assertThat(change.count(AlarmStatusChange.Outcome.INVALID_TRANSITION)).isEqualTo(2);
+
+        // Each reports where its alarm is now
+        assertThat(change.version(0)).isEqualTo(2);
+        assertThat(change.status(0)).isEqualTo("In Progress");
+        assertThat(change.version(2)).isEqualTo(2);
+        assertThat(change.status(2)).isEqualTo("Closed");
+        assertThat(change.version(3)).isEqualTo(1);
+        assertThat(change.status(3)).isEqualTo("Open");
+        assertThat(change.version(5)).isNull();
+        assertThat(change.status(5)).isNull();
+        assertThat(stored(1)).extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("In Progress", 2);
+        assertThat(stored(4)).extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Open", 1);
+    }
+
+    @Test
+    void anAlarmOutsideTheWorkflowMayMoveToAnyStep() {
+        Alarm odd = alarms.next();
+        odd.setStatus("Acknowledged");
+        Alarm none = alarms.next();
+        none.setStatus(null);
+        long first = store.append(List.of(odd, none));
+
+        AlarmStatusChange change = AlarmStatusChange.of(List.of(transition(first, 1, "Open"),
+                transition(first + 1, 1, "Closed")));
+
+        assertThat(store.changeStatus(change)).isEqualTo(2);
+        assertThat(stored(first).getStatus()).isEqualTo("Open");
+        assertThat(stored(first + 1).getStatus()).isEqualTo("Closed");
+    }
+
+    @Test
+    void rejectsTransitionsWithoutAnIdVersionOrKnownStatus() {
+        for (List<Alarm> transitions : List.of(
+                List.of(transition(1, 1, "Closed"), Alarm.builder().version(1).status("Closed").build()),
+                List.of(Alarm.builder().id(1L).status("Closed").build()),
+                List.of(transition(1, 1, "Done")),
+                Arrays.asList(transition(1, 1, "Closed"), null))) {
+            assertThatThrownBy(() -> AlarmStatusChange.of(transitions)).isInstanceOf(IllegalArgumentException.class);
+        }
+        assertThat(stored(1)).extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Open", 1);
+    }
+
+    @Test
+    void ofTwoOperatorsWhoReadTheSameVersionOnlyTheFirstWins() {
+        AlarmStatusChange first = AlarmStatusChange.of(List.of(transition(10, 1, "In Progress")));
+        AlarmStatusChange second = AlarmStatusChange.of(List.of(transition(10, 1, "Closed")));
+
+        store.changeStatus(first);
+        store.changeStatus(second);
+
+        assertThat(first.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+        assertThat(second.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+        assertThat(second.version(0)).isEqualTo(2);
+        assertThat(second.status(0)).isEqualTo("In Progress");
+
+        // Read again, then retried
+        AlarmStatusChange retried = AlarmStatusChange.of(List.of(transition(10, second.version(0), "Closed")));
+        store.changeStatus(retried);
+        assertThat(retried.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.UPDATED);
+        assertThat(stored(10)).extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Closed", 3);
+    }
+
+    @Test
+    void aReplacedAlarmKeepsItsStatus() {
+        Alarm replacement = alarms.next();
+        replacement.setStatus("Closed");
+
+        Alarm updated = store.update(20, replacement);
+
+        assertThat(updated).extracting(Alarm::getStatus, Alarm::getVersion).containsExactly("Open", 2);
+        assertThat(updated.getMessage()).isEqualTo(replacement.getMessage());
+        AlarmStatusChange stale = AlarmStatusChange.of(List.of(transition(20, 1, "Closed")));
+        store.changeStatus(stale);
+        assertThat(stale.outcome(0)).as("the replacement moved the version on")
+                .isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+    }
+
+    @Test
+    void concurrentTransitionsOfOneAlarmLetExactlyOneWin() throws Exception {
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<AlarmStatusChange>> attempts = new ArrayList<>();
+        for (int i = 0; i < 32; i++) {
+            String status = i % 2 == 0 ? "Resolved" : "Closed";
+            attempts.add(writers.submit(() -> {
+                start.await();
+                AlarmStatusChange change = AlarmStatusChange.of(List.of(transition(4_100, 1, status)));
+                store.changeStatus(change);
+                return change;
+            }));
+        }
+        start.countDown();
+
+        int updated = 0;
+        for (Future<AlarmStatusChange> attempt : attempts) {
+            AlarmStatusChange change = attempt.get(10, TimeUnit.SECONDS);
+            if (change.outcome(0) == AlarmStatusChange.Outcome.UPDATED) {
+                updated++;
+            } else {
+                assertThat(change.outcome(0)).isEqualTo(AlarmStatusChange.Outcome.CONFLICT);
+                assertThat(change.version(0)).isEqualTo(2);
+            }
+        }
+        assertThat(updated).isEqualTo(1);
+        assertThat(stored(4_100).getVersion()).isEqualTo(2);
+    }
+
+    @Test
+    void batchesAcrossChunksAndAppendsRunTogetherWithoutLosingAChange() throws Exception {
+        int rows = store.snapshot().getColumns().size();
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<Integer>> tasks = new ArrayList<>();
+        // Each writer takes every alarm it is the remainder of, in batches of 100, moving it twice
+        int writerCount = 6;
+        for (int w = 0; w < writerCount; w++) {
+            int writer = w;
+            tasks.add(writers.submit(() -> {
+                start.await();
+                int updated = 0;
+                for (String status : new String[]{"In Progress", "Resolved"}) {
+                    List<Alarm> batch = new ArrayList<>();
+                    for (long id = writer + 1; id <= rows; id += writerCount) {
+                        batch.add(transition(id, "In Progress".equals(status) ? 1 : 2, status));
+                        if (batch.size() == 100 || id + writerCount > rows) {
+                            updated += store.changeStatus(AlarmStatusChange.of(batch));
+                            batch = new ArrayList<>();
+                        }
+                    }
+                }
+                return updated;
+            }));
+        }
+        tasks.add(writers.submit(() -> {
+            start.await();
+            for (int i = 0; i < 20; i++) {
+                store.append(alarms.next(250));
+            }
+            return 0;
+        }));
+        start.countDown();
+
+        int updated = 0;
+        for (Future<Integer> task : tasks) {
+            updated += task.get(60, TimeUnit.SECONDS);
+        }
+        assertThat(updated).isEqualTo(2 * rows);
+        AlarmColumns columns = store.snapshot().getColumns();
+        assertThat(columns.size()).isEqualTo(rows + 20 * 250);
+        for (int row = 0; row < rows; row++) {
+            assertThat(columns.toAlarm(row)).as("alarm %d", row + 1).extracting(Alarm::getStatus, Alarm::getVersion)
+                    .containsExactly("Resolved", 3);
+        }
+        for (String status : new String[]{"open", "resolved", "progress", "closed"}) {
+            AlarmFilterPlan plan = compiler.compile(Map.of("status", status));
+            assertThat(TestAlarms.ids(TestAlarms.matching(columns, plan))).as(status)
+                    .isEqualTo(selected(plan));
+        }
+    }
+
+    @Test
+    void movingTheNewestAlarmsWhileTheyAreCountedKeepsTheAggregatesAndSuggestions() throws Exception {
+        int appenders = 4;
+        CountDownLatch start = new CountDownLatch(1);
+        CountDownLatch appended = new CountDownLatch(appenders);
+        List<Future<Integer>> tasks = new ArrayList<>();
+        for (int a = 0; a < appenders; a++) {
+            tasks.add(writers.submit(() -> {
+                start.await();
+                try {
+                    for (int i = 0; i < 1_000; i++) {
+                        List<Alarm> batch;
+                        synchronized (alarms) {
+                            batch = alarms.next(10);
+                        }
+                        batch.forEach(alarm -> alarm.setStatus("Open"));
+                        store.append(batch);
+                    }
+                } finally {
+                    appended.countDown();
+                }
+                return 0;
+            }));
+        }
+        // Movers of the alarms just published, which the appenders' catch-ups may not have counted yet
+        for (String status : new String[]{"In Progress", "Closed"}) {
+            tasks.add(writers.submit(() -> {
+                start.await();
+                int updated = 0;
+                do {
+                    AlarmColumns columns = store.snapshot().getColumns();
+                    List<Alarm> batch = new ArrayList<>();
+                    for (int row = Math.max(0, columns.size() - 20); row < columns.size(); row++) {
+                        if ("Open".equals(columns.toAlarm(row).getStatus())) {
+                            batch.add(transition(row + 1L, columns.version(row), status));
+                        }
+                    }
+                    if (!batch.isEmpty()) {
+                        updated += store.changeStatus(AlarmStatusChange.of(batch));
+                    }
+                    store.indexSuggestions();
+                } while (appended.getCount() > 0);
+                return updated;
+            }));
+        }
+        start.countDown();
+
+        int updated = 0;
+        for (Future<Integer> task : tasks) {
+            updated += task.get(60, TimeUnit.SECONDS);
+        }
+        assertThat(updated).isPositive();
+
+        AlarmColumns columns = store.snapshot().getColumns();
+        Map<String, Long> expected = new TreeMap<>();
+        for (Alarm alarm : TestAlarms.all(columns)) {
+            expected.merge(alarm.getStatus(), 1L, Long::sum);
+        }
+        assertThat(expected).containsKeys("Open", "In Progress");
+        Map<String, Long> aggregated = new TreeMap<>();
+        for (AlarmAggregation.Group group : store.aggregate(AlarmField.STATUS, null, null, null).getGroups()) {
+            if (group.getCount() > 0) {
+                aggregated.put(group.getValue(), group.getCount());
+            }
+        }
+        assertThat(aggregated).isEqualTo(expected);
+        expected.forEach((status, count) -> assertThat((long) store.suggestionCount(AlarmField.STATUS, status))
+                .as(status).isEqualTo(count));
+        for (String status : new String[]{"open", "progress", "closed"}) {
+            AlarmFilterPlan plan = compiler.compile(Map.of("status", status));
+            assertThat(TestAlarms.ids(TestAlarms.matching(columns, plan))).as(status).isEqualTo(selected(plan));
+        }
+    }
+
+    private List<Long> selected(AlarmFilterPlan plan) {
+        List<Long> ids = new ArrayList<>();
+        for (int row : store.snapshot().getIndex().select(plan)) {
+            ids.add(row + 1L);
+        }
+        return ids;
+    }
+}
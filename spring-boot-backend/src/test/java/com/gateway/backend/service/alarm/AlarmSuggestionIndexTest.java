@@ -0,0 +1,142 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import com.gateway.backend.service.AlarmService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+/**
+ * Suggestions against counting the values of every stored alarm, as alarms are appended, updated and dropped.
+ */
+class AlarmSuggestionIndexTest {
+
+    private static final List<AlarmField> FIELDS = List.of(
+            AlarmField.SEVERITY, AlarmField.STATUS, AlarmField.GATEWAY_NAME, AlarmField.CARRIER,
+            AlarmField.MESSAGE, AlarmField.CALLER_NUMBER);
+    private static final List<String> NEEDLES = List.of("", "g", "way 1", "threshold", "t", "55", "123", "-4", "zzz");
+
+    private final TestAlarms generator = new TestAlarms(12);
+    private AlarmStore store;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        store.append(generator.next(2 * AlarmColumns.CHUNK_SIZE + 500));
+    }
+
+    /**
+     * Values containing the needle, those starting with it first, each group most frequent first and then
+     * alphabetically.
+     */
+    private static List<String> bruteForce(AlarmColumns columns, AlarmField field, String lowerNeedle, int limit) {
+        Map<String, Integer> counts = new TreeMap<>();
+        for (int row = columns.first(); row < columns.size(); row++) {
+            String value = columns.text(field, row);
+            if (value != null && value.toLowerCase(Locale.ROOT).contains(lowerNeedle)) {
+                counts.merge(value, 1, Integer::sum);
+            }
+        }
+        Comparator<String> byRank = Comparator.<String>comparingInt(counts::get).reversed()
+                .thenComparing(Comparator.naturalOrder());
+        List<String> prefixed = new ArrayList<>();
+        List<String> infix = new ArrayList<>();
+        counts.keySet().forEach(value ->
+                (value.toLowerCase(Locale.ROOT).startsWith(lowerNeedle) ? prefixed : infix).add(value));
+        prefixed.sort(byRank);
+        infix.sort(byRank);
+        prefixed.addAll(infix);
+        return prefixed.subList(0, Math.min(limit, prefixed.size()));
+    }
+
+    private void assertMatchesBruteForce(String when) {
+        AlarmColumns columns = store.snapshot().getColumns();
+        for (AlarmField field : FIELDS) {
+            for (String needle : NEEDLES) {
+                for (int limit : new int[]{1, 10, 50}) {
+                    List<String> suggestions = store.suggest(field, needle, limit);
+                    List<String> expected = bruteForce(columns, field, needle, limit);
+                    if (needle.length() < 3 && field == AlarmField.CALLER_NUMBER) {
+                        // Too many distinct numbers to rank the values containing a short needle: the prefixed ones
+                        // still are, then any others that contain it
+                        assertThat(suggestions).as("%s %s '%s'", when, field, needle).hasSize(expected.size())
+                                .allMatch(value -> value.toLowerCase(Locale.ROOT).contains(needle));
+                        List<String> prefixed = expected.stream()
+                                .filter(value -> value.toLowerCase(Locale.ROOT).startsWith(needle)).toList();
+                        assertThat(suggestions.subList(0, prefixed.size())).isEqualTo(prefixed);
+                    } else {
+                        assertThat(suggestions).as("%s %s '%s' limit %d", when, field, needle, limit)
+                                .isEqualTo(expected);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void suggestsTheMostFrequentValuesPrefixesFirst() {
+        assertMatchesBruteForce("appended");
+
+        // Enough new values to flush and merge several sorted runs
+        store.append(generator.next(AlarmColumns.CHUNK_SIZE));
+        assertMatchesBruteForce("appended again");
+    }
+
+    @Test
+    void followsUpdatesStatusChangesAndDrops() {
+        // Counted before the changes, so that they move counts instead of being counted afresh
+        store.indexSuggestions();
+        for (long id = 1; id <= 300; id += 3) {
+            Alarm alarm = store.snapshot().getColumns().toAlarm((int) id - 1);
+            alarm.setGatewayName("Renamed gateway " + id % 7);
+            alarm.setSeverity("Informational");
+            store.update(id, alarm);
+        }
+        List<Alarm> transitions = new ArrayList<>();
+        AlarmColumns columns = store.snapshot().getColumns();
+        for (int row = 5000; row < 5200; row++) {
+            transitions.add(Alarm.builder().id(row + 1L).version(columns.version(row)).status("Closed").build());
+        }
+        store.changeStatus(AlarmStatusChange.of(transitions));
+        assertMatchesBruteForce("updated");
+        assertThat(store.suggest(AlarmField.SEVERITY, "inf", 5)).containsExactly("Informational");
+
+        long cutoff = AlarmColumns.toNanos(columns.toAlarm(AlarmColumns.CHUNK_SIZE - 1).getTimestamp()) + 1;
+        assertThat(store.dropExpired(AlarmColumns.toTimestamp(cutoff))).isEqualTo(AlarmColumns.CHUNK_SIZE);
+        assertMatchesBruteForce("dropped");
+        assertThat(store.suggest(AlarmField.SEVERITY, "inf", 5)).isEmpty();
+    }
+
+    @Test
+    void matchesNumericIdsRowByRow() {
+        AlarmService service = new AlarmService(0);
+        try {
+            service.addAlarms(generator.next(2_000));
+            AlarmColumns alarmColumns = service.getSnapshot().getColumns();
+            Set<String> expected = new LinkedHashSet<>();
+            for (int row = 0; row < alarmColumns.size() && expected.size() < 5; row++) {
+                String value = alarmColumns.text(AlarmField.GATEWAY_ID, row);
+                if (value != null && value.contains("3")) {
+                    expected.add(value);
+                }
+            }
+
+            assertThat(service.getSuggestions("gatewayId", "3", 5)).containsExactlyElementsOf(expected);
+            assertThat(service.getSuggestions("severity", "HI", 5)).containsExactly("High");
+            assertThat(service.getSuggestions("nosuch", "a", 5)).isEmpty();
+            assertThat(service.getSuggestions("severity", "a", 0)).isEmpty();
+        } finally {
+            service.stop();
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package com.gateway.backend.service.alarm;
+
+import org.junit.jupiter.api.Test;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class AlarmTextQueryTest {
+
+    @Test
+    void parsesWordsPrefixesAndPhrases() {
+        assertThat(AlarmTextQuery.parse("Threshold  thresh* \"Power SUPPLY\" power-supply cpu-us*").toString())
+                .isEqualTo("[threshold, thresh*, \"power supply\", \"power supply\", cpu, us*]");
+        assertThat(AlarmTextQuery.parse("\"unterminated phrase").toString()).isEqualTo("[\"unterminated phrase\"]");
+        assertThat(AlarmTextQuery.parse("a\"b c\"d").toString()).isEqualTo("[a, \"b c\", d]");
+    }
+
+    @Test
+    void rejectsAQueryWithoutATerm() {
+        for (String query : new String[]{"", "   ", "*", "\"\"", "-- !"}) {
+            assertThatThrownBy(() -> AlarmTextQuery.parse(query)).as(query)
+                    .isInstanceOf(IllegalArgumentException.class);
+        }
+    }
+
+    @Test
+    void splitsOnEveryCharacterThatIsNotALetterOrDigitAndLowercases() {
+        assertThat(AlarmTextQuery.tokenize("CPU usage: 95% (port_7)"))
+                .containsExactly("cpu", "usage", "95", "port", "7");
+        assertThat(AlarmTextQuery.tokenize("Störung über")).containsExactly("störung", "über");
+        assertThat(AlarmTextQuery.tokenize(null)).isEmpty();
+        assertThat(AlarmTextQuery.analyze("Power lost", "Power Failure"))
+                .containsExactly("power", "lost", null, "power", "failure");
+        assertThat(AlarmTextQuery.analyze("Power lost", null)).containsExactly("power", "lost");
+        assertThat(AlarmTextQuery.length(AlarmTextQuery.analyze("Power lost", "Power Failure"))).isEqualTo(4);
+    }
+
+    @Test
+    void matchesEveryClauseWithNoPhraseAcrossTheMessageAndType() {
+        String message = "Power supply failure detected";
+        String type = "Power Failure";
+
+        assertThat(AlarmTextQuery.parse("supply detected").matches(message, type)).isTrue();
+        assertThat(AlarmTextQuery.parse("supply lost").matches(message, type)).isFalse();
+        assertThat(AlarmTextQuery.parse("\"supply failure\" det*").matches(message, type)).isTrue();
+        assertThat(AlarmTextQuery.parse("\"failure supply\"").matches(message, type)).isFalse();
+        assertThat(AlarmTextQuery.parse("\"detected power\"").matches(message, type)).isFalse();
+        assertThat(AlarmTextQuery.parse("\"power failure\"").matches(message, type)).isTrue();
+        assertThat(AlarmTextQuery.parse("sup*").matches(message, type)).isTrue();
+        assertThat(AlarmTextQuery.parse("supplies").matches(message, type)).isFalse();
+    }
+
+    @Test
+    void countsTheOccurrencesOfAClause() {
+        String[] document = AlarmTextQuery.analyze("power power supply, power-supply powered", "Power Failure");
+        AlarmTextQuery query = AlarmTextQuery.parse("power \"power supply\" pow*");
+
+        assertThat(query.getClauses()).extracting(clause -> AlarmTextQuery.frequency(clause, document))
+                .containsExactly(4, 2, 5);
+    }
+}
@@ -0,0 +1,286 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.withinPercentage;
+
+/**
+ * Text queries on the inverted indexes of the sealed blocks and on the unsealed tail select the alarms a
+ * brute-force reading of every message and type matches, and rank them by the BM25 score computed from the
+ * counts of every stored alarm, as chunks are sealed, alarms updated and blocks dropped.
+ */
+class AlarmTextSearchTest {
+
+    private static final String[] MESSAGES = {
+            "Power supply failure detected",
+            "Power power power supply unstable",
+            "Backup power supply engaged after a power-supply failure",
+            "Supply of power restored",
+            "CPU usage exceeds threshold",
+            "Threshold: CPU-usage exceeds the configured threshold of 95%",
+            "Memory usage exceeds threshold",
+            "Powered down for maintenance",
+            "Gateway connection lost",
+            "Lost",
+            "Disk space low on the gateway after a very long series of retries and warnings with no power"};
+    private static final List<Map<String, String>> QUERIES = List.of(
+            Map.of("q", "power"),
+            Map.of("q", "power supply"),
+            Map.of("q", "\"power supply\""),
+            Map.of("q", "power-supply failure"),
+            Map.of("q", "pow*"),
+            Map.of("q", "thresh* usage"),
+            Map.of("q", "\"exceeds threshold\" cpu"),
+            Map.of("q", "\"detected power\""),
+            Map.of("q", "lost connection"),
+            Map.of("q", "failure"),
+            Map.of("q", "nothing matches this"),
+            Map.of("q", "power", "severity", "high"),
+            Map.of("q", "threshold", "timestampFrom", "2024-01-01T10:00:00"));
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+    private final Random random = new Random(24);
+    private AlarmStore store;
+    private TestAlarms alarms;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        alarms = new TestAlarms(24);
+        // Four full chunks, sealed, and a partial one that is not
+        for (int i = 0; i < 17; i++) {
+            store.append(worded(alarms.next(1_000)));
+        }
+    }
+
+    private List<Alarm> worded(List<Alarm> batch) {
+        for (Alarm alarm : batch) {
+            alarm.setMessage(MESSAGES[random.nextInt(MESSAGES.length)]);
+            if (random.nextInt(20) == 0) {
+                alarm.setType(null);
+            }
+        }
+        return batch;
+    }
+
+    /**
+     * A document split on non-alphanumerics and lowercased, with a {@code null} between the message and type.
+     */
+    private static String[] document(Alarm alarm) {
+        List<String> terms = new ArrayList<>(words(alarm.getMessage()));
+        List<String> type = words(alarm.getType());
+        if (!type.isEmpty()) {
+            terms.add(null);
+            terms.addAll(type);
+        }
+        return terms.toArray(new String[0]);
+    }
+
+    private static List<String> words(String text) {
+        List<String> words = new ArrayList<>();
+        if (text != null) {
+            for (String word : text.toLowerCase(Locale.ROOT).split("[^\\p{L}\\p{Nd}]+")) {
+                if (!word.isEmpty()) {
+                    words.add(word);
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The clauses of a query: a term, a prefix ending in {@code *}, or the terms of a phrase.
+     */
+    private static List<String[]> clauses(String query) {
+        List<String[]> clauses = new ArrayList<>();
+        for (String part : query.split("\"")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            boolean phrase = query.contains("\"" + part + "\"");
+            if (phrase) {
+                clauses.add(words(part).toArray(new String[0]));
+                continue;
+            }
+            for (String word : part.trim().split("\\s+")) {
+                List<String> terms = words(word);
+                if (word.endsWith("*")) {
+                    for (int t = 0; t < terms.size() - 1; t++) {
+                        clauses.add(new String[]{terms.get(t)});
+                    }
+                    clauses.add(new String[]{terms.get(terms.size() - 1) + "*"});
+                } else {
+                    clauses.add(terms.toArray(new String[0]));
+                }
+            }
+        }
+        return clauses;
+    }
+
+    private static int occurrences(String[] clause, String[] document) {
+        int count = 0;
+        for (int at = 0; at + clause.length <= document.length; at++) {
+            boolean match = true;
+            for (int t = 0; t < clause.length && match; t++) {
+                String term = document[at + t];
+                match = term != null && (clause[t].endsWith("*")
+                        ? term.startsWith(clause[t].substring(0, clause[t].length() - 1))
+                        : term.equals(clause[t]));
+            }
+            if (match) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static int length(String[] document) {
+        return (int) Arrays.stream(document).filter(term -> term != null).count();
+    }
+
+    /**
+     * Per matching id, its BM25 score over all {@code stored} alarms, with k1 = 1.2 and b = 0.75.
+     */
+    private static Map<Long, Double> scores(List<Alarm> stored, List<String[]> clauses, Set<Long> candidates) {
+        List<String[]> documents = new ArrayList<>();
+        long totalLength = 0;
+        int[] frequencies = new int[clauses.size()];
+        for (Alarm alarm : stored) {
+            String[] document = document(alarm);
+            documents.add(document);
+            totalLength += length(document);
+            for (int c = 0; c < clauses.size(); c++) {
+                if (occurrences(clauses.get(c), document) > 0) {
+                    frequencies[c]++;
+                }
+            }
+        }
+        double averageLength = Math.max(1, (double) totalLength / stored.size());
+        Map<Long, Double> scores = new HashMap<>();
+        for (int i = 0; i < stored.size(); i++) {
+            String[] document = documents.get(i);
+            double score = 0;
+            boolean all = true;
+            for (int c = 0; c < clauses.size() && all; c++) {
+                int occurrences = occurrences(clauses.get(c), document);
+                all = occurrences > 0;
+                double idf = Math.log(1 + (stored.size() - frequencies[c] + 0.5) / (frequencies[c] + 0.5));
+                score += idf * occurrences * 2.2
+                        / (occurrences + 1.2 * (0.25 + 0.75 * length(document) / averageLength));
+            }
+            if (all && candidates.contains(stored.get(i).getId())) {
+                scores.put(stored.get(i).getId(), score);
+            }
+        }
+        return scores;
+    }
+
+    private void assertSearchMatchesBruteForce(String when) {
+        AlarmStore.Snapshot snapshot = store.snapshot();
+        List<Alarm> stored = TestAlarms.all(snapshot.getColumns());
+        for (Map<String, String> filters : QUERIES) {
+            AlarmFilterPlan plan = compiler.compile(filters);
+            // The other filters, checked as they are
+            Map<String, String> others = new HashMap<>(filters);
+            others.remove("q");
+            Set<Long> candidates = new HashSet<>(TestAlarms.ids(TestAlarms.matching(snapshot.getColumns(),
+                    compiler.compile(others))));
+            Map<Long, Double> expected = scores(stored, clauses(filters.get("q")), candidates);
+            List<Long> expectedIds = new ArrayList<>(expected.keySet());
+            expectedIds.sort(null);
+
+            List<Long> selected = new ArrayList<>();
+            for (int row : snapshot.getIndex().select(plan)) {
+                selected.add(row + 1L);
+            }
+            assertThat(selected).as("%s select %s", when, filters).isEqualTo(expectedIds);
+            assertThat(snapshot.getIndex().count(plan)).as("%s count %s", when, filters).isEqualTo(expected.size());
+
+            for (int k : new int[]{1, 10, 100_000}) {
+                AlarmIndex.Ranked ranked = snapshot.getIndex().rank(plan, k);
+                assertThat(ranked.getTotal()).as("%s total %s", when, filters).isEqualTo(expected.size());
+                assertThat(ranked.size()).as("%s size %s k=%d", when, filters, k)
+                        .isEqualTo(Math.min(k, expected.size()));
+                Set<Long> ranks = new HashSet<>();
+                for (int i = 0; i < ranked.size(); i++) {
+                    long id = ranked.row(i) + 1L;
+                    ranks.add(id);
+                    assertThat(expected).as("%s %s #%d", when, filters, i).containsKey(id);
+                    assertThat((double) ranked.score(i)).as("%s %s #%d", when, filters, i)
+                            .isCloseTo(expected.get(id), withinPercentage(0.01));
+                    if (i > 0) {
+                        // Best first, equal scores in id order
+                        assertThat(ranked.score(i)).isLessThanOrEqualTo(ranked.score(i - 1));
+                        if (ranked.score(i) == ranked.score(i - 1)) {
+                            assertThat(ranked.row(i)).isGreaterThan(ranked.row(i - 1));
+                        }
+                    }
+                }
+                if (ranked.size() > 0) {
+                    // Nothing left out scores better than the last one kept
+                    double last = expected.get(ranked.row(ranked.size() - 1) + 1L);
+                    expected.forEach((id, score) -> assertThat(ranks.contains(id) || score <= last * 1.0001)
+                            .as("%s %s k=%d id %d", when, filters, k, id).isTrue());
+                }
+            }
+        }
+    }
+
+    @Test
+    void selectsAndRanksLikeABruteForceReadingOfEveryAlarm() {
+        assertSearchMatchesBruteForce("filled");
+
+        // Seal the fifth chunk with a batch that runs into the sixth
+        store.append(worded(alarms.next(3_000)));
+        assertSearchMatchesBruteForce("sealed");
+    }
+
+    @Test
+    void followsUpdatesAndDropsWithTheCountsOfTheAlarmsLeft() {
+        for (long id : new long[]{1, 77, 4_096, 4_097, 10_000, 16_999}) {
+            Alarm replacement = alarms.next();
+            replacement.setTimestamp(store.snapshot().getColumns().toAlarm((int) id - 1).getTimestamp());
+            replacement.setMessage(id % 2 == 0 ? "Power supply power supply" : "All good now");
+            assertThat(store.update(id, replacement)).isNotNull();
+        }
+        assertSearchMatchesBruteForce("updated");
+
+        AlarmColumns columns = store.snapshot().getColumns();
+        assertThat(store.dropExpired(columns.toAlarm(2 * AlarmColumns.CHUNK_SIZE - 1).getTimestamp().plusNanos(1)))
+                .isEqualTo(2 * AlarmColumns.CHUNK_SIZE);
+        assertSearchMatchesBruteForce("dropped");
+    }
+
+    @Test
+    void scoresRareTermsAndShortMessagesHigher() {
+        AlarmStore small = new AlarmStore();
+        List<Alarm> batch = alarms.next(4);
+        batch.get(0).setMessage("power");
+        batch.get(1).setMessage("power unit power failure report");
+        batch.get(2).setMessage("power unit failure report with many more words than the others");
+        batch.get(3).setMessage("unit report");
+        batch.forEach(alarm -> alarm.setType("Power Failure"));
+        small.append(batch);
+
+        AlarmIndex.Ranked ranked = small.snapshot().getIndex().rank(compiler.compile(Map.of("q", "power")), 10);
+
+        assertThat(ranked.getTotal()).isEqualTo(4);
+        assertThat(ranked.row(0)).as("the shortest").isZero();
+        assertThat(ranked.row(1)).as("more occurrences").isEqualTo(1);
+        assertThat(ranked.row(2)).as("only in the type, but short").isEqualTo(3);
+        assertThat(ranked.row(3)).as("the longest").isEqualTo(2);
+    }
+}
@@ -0,0 +1,149 @@
+package com.gateway.backend.service.alarm;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Scans split across the pool in uneven ranges of blocks and rows against the same scans run sequentially by
+ * the index, and against sorting every candidate.
+ */
+class ParallelAlarmScanTest {
+
+    private static final List<Map<String, String>> FILTERS = List.of(
+            Map.of(),
+            Map.of("severity", "high"),
+            Map.of("message", "exceeds"),
+            Map.of("message", "ceeds thr", "carrier", "t"),
+            Map.of("caller_number", "12"),
+            Map.of("timestampFrom", "2024-01-01T10:00:00", "maxCharge", "5"),
+            Map.of("q", "memory threshold"),
+            Map.of("q", "port", "severity", "critical"),
+            Map.of("status", "no such status"));
+
+    private final AlarmFilterCompiler compiler = new AlarmFilterCompiler();
+    private final List<ParallelAlarmScan> scans = new ArrayList<>();
+    private AlarmStore store;
+
+    @BeforeEach
+    void fill() {
+        store = new AlarmStore();
+        TestAlarms alarms = new TestAlarms(19);
+        // Ten sealed blocks and an unsealed tail
+        store.append(alarms.next(10 * AlarmColumns.CHUNK_SIZE + 777));
+        // The scans start past a dropped block, and past updated rows in a sealed one
+        assertThat(store.dropExpired(store.snapshot().getColumns().toAlarm(AlarmColumns.CHUNK_SIZE).getTimestamp()))
+                .isEqualTo(AlarmColumns.CHUNK_SIZE);
+        store.update(3 * AlarmColumns.CHUNK_SIZE + 5, alarms.next());
+    }
+
+    @AfterEach
+    void shutdown() {
+        scans.forEach(ParallelAlarmScan::shutdown);
+    }
+
+    /**
+     * Scans that split: evenly, unevenly over more tasks than workers, and into tasks of several blocks.
+     */
+    private List<ParallelAlarmScan> parallelScans() {
+        scans.add(new ParallelAlarmScan(4, 4, AlarmIndex.BLOCK_SIZE));
+        scans.add(new ParallelAlarmScan(2, 7, AlarmIndex.BLOCK_SIZE));
+        scans.add(new ParallelAlarmScan(3, 16, 3 * AlarmIndex.BLOCK_SIZE));
+        // One that never does
+        scans.add(new ParallelAlarmScan(4, 1, AlarmIndex.BLOCK_SIZE));
+        return scans;
+    }
+
+    @Test
+    void countsAndSelectsLikeTheSequentialIndex() {
+        AlarmIndex index = store.snapshot().getIndex();
+        for (ParallelAlarmScan scan : parallelScans()) {
+            for (Map<String, String> filters : FILTERS) {
+                AlarmFilterPlan plan = compiler.compile(filters);
+
+                assertThat(scan.select(index, plan)).as("select %s", filters).isEqualTo(index.select(plan));
+                assertThat(scan.count(index, plan)).as("count %s", filters).isEqualTo(index.count(plan));
+            }
+        }
+    }
+
+    @Test
+    void ranksLikeTheSequentialIndex() {
+        AlarmIndex index = store.snapshot().getIndex();
+        for (ParallelAlarmScan scan : parallelScans()) {
+            for (Map<String, String> filters : FILTERS) {
+                AlarmFilterPlan plan = compiler.compile(filters);
+                if (plan.getTextQuery() == null) {
+                    continue;
+                }
+                for (int k : new int[]{0, 1, 10, 1_000, 100_000}) {
+                    AlarmIndex.Ranked expected = index.rank(plan, k);
+                    AlarmIndex.Ranked ranked = scan.rank(index, plan, k);
+
+                    assertThat(ranked.getTotal()).as("%s k=%d", filters, k).isEqualTo(expected.getTotal());
+                    assertThat(ranked.size()).as("%s k=%d", filters, k).isEqualTo(expected.size());
+                    for (int i = 0; i < ranked.size(); i++) {
+                        assertThat(ranked.row(i)).as("%s k=%d #%d", filters, k, i).isEqualTo(expected.row(i));
+                        assertThat(ranked.score(i)).isEqualTo(expected.score(i));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    void keepsTheFirstRowsOfAFullSort() {
+        AlarmStore.Snapshot snapshot = store.snapshot();
+        AlarmColumns columns = snapshot.getColumns();
+        int[] candidates = snapshot.getIndex().select(compiler.compile(Map.of("type", "error")));
+        for (ParallelAlarmScan scan : parallelScans()) {
+            for (AlarmField field : List.of(AlarmField.TIMESTAMP, AlarmField.CARRIER, AlarmField.CHARGE_AMOUNT)) {
+                AlarmColumns.RowComparator comparator = columns.comparator(field, true);
+                int[] sortedAll = allRows(columns);
+                RowSort.sort(sortedAll, sortedAll.length, comparator);
+                int[] sortedCandidates = candidates.clone();
+                RowSort.sort(sortedCandidates, sortedCandidates.length, comparator);
+                AlarmColumns.RowMatcher after = columns.after(columns.cursorAt(sortedAll[500], field, true));
+
+                for (int k : new int[]{1, 50, 5_000, 100_000}) {
+                    assertThat(scan.top(null, columns.first(), columns.count(), k, comparator, null))
+                            .as("%s all k=%d", field, k)
+                            .isEqualTo(Arrays.copyOf(sortedAll, Math.min(k, sortedAll.length)));
+                    assertThat(scan.top(candidates, columns.first(), candidates.length, k, comparator, null))
+                            .as("%s candidates k=%d", field, k)
+                            .isEqualTo(Arrays.copyOf(sortedCandidates, Math.min(k, sortedCandidates.length)));
+                    assertThat(scan.top(null, columns.first(), columns.count(), k, comparator, after))
+                            .as("%s after k=%d", field, k)
+                            .isEqualTo(Arrays.copyOfRange(sortedAll, 501, Math.min(501 + k, sortedAll.length)));
+                }
+            }
+        }
+    }
+
+    @Test
+    void rethrowsWhatATaskThrows() {
+        AlarmColumns columns = store.snapshot().getColumns();
+        for (ParallelAlarmScan scan : parallelScans()) {
+            // The pool may hand back a copy of the exception thrown on a worker, with the original as cause
+            assertThatThrownBy(() -> scan.top(null, columns.first(), columns.count(), 10, (a, b) -> {
+                throw new IllegalStateException("comparator failed");
+            }, null)).isInstanceOf(IllegalStateException.class).hasMessageContaining("comparator failed");
+        }
+    }
+
+    private static int[] allRows(AlarmColumns columns) {
+        int[] rows = new int[columns.count()];
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = columns.first() + i;
+        }
+        return rows;
+    }
+}
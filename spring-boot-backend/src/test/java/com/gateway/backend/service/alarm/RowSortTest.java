@@ -0,0 +1,71 @@
+package com.gateway.backend.service.alarm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class RowSortTest {
+
+    private final Random random = new Random(12);
+    private final int[] values = random.ints(5_000, 0, 50).toArray();
+    /** By value, ties in row order: the shape of every column comparator. */
+    private final AlarmColumns.RowComparator byValue = (a, b) -> {
+        int order = Integer.compare(values[a], values[b]);
+        return order != 0 ? order : Integer.compare(a, b);
+    };
+
+    private int[] sortedRows() {
+        return IntStream.range(0, values.length).boxed()
+                .sorted(byValue::compare)
+                .mapToInt(Integer::intValue)
+                .toArray();
+    }
+
+    @Test
+    void sortsLikeAFullSort() {
+        int[] rows = IntStream.range(0, values.length).toArray();
+        int[] shuffled = rows.clone();
+        for (int i = shuffled.length - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int row = shuffled[i];
+            shuffled[i] = shuffled[j];
+            shuffled[j] = row;
+        }
+
+        RowSort.sort(shuffled, shuffled.length, byValue);
+
+        assertThat(shuffled).isEqualTo(sortedRows());
+    }
+
+    @Test
+    void keepsOnlyTheFirstKRows() {
+        int[] expected = sortedRows();
+        for (int k : new int[]{0, 1, 10, 333, values.length, values.length + 5}) {
+            RowSort.TopK top = new RowSort.TopK(k, byValue);
+            for (int row = values.length - 1; row >= 0; row--) {
+                top.offer(row);
+            }
+
+            assertThat(top.toSortedArray()).as("k=%d", k)
+                    .isEqualTo(Arrays.copyOf(expected, Math.min(k, values.length)));
+        }
+    }
+
+    @Test
+    void mergesSortedRunsIntoTheirFirstKRows() {
+        int[][] runs = new int[5][];
+        for (int run = 0; run < runs.length; run++) {
+            int r = run;
+            runs[run] = Arrays.stream(sortedRows()).filter(row -> row % runs.length == r).toArray();
+        }
+        runs[3] = new int[0];
+        int[] expected = Arrays.stream(sortedRows()).filter(row -> row % runs.length != 3).toArray();
+
+        assertThat(RowSort.merge(runs, 250, byValue)).isEqualTo(Arrays.copyOf(expected, 250));
+        assertThat(RowSort.merge(runs, Integer.MAX_VALUE, byValue)).isEqualTo(expected);
+    }
+}
@@ -0,0 +1,120 @@
+package com.gateway.backend.service.alarm;
+
+import com.gateway.backend.model.Alarm;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Seeded alarms with repeating categorical values, some of them missing, and the brute-force answers the
+ * indexed paths are checked against.
+ */
+public final class TestAlarms {
+
+    public static final LocalDateTime START = LocalDateTime.of(2024, 1, 1, 0, 0);
+    /** {@link AlarmColumns#CHUNK_SIZE}, for the tests outside the package. */
+    public static final int CHUNK_SIZE = AlarmColumns.CHUNK_SIZE;
+
+    static final String[] TYPES = {"Connection Lost", "Power Failure", "Hardware Error", "Security Alert"};
+    static final String[] SEVERITIES = {"Low", "Medium", "High", "Critical"};
+    static final String[] STATUSES = {"Open", "In Progress", "Resolved", "Closed"};
+    static final String[] CARRIERS = {"AT&T", "Verizon", "T-Mobile", null};
+    static final String[] MESSAGES = {
+            "Gateway connection lost",
+            "Power supply failure detected",
+            "Memory usage exceeds threshold",
+            "CPU usage exceeds threshold",
+            "Network interface error on port 7",
+            "Disk space low"
+    };
+
+    private final Random random;
+    private int generated;
+
+    public TestAlarms(long seed) {
+        this.random = new Random(seed);
+    }
+
+    /**
+     * The next {@code count} alarms, a few seconds apart from {@link #START} on.
+     */
+    public List<Alarm> next(int count) {
+        List<Alarm> alarms = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            alarms.add(next());
+        }
+        return alarms;
+    }
+
+    public Alarm next() {
+        int n = generated++;
+        return Alarm.builder()
+                .gatewayId(random.nextInt(10) == 0 ? null : (long) random.nextInt(40))
+                .gatewayName("Gateway " + random.nextInt(40))
+                .type(pick(TYPES))
+                .severity(pick(SEVERITIES))
+                .message(pick(MESSAGES))
+                .timestamp(START.plusSeconds(n * 5L + random.nextInt(5)))
+                .status(pick(STATUSES))
+                .callType(random.nextBoolean() ? "SMS" : "Voice")
+                .carrier(pick(CARRIERS))
+                .siteId((long) random.nextInt(12))
+                .siteName("Site " + random.nextInt(12))
+                .caller("User " + random.nextInt(8))
+                .caller_number(phone())
+                .callee_number(phone())
+                .duration_seconds(random.nextInt(3600))
+                .charge_amount(random.nextInt(1000) / 100.0)
+                .build();
+    }
+
+    private String pick(String[] values) {
+        return values[random.nextInt(values.length)];
+    }
+
+    private String phone() {
+        return (100 + random.nextInt(900)) + "-" + (100 + random.nextInt(900)) + "-" + (1000 + random.nextInt(9000));
+    }
+
+    /**
+     * Every alarm of {@code columns}, in id order.
+     */
+    public static List<Alarm> all(AlarmColumns columns) {
+        List<Alarm> alarms = new ArrayList<>(columns.count());
+        for (int row = columns.first(); row < columns.size(); row++) {
+            alarms.add(columns.toAlarm(row));
+        }
+        return alarms;
+    }
+
+    /**
+     * The alarms of {@code columns} the plan matches, checked one by one.
+     */
+    public static List<Alarm> matching(AlarmColumns columns, AlarmFilterPlan plan) {
+        List<Alarm> matches = new ArrayList<>();
+        for (Alarm alarm : all(columns)) {
+            if (plan.matches(alarm)) {
+                matches.add(alarm);
+            }
+        }
+        return matches;
+    }
+
+    public static List<Long> ids(List<Alarm> alarms) {
+        List<Long> ids = new ArrayList<>(alarms.size());
+        for (Alarm alarm : alarms) {
+            ids.add(alarm.getId());
+        }
+        return ids;
+    }
+
+    /**
+     * The listing order: by {@code field}, nulls first (last when descending), ties by id.
+     */
+    public static Comparator<Alarm> order(AlarmField field, boolean descending) {
+        return field.comparator(descending).thenComparing(Alarm::getId);
+    }
+}
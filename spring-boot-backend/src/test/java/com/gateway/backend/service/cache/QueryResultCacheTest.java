@@ -0,0 +1,262 @@
+package com.gateway.backend.service.cache;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Results are only served at the generation they were computed at, and the cache stays within its entry and
+ * byte bounds, evicting the least recently used first. Concurrent misses of the same key and generation share
+ * one computation.
+ */
+class QueryResultCacheTest {
+
+    private final ExecutorService callers = Executors.newCachedThreadPool();
+
+    @AfterEach
+    void shutdown() {
+        callers.shutdownNow();
+    }
+
+    /** Weighs a result by its length, so that entries weigh {@code 112 + 2 * key length + length} bytes. */
+    private static QueryResultCache<String> cache(int maxEntries, long maxBytes) {
+        return new QueryResultCache<>("Test", maxEntries, maxBytes, false, String::length);
+    }
+
+    @Test
+    void servesWhatWasCachedAtTheSameGeneration() {
+        QueryResultCache<String> cache = cache(10, 1 << 20);
+
+        assertThat(cache.get("a", 1)).isNull();
+        cache.put("a", 1, "first");
+        assertThat(cache.get("a", 1)).isEqualTo("first");
+        assertThat(cache.get("b", 1)).isNull();
+
+        QueryResultCache.Stats stats = cache.getStats();
+        assertThat(stats.getHits()).isEqualTo(1);
+        assertThat(stats.getMisses()).isEqualTo(2);
+        assertThat(stats.getHitRatio()).isEqualTo(1 / 3.0);
+        assertThat(stats.getSize()).isEqualTo(1);
+        assertThat(stats.getEstimatedBytes()).isEqualTo(112 + 2 + 5);
+        assertThat(stats.getGeneration()).isEqualTo(1);
+    }
+
+    @Test
+    void dropsEverythingOnANewerGenerationAndIgnoresOlderOnes() {
+        QueryResultCache<String> cache = cache(10, 1 << 20);
+        cache.put("a", 1, "a1");
+        cache.put("b", 1, "b1");
+
+        assertThat(cache.get("a", 2)).isNull();
+        assertThat(cache.size()).isZero();
+        assertThat(cache.getEstimatedBytes()).isZero();
+        assertThat(cache.getInvalidations()).isEqualTo(2);
+
+        // A result computed before the write is neither stored nor served
+        cache.put("a", 1, "stale");
+        assertThat(cache.get("a", 1)).isNull();
+        assertThat(cache.get("a", 2)).isNull();
+        cache.put("a", 2, "a2");
+        assertThat(cache.get("a", 1)).isNull();
+        assertThat(cache.get("a", 2)).isEqualTo("a2");
+        assertThat(cache.getStats().getGeneration()).isEqualTo(2);
+    }
+
+    @Test
+    void evictsTheLeastRecentlyUsedBeyondMaxEntries() {
+        QueryResultCache<String> cache = cache(3, 1 << 20);
+        cache.put("a", 1, "a");
+        cache.put("b", 1, "b");
+        cache.put("c", 1, "c");
+        assertThat(cache.get("a", 1)).isEqualTo("a");
+
+        cache.put("d", 1, "d");
+
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.getEvictions()).isEqualTo(1);
+        assertThat(cache.get("b", 1)).isNull();
+        assertThat(cache.get("a", 1)).isEqualTo("a");
+        assertThat(cache.get("c", 1)).isEqualTo("c");
+        assertThat(cache.get("d", 1)).isEqualTo("d");
+    }
+
+    @Test
+    void staysWithinMaxBytesAndSkipsResultsLargerThanThat() {
+        // Room for three entries of 112 + 2 + 86 = 200 bytes
+        QueryResultCache<String> cache = cache(100, 600);
+        String result = "x".repeat(86);
+        for (String key : new String[]{"a", "b", "c", "d"}) {
+            cache.put(key, 1, result);
+            assertThat(cache.getEstimatedBytes()).isLessThanOrEqualTo(600);
+        }
+        assertThat(cache.size()).isEqualTo(3);
+        assertThat(cache.get("a", 1)).isNull();
+
+        cache.put("e", 1, "x".repeat(600));
+        assertThat(cache.get("e", 1)).isNull();
+        assertThat(cache.size()).isEqualTo(3);
+
+        // Replacing an entry counts its new size only
+        cache.put("b", 1, "short");
+        assertThat(cache.getEstimatedBytes()).isEqualTo(2 * 200 + 112 + 2 + 5);
+    }
+
+    @Test
+    void aDisabledCacheStoresNothing() {
+        for (QueryResultCache<String> cache : List.of(cache(0, 1 << 20), cache(10, 0))) {
+            assertThat(cache.isEnabled()).isFalse();
+            cache.put("a", 1, "a");
+            assertThat(cache.get("a", 1)).isNull();
+            assertThat(cache.getOrCompute("a", 1, () -> "computed")).isEqualTo("computed");
+            assertThat(cache.getStats().getHits()).isZero();
+            assertThat(cache.size()).isZero();
+        }
+    }
+
+    /**
+     * A computation of {@code key} at {@code generation} started on another thread, which waits to be released
+     * before it returns its result or throws.
+     */
+    private final class Flight {
+        final CountDownLatch started = new CountDownLatch(1);
+        final CountDownLatch release = new CountDownLatch(1);
+        final AtomicInteger computations = new AtomicInteger();
+        final QueryResultCache<String> cache;
+        final Future<String> leader;
+
+        Flight(QueryResultCache<String> cache, String key, long generation, Supplier<String> result)
+                throws InterruptedException {
+            this.cache = cache;
+            this.leader = callers.submit(() -> cache.getOrCompute(key, generation, () -> {
+                computations.incrementAndGet();
+                started.countDown();
+                try {
+                    await(release);
+                } catch (InterruptedException e) {
+                    throw new IllegalStateException(e);
+                }
+                return result.get();
+            }));
+            await(started);
+        }
+
+        /**
+         * Calls for {@code key} at {@code generation} on other threads, each computing a result of its own
+         * unless it joins the flight.
+         */
+        List<Future<String>> join(int count, String key, long generation) {
+            List<Future<String>> results = new ArrayList<>();
+            for (int i = 0; i < count; i++) {
+                results.add(callers.submit(() -> cache.getOrCompute(key, generation, () -> {
+                    computations.incrementAndGet();
+                    return "own";
+                })));
+            }
+            return results;
+        }
+
+        void awaitCoalesced(long count) throws InterruptedException {
+            long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+            while (cache.getCoalesced() < count && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            assertThat(cache.getCoalesced()).isEqualTo(count);
+        }
+    }
+
+    private static void await(CountDownLatch latch) throws InterruptedException {
+        assertThat(latch.await(10, TimeUnit.SECONDS)).isTrue();
+    }
+
+    private static String get(Future<String> result) throws Exception {
+        return result.get(10, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void concurrentMissesShareOneComputationWithOrWithoutTheCache() throws Exception {
+        for (QueryResultCache<String> cache : List.of(
+                new QueryResultCache<String>("Test", 10, 1 << 20, true, String::length),
+                new QueryResultCache<String>("Test", 0, 0, true, String::length))) {
+            String shared = new String("shared");
+            Flight flight = new Flight(cache, "q", 7, () -> shared);
+            List<Future<String>> followers = flight.join(20, "q", 7);
+            flight.awaitCoalesced(20);
+
+            flight.release.countDown();
+            assertThat(get(flight.leader)).isSameAs(shared);
+            for (Future<String> follower : followers) {
+                assertThat(get(follower)).isSameAs(shared);
+            }
+            assertThat(flight.computations).hasValue(1);
+            // Once it is over, the next miss computes again
+            assertThat(cache.getOrCompute("q", 8, () -> "next")).isEqualTo("next");
+        }
+    }
+
+    @Test
+    void onlyTheSameKeyAtTheSameGenerationJoins() throws Exception {
+        QueryResultCache<String> cache = new QueryResultCache<>("Test", 10, 1 << 20, true, String::length);
+        Flight flight = new Flight(cache, "q", 7, () -> "leader");
+
+        // A caller that read newer data, or asks something else, does not wait for the flight
+        assertThat(get(flight.join(1, "q", 8).get(0))).isEqualTo("own");
+        assertThat(get(flight.join(1, "other", 7).get(0))).isEqualTo("own");
+        assertThat(cache.getCoalesced()).isZero();
+
+        flight.release.countDown();
+        assertThat(get(flight.leader)).isEqualTo("leader");
+        // Computed on data older than the newest seen, so not cached
+        assertThat(cache.get("q", 7)).isNull();
+        assertThat(cache.get("q", 8)).isEqualTo("own");
+    }
+
+    @Test
+    void everyCallerSharingAComputationGetsItsException() throws Exception {
+        QueryResultCache<String> cache = new QueryResultCache<>("Test", 10, 1 << 20, true, String::length);
+        IllegalArgumentException failure = new IllegalArgumentException("bad query");
+        Flight flight = new Flight(cache, "q", 7, () -> {
+            throw failure;
+        });
+        List<Future<String>> followers = flight.join(5, "q", 7);
+        flight.awaitCoalesced(5);
+
+        flight.release.countDown();
+        for (Future<String> result : concat(flight.leader, followers)) {
+            assertThatThrownBy(() -> get(result)).isInstanceOf(ExecutionException.class).hasCause(failure);
+        }
+        assertThat(flight.computations).hasValue(1);
+        assertThat(cache.getOrCompute("q", 7, () -> "retried")).isEqualTo("retried");
+    }
+
+    @Test
+    void withoutCoalescingEveryMissComputes() throws Exception {
+        QueryResultCache<String> cache = new QueryResultCache<>("Test", 10, 1 << 20, false, String::length);
+        Flight flight = new Flight(cache, "q", 7, () -> "leader");
+
+        assertThat(get(flight.join(1, "q", 7).get(0))).isEqualTo("own");
+        flight.release.countDown();
+        assertThat(get(flight.leader)).isEqualTo("leader");
+        assertThat(flight.computations).hasValue(2);
+        assertThat(cache.getCoalesced()).isZero();
+    }
+
+    private static List<Future<String>> concat(Future<String> first, List<Future<String>> rest) {
+        List<Future<String>> all = new ArrayList<>(rest.size() + 1);
+        all.add(first);
+        all.addAll(rest);
+        return all;
+    }
+}